@@ -16,9 +16,24 @@ import javax.inject.Inject;
 
 /**
  * Runs Serif process, as configured by Guice.
+ *
+ * By default documents are loaded, processed and written one at a time on a single thread. If
+ * {@code com.bbn.serif.driver.numThreads} is greater than one, documents are instead run through a
+ * {@link ParallelProcessingPipeline} with that many worker threads. It may be tuned with {@code
+ * com.bbn.serif.driver.numLoadThreads} (default: a quarter of the worker threads), {@code
+ * com.bbn.serif.driver.maxDocumentsInFlight} (default: four per worker thread) and {@code
+ * com.bbn.serif.driver.preserveOrder} (default: true), which determines whether sinks receive
+ * documents in input order.  Only steps implementing {@link ThreadSafeProcessingStep} process
+ * more than one document at a time.
  */
 public final class JSerifProcessor {
 
+  static final String NUM_THREADS_PARAM = "com.bbn.serif.driver.numThreads";
+  static final String NUM_LOAD_THREADS_PARAM = "com.bbn.serif.driver.numLoadThreads";
+  static final String MAX_DOCUMENTS_IN_FLIGHT_PARAM =
+      "com.bbn.serif.driver.maxDocumentsInFlight";
+  static final String PRESERVE_ORDER_PARAM = "com.bbn.serif.driver.preserveOrder";
+
   private final Parameters params;
 
   private final DocTheoryLoader loader;
@@ -38,6 +53,17 @@ public final class JSerifProcessor {
   }
 
   private void go() throws IOException {
+    final int numThreads = params.getOptionalInteger(NUM_THREADS_PARAM).or(1);
+    if (numThreads > 1) {
+      ParallelProcessingPipeline.create(loader, steps, sinks,
+          params.getOptionalInteger(NUM_LOAD_THREADS_PARAM).or(Math.max(1, numThreads / 4)),
+          numThreads,
+          params.getOptionalInteger(MAX_DOCUMENTS_IN_FLIGHT_PARAM).or(4 * numThreads),
+          params.getOptionalBoolean(PRESERVE_ORDER_PARAM).or(true))
+          .run(inputs);
+      return;
+    }
+
     for (DocTheory dt : SerifIOUtils.docTheoriesFromCharSources(inputs, loader)) {
       for (final ProcessingStep step : steps) {
         dt = step.process(dt);
@@ -0,0 +1,351 @@
+package com.bbn.serif.driver;
+
+import com.bbn.serif.io.DocTheoryLoader;
+import com.bbn.serif.io.DocTheorySink;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Runs documents through a {@link JSerifProcessor} pipeline on several threads. Documents are
+ * loaded by a pool of load threads, passed through all the processing steps by a pool of worker
+ * threads, and handed to the sinks by a single thread, with bounded queues between these stages.
+ * At most a fixed number of documents are in the pipeline at once, so a slow stage makes the
+ * earlier ones wait rather than letting documents pile up in memory.
+ *
+ * Steps which implement {@link ThreadSafeProcessingStep} may process several documents at once;
+ * all others process one document at a time, though different steps may be working on different
+ * documents simultaneously. Sinks only ever see one document at a time and receive documents
+ * either in input order or as soon as they are ready.
+ *
+ * The first failure anywhere stops the whole pipeline and is rethrown by {@link
+ * #run(Iterable)}. Otherwise, once all documents have reached the sinks, {@link
+ * ProcessingStep#finish()} is called once on each step and then {@link DocTheorySink#finish()}
+ * once on each sink. The time each stage spent working and its throughput are logged at the end.
+ */
+final class ParallelProcessingPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelProcessingPipeline.class);
+
+  private final DocTheoryLoader loader;
+  private final ImmutableList<ProcessingStep> steps;
+  private final ImmutableList<DocTheorySink> sinks;
+  private final int numLoadThreads;
+  private final int numWorkerThreads;
+  private final int maxDocumentsInFlight;
+  private final boolean preserveOrder;
+
+  private final BlockingQueue<Item> toLoad;
+  private final BlockingQueue<Item> toProcess;
+  private final BlockingQueue<Item> toSink;
+  // bounds the number of documents anywhere in the pipeline, including those the sink stage is
+  // holding back to restore input order
+  private final Semaphore inFlight;
+  private final AtomicInteger liveLoadThreads;
+  private final AtomicInteger liveWorkerThreads;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final StageStats loadStats = new StageStats("load");
+  private final ImmutableList<StageStats> stepStats;
+  private final StageStats sinkStats = new StageStats("sinks");
+  private boolean started = false;
+  private volatile ExecutorService executor;
+
+  private ParallelProcessingPipeline(final DocTheoryLoader loader,
+      final List<ProcessingStep> steps, final Iterable<DocTheorySink> sinks,
+      final int numLoadThreads, final int numWorkerThreads, final int maxDocumentsInFlight,
+      final boolean preserveOrder) {
+    checkArgument(numLoadThreads > 0, "Must have at least one load thread");
+    checkArgument(numWorkerThreads > 0, "Must have at least one worker thread");
+    checkArgument(maxDocumentsInFlight > 0, "Must allow at least one document in flight");
+    this.loader = checkNotNull(loader);
+    this.steps = ImmutableList.copyOf(steps);
+    this.sinks = ImmutableList.copyOf(sinks);
+    this.numLoadThreads = numLoadThreads;
+    this.numWorkerThreads = numWorkerThreads;
+    this.maxDocumentsInFlight = maxDocumentsInFlight;
+    this.preserveOrder = preserveOrder;
+
+    this.toLoad = new ArrayBlockingQueue<>(maxDocumentsInFlight + numLoadThreads);
+    this.toProcess = new ArrayBlockingQueue<>(maxDocumentsInFlight + numWorkerThreads);
+    this.toSink = new ArrayBlockingQueue<>(maxDocumentsInFlight + 1);
+    this.inFlight = new Semaphore(maxDocumentsInFlight);
+    this.liveLoadThreads = new AtomicInteger(numLoadThreads);
+    this.liveWorkerThreads = new AtomicInteger(numWorkerThreads);
+
+    final ImmutableList.Builder<StageStats> stepStats = ImmutableList.builder();
+    for (final ProcessingStep step : steps) {
+      stepStats.add(new StageStats(step.getClass().getSimpleName()));
+    }
+    this.stepStats = stepStats.build();
+  }
+
+  static ParallelProcessingPipeline create(final DocTheoryLoader loader,
+      final List<ProcessingStep> steps, final Iterable<DocTheorySink> sinks,
+      final int numLoadThreads, final int numWorkerThreads, final int maxDocumentsInFlight,
+      final boolean preserveOrder) {
+    return new ParallelProcessingPipeline(loader, steps, sinks, numLoadThreads,
+        numWorkerThreads, maxDocumentsInFlight, preserveOrder);
+  }
+
+  /**
+   * Runs all of {@code inputs} through the pipeline, returning once they have all been consumed
+   * by the sinks and everything has been finished. May only be called once.
+   */
+  synchronized void run(final Iterable<CharSource> inputs) throws IOException {
+    checkState(!started, "A pipeline may only be run once");
+    started = true;
+    log.info("Running with {} load threads, {} worker threads and at most {} documents in flight",
+        numLoadThreads, numWorkerThreads, maxDocumentsInFlight);
+
+    executor = Executors.newFixedThreadPool(
+        numLoadThreads + numWorkerThreads + 2,
+        new ThreadFactoryBuilder().setNameFormat("JSerifProcessor-%d").setDaemon(true).build());
+    final long startTime = System.nanoTime();
+    executor.execute(new Stage() {
+      @Override
+      void runStage() throws Exception {
+        feed(inputs);
+      }
+    });
+    for (int i = 0; i < numLoadThreads; ++i) {
+      executor.execute(new Stage() {
+        @Override
+        void runStage() throws Exception {
+          load();
+        }
+      });
+    }
+    for (int i = 0; i < numWorkerThreads; ++i) {
+      executor.execute(new Stage() {
+        @Override
+        void runStage() throws Exception {
+          process();
+        }
+      });
+    }
+    executor.execute(new Stage() {
+      @Override
+      void runStage() throws Exception {
+        sink();
+      }
+    });
+    executor.shutdown();
+
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        log.info("{} documents loaded, {} consumed by sinks", loadStats.numDocuments.get(),
+            sinkStats.numDocuments.get());
+      }
+    } catch (final InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing documents", e);
+    }
+
+    final Throwable cause = failure.get();
+    if (cause != null) {
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+
+    logStats(System.nanoTime() - startTime);
+    for (final ProcessingStep step : steps) {
+      step.finish();
+    }
+    for (final DocTheorySink sink : sinks) {
+      sink.finish();
+    }
+  }
+
+  private void feed(final Iterable<CharSource> inputs) throws InterruptedException {
+    long sequenceNumber = 0;
+    for (final CharSource input : inputs) {
+      inFlight.acquire();
+      toLoad.put(new Item(sequenceNumber++, input));
+    }
+    for (int i = 0; i < numLoadThreads; ++i) {
+      toLoad.put(Item.END);
+    }
+  }
+
+  private void load() throws Exception {
+    while (true) {
+      final Item item = toLoad.take();
+      if (item == Item.END) {
+        break;
+      }
+      final long start = System.nanoTime();
+      item.docTheory = loader.loadFrom(item.source);
+      item.source = null;
+      loadStats.record(start);
+      toProcess.put(item);
+    }
+    if (liveLoadThreads.decrementAndGet() == 0) {
+      for (int i = 0; i < numWorkerThreads; ++i) {
+        toProcess.put(Item.END);
+      }
+    }
+  }
+
+  private void process() throws Exception {
+    while (true) {
+      final Item item = toProcess.take();
+      if (item == Item.END) {
+        break;
+      }
+      for (int i = 0; i < steps.size(); ++i) {
+        final ProcessingStep step = steps.get(i);
+        if (step instanceof ThreadSafeProcessingStep) {
+          final long start = System.nanoTime();
+          item.docTheory = step.process(item.docTheory);
+          stepStats.get(i).record(start);
+        } else {
+          synchronized (step) {
+            final long start = System.nanoTime();
+            item.docTheory = step.process(item.docTheory);
+            stepStats.get(i).record(start);
+          }
+        }
+      }
+      toSink.put(item);
+    }
+    if (liveWorkerThreads.decrementAndGet() == 0) {
+      toSink.put(Item.END);
+    }
+  }
+
+  private void sink() throws Exception {
+    // documents which are ready but which must wait for earlier ones, by sequence number
+    final Map<Long, DocTheory> heldBack = new HashMap<>();
+    long nextSequenceNumber = 0;
+    while (true) {
+      final Item item = toSink.take();
+      if (item == Item.END) {
+        break;
+      }
+      if (!preserveOrder) {
+        consume(item.docTheory);
+        continue;
+      }
+      heldBack.put(item.sequenceNumber, item.docTheory);
+      for (DocTheory next = heldBack.remove(nextSequenceNumber); next != null;
+           next = heldBack.remove(nextSequenceNumber)) {
+        consume(next);
+        ++nextSequenceNumber;
+      }
+    }
+    checkState(heldBack.isEmpty(), "Documents were lost in the pipeline");
+  }
+
+  private void consume(final DocTheory docTheory) throws IOException {
+    final long start = System.nanoTime();
+    for (final DocTheorySink sink : sinks) {
+      sink.consume(docTheory);
+    }
+    sinkStats.record(start);
+    inFlight.release();
+  }
+
+  private void logStats(final long elapsedNanos) {
+    final double elapsedSeconds = elapsedNanos / 1e9;
+    log.info("Processed {} documents in {} s ({} documents/s)", sinkStats.numDocuments.get(),
+        String.format("%.1f", elapsedSeconds),
+        String.format("%.2f", sinkStats.numDocuments.get() / elapsedSeconds));
+    loadStats.log(elapsedSeconds, numLoadThreads);
+    for (int i = 0; i < steps.size(); ++i) {
+      stepStats.get(i).log(elapsedSeconds,
+          steps.get(i) instanceof ThreadSafeProcessingStep ? numWorkerThreads : 1);
+    }
+    sinkStats.log(elapsedSeconds, 1);
+  }
+
+  /**
+   * Runs one thread's share of a stage, stopping the whole pipeline if it fails.
+   */
+  private abstract class Stage implements Runnable {
+
+    abstract void runStage() throws Exception;
+
+    @Override
+    public final void run() {
+      try {
+        runStage();
+      } catch (final InterruptedException e) {
+        // we are being stopped because another stage failed
+        if (failure.get() == null) {
+          failure.compareAndSet(null, e);
+        }
+      } catch (final Throwable t) {
+        if (failure.compareAndSet(null, t)) {
+          log.error("Stopping processing after failure", t);
+        }
+        // interrupts every other stage, wherever it is blocked
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static final class Item {
+
+    // marks the end of the input; each thread of a stage receives one
+    static final Item END = new Item(-1, null);
+
+    private final long sequenceNumber;
+    private CharSource source;
+    private DocTheory docTheory;
+
+    private Item(final long sequenceNumber, final CharSource source) {
+      this.sequenceNumber = sequenceNumber;
+      this.source = source;
+    }
+  }
+
+  private static final class StageStats {
+
+    private final String name;
+    private final AtomicLong numDocuments = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    private StageStats(final String name) {
+      this.name = checkNotNull(name);
+    }
+
+    void record(final long startNanos) {
+      busyNanos.addAndGet(System.nanoTime() - startNanos);
+      numDocuments.incrementAndGet();
+    }
+
+    void log(final double elapsedSeconds, final int maxConcurrency) {
+      final double busySeconds = busyNanos.get() / 1e9;
+      log.info("  {}: {} documents, busy {} s ({} documents/s while busy, {}% of capacity)",
+          name, numDocuments.get(), String.format("%.1f", busySeconds),
+          String.format("%.2f", busySeconds > 0 ? numDocuments.get() / busySeconds : 0.0),
+          String.format("%.0f", 100.0 * busySeconds / (elapsedSeconds * maxConcurrency)));
+    }
+  }
+}
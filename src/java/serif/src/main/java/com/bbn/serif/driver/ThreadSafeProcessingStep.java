@@ -0,0 +1,13 @@
+package com.bbn.serif.driver;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link ProcessingStep} which may be given several documents at once from different threads.
+ * When {@link JSerifProcessor} runs documents in parallel, other steps only ever see one document
+ * at a time, though not always on the same thread.
+ */
+@Beta
+public interface ThreadSafeProcessingStep extends ProcessingStep {
+
+}
@@ -0,0 +1,174 @@
+package com.bbn.serif.io;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A {@link Reader} which replaces each {@code \r} in a SerifXML stream with the entity reference
+ * {@code &#xD;} as it is read.
+ *
+ * The XML parser treats \r\n as a single character. This is problematic when we are using
+ * character offsets, so {@link SerifXMLLoader#loadFromString(String)} rewrites the whole document
+ * string before parsing. This does the same thing on the fly so that streaming loads never need
+ * the document as a {@link String}.  As in {@code loadFromString}, if the text before the
+ * {@code <SerifXML} element already contains Windows line endings, the file was probably written
+ * by this library and already has entity references for its {@code \r}s, so nothing is replaced.
+ */
+final class CarriageReturnEscapingReader extends FilterReader {
+
+  private static final String SERIFXML_START = "<SerifXML";
+  private static final char[] ESCAPED_CR = "&#xD;".toCharArray();
+  private static final int BUFFER_SIZE = 8192;
+
+  private char[] buffer = new char[BUFFER_SIZE];
+  private int bufferPos = 0;
+  private int bufferLimit = 0;
+  private boolean initialized = false;
+  private boolean escapeCarriageReturns;
+  // index of the next character of ESCAPED_CR to emit; ESCAPED_CR.length if none is pending
+  private int escapePos = ESCAPED_CR.length;
+
+  CarriageReturnEscapingReader(final Reader in) {
+    super(checkNotNull(in));
+  }
+
+  /**
+   * Creates a reader for a fragment of a SerifXML document, which need not contain the {@code
+   * <SerifXML} element. Whether to escape carriage returns should be taken from {@link
+   * #escapesCarriageReturns()} of a reader over the whole document.
+   */
+  CarriageReturnEscapingReader(final Reader in, final boolean escapeCarriageReturns) {
+    super(checkNotNull(in));
+    this.escapeCarriageReturns = escapeCarriageReturns;
+    this.initialized = true;
+  }
+
+  /**
+   * Whether this reader replaces carriage returns. Only valid once something has been read.
+   */
+  boolean escapesCarriageReturns() {
+    checkState(initialized, "Nothing has been read yet");
+    return escapeCarriageReturns;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final char[] single = new char[1];
+    final int numRead = read(single, 0, 1);
+    return numRead < 0 ? -1 : single[0];
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException {
+    checkPositionIndexes(off, off + len, cbuf.length);
+    initializeIfNecessary();
+    if (len == 0) {
+      return 0;
+    }
+
+    int written = 0;
+    while (written < len) {
+      if (escapePos < ESCAPED_CR.length) {
+        cbuf[off + written] = ESCAPED_CR[escapePos];
+        ++escapePos;
+        ++written;
+        continue;
+      }
+      if (bufferPos == bufferLimit && !fill()) {
+        break;
+      }
+      final char c = buffer[bufferPos++];
+      if (c == '\r' && escapeCarriageReturns) {
+        escapePos = 0;
+      } else {
+        cbuf[off + written] = c;
+        ++written;
+      }
+    }
+    return written == 0 ? -1 : written;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+    final char[] skipBuffer = new char[(int) Math.min(n, BUFFER_SIZE)];
+    long skipped = 0;
+    while (skipped < n) {
+      final int numRead = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+      if (numRead < 0) {
+        break;
+      }
+      skipped += numRead;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    return escapePos < ESCAPED_CR.length || bufferPos < bufferLimit || in.ready();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void mark(final int readAheadLimit) throws IOException {
+    throw new IOException("mark() not supported");
+  }
+
+  @Override
+  public void reset() throws IOException {
+    throw new IOException("reset() not supported");
+  }
+
+  /**
+   * Reads ahead until we find the start of the {@code <SerifXML} element so we can decide whether
+   * or not carriage returns need escaping. The read-ahead is kept in the buffer and returned to
+   * the caller as usual.
+   */
+  private void initializeIfNecessary() throws IOException {
+    if (initialized) {
+      return;
+    }
+    int contentStart = -1;
+    while (contentStart < 0) {
+      if (bufferLimit == buffer.length) {
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+      final int numRead = in.read(buffer, bufferLimit, buffer.length - bufferLimit);
+      if (numRead < 0) {
+        throw new IOException("Cannot parse string without <SerifXML> element");
+      }
+      // the element start may straddle the previous read boundary
+      final int searchFrom = Math.max(0, bufferLimit - SERIFXML_START.length());
+      bufferLimit += numRead;
+      contentStart = new String(buffer, searchFrom, bufferLimit - searchFrom)
+          .indexOf(SERIFXML_START);
+      if (contentStart >= 0) {
+        contentStart += searchFrom;
+      }
+    }
+    // mirrors the check in SerifXMLLoader#loadFromString
+    escapeCarriageReturns =
+        new String(buffer, 0, contentStart).indexOf("\r\n") <= 0;
+    initialized = true;
+  }
+
+  private boolean fill() throws IOException {
+    bufferPos = 0;
+    bufferLimit = 0;
+    final int numRead = in.read(buffer, 0, buffer.length);
+    if (numRead < 0) {
+      return false;
+    }
+    bufferLimit = numRead;
+    return true;
+  }
+}
@@ -0,0 +1,87 @@
+package com.bbn.serif.io;
+
+import com.google.common.annotations.Beta;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Frees direct and memory-mapped buffers immediately rather than whenever they happen to be garbage
+ * collected. The JDK only offers this through internal APIs, so this uses whichever this JVM has:
+ * {@code sun.misc.Unsafe.invokeCleaner} from Java 9, or the buffer's {@code sun.misc.Cleaner}
+ * before that. On a JVM with neither, buffers are left to the garbage collector.
+ */
+@Beta
+public final class DirectBuffers {
+
+  private static final Logger log = LoggerFactory.getLogger(DirectBuffers.class);
+
+  @Nullable
+  private static final Object UNSAFE;
+  @Nullable
+  private static final Method INVOKE_CLEANER;
+  @Nullable
+  private static final Method CLEANER;
+  @Nullable
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    Method cleaner = null;
+    Method clean = null;
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch (final Exception e) {
+      invokeCleaner = null;
+      try {
+        cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (final Exception f) {
+        log.info("Cannot free direct buffers explicitly on this JVM; they will be freed by the"
+            + " garbage collector");
+        cleaner = null;
+        clean = null;
+      }
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    CLEANER = cleaner;
+    CLEAN = clean;
+  }
+
+  private DirectBuffers() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Frees {@code buffer}, which must be a direct buffer as allocated or mapped, not a slice or
+   * duplicate of one. Neither it nor any slice or duplicate of it may be used afterwards: on most
+   * JVMs, doing so reads freed memory.
+   */
+  public static void free(final ByteBuffer buffer) {
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } else if (CLEANER != null && CLEAN != null) {
+        final Object cleaner = CLEANER.invoke(buffer);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+        }
+      }
+    } catch (final Exception e) {
+      // the garbage collector will free it eventually
+      log.debug("Failed to free direct buffer", e);
+    }
+  }
+}
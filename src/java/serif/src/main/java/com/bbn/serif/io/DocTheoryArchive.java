@@ -0,0 +1,491 @@
+package com.bbn.serif.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.io.cache.DocTheoryCache;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Many documents stored in a single file, as written by {@link DocTheoryArchiveWriter}, with an
+ * index from document IDs to their locations.
+ *
+ * Keeping a large corpus as one file rather than one file per document avoids paying the file
+ * system's per-file costs (directory lookups, opens, inodes) for every document.  The data file is
+ * memory-mapped when the archive is opened, so reading a document involves no system calls at all,
+ * and the operating system's page cache is shared between all processes reading the archive.
+ *
+ * Documents may be stored either as SerifXML or as binary SerifXML and are looked up by docid
+ * ({@link #sourceForDocID(Symbol)}, {@link #getDocTheory(Symbol)}, or as a function with {@link
+ * #asDocIDToSourceFunction()}, with {@link #keySet()} giving every docid, as for a {@link
+ * com.bbn.nlp.io.DocIDToFileMapping}) or scanned in the order they were written ({@link
+ * #docTheories()}). An archive can also back a {@link
+ * com.bbn.serif.io.cache.impl.DefaultDocTheoryCache}, and can be used as a {@link
+ * DocTheoryLoader}, which loads with the archive's loader. This class is thread-safe.
+ *
+ * The archive must not be appended to while it is open. {@link #close()} unmaps the archive
+ * straight away rather than when the mapping is garbage collected; after that, documents can no
+ * longer be read from it or from any source it gave out.
+ */
+public final class DocTheoryArchive implements DocTheoryCache, DocTheoryLoader, Closeable {
+
+  static final String INDEX_SUFFIX = ".index";
+  static final int INDEX_MAGIC = 0x53584149; // "SXAI"
+  static final int INDEX_VERSION = 2;
+  static final int ARCHIVE_MAGIC = 0x53584141; // "SXAA"
+  // the magic number and the archive ID
+  static final int HEADER_LENGTH = 4 + 8;
+
+  // a MappedByteBuffer can address at most this many bytes
+  private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  private final File archiveFile;
+  private final SerifXMLLoader loader;
+  // all in the order documents were written to the archive
+  private final ImmutableList<Symbol> docIDs;
+  private final long[] offsets;
+  private final int[] lengths;
+  private final int[] segmentForDoc;
+  // indices of documents, sorted by docid for lookup
+  private final Integer[] docIndicesByDocID;
+  private final MappedByteBuffer[] segments;
+  private final long[] segmentStarts;
+  // reads hold the read lock, so close() never unmaps a segment being read
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private boolean closed = false;
+
+  private DocTheoryArchive(final File archiveFile, final SerifXMLLoader loader,
+      final List<Symbol> docIDs, final long[] offsets, final int[] lengths) throws IOException {
+    this.archiveFile = checkNotNull(archiveFile);
+    this.loader = checkNotNull(loader);
+    this.docIDs = ImmutableList.copyOf(docIDs);
+    this.offsets = checkNotNull(offsets);
+    this.lengths = checkNotNull(lengths);
+
+    this.docIndicesByDocID = new Integer[docIDs.size()];
+    for (int i = 0; i < docIndicesByDocID.length; ++i) {
+      docIndicesByDocID[i] = i;
+    }
+    Arrays.sort(docIndicesByDocID, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer left, final Integer right) {
+        return DocTheoryArchive.this.docIDs.get(left).asString()
+            .compareTo(DocTheoryArchive.this.docIDs.get(right).asString());
+      }
+    });
+    for (int i = 1; i < docIndicesByDocID.length; ++i) {
+      final Symbol docID = docIDs.get(docIndicesByDocID[i]);
+      checkArgument(!docIDs.get(docIndicesByDocID[i - 1]).equals(docID),
+          "Archive %s contains document %s twice", archiveFile, docID);
+    }
+
+    // documents are written in offset order, so we can split the data file into as few mappable
+    // segments as possible without any document straddling two
+    this.segmentForDoc = new int[offsets.length];
+    final List<Long> segmentStartsList = new ArrayList<>();
+    final List<Long> segmentEndsList = new ArrayList<>();
+    for (int i = 0; i < offsets.length; ++i) {
+      final long end = offsets[i] + lengths[i];
+      final int lastSegment = segmentStartsList.size() - 1;
+      if (lastSegment < 0 || end - segmentStartsList.get(lastSegment) > MAX_SEGMENT_SIZE) {
+        segmentStartsList.add(offsets[i]);
+        segmentEndsList.add(end);
+      } else {
+        segmentEndsList.set(lastSegment, Math.max(end, segmentEndsList.get(lastSegment)));
+      }
+      segmentForDoc[i] = segmentStartsList.size() - 1;
+    }
+
+    this.segments = new MappedByteBuffer[segmentStartsList.size()];
+    this.segmentStarts = new long[segmentStartsList.size()];
+    try (RandomAccessFile data = new RandomAccessFile(archiveFile, "r");
+         FileChannel channel = data.getChannel()) {
+      for (int i = 0; i < segments.length; ++i) {
+        segmentStarts[i] = segmentStartsList.get(i);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStarts[i],
+            segmentEndsList.get(i) - segmentStarts[i]);
+      }
+    }
+  }
+
+  /**
+   * Opens the archive written to {@code archiveFile}. Documents will be loaded with {@code
+   * loader}.
+   */
+  public static DocTheoryArchive open(final File archiveFile, final SerifXMLLoader loader)
+      throws IOException {
+    final List<Symbol> docIDs = new ArrayList<>();
+    final List<Long> offsets = new ArrayList<>();
+    final List<Integer> lengths = new ArrayList<>();
+    final File indexFile = indexFileFor(archiveFile);
+    checkArchiveID(archiveFile, indexFile, readIndex(indexFile, docIDs, offsets, lengths));
+
+    final long archiveLength = archiveFile.length();
+    final long[] offsetsArray = new long[offsets.size()];
+    final int[] lengthsArray = new int[lengths.size()];
+    for (int i = 0; i < offsetsArray.length; ++i) {
+      offsetsArray[i] = offsets.get(i);
+      lengthsArray[i] = lengths.get(i);
+      if (offsetsArray[i] + lengthsArray[i] > archiveLength) {
+        throw new IOException(String.format(
+            "Index for %s refers to bytes %s-%s for %s but the archive is only %s bytes long",
+            archiveFile, offsetsArray[i], offsetsArray[i] + lengthsArray[i], docIDs.get(i),
+            archiveLength));
+      }
+    }
+    return new DocTheoryArchive(archiveFile, loader, docIDs, offsetsArray, lengthsArray);
+  }
+
+  /**
+   * The IDs of all documents in the archive, in the order they were written.
+   */
+  public ImmutableList<Symbol> docIDs() {
+    return docIDs;
+  }
+
+  public int numDocuments() {
+    return docIDs.size();
+  }
+
+  public boolean contains(final Symbol docID) {
+    return indexOf(docID) >= 0;
+  }
+
+  /**
+   * The IDs of all documents in the archive.
+   */
+  public ImmutableSet<Symbol> keySet() {
+    return ImmutableSet.copyOf(docIDs);
+  }
+
+  /**
+   * Gets the stored bytes of the specified document, if it is in the archive. These may be
+   * SerifXML or binary SerifXML; {@link SerifXMLLoader#loadFrom(ByteSource)} reads either.
+   */
+  public Optional<ByteSource> sourceForDocID(final Symbol docID) {
+    final int idx = indexOf(docID);
+    if (idx >= 0) {
+      return Optional.<ByteSource>of(sourceFor(idx));
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Loads the specified document. This does no caching; for that, use a {@link
+   * com.bbn.serif.io.cache.impl.DefaultDocTheoryCache} backed by this archive.
+   *
+   * @throws IOException if the document is not in the archive or cannot be loaded
+   */
+  @Override
+  public DocTheory getDocTheory(final Symbol docid) throws IOException {
+    final Optional<ByteSource> source = sourceForDocID(docid);
+    if (source.isPresent()) {
+      return loader.loadFrom(source.get());
+    } else {
+      throw new IOException(String.format("Document %s is not in archive %s", docid,
+          archiveFile));
+    }
+  }
+
+  /**
+   * Loads a document from {@code source} with the loader this archive was opened with.
+   */
+  @Override
+  public DocTheory loadFrom(final CharSource source) throws IOException {
+    return loader.loadFrom(source);
+  }
+
+  /**
+   * Loads each document in the archive in turn, in the order they were written, which is also
+   * the order they appear in the archive file. Failures to load a document are thrown as {@link
+   * RuntimeException}s.
+   */
+  public Iterable<DocTheory> docTheories() {
+    return new Iterable<DocTheory>() {
+      @Override
+      public Iterator<DocTheory> iterator() {
+        return new AbstractIterator<DocTheory>() {
+          private int nextIdx = 0;
+
+          @Override
+          protected DocTheory computeNext() {
+            if (nextIdx < numDocuments()) {
+              final int idx = nextIdx++;
+              try {
+                return loader.loadFrom(sourceFor(idx));
+              } catch (final IOException e) {
+                throw new RuntimeException(e);
+              }
+            }
+            return endOfData();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Gets a function which looks up docids in this archive.
+   */
+  public Function<Symbol, Optional<ByteSource>> asDocIDToSourceFunction() {
+    return new Function<Symbol, Optional<ByteSource>>() {
+      @Override
+      public Optional<ByteSource> apply(final Symbol input) {
+        return sourceForDocID(input);
+      }
+    };
+  }
+
+  /**
+   * Unmaps the archive. Reading a document from it, or from a source it returned, afterwards
+   * throws an {@link IOException}. Reads already under way finish first.
+   */
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (!closed) {
+        closed = true;
+        for (int i = 0; i < segments.length; ++i) {
+          DirectBuffers.free(segments[i]);
+          segments[i] = null;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DocTheoryArchive(" + archiveFile + ")";
+  }
+
+  static File indexFileFor(final File archiveFile) {
+    return new File(archiveFile.getPath() + INDEX_SUFFIX);
+  }
+
+  /**
+   * Reads the index of an archive into the given lists, in the order the documents were written,
+   * and returns the ID of the archive it indexes.
+   */
+  static long readIndex(final File indexFile, final List<Symbol> docIDs,
+      final List<Long> offsets, final List<Integer> lengths) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != INDEX_MAGIC) {
+        throw new IOException(indexFile + " is not a DocTheoryArchive index");
+      }
+      final int version = in.readInt();
+      if (version != INDEX_VERSION) {
+        throw new IOException(String.format("Unsupported DocTheoryArchive index version %s in %s",
+            version, indexFile));
+      }
+      final long archiveID = in.readLong();
+      final int numDocs = in.readInt();
+      for (int i = 0; i < numDocs; ++i) {
+        docIDs.add(Symbol.from(in.readUTF()));
+        offsets.add(in.readLong());
+        lengths.add(in.readInt());
+      }
+      return archiveID;
+    }
+  }
+
+  /**
+   * Checks that {@code archiveFile} is the archive with the ID recorded in {@code indexFile}.
+   */
+  static void checkArchiveID(final File archiveFile, final File indexFile,
+      final long expectedArchiveID) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(archiveFile)))) {
+      if (in.readInt() != ARCHIVE_MAGIC) {
+        throw new IOException(archiveFile + " is not a DocTheoryArchive");
+      }
+      if (in.readLong() != expectedArchiveID) {
+        throw new IOException(String.format("Index %s does not belong to archive %s. Writing the "
+            + "archive was probably interrupted after the new index was moved into place; if so, "
+            + "the new archive is still in %s.tmp", indexFile, archiveFile, archiveFile));
+      }
+    } catch (final EOFException e) {
+      throw new IOException(archiveFile + " is too short to be a DocTheoryArchive", e);
+    }
+  }
+
+  private int indexOf(final Symbol docID) {
+    final String target = docID.asString();
+    int low = 0;
+    int high = docIndicesByDocID.length - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = docIDs.get(docIndicesByDocID[mid]).asString().compareTo(target);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return docIndicesByDocID[mid];
+      }
+    }
+    return -1;
+  }
+
+  private MappedDocumentSource sourceFor(final int idx) {
+    final int segment = segmentForDoc[idx];
+    final int start = (int) (offsets[idx] - segmentStarts[segment]);
+    return new MappedDocumentSource(segment, start, lengths[idx], docIDs.get(idx));
+  }
+
+  // the document's bytes, which are only valid while the read lock is held
+  private ByteBuffer bytesOf(final int segment, final int start, final int length)
+      throws IOException {
+    if (closed) {
+      throw new IOException(this + " is closed");
+    }
+    // duplicate so concurrent readers don't share a position
+    final ByteBuffer ret = segments[segment].duplicate();
+    ret.position(start);
+    ret.limit(start + length);
+    return ret;
+  }
+
+  private final class MappedDocumentSource extends ByteSource {
+
+    private final int segment;
+    private final int start;
+    private final int length;
+    private final Symbol docID;
+
+    private MappedDocumentSource(final int segment, final int start, final int length,
+        final Symbol docID) {
+      this.segment = segment;
+      this.start = start;
+      this.length = length;
+      this.docID = checkNotNull(docID);
+    }
+
+    @Override
+    public InputStream openStream() {
+      return new MappedDocumentInputStream(segment, start, length);
+    }
+
+    @Override
+    public long size() {
+      return length;
+    }
+
+    @Override
+    public byte[] read() throws IOException {
+      final byte[] ret = new byte[length];
+      lock.readLock().lock();
+      try {
+        bytesOf(segment, start, length).get(ret);
+      } finally {
+        lock.readLock().unlock();
+      }
+      return ret;
+    }
+
+    @Override
+    public long copyTo(final OutputStream output) throws IOException {
+      final byte[] ret = read();
+      output.write(ret);
+      return ret.length;
+    }
+
+    @Override
+    public String toString() {
+      return DocTheoryArchive.this + "[" + docID + "]";
+    }
+  }
+
+  private final class MappedDocumentInputStream extends InputStream {
+
+    private final int segment;
+    private final int start;
+    private final int length;
+    private int numRead = 0;
+
+    private MappedDocumentInputStream(final int segment, final int start, final int length) {
+      this.segment = segment;
+      this.start = start;
+      this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (numRead >= length) {
+        return -1;
+      }
+      lock.readLock().lock();
+      try {
+        return bytesOf(segment, start, length).get(start + numRead++) & 0xFF;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (numRead >= length) {
+        return -1;
+      }
+      final int toRead = Math.min(len, length - numRead);
+      lock.readLock().lock();
+      try {
+        final ByteBuffer bytes = bytesOf(segment, start, length);
+        bytes.position(start + numRead);
+        bytes.get(b, off, toRead);
+      } finally {
+        lock.readLock().unlock();
+      }
+      numRead += toRead;
+      return toRead;
+    }
+
+    @Override
+    public long skip(final long n) {
+      final int numSkipped = (int) Math.max(0, Math.min(n, length - numRead));
+      numRead += numSkipped;
+      return numSkipped;
+    }
+
+    @Override
+    public int available() {
+      return length - numRead;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.bbn.serif.io;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.io.ByteSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes documents to a {@link DocTheoryArchive}. Documents are written out as they are consumed,
+ * but the index (a separate file next to the archive) is only written by {@link #finish()}, so if
+ * writing is interrupted an existing archive is left holding exactly the documents it held before:
+ *
+ * <ul>
+ * <li>{@link #create(File, SerifXMLWriter)} writes the new archive to a temporary file next to
+ * {@code archiveFile}, leaving any existing archive and its index alone until {@link #finish()}
+ * moves the new index and then the new archive into place.</li>
+ * <li>{@link #openForAppend(File, SerifXMLWriter)} appends to the archive file itself, and {@link
+ * #finish()} replaces only the index. Anything after the last indexed document is left over from
+ * an interrupted write, and is discarded the next time the archive is opened for appending.</li>
+ * </ul>
+ *
+ * Each file is replaced by an atomic move, so readers see either the old or the new version of
+ * it, never a partly written one. Every archive is given a random ID, recorded both at the start
+ * of the archive and in its index. If writing is interrupted between the two moves, the new index
+ * is found next to the old archive, and the mismatched IDs make opening the archive fail rather
+ * than read documents from the wrong places.
+ *
+ * {@link DocTheory}s are stored as binary SerifXML. Existing SerifXML or binary SerifXML files can
+ * be added as they are with {@link #append(Symbol, ByteSource)}.
+ *
+ * This class is not thread-safe.
+ */
+public final class DocTheoryArchiveWriter implements DocTheorySink {
+
+  private static final Logger log = LoggerFactory.getLogger(DocTheoryArchiveWriter.class);
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private final File archiveFile;
+  // where documents are written; for a new archive, a temporary file moved into place by finish()
+  private final File dataFile;
+  private final SerifXMLWriter writer;
+  private final FileOutputStream fileOut;
+  private final OutputStream out;
+  private final long archiveID;
+  private long position;
+  private final List<Symbol> docIDs = new ArrayList<>();
+  private final List<Long> offsets = new ArrayList<>();
+  private final List<Integer> lengths = new ArrayList<>();
+  private final Set<Symbol> seenDocIDs = new HashSet<>();
+  private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+  private boolean finished = false;
+
+  private DocTheoryArchiveWriter(final File archiveFile, final SerifXMLWriter writer,
+      final boolean append) throws IOException {
+    this.archiveFile = checkNotNull(archiveFile);
+    this.writer = checkNotNull(writer);
+    final File indexFile = DocTheoryArchive.indexFileFor(archiveFile);
+    if (append && (archiveFile.exists() || indexFile.exists())) {
+      if (!indexFile.exists()) {
+        throw new IOException(String.format("%s has no index %s, so which of its documents were "
+            + "finished is unknown; refusing to append to it", archiveFile, indexFile));
+      }
+      if (!archiveFile.exists()) {
+        throw new IOException(String.format("Found index %s but not the archive %s it indexes",
+            indexFile, archiveFile));
+      }
+      this.dataFile = archiveFile;
+      this.archiveID = DocTheoryArchive.readIndex(indexFile, docIDs, offsets, lengths);
+      DocTheoryArchive.checkArchiveID(archiveFile, indexFile, archiveID);
+      seenDocIDs.addAll(docIDs);
+      // anything after the last indexed document is left over from an interrupted write
+      this.position = offsets.isEmpty() ? DocTheoryArchive.HEADER_LENGTH
+                                        : offsets.get(offsets.size() - 1)
+                                            + lengths.get(lengths.size() - 1);
+      if (archiveFile.length() > position) {
+        log.warn("Discarding {} unindexed bytes at the end of {}",
+            archiveFile.length() - position, archiveFile);
+        try (RandomAccessFile data = new RandomAccessFile(archiveFile, "rw")) {
+          data.setLength(position);
+        }
+      }
+      this.fileOut = new FileOutputStream(dataFile, true);
+      this.out = new BufferedOutputStream(fileOut);
+    } else {
+      // appending to an archive which does not exist yet is the same as creating it
+      this.dataFile = new File(archiveFile.getPath() + TMP_SUFFIX);
+      this.archiveID = ThreadLocalRandom.current().nextLong();
+      this.fileOut = new FileOutputStream(dataFile);
+      this.out = new BufferedOutputStream(fileOut);
+      final DataOutputStream headerOut = new DataOutputStream(out);
+      headerOut.writeInt(DocTheoryArchive.ARCHIVE_MAGIC);
+      headerOut.writeLong(archiveID);
+      headerOut.flush();
+      this.position = DocTheoryArchive.HEADER_LENGTH;
+    }
+  }
+
+  /**
+   * Creates a new, empty archive at {@code archiveFile}, which replaces any existing one when it is
+   * finished.
+   */
+  public static DocTheoryArchiveWriter create(final File archiveFile,
+      final SerifXMLWriter writer) throws IOException {
+    return new DocTheoryArchiveWriter(archiveFile, writer, false);
+  }
+
+  /**
+   * Opens an existing archive to add more documents to it, or creates it if it does not exist.
+   *
+   * @throws IOException if only one of the archive and its index exists, or they do not belong
+   *                     together. Either means an earlier write was interrupted, and nothing is
+   *                     discarded, since which documents were finished is unknown.
+   */
+  public static DocTheoryArchiveWriter openForAppend(final File archiveFile,
+      final SerifXMLWriter writer) throws IOException {
+    return new DocTheoryArchiveWriter(archiveFile, writer, true);
+  }
+
+  @Override
+  public void consume(final DocTheory docTheory) throws IOException {
+    scratch.reset();
+    writer.saveBinaryTo(docTheory, scratch);
+    append(docTheory.docid(), ByteSource.wrap(scratch.toByteArray()));
+  }
+
+  /**
+   * Adds a document which has already been written as SerifXML or binary SerifXML.
+   */
+  public void append(final Symbol docID, final ByteSource document) throws IOException {
+    checkState(!finished, "Cannot append to a finished archive");
+    checkArgument(!seenDocIDs.contains(docID), "Archive %s already contains document %s",
+        archiveFile, docID);
+    final long length = document.copyTo(out);
+    checkArgument(length <= Integer.MAX_VALUE, "Document %s is too large for an archive", docID);
+    docIDs.add(docID);
+    seenDocIDs.add(docID);
+    offsets.add(position);
+    lengths.add((int) length);
+    position += length;
+  }
+
+  /**
+   * Finishes writing the archive and its index. The archive may then be opened with {@link
+   * DocTheoryArchive#open(File, SerifXMLLoader)}.
+   */
+  @Override
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    // the documents must be on disk before any index referring to them is
+    out.flush();
+    fileOut.getFD().sync();
+    out.close();
+
+    // write the index to the side first so a reader never sees a partially-written one
+    final File indexFile = DocTheoryArchive.indexFileFor(archiveFile);
+    final File tmpIndexFile = new File(indexFile.getPath() + TMP_SUFFIX);
+    try (FileOutputStream indexFileOut = new FileOutputStream(tmpIndexFile);
+         DataOutputStream indexOut = new DataOutputStream(
+             new BufferedOutputStream(indexFileOut))) {
+      indexOut.writeInt(DocTheoryArchive.INDEX_MAGIC);
+      indexOut.writeInt(DocTheoryArchive.INDEX_VERSION);
+      indexOut.writeLong(archiveID);
+      indexOut.writeInt(docIDs.size());
+      for (int i = 0; i < docIDs.size(); ++i) {
+        indexOut.writeUTF(docIDs.get(i).asString());
+        indexOut.writeLong(offsets.get(i));
+        indexOut.writeInt(lengths.get(i));
+      }
+      indexOut.flush();
+      indexFileOut.getFD().sync();
+    }
+    moveReplacing(tmpIndexFile, indexFile);
+    if (!dataFile.equals(archiveFile)) {
+      moveReplacing(dataFile, archiveFile);
+    }
+    log.info("Wrote {} documents to {}", docIDs.size(), archiveFile);
+  }
+
+  private static void moveReplacing(final File from, final File to) throws IOException {
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,221 @@
+package com.bbn.serif.io;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Serializes DOM elements to a {@link Writer} as they are produced, using the same layout as the
+ * indenting {@link javax.xml.transform.Transformer} used by {@link SerifXMLWriter}: two-space
+ * indentation, attributes in the order reported by the DOM, and text-only elements on a single
+ * line.
+ *
+ * Elements can either be written as complete subtrees ({@link #writeElement(Element)}) or be
+ * opened and closed around children written later ({@link #startElement(Element)} and {@link
+ * #endElement(Element)}), which lets a document be written without ever holding all of its
+ * elements in memory. An element passed to {@code startElement} must have all its attributes set
+ * already; its children are ignored.
+ *
+ * Carriage returns are always written as character references so that they survive XML line-end
+ * normalization when the output is read back. Newlines and tabs in attribute values are likewise
+ * escaped so they survive attribute-value normalization. This is why the JDK's {@link
+ * javax.xml.stream.XMLStreamWriter} is not used: it writes all three unescaped, so documents whose
+ * original text has carriage returns would load with different character offsets.
+ */
+final class IndentingXMLElementWriter {
+
+  private static final int INDENT_AMOUNT = 2;
+
+  private final Writer out;
+  private char[] indentation = new char[0];
+  private int depth = 0;
+
+  IndentingXMLElementWriter(final Writer out) {
+    this.out = checkNotNull(out);
+  }
+
+  void writeDeclaration() throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+  }
+
+  /**
+   * Writes the start tag of {@code e}. Subsequent writes will be nested inside it until the
+   * matching call to {@link #endElement(Element)}.
+   */
+  void startElement(final Element e) throws IOException {
+    newlineAndIndent();
+    writeStartTag(e);
+    out.write('>');
+    ++depth;
+  }
+
+  void endElement(final Element e) throws IOException {
+    checkState(depth > 0, "No element open");
+    --depth;
+    newlineAndIndent();
+    writeEndTag(e);
+  }
+
+  /**
+   * Writes {@code e} and all its descendants.
+   */
+  void writeElement(final Element e) throws IOException {
+    newlineAndIndent();
+    writeStartTag(e);
+
+    if (!e.hasChildNodes()) {
+      out.write("/>");
+      return;
+    }
+    out.write('>');
+
+    if (!hasElementChild(e)) {
+      for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
+        if (child instanceof Text) {
+          writeEscapedText(((Text) child).getData());
+        }
+      }
+    } else {
+      ++depth;
+      for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
+        if (child instanceof Element) {
+          writeElement((Element) child);
+        } else if (child instanceof Text && !isWhitespace(((Text) child).getData())) {
+          // mixed content does not occur in SerifXML, but don't silently lose it
+          writeEscapedText(((Text) child).getData());
+        }
+      }
+      --depth;
+      newlineAndIndent();
+    }
+    writeEndTag(e);
+  }
+
+  /**
+   * Writes a final newline and flushes the underlying writer. Does not close it.
+   */
+  void finish() throws IOException {
+    checkState(depth == 0, "Unclosed elements remain");
+    out.write('\n');
+    out.flush();
+  }
+
+  private void writeStartTag(final Element e) throws IOException {
+    out.write('<');
+    out.write(e.getTagName());
+    final NamedNodeMap attributes = e.getAttributes();
+    for (int i = 0; i < attributes.getLength(); ++i) {
+      final Node attribute = attributes.item(i);
+      out.write(' ');
+      out.write(attribute.getNodeName());
+      out.write("=\"");
+      writeEscapedAttributeValue(attribute.getNodeValue());
+      out.write('"');
+    }
+  }
+
+  private void writeEndTag(final Element e) throws IOException {
+    out.write("</");
+    out.write(e.getTagName());
+    out.write('>');
+  }
+
+  private void newlineAndIndent() throws IOException {
+    out.write('\n');
+    final int width = depth * INDENT_AMOUNT;
+    if (indentation.length < width) {
+      indentation = new char[2 * width];
+      Arrays.fill(indentation, ' ');
+    }
+    out.write(indentation, 0, width);
+  }
+
+  private void writeEscapedText(final String s) throws IOException {
+    int runStart = 0;
+    for (int i = 0; i < s.length(); ++i) {
+      final String replacement;
+      switch (s.charAt(i)) {
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '\r':
+          replacement = "&#13;";
+          break;
+        default:
+          continue;
+      }
+      out.write(s, runStart, i - runStart);
+      out.write(replacement);
+      runStart = i + 1;
+    }
+    out.write(s, runStart, s.length() - runStart);
+  }
+
+  private void writeEscapedAttributeValue(final String s) throws IOException {
+    int runStart = 0;
+    for (int i = 0; i < s.length(); ++i) {
+      final String replacement;
+      switch (s.charAt(i)) {
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '"':
+          replacement = "&quot;";
+          break;
+        case '\r':
+          replacement = "&#13;";
+          break;
+        case '\n':
+          replacement = "&#10;";
+          break;
+        case '\t':
+          replacement = "&#9;";
+          break;
+        default:
+          continue;
+      }
+      out.write(s, runStart, i - runStart);
+      out.write(replacement);
+      runStart = i + 1;
+    }
+    out.write(s, runStart, s.length() - runStart);
+  }
+
+  private static boolean hasElementChild(final Node node) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWhitespace(final String s) {
+    for (int i = 0; i < s.length(); ++i) {
+      if (!Character.isWhitespace(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,392 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Document;
+import com.bbn.serif.theories.LazySentenceSource;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.SentenceTheoryBeam;
+import com.bbn.serif.theories.TokenSequence;
+import com.bbn.serif.theories.ValueMention;
+import com.bbn.serif.theories.ValueMentions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+import com.google.common.io.ByteSource;
+import com.google.common.primitives.Longs;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import static com.bbn.bue.common.xml.XMLUtils.childrenWithTag;
+import static com.bbn.bue.common.xml.XMLUtils.directChild;
+import static com.bbn.bue.common.xml.XMLUtils.requiredAttribute;
+import static com.bbn.bue.common.xml.XMLUtils.requiredIntegerAttribute;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Builds the sentences of a SerifXML document one at a time, each from its own slice of the file,
+ * for the lazily loaded documents of {@link SerifXMLLoader#loadLazilyFrom(ByteSource)}.
+ *
+ * When opened, the document is scanned once to find the byte offsets of each {@code Sentence}
+ * element, and everything outside the sentences is parsed to get the {@link Document} itself.
+ * Sentence-level event mention arguments may refer to the document-level {@code ValueMentionSet}.
+ * Such value mentions are built by id when a sentence refers to them, over the tokens of the
+ * sentence they are in, and kept, so every sentence which refers to one, and the document's own
+ * value mentions, share it. The other document-level sets are only built when the document is
+ * resolved, against the objects recorded for the primary theory of each sentence. Those records
+ * are held weakly, for as long as the sentence theory is in use.
+ *
+ * The source is assumed to be UTF-8 encoded and must not change while the document is in use.
+ * As {@link LazySentenceSource} requires, this is only asked for one thing at a time.
+ */
+final class LazySerifXMLSentences implements LazySentenceSource {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final ByteSource source;
+  private final Document document;
+  private final long[] sentenceStarts;
+  private final long[] sentenceLengths;
+  private final boolean escapeCarriageReturns;
+  private final Set<String> skippedElementNames;
+  // resolves ids from the document header (e.g. regions and morphology) for each sentence
+  private final SerifXMLLoader.SerifXMLLoading headerLoading;
+  // everything in the document outside the Sentences
+  private final Element documentElement;
+  @Nullable
+  private final Element valueSetElement;
+  // the ValueMentions of the document-level ValueMentionSet, by id, in document order; empty if
+  // there is none
+  private final ImmutableMap<String, Element> documentValueMentionElements;
+  private final boolean hasDocumentValueMentionSet;
+  private final Map<String, ValueMention> documentValueMentions = new HashMap<>();
+  // what was recorded while loading each sentence, which the document-level sets will need to
+  // refer to, keyed by the sentence's primary theory (or its beam if it has none). Keyed by
+  // identity, and weakly, so this never keeps a sentence in memory
+  private final Map<Object, Map<String, Object>> recordedIdsBySentence =
+      new MapMaker().weakKeys().makeMap();
+
+  private LazySerifXMLSentences(final SerifXMLLoader loader, final ByteSource source,
+      final Element documentElement, final long[] sentenceStarts, final long[] sentenceLengths,
+      final boolean escapeCarriageReturns) {
+    this.source = checkNotNull(source);
+    this.documentElement = checkNotNull(documentElement);
+    this.sentenceStarts = checkNotNull(sentenceStarts);
+    this.sentenceLengths = checkNotNull(sentenceLengths);
+    this.escapeCarriageReturns = escapeCarriageReturns;
+    this.skippedElementNames = loader.skippedElementNames();
+    this.headerLoading = loader.new SerifXMLLoading();
+    this.document = headerLoading.loadDocumentHeader(documentElement);
+    this.valueSetElement = directChild(documentElement, "ValueSet").orNull();
+    final Optional<Element> valueMentionSetElement =
+        directChild(documentElement, "ValueMentionSet");
+    this.hasDocumentValueMentionSet = valueMentionSetElement.isPresent();
+    final ImmutableMap.Builder<String, Element> valueMentionElements = ImmutableMap.builder();
+    if (valueMentionSetElement.isPresent()) {
+      for (final Element valueMentionElement
+          : childrenWithTag(valueMentionSetElement.get(), "ValueMention")) {
+        valueMentionElements.put(requiredAttribute(valueMentionElement, "id"),
+            valueMentionElement);
+      }
+    }
+    this.documentValueMentionElements = valueMentionElements.build();
+  }
+
+  /**
+   * Prefer {@link SerifXMLLoader#loadLazilyFrom(ByteSource)}.
+   */
+  static DocTheory open(final ByteSource source, final SerifXMLLoader loader)
+      throws IOException {
+    final SentenceScan scan = SentenceScan.of(source);
+
+    final Element documentElement;
+    final boolean escapeCarriageReturns;
+    try (CarriageReturnEscapingReader reader = new CarriageReturnEscapingReader(
+        new InputStreamReader(scan.skeleton.asInputStream(), Charsets.UTF_8))) {
+      documentElement = SerifXMLLoader.documentElement(SerifXMLLoader.parseWithStAX(reader,
+          loader.skippedElementNames()));
+      escapeCarriageReturns = reader.escapesCarriageReturns();
+    } catch (final XMLStreamException e) {
+      throw new SerifXMLException("Error parsing xml", e);
+    }
+
+    final LazySerifXMLSentences sentences = new LazySerifXMLSentences(loader, source,
+        documentElement, Longs.toArray(scan.sentenceStarts), Longs.toArray(scan.sentenceLengths),
+        escapeCarriageReturns);
+    return DocTheory.lazilyLoaded(sentences.document, sentences);
+  }
+
+  @Override
+  public int numSentences() {
+    return sentenceStarts.length;
+  }
+
+  @Override
+  public SentenceTheoryBeam sentenceTheoryBeam(final int idx) {
+    final Element sentenceElement = parseSentence(idx);
+    final SerifXMLLoader.SerifXMLLoading sentenceLoading = headerLoading.childLoading();
+    final ImmutableList<TokenSequence> tokenSequences =
+        sentenceLoading.loadSentenceTokens(sentenceElement, idx, document);
+    sentenceLoading.addKnownIds(
+        documentValueMentionsReferencedBy(sentenceElement, idx, tokenSequences, sentenceLoading));
+    final SentenceTheoryBeam ret = sentenceLoading.loadSentence(sentenceElement, idx, document);
+    if (valueSetElement != null) {
+      sentenceLoading.applyDocumentValues(valueSetElement);
+    }
+    for (final SentenceTheory st : ret) {
+      for (final ValueMention vm : st.valueMentions()) {
+        vm.seal();
+      }
+    }
+    sentenceLoading.reportWarnings(document.name());
+
+    // the map must not refer to its own key or the key would never be collected
+    final Object key = ret.primaryTheory().isPresent() ? ret.primaryTheory().get() : ret;
+    final Map<String, Object> ids = new HashMap<>();
+    for (final Map.Entry<String, Object> entry : sentenceLoading.recordedIds().entrySet()) {
+      if (entry.getValue() != key && entry.getValue() != ret) {
+        ids.put(entry.getKey(), entry.getValue());
+      }
+    }
+    recordedIdsBySentence.put(key, ids);
+    return ret;
+  }
+
+  @Override
+  public DocTheory resolve(final ImmutableList<SentenceTheoryBeam> sentenceTheoryBeams) {
+    final SerifXMLLoader.SerifXMLLoading documentLoading = headerLoading.childLoading();
+    final ImmutableList.Builder<TokenSequence> tokenSequencesB = ImmutableList.builder();
+    for (final SentenceTheoryBeam beam : sentenceTheoryBeams) {
+      final Optional<SentenceTheory> primaryTheory = beam.primaryTheory();
+      final Map<String, Object> ids =
+          recordedIdsBySentence.get(primaryTheory.isPresent() ? primaryTheory.get() : beam);
+      checkState(ids != null, "Sentence %s of %s was not built by this source",
+          beam.sentence().sentenceNumber(), document.name());
+      documentLoading.addKnownIds(ids);
+      if (primaryTheory.isPresent() && !primaryTheory.get().tokenSequence().isAbsent()) {
+        tokenSequencesB.add(primaryTheory.get().tokenSequence());
+      }
+    }
+    final ImmutableList<TokenSequence> tokenSequences = tokenSequencesB.build();
+
+    final DocTheory.Builder builder = DocTheory.builderForDocument(document);
+    if (hasDocumentValueMentionSet) {
+      final ImmutableList.Builder<ValueMention> valueMentions = ImmutableList.builder();
+      for (final Map.Entry<String, Element> entry : documentValueMentionElements.entrySet()) {
+        final ValueMention built = documentValueMentions.get(entry.getKey());
+        if (built != null) {
+          documentLoading.addKnownIds(ImmutableMap.of(entry.getKey(), built));
+          valueMentions.add(built);
+        } else {
+          valueMentions.add(documentLoading.loadDocumentLevelValueMention(entry.getValue(),
+              tokenSequences.get(requiredIntegerAttribute(entry.getValue(), "sent_no"))));
+        }
+      }
+      builder.valueMentions(ValueMentions.create(valueMentions.build()));
+    } else {
+      builder.valueMentions(ValueMentions.absent());
+    }
+    builder.sentenceTheoryBeams(sentenceTheoryBeams);
+    final DocTheory ret = documentLoading.buildWithDocumentLevelSets(documentElement, document,
+        tokenSequences, builder);
+    documentLoading.reportWarnings(document.name());
+    return ret;
+  }
+
+  // the document-level value mentions a sentence being loaded refers to, by id
+  private Map<String, ValueMention> documentValueMentionsReferencedBy(
+      final Element sentenceElement, final int sentenceIdx,
+      final List<TokenSequence> sentenceTokens,
+      final SerifXMLLoader.SerifXMLLoading sentenceLoading) {
+    if (documentValueMentionElements.isEmpty()) {
+      return ImmutableMap.of();
+    }
+    final Map<String, ValueMention> ret = new HashMap<>();
+    final NodeList elements = sentenceElement.getElementsByTagName("*");
+    for (int i = 0; i < elements.getLength(); ++i) {
+      final String id = ((Element) elements.item(i)).getAttribute("value_mention_id");
+      if (documentValueMentionElements.containsKey(id) && !ret.containsKey(id)) {
+        ret.put(id, documentValueMention(id, sentenceIdx, sentenceTokens, sentenceLoading));
+      }
+    }
+    return ret;
+  }
+
+  // builds a document-level value mention the first time it is referred to. It is usually in the
+  // sentence referring to it, whose tokens are already known; otherwise the tokens of its own
+  // sentence are loaded for it
+  private ValueMention documentValueMention(final String id, final int sentenceIdx,
+      final List<TokenSequence> sentenceTokens,
+      final SerifXMLLoader.SerifXMLLoading sentenceLoading) {
+    ValueMention ret = documentValueMentions.get(id);
+    if (ret == null) {
+      final Element element = documentValueMentionElements.get(id);
+      final int valueMentionSentenceIdx = requiredIntegerAttribute(element, "sent_no");
+      final SerifXMLLoader.SerifXMLLoading valueMentionLoading;
+      final List<TokenSequence> tokenSequences;
+      if (valueMentionSentenceIdx == sentenceIdx) {
+        valueMentionLoading = sentenceLoading.childLoading();
+        tokenSequences = sentenceTokens;
+      } else {
+        checkElementIndex(valueMentionSentenceIdx, numSentences());
+        valueMentionLoading = headerLoading.childLoading();
+        tokenSequences = valueMentionLoading.loadSentenceTokens(
+            parseSentence(valueMentionSentenceIdx), valueMentionSentenceIdx, document);
+      }
+      if (tokenSequences.isEmpty()) {
+        throw new SerifXMLException(String.format(
+            "Document-level value mention %s of %s is in sentence %s, which has no tokens", id,
+            document.name(), valueMentionSentenceIdx));
+      }
+      ret = valueMentionLoading.loadDocumentLevelValueMention(element, tokenSequences.get(0));
+      if (valueSetElement != null) {
+        valueMentionLoading.applyDocumentValues(valueSetElement);
+      }
+      ret.seal();
+      valueMentionLoading.reportWarnings(document.name());
+      documentValueMentions.put(id, ret);
+    }
+    return ret;
+  }
+
+  private Element parseSentence(final int idx) {
+    checkElementIndex(idx, numSentences());
+    try (Reader reader = new CarriageReturnEscapingReader(
+        source.slice(sentenceStarts[idx], sentenceLengths[idx])
+            .asCharSource(Charsets.UTF_8).openStream(), escapeCarriageReturns)) {
+      return SerifXMLLoader.parseWithStAX(reader, skippedElementNames).getDocumentElement();
+    } catch (final XMLStreamException e) {
+      throw new SerifXMLException(
+          String.format("Error parsing xml for sentence %s of %s", idx, document.name()), e);
+    } catch (final IOException e) {
+      throw new SerifXMLException(
+          String.format("Error reading sentence %s of %s", idx, document.name()), e);
+    }
+  }
+
+  /**
+   * Finds the byte extents of all {@code Sentence} elements in a SerifXML document and collects
+   * everything else into a skeleton document.  This relies on SerifXML being ASCII-compatible and
+   * on {@code <} only appearing in markup, both of which hold for SerifXML written by SERIF or
+   * JSerif.
+   */
+  private static final class SentenceScan {
+
+    private static final byte[] SENTENCE_START = "<Sentence".getBytes(Charsets.US_ASCII);
+    private static final byte[] SENTENCE_END = "</Sentence>".getBytes(Charsets.US_ASCII);
+
+    private final SkeletonBuffer skeleton = new SkeletonBuffer();
+    private final List<Long> sentenceStarts = new ArrayList<>();
+    private final List<Long> sentenceLengths = new ArrayList<>();
+
+    private long position = 0;
+    private boolean inSentence = false;
+    private boolean inSentenceStartTag = false;
+    private int matched = 0;
+    private byte previous = 0;
+
+    static SentenceScan of(final ByteSource source) throws IOException {
+      final SentenceScan ret = new SentenceScan();
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      try (InputStream in = source.openStream()) {
+        int numRead;
+        while ((numRead = in.read(buffer)) >= 0) {
+          for (int i = 0; i < numRead; ++i) {
+            ret.next(buffer[i]);
+          }
+        }
+      }
+      if (ret.inSentence) {
+        throw new SerifXMLException("Unterminated Sentence element at byte "
+            + ret.sentenceStarts.get(ret.sentenceStarts.size() - 1));
+      }
+      return ret;
+    }
+
+    private void next(final byte b) {
+      if (!inSentence) {
+        skeleton.write(b);
+        if (matched == SENTENCE_START.length) {
+          // distinguish <Sentence from e.g. <Sentences
+          if (b == ' ' || b == '>' || b == '/' || b == '\t' || b == '\n' || b == '\r') {
+            skeleton.dropLast(SENTENCE_START.length + 1);
+            sentenceStarts.add(position - SENTENCE_START.length);
+            inSentence = true;
+            inSentenceStartTag = b != '>';
+            matched = 0;
+          } else {
+            matched = b == '<' ? 1 : 0;
+          }
+        } else {
+          matched = advance(SENTENCE_START, matched, b);
+        }
+      } else if (inSentenceStartTag) {
+        if (b == '>') {
+          inSentenceStartTag = false;
+          if (previous == '/') {
+            // an empty sentence element
+            endSentence();
+          }
+        }
+      } else {
+        matched = advance(SENTENCE_END, matched, b);
+        if (matched == SENTENCE_END.length) {
+          endSentence();
+        }
+      }
+      previous = b;
+      ++position;
+    }
+
+    private void endSentence() {
+      final long start = sentenceStarts.get(sentenceStarts.size() - 1);
+      sentenceLengths.add(position + 1 - start);
+      inSentence = false;
+      matched = 0;
+    }
+
+    // '<' only appears at the start of the patterns we look for, so on a mismatch the only
+    // possible partial match is a fresh '<'
+    private static int advance(final byte[] pattern, final int matched, final byte b) {
+      if (pattern[matched] == b) {
+        return matched + 1;
+      }
+      return b == '<' ? 1 : 0;
+    }
+  }
+
+  private static final class SkeletonBuffer extends ByteArrayOutputStream {
+
+    SkeletonBuffer() {
+      super(BUFFER_SIZE);
+    }
+
+    void dropLast(final int n) {
+      count -= n;
+    }
+
+    InputStream asInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.CharSource;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads documents on an {@link ExecutorService}, keeping at most a fixed number of loads in
+ * flight. New loads are only submitted as results are consumed, so a slow consumer will not cause
+ * an unbounded number of documents to pile up in memory.
+ *
+ * Results are returned either in the order of the input sources or in the order in which the loads
+ * complete. A failed load is rethrown (wrapped in a {@link RuntimeException}, as in {@link
+ * SerifIOUtils#docTheoriesFromCharSources(Iterable, DocTheoryLoader)}) when its result would have
+ * been returned, after which all outstanding loads are cancelled.
+ */
+final class ParallelDocTheoryIterator extends AbstractIterator<DocTheory> {
+
+  private final Iterator<CharSource> sources;
+  private final DocTheoryLoader loader;
+  private final ExecutorService executor;
+  // only used when returning results as they complete; otherwise completed results would pile up
+  // in its queue
+  private final CompletionService<DocTheory> completionService;
+  private final int maxInFlight;
+  private final boolean inInputOrder;
+  private final Deque<Future<DocTheory>> inFlight = new ArrayDeque<>();
+
+  private ParallelDocTheoryIterator(final Iterator<CharSource> sources,
+      final DocTheoryLoader loader, final ExecutorService executor, final int maxInFlight,
+      final boolean inInputOrder) {
+    checkArgument(maxInFlight > 0, "Must allow at least one document to be loaded at once");
+    this.sources = checkNotNull(sources);
+    this.loader = checkNotNull(loader);
+    this.executor = checkNotNull(executor);
+    this.completionService = new ExecutorCompletionService<>(executor);
+    this.maxInFlight = maxInFlight;
+    this.inInputOrder = inInputOrder;
+  }
+
+  static Iterable<DocTheory> over(final Iterable<CharSource> sources,
+      final DocTheoryLoader loader, final ExecutorService executor, final int maxInFlight,
+      final boolean inInputOrder) {
+    checkNotNull(sources);
+    checkNotNull(loader);
+    checkNotNull(executor);
+    checkArgument(maxInFlight > 0, "Must allow at least one document to be loaded at once");
+    return new Iterable<DocTheory>() {
+      @Override
+      public Iterator<DocTheory> iterator() {
+        return new ParallelDocTheoryIterator(sources.iterator(), loader, executor, maxInFlight,
+            inInputOrder);
+      }
+    };
+  }
+
+  @Override
+  protected DocTheory computeNext() {
+    fillPipeline();
+    if (inFlight.isEmpty()) {
+      return endOfData();
+    }
+
+    final Future<DocTheory> next;
+    if (inInputOrder) {
+      next = inFlight.removeFirst();
+    } else {
+      next = takeCompletedUninterruptibly();
+      inFlight.remove(next);
+    }
+
+    final DocTheory ret;
+    try {
+      ret = Uninterruptibles.getUninterruptibly(next);
+    } catch (final ExecutionException e) {
+      cancelOutstanding();
+      throw new RuntimeException(e.getCause());
+    }
+    // keep the executor busy while our caller works on this document
+    fillPipeline();
+    return ret;
+  }
+
+  private void fillPipeline() {
+    while (inFlight.size() < maxInFlight && sources.hasNext()) {
+      final CharSource source = sources.next();
+      final Callable<DocTheory> load = new Callable<DocTheory>() {
+        @Override
+        public DocTheory call() throws Exception {
+          return loader.loadFrom(source);
+        }
+      };
+      inFlight.addLast(inInputOrder ? executor.submit(load) : completionService.submit(load));
+    }
+  }
+
+  private Future<DocTheory> takeCompletedUninterruptibly() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return completionService.take();
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void cancelOutstanding() {
+    for (final Future<DocTheory> future : inFlight) {
+      future.cancel(true);
+    }
+    inFlight.clear();
+  }
+}
@@ -0,0 +1,83 @@
+package com.bbn.serif.io;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Constants for the binary SerifXML format. Package-private for use by I/O code.
+ *
+ * A binary SerifXML file encodes the theory objects of a document directly, in the order they
+ * must be built, so {@link SerifBinaryReader} constructs them as it reads without an element
+ * tree, ids to resolve or numbers and offsets to parse. It is written by {@link
+ * SerifBinaryWriter}.
+ *
+ * <ul>
+ * <li>The file starts with {@link #MAGIC} followed by the format {@link #VERSION} as a varint.</li>
+ * <li>Integers are unsigned LEB128 varints, floating point numbers their raw IEEE 754 bits and
+ * strings their UTF-8 length and bytes.</li>
+ * <li>Symbols and other strings drawn from a small vocabulary (tags, types, roles) are interned: a
+ * string is written as {@code 0} followed by the string the first time it occurs, and later as its
+ * index in order of first occurrence plus one.</li>
+ * <li>Every object which something else may refer to is assigned the next object index once it
+ * has been written, and references are written as that index. Optional references are written as
+ * {@link #ABSENT} or the index plus one. Tokens are not assigned indices but are referred to by
+ * their token sequence and their index in it, and parse nodes are assigned theirs in pre-order once
+ * their whole tree has been written.</li>
+ * <li>The parts of a sentence theory may be shared with other theories in its beam, so each is
+ * written as {@link #ABSENT}, {@link #NEW} followed by the part itself, or the index of the part
+ * written earlier plus {@link #FIRST_REFERENCE}.</li>
+ * <li>The document header is followed by the token sequences of every sentence, the
+ * document-level value mentions which may refer to them, the sentences and then the document-level
+ * values, entities, relations and events.</li>
+ * </ul>
+ *
+ * Only the analyses which {@link SerifBinaryWriter} knows how to encode may be written; it refuses
+ * documents with any others (zoning, morphology, actors, facts and the other document-level event
+ * structures) rather than silently dropping them. Sets of these which are present but empty are
+ * read back as absent. A binary document is always read in full, whatever layers the loader was
+ * asked for.
+ */
+final class SerifBinary {
+
+  private SerifBinary() {
+    throw new UnsupportedOperationException();
+  }
+
+  static final byte[] MAGIC = {'S', 'X', 'M', 'B'};
+  static final int VERSION = 3;
+
+  static final int ABSENT = 0;
+  static final int NEW = 1;
+  static final int FIRST_REFERENCE = 2;
+
+  // kinds of the arguments of propositions, event mentions and events
+  static final int MENTION_ARGUMENT = 0;
+  static final int TEXT_ARGUMENT = 1;
+  static final int PROPOSITION_ARGUMENT = 2;
+  static final int VALUE_ARGUMENT = 3;
+  static final int SPAN_ARGUMENT = 4;
+  static final int ENTITY_ARGUMENT = 5;
+
+  static final String FILE_EXTENSION = ".sxb";
+
+  /**
+   * Whether {@code in} continues with the binary SerifXML {@link #MAGIC}. {@code in} must support
+   * {@link InputStream#mark(int)}, and is reset to where it was.
+   */
+  static boolean isSerifBinary(final InputStream in) throws IOException {
+    checkArgument(in.markSupported(), "Sniffing for binary SerifXML requires mark support");
+    final byte[] start = new byte[MAGIC.length];
+    in.mark(start.length);
+    try {
+      return ByteStreams.read(in, start, 0, start.length) == start.length
+          && Arrays.equals(start, MAGIC);
+    } finally {
+      in.reset();
+    }
+  }
+}
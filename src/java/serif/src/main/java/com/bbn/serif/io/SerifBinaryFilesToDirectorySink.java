@@ -0,0 +1,67 @@
+package com.bbn.serif.io;
+
+import com.bbn.bue.common.files.FileUtils;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharSink;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes DocTheories to an output directory as binary SerifXML (see {@link
+ * SerifXMLWriter#saveBinaryTo(DocTheory, com.google.common.io.ByteSink)}).  The document list and
+ * map it writes can be used anywhere those written by {@link SerifXMLFilesToDirectorySink} can,
+ * since {@link SerifXMLLoader#loadFrom(File)} reads both formats.
+ */
+final class SerifBinaryFilesToDirectorySink implements DocTheorySink {
+
+  private static final Logger log = LoggerFactory.getLogger(SerifBinaryFilesToDirectorySink.class);
+
+  private final SerifXMLWriter writer;
+  private final File outputDirectory;
+  private final CharSink processedDocListSink;
+  private final CharSink processedDocMapSink;
+
+  private final List<File> outputFiles = Lists.newArrayList();
+  private final ImmutableMap.Builder<Symbol, File> outputFileMap = ImmutableMap.builder();
+
+  @Inject
+  SerifBinaryFilesToDirectorySink(final SerifXMLWriter writer,
+      @OutputDirectoryP final File outputDirectory,
+      @SerifXMLFilesToDirectorySink.ProcessedDocListP final CharSink processedDocListSink,
+      @SerifXMLFilesToDirectorySink.ProcessedDocMapP final CharSink processedDocMapSink) {
+    this.writer = checkNotNull(writer);
+    this.outputDirectory = checkNotNull(outputDirectory);
+    this.processedDocListSink = checkNotNull(processedDocListSink);
+    this.processedDocMapSink = checkNotNull(processedDocMapSink);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    FileUtils.writeFileList(outputFiles, processedDocListSink);
+    FileUtils.writeSymbolToFileMap(outputFileMap.build(), processedDocMapSink);
+    log.info(outputFiles.size() + " files written to " + outputDirectory.toString());
+  }
+
+  @Override
+  public void consume(final DocTheory docTheory) throws IOException {
+    final String outFilename = docTheory.docid().asString() + SerifBinary.FILE_EXTENSION;
+    final File outputFile = new File(outputDirectory, outFilename);
+    writer.saveBinaryTo(docTheory, Files.asByteSink(outputFile));
+    outputFiles.add(outputFile);
+    outputFileMap.put(docTheory.docid(), outputFile);
+  }
+}
@@ -0,0 +1,961 @@
+package com.bbn.serif.io;
+
+import com.bbn.bue.common.StringUtils;
+import com.bbn.bue.common.UnicodeFriendlyString;
+import com.bbn.bue.common.strings.LocatedString;
+import com.bbn.bue.common.strings.offsets.ByteOffset;
+import com.bbn.bue.common.strings.offsets.CharOffset;
+import com.bbn.bue.common.strings.offsets.EDTOffset;
+import com.bbn.bue.common.strings.offsets.OffsetGroup;
+import com.bbn.bue.common.strings.offsets.OffsetGroupRange;
+import com.bbn.bue.common.strings.offsets.OffsetGroupSpan;
+import com.bbn.bue.common.strings.offsets.OffsetRange;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.common.Segment;
+import com.bbn.serif.languages.SerifLanguage;
+import com.bbn.serif.theories.Dependencies;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Document;
+import com.bbn.serif.theories.DocumentEventArguments;
+import com.bbn.serif.theories.DocumentEvents;
+import com.bbn.serif.theories.Entities;
+import com.bbn.serif.theories.Entity;
+import com.bbn.serif.theories.Event;
+import com.bbn.serif.theories.EventEventRelationMentions;
+import com.bbn.serif.theories.EventMention;
+import com.bbn.serif.theories.EventMentions;
+import com.bbn.serif.theories.Events;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.Mention.MetonymyInfo;
+import com.bbn.serif.theories.MentionConfidence;
+import com.bbn.serif.theories.Mentions;
+import com.bbn.serif.theories.Metadata;
+import com.bbn.serif.theories.Name;
+import com.bbn.serif.theories.Names;
+import com.bbn.serif.theories.NestedName;
+import com.bbn.serif.theories.NestedNames;
+import com.bbn.serif.theories.Parse;
+import com.bbn.serif.theories.Proposition;
+import com.bbn.serif.theories.Propositions;
+import com.bbn.serif.theories.Region;
+import com.bbn.serif.theories.Relation;
+import com.bbn.serif.theories.RelationMention;
+import com.bbn.serif.theories.RelationMentions;
+import com.bbn.serif.theories.Relations;
+import com.bbn.serif.theories.Sentence;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.SentenceTheoryBeam;
+import com.bbn.serif.theories.SynNode;
+import com.bbn.serif.theories.Token;
+import com.bbn.serif.theories.TokenSequence;
+import com.bbn.serif.theories.Value;
+import com.bbn.serif.theories.ValueMention;
+import com.bbn.serif.theories.ValueMentions;
+import com.bbn.serif.theories.Values;
+import com.bbn.serif.theories.actors.ActorEntities;
+import com.bbn.serif.theories.actors.ActorMentions;
+import com.bbn.serif.theories.facts.Facts;
+import com.bbn.serif.theories.flexibleevents.FlexibleEventMentions;
+import com.bbn.serif.theories.icewseventmentions.ICEWSEventMentions;
+import com.bbn.serif.types.DirectionOfChange;
+import com.bbn.serif.types.EntitySubtype;
+import com.bbn.serif.types.EntityType;
+import com.bbn.serif.types.GainLoss;
+import com.bbn.serif.types.Genericity;
+import com.bbn.serif.types.Indicator;
+import com.bbn.serif.types.Modality;
+import com.bbn.serif.types.Polarity;
+import com.bbn.serif.types.Tense;
+import com.bbn.serif.types.Trend;
+import com.bbn.serif.types.ValueType;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.joda.time.Interval;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a {@link DocTheory} in the {@link SerifBinary} format, building each theory object as soon
+ * as it is read. Each reader reads one document.
+ */
+final class SerifBinaryReader {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final InputStream in;
+  private final SerifLanguage.SerifLanguageMap languages;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int bufferPos = 0;
+  private int bufferLimit = 0;
+  private final List<String> strings = new ArrayList<>();
+  private final List<Object> objects = new ArrayList<>();
+  // sealed once the document is built, as the SerifXML loader does
+  private final List<ValueMention> valueMentions = new ArrayList<>();
+  // null while the original text itself is being read
+  @Nullable
+  private LocatedString originalText = null;
+
+  private SerifBinaryReader(final InputStream in,
+      final SerifLanguage.SerifLanguageMap languages) {
+    this.in = checkNotNull(in);
+    this.languages = checkNotNull(languages);
+  }
+
+  /**
+   * Reads a document from {@code in}, which must be positioned at the start of the binary
+   * SerifXML {@link SerifBinary#MAGIC}. Does not close {@code in}.
+   */
+  static DocTheory read(final InputStream in, final SerifLanguage.SerifLanguageMap languages)
+      throws IOException {
+    return new SerifBinaryReader(in, languages).readDocTheory();
+  }
+
+  private DocTheory readDocTheory() throws IOException {
+    final byte[] magic = new byte[SerifBinary.MAGIC.length];
+    for (int i = 0; i < magic.length; ++i) {
+      magic[i] = (byte) readByte();
+    }
+    if (!Arrays.equals(magic, SerifBinary.MAGIC)) {
+      throw new SerifXMLException("Not binary SerifXML");
+    }
+    final int version = readVarInt();
+    if (version != SerifBinary.VERSION) {
+      throw new SerifXMLException("Unsupported binary SerifXML version " + version
+          + "; expected " + SerifBinary.VERSION);
+    }
+
+    final Document document = readDocument();
+    final DocTheory.Builder builder = DocTheory.builderForDocument(document);
+
+    final int numBeams = readVarInt();
+    for (int i = 0; i < numBeams; ++i) {
+      final int numTokenSequences = readVarInt();
+      for (int j = 0; j < numTokenSequences; ++j) {
+        readTokenSequence();
+      }
+    }
+    builder.valueMentions(readBoolean() ? readValueMentions() : ValueMentions.absent());
+    final List<SentenceTheoryBeam> beams = new ArrayList<>(numBeams);
+    for (int i = 0; i < numBeams; ++i) {
+      beams.add(readSentenceTheoryBeam(document, i));
+    }
+    builder.sentenceTheoryBeams(beams);
+
+    builder.values(readBoolean() ? readValues() : Values.absent());
+    builder.entities(readBoolean() ? readEntities() : Entities.absent());
+    builder.relations(readBoolean() ? readRelations() : Relations.absent());
+    builder.events(readBoolean() ? readEvents() : Events.absent());
+    builder.actorEntities(ActorEntities.absent());
+    builder.facts(Facts.absent());
+    builder.actorMentions(ActorMentions.absent());
+    builder.icewsEventMentions(ICEWSEventMentions.absent());
+    builder.eventEventRelationMentions(EventEventRelationMentions.absent());
+    builder.flexibleEventMentions(FlexibleEventMentions.absent());
+    builder.documentEventArguments(DocumentEventArguments.absent());
+    builder.documentEvents(DocumentEvents.absent());
+
+    final DocTheory ret = builder.build();
+    for (final ValueMention valueMention : valueMentions) {
+      valueMention.seal();
+    }
+    return ret;
+  }
+
+  private Document readDocument() throws IOException {
+    final Document.Builder retB = new Document.Builder();
+    retB.name(readSymbol());
+    retB.sourceType(readOptionalSymbol());
+    retB.language(languages.languageFor(readString()));
+    retB.url(readOptionalString());
+    if (readBoolean()) {
+      retB.jodaDocumentTimeInterval(new Interval(readLong(), readLong()));
+    }
+    if (readBoolean()) {
+      retB.offsetIntoSource(readOffsetGroup());
+    }
+    originalText = readLocatedString();
+    retB.originalText(originalText);
+
+    if (readBoolean()) {
+      final int numRegions = readVarInt();
+      final List<Region> regions = new ArrayList<>(numRegions);
+      for (int i = 0; i < numRegions; ++i) {
+        final Region region = new Region.Builder()
+            .tag(readOptionalSymbol())
+            .content(readLocatedString())
+            .isSpeakerRegion(readBoolean())
+            .isReceiverRegion(readBoolean())
+            .build();
+        register(region);
+        regions.add(region);
+      }
+      retB.regions(regions);
+    }
+    if (readBoolean()) {
+      retB.segments(ImmutableList.<Segment>of());
+    }
+
+    if (readBoolean()) {
+      final int numSpans = readVarInt();
+      final List<OffsetGroupSpan> spans = new ArrayList<>(numSpans);
+      for (int i = 0; i < numSpans; ++i) {
+        final Symbol type = readSymbol();
+        final OffsetGroup start = readOffsetGroup();
+        final OffsetGroup end = readOffsetGroup();
+        final int numAttributes = readVarInt();
+        final ImmutableMap.Builder<String, String> attributes = ImmutableMap.builder();
+        for (int j = 0; j < numAttributes; ++j) {
+          attributes.put(readInterned(), readString());
+        }
+        spans.add(OffsetGroupSpan.create(type, OffsetGroupRange.from(start, end),
+            attributes.build()));
+      }
+      retB.metadata(Metadata.create(spans));
+    }
+    return retB.build();
+  }
+
+  private LocatedString readLocatedString() throws IOException {
+    if (readBoolean()) {
+      if (originalText == null) {
+        throw new SerifXMLException("Corrupt binary SerifXML: the original text is given as a "
+            + "substring of itself");
+      }
+      final int start = readVarInt();
+      final int end = readVarInt();
+      try {
+        return originalText.contentLocatedSubstringByContentOffsets(
+            OffsetRange.fromInclusiveEndpoints(CharOffset.asCharOffset(start),
+                CharOffset.asCharOffset(end)));
+      } catch (final IndexOutOfBoundsException e) {
+        throw new SerifXMLException("Corrupt binary SerifXML: substring " + start + ":" + end
+            + " is outside the original text", e);
+      }
+    }
+    final UnicodeFriendlyString text = StringUtils.unicodeFriendly(readString());
+    final int numRegions = readVarInt();
+    final List<LocatedString.CharacterRegion> regions = new ArrayList<>(numRegions);
+    for (int i = 0; i < numRegions; ++i) {
+      final int startPos = readVarInt();
+      final int endPos = readVarInt();
+      regions.add(new LocatedString.CharacterRegion.Builder()
+          .contentNonBmp(text.hasNonBmpCharacter(OffsetRange.charOffsetRange(startPos, endPos - 1)))
+          .contentStartPosInclusive(CharOffset.asCharOffset(startPos))
+          .contentEndPosExclusive(CharOffset.asCharOffset(endPos))
+          .referenceStartOffsetInclusive(readOffsetGroup())
+          .referenceEndOffsetInclusive(readOffsetGroup())
+          .build());
+    }
+    // the original text is its own reference string
+    final UnicodeFriendlyString referenceString =
+        originalText == null ? text : originalText.referenceString().get();
+    return new LocatedString.Builder()
+        .referenceString(referenceString)
+        .content(text)
+        .characterRegions(regions)
+        .build();
+  }
+
+  private OffsetGroup readOffsetGroup() throws IOException {
+    final OffsetGroup.Builder ret = new OffsetGroup.Builder();
+    ret.charOffset(CharOffset.asCharOffset(readVarInt()));
+    ret.edtOffset(EDTOffset.asEDTOffset(readVarInt()));
+    if (readBoolean()) {
+      ret.byteOffset(ByteOffset.asByteOffset(readVarInt()));
+    }
+    return ret.build();
+  }
+
+  private TokenSequence readTokenSequence() throws IOException {
+    final TokenSequence.FromTokenDataBuilder builder =
+        TokenSequence.withOriginalText(readVarInt(), checkNotNull(originalText));
+    builder.setScore(readFloat());
+    final int numTokens = readVarInt();
+    for (int i = 0; i < numTokens; ++i) {
+      final Symbol token = readSymbol();
+      final int start = readVarInt();
+      builder.addToken(token, OffsetRange.charOffsetRange(start, start + readVarInt()));
+    }
+    final TokenSequence ret = builder.build();
+    register(ret);
+    return ret;
+  }
+
+  private SentenceTheoryBeam readSentenceTheoryBeam(final Document document,
+      final int sentenceIdx) throws IOException {
+    final Sentence sentence = Sentence.forSentenceInDocument(document, sentenceIdx)
+        .region(referredTo(readVarInt(), Region.class))
+        .locatedString(readLocatedString())
+        .build();
+    final int numTheories = readVarInt();
+    final List<SentenceTheory> theories = new ArrayList<>(numTheories);
+    for (int i = 0; i < numTheories; ++i) {
+      theories.add(readSentenceTheory(sentence));
+    }
+    return SentenceTheoryBeam.forSentenceTheories(sentence, theories);
+  }
+
+  private SentenceTheory readSentenceTheory(final Sentence sentence) throws IOException {
+    int part = readVarInt();
+    final TokenSequence tokenSequence;
+    if (part == SerifBinary.ABSENT) {
+      tokenSequence = TokenSequence.absent(sentence.sentenceNumber());
+    } else {
+      tokenSequence = part == SerifBinary.NEW ? readTokenSequence()
+          : partReferredTo(part, TokenSequence.class);
+    }
+    final SentenceTheory.Builder ret =
+        SentenceTheory.createForTokenSequence(sentence, tokenSequence);
+
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.withNameTheory(part == SerifBinary.NEW ? readNames()
+          : partReferredTo(part, Names.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.nestedNames(part == SerifBinary.NEW ? readNestedNames()
+          : partReferredTo(part, NestedNames.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.valueMentions(part == SerifBinary.NEW ? readValueMentions()
+          : partReferredTo(part, ValueMentions.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.parse(part == SerifBinary.NEW ? readParse()
+          : partReferredTo(part, Parse.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.mentions(part == SerifBinary.NEW ? readMentions()
+          : partReferredTo(part, Mentions.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.propositions(part == SerifBinary.NEW ? readPropositions()
+          : partReferredTo(part, Propositions.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.dependencies(part == SerifBinary.NEW ? readDependencies()
+          : partReferredTo(part, Dependencies.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.relationMentions(part == SerifBinary.NEW ? readRelationMentions()
+          : partReferredTo(part, RelationMentions.class));
+    }
+    part = readVarInt();
+    if (part != SerifBinary.ABSENT) {
+      ret.eventMentions(part == SerifBinary.NEW ? readEventMentions()
+          : partReferredTo(part, EventMentions.class));
+    }
+    if (readBoolean()) {
+      ret.hasPOSSequence(true);
+    }
+    return ret.build();
+  }
+
+  private Names readNames() throws IOException {
+    final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+    final Optional<Double> score = readOptionalDouble();
+    final int numNames = readVarInt();
+    final List<Name> names = new ArrayList<>(numNames);
+    for (int i = 0; i < numNames; ++i) {
+      final Name name = new Name.Builder()
+          .span(ts.span(readVarInt(), readVarInt()))
+          .type(EntityType.of(readSymbol()))
+          .score(readOptionalDouble())
+          .transliteration(readOptionalString())
+          .externalID(readOptionalSymbol())
+          .build();
+      register(name);
+      names.add(name);
+    }
+    final Names ret = Names.createFrom(names, ts, score.orNull());
+    register(ret);
+    return ret;
+  }
+
+  private NestedNames readNestedNames() throws IOException {
+    final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+    final Names parent = referredTo(readVarInt(), Names.class);
+    final Optional<Double> score = readOptionalDouble();
+    final int numNames = readVarInt();
+    final List<NestedName> nestedNames = new ArrayList<>(numNames);
+    for (int i = 0; i < numNames; ++i) {
+      final TokenSequence.Span span = ts.span(readVarInt(), readVarInt());
+      final EntityType type = EntityType.of(readSymbol());
+      final Name parentName = referredTo(readVarInt(), Name.class);
+      final NestedName nestedName = NestedName.builder(span, type, parentName)
+          .withTransliteration(readOptionalString().orNull())
+          .withScore(readOptionalDouble().orNull())
+          .build();
+      register(nestedName);
+      nestedNames.add(nestedName);
+    }
+    final NestedNames ret = new NestedNames.Builder().tokenSequence(ts).parent(parent)
+        .names(nestedNames).score(score).build();
+    register(ret);
+    return ret;
+  }
+
+  private ValueMentions readValueMentions() throws IOException {
+    final int numValueMentions = readVarInt();
+    final List<ValueMention> mentions = new ArrayList<>(numValueMentions);
+    for (int i = 0; i < numValueMentions; ++i) {
+      final ValueType type = ValueType.parseDottedPair(readInterned());
+      final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+      final ValueMention valueMention =
+          ValueMention.builder(type, ts.span(readVarInt(), readVarInt()))
+          .setExternalID(readOptionalSymbol().orNull())
+          .build();
+      register(valueMention);
+      valueMentions.add(valueMention);
+      mentions.add(valueMention);
+    }
+    final ValueMentions ret = ValueMentions.create(mentions);
+    register(ret);
+    return ret;
+  }
+
+  private Parse readParse() throws IOException {
+    final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+    final float score = readFloat();
+    final Parse ret;
+    if (readBoolean()) {
+      final SynNode.PreorderBuilder builder = SynNode.preorderBuilder(ts);
+      readSynNode(builder);
+      final SynNode root = builder.build();
+      registerInPreorder(root);
+      ret = Parse.create(ts, root, score);
+    } else {
+      ret = Parse.emptyParse(ts);
+    }
+    register(ret);
+    return ret;
+  }
+
+  private void readSynNode(final SynNode.PreorderBuilder builder) throws IOException {
+    final int header = readVarInt();
+    final int numChildren = header >>> 1;
+    final boolean isHead = (header & 1) != 0;
+    final Symbol tag = readSymbol();
+    if (numChildren == 0) {
+      builder.addTerminal(tag, readVarInt(), isHead);
+    } else {
+      builder.openNonterminal(tag, isHead);
+      for (int i = 0; i < numChildren; ++i) {
+        readSynNode(builder);
+      }
+      builder.close();
+    }
+  }
+
+  private void registerInPreorder(final SynNode node) {
+    register(node);
+    for (final SynNode child : node.children()) {
+      registerInPreorder(child);
+    }
+  }
+
+  private Mentions readMentions() throws IOException {
+    final Optional<Parse> parse = readOptionalReference(Parse.class);
+    final float descScore = readFloat();
+    final float nameScore = readFloat();
+    final int numMentions = readVarInt();
+    final List<Mention> mentions = new ArrayList<>(numMentions);
+    for (int i = 0; i < numMentions; ++i) {
+      final SynNode node = referredTo(readVarInt(), SynNode.class);
+      final boolean terminalFromToken = readBoolean();
+      final Token startToken = terminalFromToken ? readToken() : null;
+      final Token endToken = terminalFromToken ? readToken() : null;
+      final Mention.Type type = Mention.typeForSymbol(readSymbol());
+      final EntityType entityType = EntityType.of(readSymbol());
+      final EntitySubtype entitySubtype = EntitySubtype.of(readSymbol());
+      final MetonymyInfo metonymyInfo = readBoolean()
+          ? new MetonymyInfo(EntityType.of(readSymbol()), EntityType.of(readSymbol())) : null;
+      final double confidence = readDouble();
+      final double linkConfidence = readDouble();
+      final Symbol externalID = readOptionalSymbol().orNull();
+      final Mention mention;
+      if (terminalFromToken) {
+        mention = new Mention(startToken, endToken, node, type, entityType, entitySubtype,
+            metonymyInfo, confidence, linkConfidence, externalID);
+      } else {
+        mention = node.setMention(type, entityType, entitySubtype, metonymyInfo, confidence,
+            linkConfidence, externalID);
+      }
+      mention.setModel(readOptionalString());
+      mention.setPattern(readOptionalString());
+      register(mention);
+      mentions.add(mention);
+    }
+    for (final Mention mention : mentions) {
+      final Optional<Mention> parent = readOptionalReference(Mention.class);
+      if (parent.isPresent()) {
+        mention.setParent(parent.get());
+      }
+      final Optional<Mention> child = readOptionalReference(Mention.class);
+      if (child.isPresent()) {
+        mention.setChild(child.get());
+      }
+      final Optional<Mention> next = readOptionalReference(Mention.class);
+      if (next.isPresent()) {
+        mention.setNext(next.get());
+      }
+    }
+    final Mentions ret = new Mentions.Builder()
+        .mentions(mentions)
+        .parse(parse)
+        .descScore(descScore)
+        .nameScore(nameScore)
+        .build();
+    register(ret);
+    return ret;
+  }
+
+  private Token readToken() throws IOException {
+    final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+    final int index = readVarInt();
+    if (index >= ts.size()) {
+      throw new SerifXMLException("Corrupt binary SerifXML: token " + index + " of a sentence "
+          + "with " + ts.size() + " tokens");
+    }
+    return ts.token(index);
+  }
+
+  private Propositions readPropositions() throws IOException {
+    final Optional<Mentions> mentions = readOptionalReference(Mentions.class);
+    final Propositions ret = new Propositions.Builder()
+        .propositions(readPropositionList())
+        .mentions(mentions)
+        .build();
+    register(ret);
+    return ret;
+  }
+
+  private Dependencies readDependencies() throws IOException {
+    final Optional<Mentions> mentions = readOptionalReference(Mentions.class);
+    final Dependencies ret = new Dependencies.Builder()
+        .propositions(readPropositionList())
+        .mentions(mentions)
+        .build();
+    register(ret);
+    return ret;
+  }
+
+  // propositions are written after those they take as arguments, each with its position in the set
+  private List<Proposition> readPropositionList() throws IOException {
+    final Proposition[] ret = new Proposition[readVarInt()];
+    for (int i = 0; i < ret.length; ++i) {
+      final int position = readVarInt();
+      if (position >= ret.length || ret[position] != null) {
+        throw new SerifXMLException("Corrupt binary SerifXML: proposition position " + position);
+      }
+      final Proposition.PredicateType predType = Proposition.PredicateType.from(readSymbol());
+      final SynNode predHead = readOptionalReference(SynNode.class).orNull();
+      final SynNode particle = readOptionalReference(SynNode.class).orNull();
+      final SynNode adverb = readOptionalReference(SynNode.class).orNull();
+      final SynNode negation = readOptionalReference(SynNode.class).orNull();
+      final SynNode modal = readOptionalReference(SynNode.class).orNull();
+      final int numStatuses = readVarInt();
+      final List<Proposition.Status> statuses = new ArrayList<>(numStatuses);
+      for (int j = 0; j < numStatuses; ++j) {
+        statuses.add(Proposition.Status.from(readSymbol()));
+      }
+      final int numArgs = readVarInt();
+      final List<Proposition.ArgumentBuilder> args = new ArrayList<>(numArgs);
+      for (int j = 0; j < numArgs; ++j) {
+        final int kind = readVarInt();
+        final Symbol role = readOptionalSymbol().orNull();
+        switch (kind) {
+          case SerifBinary.MENTION_ARGUMENT:
+            args.add(new Proposition.MentionArgumentBuilder(role,
+                referredTo(readVarInt(), Mention.class)));
+            break;
+          case SerifBinary.TEXT_ARGUMENT:
+            args.add(new Proposition.TextArgumentBuilder(role,
+                referredTo(readVarInt(), SynNode.class)));
+            break;
+          case SerifBinary.PROPOSITION_ARGUMENT:
+            args.add(new Proposition.PropositionArgumentBuilder(role,
+                referredTo(readVarInt(), Proposition.class)));
+            break;
+          default:
+            throw new SerifXMLException("Corrupt binary SerifXML: proposition argument kind "
+                + kind);
+        }
+      }
+      final Proposition proposition =
+          new Proposition(predType, predHead, particle, adverb, negation, modal, args, statuses);
+      register(proposition);
+      ret[position] = proposition;
+    }
+    return Arrays.asList(ret);
+  }
+
+  private RelationMentions readRelationMentions() throws IOException {
+    final int numRelationMentions = readVarInt();
+    final List<RelationMention> relationMentions = new ArrayList<>(numRelationMentions);
+    for (int i = 0; i < numRelationMentions; ++i) {
+      final RelationMention relationMention = new RelationMention.Builder()
+          .type(readSymbol())
+          .leftMention(referredTo(readVarInt(), Mention.class))
+          .rightMention(referredTo(readVarInt(), Mention.class))
+          .timeArg(readOptionalReference(ValueMention.class))
+          .timeRole(readOptionalSymbol())
+          .modality(Modality.from(readSymbol()))
+          .tense(Tense.from(readSymbol()))
+          .rawType(readOptionalSymbol())
+          .externalID(readOptionalSymbol())
+          .score(readDouble())
+          .pattern(readOptionalString())
+          .model(readOptionalString())
+          .build();
+      register(relationMention);
+      relationMentions.add(relationMention);
+    }
+    final RelationMentions ret =
+        new RelationMentions.Builder().relationMentions(relationMentions).build();
+    register(ret);
+    return ret;
+  }
+
+  private EventMentions readEventMentions() throws IOException {
+    final Optional<Parse> parse = readOptionalReference(Parse.class);
+    final int numEventMentions = readVarInt();
+    final List<EventMention> eventMentions = new ArrayList<>(numEventMentions);
+    for (int i = 0; i < numEventMentions; ++i) {
+      final Symbol type = readSymbol();
+      final Proposition anchorProposition = readOptionalReference(Proposition.class).orNull();
+      final SynNode anchorNode = readOptionalReference(SynNode.class).orNull();
+      final int numArgs = readVarInt();
+      final List<EventMention.Argument> args = new ArrayList<>(numArgs);
+      for (int j = 0; j < numArgs; ++j) {
+        args.add(readEventMentionArgument());
+      }
+      final Symbol pattern = readOptionalSymbol().orNull();
+      final Modality modality = Modality.from(readSymbol());
+      final double modalityScore = readDouble();
+      final Polarity polarity = Polarity.from(readSymbol());
+      final Genericity genericity = Genericity.from(readSymbol());
+      final double genericityScore = readDouble();
+      final GainLoss gainLoss = readBoolean() ? GainLoss.from(readSymbol()) : null;
+      final Indicator indicator = readBoolean() ? Indicator.from(readSymbol()) : null;
+      final Tense tense = Tense.from(readSymbol());
+      final DirectionOfChange directionOfChange = DirectionOfChange.from(readSymbol());
+      final Symbol externalID = readOptionalSymbol().orNull();
+      final double score = readDouble();
+      final Integer semanticPhraseStart = readOptionalInt().orNull();
+      final Integer semanticPhraseEnd = readOptionalInt().orNull();
+      final Symbol model = readOptionalSymbol().orNull();
+      final List<EventMention.EventType> eventTypes = readEventTypes();
+      final int numAnchors = readVarInt();
+      final List<EventMention.Anchor> anchors = new ArrayList<>(numAnchors);
+      for (int j = 0; j < numAnchors; ++j) {
+        anchors.add(EventMention.Anchor.from(readOptionalReference(SynNode.class).orNull(),
+            readOptionalReference(Proposition.class).orNull()));
+      }
+      final List<EventMention.EventType> factorTypes = readEventTypes();
+      final EventMention eventMention = new EventMention(type, anchorProposition, anchorNode,
+          args, pattern, modality, modalityScore, polarity, genericity, genericityScore, gainLoss,
+          indicator, tense, directionOfChange, externalID, score, semanticPhraseStart,
+          semanticPhraseEnd, model, eventTypes, anchors, factorTypes);
+      register(eventMention);
+      eventMentions.add(eventMention);
+    }
+    final EventMentions ret = new EventMentions.Builder()
+        .parse(parse)
+        .eventMentions(eventMentions)
+        .build();
+    register(ret);
+    return ret;
+  }
+
+  private EventMention.Argument readEventMentionArgument() throws IOException {
+    final int kind = readVarInt();
+    switch (kind) {
+      case SerifBinary.MENTION_ARGUMENT: {
+        final Mention mention = referredTo(readVarInt(), Mention.class);
+        return EventMention.MentionArgument.from(readSymbol(), mention, readFloat());
+      }
+      case SerifBinary.VALUE_ARGUMENT: {
+        final ValueMention valueMention = referredTo(readVarInt(), ValueMention.class);
+        return EventMention.ValueMentionArgument.from(readSymbol(), valueMention, readFloat());
+      }
+      case SerifBinary.SPAN_ARGUMENT: {
+        final TokenSequence ts = referredTo(readVarInt(), TokenSequence.class);
+        final TokenSequence.Span span = ts.span(readVarInt(), readVarInt());
+        return EventMention.SpanArgument.from(readSymbol(), span, readFloat());
+      }
+      default:
+        throw new SerifXMLException("Corrupt binary SerifXML: event mention argument kind "
+            + kind);
+    }
+  }
+
+  private List<EventMention.EventType> readEventTypes() throws IOException {
+    final int numEventTypes = readVarInt();
+    final List<EventMention.EventType> ret = new ArrayList<>(numEventTypes);
+    for (int i = 0; i < numEventTypes; ++i) {
+      final Symbol eventType = readSymbol();
+      final double score = readDouble();
+      final Optional<Double> magnitude = readOptionalDouble();
+      final Optional<Trend> trend =
+          readBoolean() ? Optional.of(Trend.from(readSymbol())) : Optional.<Trend>absent();
+      ret.add(EventMention.EventType.from(eventType, score, magnitude, trend));
+    }
+    return ret;
+  }
+
+  private Values readValues() throws IOException {
+    final int numValues = readVarInt();
+    final List<Value> values = new ArrayList<>(numValues);
+    for (int i = 0; i < numValues; ++i) {
+      final ValueMention valueMention = referredTo(readVarInt(), ValueMention.class);
+      valueMention.setDocValue(readOptionalSymbol().orNull(), readOptionalSymbol().orNull(),
+          readOptionalSymbol().orNull(), readOptionalSymbol().orNull(),
+          readOptionalSymbol().orNull(), readOptionalSymbol().orNull());
+      // setDocValue built the value just now
+      //noinspection OptionalGetWithoutIsPresent
+      final Value value = valueMention.documentValue().get();
+      register(value);
+      values.add(value);
+    }
+    return Values.create(values);
+  }
+
+  private Entities readEntities() throws IOException {
+    final String score = readOptionalString().orNull();
+    final int numEntities = readVarInt();
+    final List<Entity> entities = new ArrayList<>(numEntities);
+    for (int i = 0; i < numEntities; ++i) {
+      final Entity.Builder entityB = Entity.builder()
+          .type(EntityType.of(readSymbol()))
+          .subtype(EntitySubtype.of(readSymbol()))
+          .generic(readBoolean())
+          .guid(readOptionalInt())
+          .externalID(readOptionalSymbol());
+      final int numMentions = readVarInt();
+      for (int j = 0; j < numMentions; ++j) {
+        final Mention mention = referredTo(readVarInt(), Mention.class);
+        entityB.addMentionSet(mention);
+        entityB.putConfidences(mention, MentionConfidence.valueOf(readInterned()));
+      }
+      final Entity entity = entityB.build();
+      register(entity);
+      entities.add(entity);
+    }
+    return Entities.create(entities, score);
+  }
+
+  private Relations readRelations() throws IOException {
+    final int numRelations = readVarInt();
+    final List<Relation> relations = new ArrayList<>(numRelations);
+    for (int i = 0; i < numRelations; ++i) {
+      final Entity left = referredTo(readVarInt(), Entity.class);
+      final Entity right = referredTo(readVarInt(), Entity.class);
+      final int numRelationMentions = readVarInt();
+      final List<RelationMention> relationMentions = new ArrayList<>(numRelationMentions);
+      for (int j = 0; j < numRelationMentions; ++j) {
+        relationMentions.add(referredTo(readVarInt(), RelationMention.class));
+      }
+      final Symbol type = readSymbol();
+      final Tense tense = Tense.from(readSymbol());
+      final Modality modality = Modality.from(readSymbol());
+      final float confidence = readFloat();
+      relations.add(Relation.create(left, right,
+          new RelationMentions.Builder().relationMentions(relationMentions).build(), type, tense,
+          modality, confidence, readOptionalSymbol().orNull()));
+    }
+    return Relations.create(relations);
+  }
+
+  private Events readEvents() throws IOException {
+    final int numEvents = readVarInt();
+    final List<Event> events = new ArrayList<>(numEvents);
+    for (int i = 0; i < numEvents; ++i) {
+      final int numArgs = readVarInt();
+      final List<Event.Argument> args = new ArrayList<>(numArgs);
+      for (int j = 0; j < numArgs; ++j) {
+        final int kind = readVarInt();
+        if (kind == SerifBinary.ENTITY_ARGUMENT) {
+          final Entity entity = referredTo(readVarInt(), Entity.class);
+          args.add(new Event.EntityArgument(entity, readSymbol()));
+        } else if (kind == SerifBinary.VALUE_ARGUMENT) {
+          final Value value = referredTo(readVarInt(), Value.class);
+          args.add(new Event.ValueArgument(value, readSymbol()));
+        } else {
+          throw new SerifXMLException("Corrupt binary SerifXML: event argument kind " + kind);
+        }
+      }
+      final int numEventMentions = readVarInt();
+      final List<EventMention> eventMentions = new ArrayList<>(numEventMentions);
+      for (int j = 0; j < numEventMentions; ++j) {
+        eventMentions.add(referredTo(readVarInt(), EventMention.class));
+      }
+      final Symbol type = readSymbol();
+      final Genericity genericity = Genericity.from(readSymbol());
+      final Modality modality = Modality.from(readSymbol());
+      final Polarity polarity = Polarity.from(readSymbol());
+      final Tense tense = Tense.from(readSymbol());
+      events.add(new Event(args, new EventMentions.Builder().eventMentions(eventMentions).build(),
+          type, genericity, modality, polarity, tense, readOptionalSymbol().orNull()));
+    }
+    return new Events(events);
+  }
+
+  private void register(final Object o) {
+    objects.add(o);
+  }
+
+  private <T> T referredTo(final int index, final Class<T> type) throws SerifXMLException {
+    if (index < 0 || index >= objects.size()) {
+      throw new SerifXMLException("Corrupt binary SerifXML: reference to object " + index
+          + " of " + objects.size());
+    }
+    final Object ret = objects.get(index);
+    if (!type.isInstance(ret)) {
+      throw new SerifXMLException("Corrupt binary SerifXML: expected a " + type.getSimpleName()
+          + " but got a " + ret.getClass().getSimpleName());
+    }
+    return type.cast(ret);
+  }
+
+  // the parts of sentence theories shared with earlier theories in the beam
+  private <T> T partReferredTo(final int part, final Class<T> type) throws SerifXMLException {
+    return referredTo(part - SerifBinary.FIRST_REFERENCE, type);
+  }
+
+  private <T> Optional<T> readOptionalReference(final Class<T> type) throws IOException {
+    final int index = readVarInt();
+    return index == SerifBinary.ABSENT ? Optional.<T>absent()
+                                       : Optional.of(referredTo(index - 1, type));
+  }
+
+  private Symbol readSymbol() throws IOException {
+    return Symbol.from(readInterned());
+  }
+
+  private Optional<Symbol> readOptionalSymbol() throws IOException {
+    return readBoolean() ? Optional.of(readSymbol()) : Optional.<Symbol>absent();
+  }
+
+  private String readInterned() throws IOException {
+    final int index = readVarInt();
+    if (index == 0) {
+      final String ret = readString();
+      strings.add(ret);
+      return ret;
+    }
+    if (index > strings.size()) {
+      throw new SerifXMLException("Corrupt binary SerifXML: reference to string " + (index - 1)
+          + " of " + strings.size());
+    }
+    return strings.get(index - 1);
+  }
+
+  private Optional<String> readOptionalString() throws IOException {
+    return readBoolean() ? Optional.of(readString()) : Optional.<String>absent();
+  }
+
+  private String readString() throws IOException {
+    final int length = readVarInt();
+    if (length < 0) {
+      throw new SerifXMLException("Corrupt binary SerifXML: string of length " + length);
+    }
+    if (length <= bufferLimit - bufferPos) {
+      final String ret = new String(buffer, bufferPos, length, Charsets.UTF_8);
+      bufferPos += length;
+      return ret;
+    }
+    final byte[] bytes = new byte[length];
+    int read = Math.min(length, bufferLimit - bufferPos);
+    System.arraycopy(buffer, bufferPos, bytes, 0, read);
+    bufferPos += read;
+    while (read < length) {
+      final int n = in.read(bytes, read, length - read);
+      if (n < 0) {
+        throw new EOFException("Truncated binary SerifXML");
+      }
+      read += n;
+    }
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private Optional<Integer> readOptionalInt() throws IOException {
+    return readBoolean() ? Optional.of(readVarInt()) : Optional.<Integer>absent();
+  }
+
+  private Optional<Double> readOptionalDouble() throws IOException {
+    return readBoolean() ? Optional.of(readDouble()) : Optional.<Double>absent();
+  }
+
+  private float readFloat() throws IOException {
+    int bits = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      bits |= readByte() << shift;
+    }
+    return Float.intBitsToFloat(bits);
+  }
+
+  private double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  private long readLong() throws IOException {
+    long ret = 0;
+    for (int shift = 0; shift < 64; shift += 8) {
+      ret |= (long) readByte() << shift;
+    }
+    return ret;
+  }
+
+  private boolean readBoolean() throws IOException {
+    final int b = readByte();
+    if (b > 1) {
+      throw new SerifXMLException("Corrupt binary SerifXML: boolean " + b);
+    }
+    return b == 1;
+  }
+
+  private int readVarInt() throws IOException {
+    int ret = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      final int b = readByte();
+      ret |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return ret;
+      }
+    }
+    throw new SerifXMLException("Corrupt binary SerifXML: varint is too long");
+  }
+
+  private int readByte() throws IOException {
+    if (bufferPos == bufferLimit) {
+      bufferLimit = in.read(buffer);
+      bufferPos = 0;
+      if (bufferLimit <= 0) {
+        bufferLimit = 0;
+        throw new EOFException("Truncated binary SerifXML");
+      }
+    }
+    return buffer[bufferPos++] & 0xFF;
+  }
+}
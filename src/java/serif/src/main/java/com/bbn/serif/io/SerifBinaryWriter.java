@@ -0,0 +1,827 @@
+package com.bbn.serif.io;
+
+import com.bbn.bue.common.strings.LocatedString;
+import com.bbn.bue.common.strings.offsets.OffsetGroup;
+import com.bbn.bue.common.strings.offsets.OffsetGroupSpan;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.common.SerifException;
+import com.bbn.serif.theories.Dependencies;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Document;
+import com.bbn.serif.theories.Entities;
+import com.bbn.serif.theories.Entity;
+import com.bbn.serif.theories.Event;
+import com.bbn.serif.theories.EventMention;
+import com.bbn.serif.theories.EventMentions;
+import com.bbn.serif.theories.Events;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.Mentions;
+import com.bbn.serif.theories.Name;
+import com.bbn.serif.theories.Names;
+import com.bbn.serif.theories.NestedName;
+import com.bbn.serif.theories.NestedNames;
+import com.bbn.serif.theories.Parse;
+import com.bbn.serif.theories.PotentiallyAbsentSerifTheory;
+import com.bbn.serif.theories.Proposition;
+import com.bbn.serif.theories.Propositions;
+import com.bbn.serif.theories.Region;
+import com.bbn.serif.theories.Relation;
+import com.bbn.serif.theories.RelationMention;
+import com.bbn.serif.theories.RelationMentions;
+import com.bbn.serif.theories.Relations;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.SentenceTheoryBeam;
+import com.bbn.serif.theories.SynNode;
+import com.bbn.serif.theories.Token;
+import com.bbn.serif.theories.TokenSequence;
+import com.bbn.serif.theories.Value;
+import com.bbn.serif.theories.ValueMention;
+import com.bbn.serif.theories.ValueMentions;
+import com.bbn.serif.theories.Values;
+import com.bbn.serif.types.Attribute;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Sets;
+
+import org.joda.time.Interval;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes a {@link DocTheory} in the {@link SerifBinary} format. Each writer writes one document.
+ */
+final class SerifBinaryWriter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final OutputStream out;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int bufferPos = 0;
+  private final Map<String, Integer> stringIndices = new HashMap<>();
+  // by identity, since equal but distinct objects are distinct in the document
+  private final Map<Object, Integer> objectIndices = new IdentityHashMap<>();
+  // null while the original text itself is being written
+  @Nullable
+  private LocatedString originalText = null;
+
+  private SerifBinaryWriter(final OutputStream out) {
+    this.out = checkNotNull(out);
+  }
+
+  /**
+   * Writes {@code docTheory} to {@code out} and flushes it. Does not close {@code out}.
+   *
+   * @throws SerifException if the document has analyses which the format cannot hold
+   */
+  static void write(final DocTheory docTheory, final OutputStream out) throws IOException {
+    new SerifBinaryWriter(out).writeDocTheory(docTheory);
+  }
+
+  private void writeDocTheory(final DocTheory dt) throws IOException {
+    checkSupported(dt);
+    for (final byte b : SerifBinary.MAGIC) {
+      writeByte(b);
+    }
+    writeVarInt(SerifBinary.VERSION);
+
+    writeDocument(dt.document());
+
+    final List<SentenceTheoryBeam> beams = dt.sentenceTheoryBeams();
+    writeVarInt(beams.size());
+    // all token sequences come first, since document-level value mentions may refer to any
+    for (final SentenceTheoryBeam beam : beams) {
+      final Set<TokenSequence> tokenSequences = Sets.newIdentityHashSet();
+      for (final SentenceTheory st : beam) {
+        if (!st.tokenSequence().isAbsent()) {
+          tokenSequences.add(st.tokenSequence());
+        }
+      }
+      writeVarInt(tokenSequences.size());
+      for (final TokenSequence ts : tokenSequences) {
+        writeTokenSequence(ts);
+      }
+    }
+    writeBoolean(!dt.valueMentions().isAbsent());
+    if (!dt.valueMentions().isAbsent()) {
+      writeValueMentions(dt.valueMentions());
+    }
+    for (final SentenceTheoryBeam beam : beams) {
+      writeSentenceTheoryBeam(beam);
+    }
+
+    writeValues(dt.values());
+    writeEntities(dt.entities());
+    writeRelations(dt.relations());
+    writeEvents(dt.events());
+
+    flushBuffer();
+    out.flush();
+  }
+
+  private static void checkSupported(final DocTheory dt) {
+    final Document document = dt.document();
+    checkSupported(!document.zoning().isPresent(), "zoning", document);
+    checkSupported(!document.segments().isPresent() || document.segments().get().isEmpty(),
+        "segments", document);
+    checkSupported(!document.dateTimeField().isPresent(), "date time fields", document);
+    checkSupported(isEmpty(dt.actorMentions()), "actor mentions", document);
+    checkSupported(isEmpty(dt.actorEntities()), "actor entities", document);
+    checkSupported(isEmpty(dt.facts()), "facts", document);
+    checkSupported(isEmpty(dt.icewsEventMentions()), "ICEWS event mentions", document);
+    checkSupported(isEmpty(dt.flexibleEventMentions()), "flexible event mentions", document);
+    checkSupported(isEmpty(dt.documentEvents()), "document events", document);
+    checkSupported(isEmpty(dt.documentEventArguments()), "document event arguments", document);
+    checkSupported(isEmpty(dt.eventEventRelationMentions()),
+        "event-event relation mentions", document);
+    checkSupported(!dt.acronyms().isPresent() || dt.acronyms().get().isEmpty(), "acronyms",
+        document);
+    checkSupported(!dt.documentActorInfo().isPresent(), "document actor info", document);
+    for (final SentenceTheoryBeam beam : dt.sentenceTheoryBeams()) {
+      for (final SentenceTheory st : beam) {
+        checkSupported(st.morphTokenSequences().isEmpty(), "morphology", document);
+        checkSupported(isEmpty(st.actorMentions()), "actor mentions", document);
+      }
+    }
+  }
+
+  private static <T extends Iterable<?> & PotentiallyAbsentSerifTheory> boolean isEmpty(
+      final T theory) {
+    return theory.isAbsent() || !theory.iterator().hasNext();
+  }
+
+  private static void checkSupported(final boolean supported, final String analyses,
+      final Document document) {
+    if (!supported) {
+      throw new SerifException("Cannot write document " + document.name()
+          + " as binary SerifXML because the format cannot hold its " + analyses);
+    }
+  }
+
+  private void writeDocument(final Document document) throws IOException {
+    writeSymbol(document.name());
+    writeOptionalSymbol(document.sourceType());
+    writeString(document.language().language().longName());
+    writeOptionalString(document.url());
+    writeBoolean(document.jodaDocumentTimeInterval().isPresent());
+    if (document.jodaDocumentTimeInterval().isPresent()) {
+      final Interval interval = document.jodaDocumentTimeInterval().get();
+      writeLong(interval.getStartMillis());
+      writeLong(interval.getEndMillis());
+    }
+    writeBoolean(document.offsetIntoSource().isPresent());
+    if (document.offsetIntoSource().isPresent()) {
+      writeOffsetGroup(document.offsetIntoSource().get());
+    }
+    writeLocatedString(document.originalText());
+    originalText = document.originalText();
+
+    writeBoolean(document.regions().isPresent());
+    if (document.regions().isPresent()) {
+      writeVarInt(document.regions().get().size());
+      for (final Region region : document.regions().get()) {
+        writeOptionalSymbol(region.tag());
+        writeLocatedString(region.content());
+        writeBoolean(region.isSpeakerRegion());
+        writeBoolean(region.isReceiverRegion());
+        register(region);
+      }
+    }
+    writeBoolean(document.segments().isPresent());
+
+    writeBoolean(document.metadata().isPresent());
+    if (document.metadata().isPresent()) {
+      final List<OffsetGroupSpan> spans = document.metadata().get().spans();
+      writeVarInt(spans.size());
+      for (final OffsetGroupSpan span : spans) {
+        writeSymbol(span.type());
+        writeOffsetGroup(span.range().startInclusive());
+        writeOffsetGroup(span.range().endInclusive());
+        writeVarInt(span.attributes().size());
+        for (final Map.Entry<String, String> attribute : span.attributes().entrySet()) {
+          writeInterned(attribute.getKey());
+          writeString(attribute.getValue());
+        }
+      }
+    }
+  }
+
+  private void writeLocatedString(final LocatedString ls) throws IOException {
+    // as in SerifXML, a proper substring of the original text is given by its offsets alone
+    final boolean isSubstring = originalText != null && !ls.equals(originalText)
+        && originalText.containsExactly(ls);
+    writeBoolean(isSubstring);
+    if (isSubstring) {
+      writeVarInt(ls.referenceBounds().startInclusive().charOffset().asInt());
+      writeVarInt(ls.referenceBounds().endInclusive().charOffset().asInt());
+    } else {
+      writeString(ls.content().utf16CodeUnits());
+      writeVarInt(ls.characterRegions().size());
+      for (final LocatedString.CharacterRegion region : ls.characterRegions()) {
+        writeVarInt(region.contentStartPosInclusive().asInt());
+        writeVarInt(region.contentEndPosExclusive().asInt());
+        writeOffsetGroup(region.referenceStartOffsetInclusive());
+        writeOffsetGroup(region.referenceEndOffsetInclusive());
+      }
+    }
+  }
+
+  private void writeOffsetGroup(final OffsetGroup offsets) throws IOException {
+    writeVarInt(offsets.charOffset().asInt());
+    writeVarInt(offsets.edtOffset().asInt());
+    writeBoolean(offsets.byteOffset().isPresent());
+    if (offsets.byteOffset().isPresent()) {
+      writeVarInt(offsets.byteOffset().get().asInt());
+    }
+  }
+
+  private void writeTokenSequence(final TokenSequence ts) throws IOException {
+    writeVarInt(ts.sentenceIndex());
+    writeFloat(ts.score());
+    writeVarInt(ts.size());
+    for (final Token token : ts) {
+      writeSymbol(token.symbol());
+      writeVarInt(token.startCharOffset().asInt());
+      writeVarInt(token.endCharOffset().asInt() - token.startCharOffset().asInt());
+    }
+    register(ts);
+  }
+
+  private void writeSentenceTheoryBeam(final SentenceTheoryBeam beam) throws IOException {
+    writeReference(beam.sentence().region());
+    writeLocatedString(beam.sentence().locatedString());
+    writeVarInt(beam.numSentenceTheories());
+    for (final SentenceTheory st : beam) {
+      writeSentenceTheory(st);
+    }
+  }
+
+  private void writeSentenceTheory(final SentenceTheory st) throws IOException {
+    if (startPart(st.tokenSequence().isAbsent() ? null : st.tokenSequence())) {
+      writeTokenSequence(st.tokenSequence());
+    }
+    if (startPart(st.names().isAbsent() ? null : st.names())) {
+      writeNames(st.names());
+    }
+    if (startPart(st.nestedNames().orNull())) {
+      writeNestedNames(st.nestedNames().get());
+    }
+    if (startPart(st.valueMentions().isAbsent() ? null : st.valueMentions())) {
+      writeValueMentions(st.valueMentions());
+    }
+    if (startPart(st.parse().isAbsent() ? null : st.parse())) {
+      writeParse(st.parse());
+    }
+    if (startPart(st.mentions().isAbsent() ? null : st.mentions())) {
+      writeMentions(st.mentions());
+    }
+    if (startPart(st.propositions().isAbsent() ? null : st.propositions())) {
+      writePropositions(st.propositions().asList(), st.propositions().mentions());
+      register(st.propositions());
+    }
+    if (startPart(st.dependencies().isAbsent() ? null : st.dependencies())) {
+      writePropositions(st.dependencies().asList(), st.dependencies().mentions());
+      register(st.dependencies());
+    }
+    if (startPart(st.relationMentions().isAbsent() ? null : st.relationMentions())) {
+      writeRelationMentions(st.relationMentions());
+    }
+    if (startPart(st.eventMentions().isAbsent() ? null : st.eventMentions())) {
+      writeEventMentions(st.eventMentions());
+    }
+    writeBoolean(st.hasPOSSequence());
+  }
+
+  /**
+   * Starts writing a part of a sentence theory, which may be absent, written already for an
+   * earlier theory in the beam, or new. Returns whether it is new, in which case it must be
+   * written next.
+   */
+  private boolean startPart(@Nullable final Object part) throws IOException {
+    if (part == null) {
+      writeVarInt(SerifBinary.ABSENT);
+      return false;
+    }
+    final Integer index = objectIndices.get(part);
+    if (index != null) {
+      writeVarInt(index + SerifBinary.FIRST_REFERENCE);
+      return false;
+    }
+    writeVarInt(SerifBinary.NEW);
+    return true;
+  }
+
+  private void writeNames(final Names names) throws IOException {
+    writeReference(names.tokenSequence());
+    writeOptionalDouble(names.score());
+    writeVarInt(names.size());
+    for (final Name name : names) {
+      writeVarInt(name.span().startIndex());
+      writeVarInt(name.span().endIndex());
+      writeSymbol(name.type().name());
+      writeOptionalDouble(name.score());
+      writeOptionalString(name.transliteration());
+      writeOptionalSymbol(name.externalID());
+      register(name);
+    }
+    register(names);
+  }
+
+  private void writeNestedNames(final NestedNames nestedNames) throws IOException {
+    writeReference(nestedNames.tokenSequence());
+    writeReference(nestedNames.parent());
+    writeOptionalDouble(nestedNames.score());
+    writeVarInt(nestedNames.size());
+    for (final NestedName nestedName : nestedNames) {
+      writeVarInt(nestedName.span().startIndex());
+      writeVarInt(nestedName.span().endIndex());
+      writeSymbol(nestedName.type().name());
+      writeReference(nestedName.parent());
+      writeOptionalString(nestedName.transliteration());
+      writeOptionalDouble(nestedName.score());
+      register(nestedName);
+    }
+    register(nestedNames);
+  }
+
+  private void writeValueMentions(final ValueMentions valueMentions) throws IOException {
+    writeVarInt(valueMentions.size());
+    for (final ValueMention valueMention : valueMentions) {
+      writeSymbol(valueMention.fullType().name());
+      writeReference(valueMention.span().tokenSequence());
+      writeVarInt(valueMention.span().startIndex());
+      writeVarInt(valueMention.span().endIndex());
+      writeOptionalSymbol(valueMention.externalID());
+      register(valueMention);
+    }
+    register(valueMentions);
+  }
+
+  private void writeParse(final Parse parse) throws IOException {
+    writeReference(parse.tokenSequence().get());
+    writeFloat(parse.score());
+    writeBoolean(parse.root().isPresent());
+    if (parse.root().isPresent()) {
+      writeSynNode(parse.root().get());
+      registerInPreorder(parse.root().get());
+    }
+    register(parse);
+  }
+
+  private void writeSynNode(final SynNode node) throws IOException {
+    final List<SynNode> children = node.children();
+    writeVarInt(children.size() << 1 | (node.isHeadChild() ? 1 : 0));
+    writeSymbol(node.tag());
+    if (children.isEmpty()) {
+      writeVarInt(node.span().startIndex());
+    } else {
+      for (final SynNode child : children) {
+        writeSynNode(child);
+      }
+    }
+  }
+
+  private void registerInPreorder(final SynNode node) {
+    register(node);
+    for (final SynNode child : node.children()) {
+      registerInPreorder(child);
+    }
+  }
+
+  private void writeMentions(final Mentions mentions) throws IOException {
+    writeOptionalReference(mentions.parse());
+    writeFloat(mentions.descScore());
+    writeFloat(mentions.nameScore());
+    writeVarInt(mentions.size());
+    for (final Mention mention : mentions) {
+      writeReference(mention.node());
+      writeBoolean(mention.synNodeIsTerminalFromToken());
+      if (mention.synNodeIsTerminalFromToken()) {
+        writeToken(mention.startToken());
+        writeToken(mention.endToken());
+      }
+      writeSymbol(Mention.symbolForType(mention.mentionType()));
+      writeSymbol(mention.entityType().name());
+      writeSymbol(mention.entitySubtype().name());
+      writeBoolean(mention.metonymyInfo().isPresent());
+      if (mention.metonymyInfo().isPresent()) {
+        writeSymbol(mention.metonymyInfo().get().role().name());
+        writeSymbol(mention.metonymyInfo().get().intendedType().name());
+      }
+      writeDouble(mention.confidence());
+      writeDouble(mention.linkConfidence());
+      writeOptionalSymbol(mention.externalID());
+      writeOptionalString(mention.model());
+      writeOptionalString(mention.pattern());
+      register(mention);
+    }
+    // mentions may point to later ones
+    for (final Mention mention : mentions) {
+      writeOptionalReference(mention.parent());
+      writeOptionalReference(mention.child());
+      writeOptionalReference(mention.next());
+    }
+    register(mentions);
+  }
+
+  private void writeToken(final Token token) throws IOException {
+    writeReference(token.tokenSequence());
+    writeVarInt(token.index());
+  }
+
+  private void writePropositions(final List<Proposition> propositions,
+      final Optional<Mentions> mentions) throws IOException {
+    writeOptionalReference(mentions);
+    writeVarInt(propositions.size());
+    final Map<Proposition, Integer> positions = new IdentityHashMap<>();
+    for (int i = 0; i < propositions.size(); ++i) {
+      positions.put(propositions.get(i), i);
+    }
+    final Set<Proposition> started = Sets.newIdentityHashSet();
+    for (final Proposition proposition : propositions) {
+      writeAfterArguments(proposition, positions, started);
+    }
+  }
+
+  // a proposition may take later propositions in its set as arguments, which are written first,
+  // each with its position in the set
+  private void writeAfterArguments(final Proposition proposition,
+      final Map<Proposition, Integer> positions, final Set<Proposition> started)
+      throws IOException {
+    if (!started.add(proposition)) {
+      return;
+    }
+    for (final Proposition.Argument arg : proposition.args()) {
+      if (arg instanceof Proposition.PropositionArgument) {
+        final Proposition argProposition = ((Proposition.PropositionArgument) arg).proposition();
+        if (positions.containsKey(argProposition)) {
+          writeAfterArguments(argProposition, positions, started);
+        }
+      }
+    }
+
+    writeVarInt(positions.get(proposition));
+    writeSymbol(proposition.predType().name());
+    writeOptionalReference(proposition.predHead());
+    writeOptionalReference(proposition.particle());
+    writeOptionalReference(proposition.adverb());
+    writeOptionalReference(proposition.negation());
+    writeOptionalReference(proposition.modal());
+    writeVarInt(proposition.statuses().size());
+    for (final Proposition.Status status : proposition.statuses()) {
+      writeSymbol(status.name());
+    }
+    writeVarInt(proposition.numArgs());
+    for (final Proposition.Argument arg : proposition.args()) {
+      if (arg instanceof Proposition.MentionArgument) {
+        writeVarInt(SerifBinary.MENTION_ARGUMENT);
+        writeOptionalSymbol(arg.role());
+        writeReference(((Proposition.MentionArgument) arg).mention());
+      } else if (arg instanceof Proposition.TextArgument) {
+        writeVarInt(SerifBinary.TEXT_ARGUMENT);
+        writeOptionalSymbol(arg.role());
+        writeReference(((Proposition.TextArgument) arg).node());
+      } else if (arg instanceof Proposition.PropositionArgument) {
+        writeVarInt(SerifBinary.PROPOSITION_ARGUMENT);
+        writeOptionalSymbol(arg.role());
+        writeReference(((Proposition.PropositionArgument) arg).proposition());
+      } else {
+        throw new SerifException("Cannot write proposition argument " + arg
+            + " in binary SerifXML");
+      }
+    }
+    register(proposition);
+  }
+
+  private void writeRelationMentions(final RelationMentions relationMentions)
+      throws IOException {
+    writeVarInt(relationMentions.size());
+    for (final RelationMention relationMention : relationMentions) {
+      writeSymbol(relationMention.type());
+      writeReference(relationMention.leftMention());
+      writeReference(relationMention.rightMention());
+      writeOptionalReference(relationMention.timeArg());
+      writeOptionalSymbol(relationMention.timeRole());
+      writeAttribute(relationMention.modality());
+      writeAttribute(relationMention.tense());
+      writeOptionalSymbol(relationMention.rawType());
+      writeOptionalSymbol(relationMention.externalID());
+      writeDouble(relationMention.score());
+      writeOptionalString(relationMention.pattern());
+      writeOptionalString(relationMention.model());
+      register(relationMention);
+    }
+    register(relationMentions);
+  }
+
+  private void writeEventMentions(final EventMentions eventMentions) throws IOException {
+    writeOptionalReference(eventMentions.parse());
+    writeVarInt(eventMentions.size());
+    for (final EventMention eventMention : eventMentions) {
+      writeSymbol(eventMention.type());
+      writeOptionalReference(eventMention.anchorProposition());
+      writeOptionalReference(Optional.fromNullable(eventMention.anchorNode()));
+      writeVarInt(eventMention.arguments().size());
+      for (final EventMention.Argument arg : eventMention.arguments()) {
+        writeEventMentionArgument(arg);
+      }
+      writeOptionalSymbol(eventMention.pattern());
+      writeAttribute(eventMention.modality());
+      writeDouble(eventMention.modalityScore());
+      writeAttribute(eventMention.polarity());
+      writeAttribute(eventMention.genericity());
+      writeDouble(eventMention.genericityScore());
+      writeOptionalAttribute(eventMention.gainLoss());
+      writeOptionalAttribute(eventMention.indicator());
+      writeAttribute(eventMention.tense());
+      writeAttribute(eventMention.directionOfChange());
+      writeOptionalSymbol(eventMention.externalID());
+      writeDouble(eventMention.score());
+      writeOptionalInt(eventMention.semanticPhraseStart());
+      writeOptionalInt(eventMention.semanticPhraseEnd());
+      writeOptionalSymbol(eventMention.model());
+      writeEventTypes(eventMention.eventTypes());
+      writeVarInt(eventMention.anchors().size());
+      for (final EventMention.Anchor anchor : eventMention.anchors()) {
+        writeOptionalReference(Optional.fromNullable(anchor.anchorNode()));
+        writeOptionalReference(anchor.anchorProposition());
+      }
+      writeEventTypes(eventMention.factorTypes());
+      register(eventMention);
+    }
+    register(eventMentions);
+  }
+
+  private void writeEventMentionArgument(final EventMention.Argument arg) throws IOException {
+    if (arg instanceof EventMention.MentionArgument) {
+      writeVarInt(SerifBinary.MENTION_ARGUMENT);
+      writeReference(((EventMention.MentionArgument) arg).mention());
+    } else if (arg instanceof EventMention.ValueMentionArgument) {
+      writeVarInt(SerifBinary.VALUE_ARGUMENT);
+      writeReference(((EventMention.ValueMentionArgument) arg).valueMention());
+    } else if (arg instanceof EventMention.SpanArgument) {
+      writeVarInt(SerifBinary.SPAN_ARGUMENT);
+      writeReference(arg.span().tokenSequence());
+      writeVarInt(arg.span().startIndex());
+      writeVarInt(arg.span().endIndex());
+    } else {
+      // SerifXML cannot hold event mentions as arguments either
+      throw new SerifException("Cannot write event mention argument " + arg
+          + " in binary SerifXML");
+    }
+    writeSymbol(arg.role());
+    writeFloat(arg.score());
+  }
+
+  private void writeEventTypes(final List<EventMention.EventType> eventTypes)
+      throws IOException {
+    writeVarInt(eventTypes.size());
+    for (final EventMention.EventType eventType : eventTypes) {
+      writeSymbol(eventType.eventType());
+      writeDouble(eventType.score());
+      writeOptionalDouble(eventType.getMagnitude());
+      writeOptionalAttribute(eventType.getTrend());
+    }
+  }
+
+  private void writeValues(final Values values) throws IOException {
+    writeBoolean(!values.isAbsent());
+    if (values.isAbsent()) {
+      return;
+    }
+    writeVarInt(values.size());
+    for (final Value value : values) {
+      writeReference(value.valueMention());
+      writeOptionalSymbol(value.timexVal());
+      writeOptionalSymbol(value.timexAnchorVal());
+      writeOptionalSymbol(value.timexAnchorDir());
+      writeOptionalSymbol(value.timexSet());
+      writeOptionalSymbol(value.timexMod());
+      writeOptionalSymbol(value.timexNonSpecific());
+      register(value);
+    }
+  }
+
+  private void writeEntities(final Entities entities) throws IOException {
+    writeBoolean(!entities.isAbsent());
+    if (entities.isAbsent()) {
+      return;
+    }
+    writeOptionalString(Optional.fromNullable(entities.score()));
+    writeVarInt(entities.size());
+    for (final Entity entity : entities) {
+      writeSymbol(entity.type().name());
+      writeSymbol(entity.subtype().name());
+      writeBoolean(entity.generic());
+      writeOptionalInt(entity.guid());
+      writeOptionalSymbol(entity.externalID());
+      writeVarInt(entity.mentionSet().size());
+      for (final Mention mention : entity.mentionSet()) {
+        writeReference(mention);
+        writeInterned(entity.confidence(mention).name());
+      }
+      register(entity);
+    }
+  }
+
+  private void writeRelations(final Relations relations) throws IOException {
+    writeBoolean(!relations.isAbsent());
+    if (relations.isAbsent()) {
+      return;
+    }
+    writeVarInt(relations.numRelations());
+    for (final Relation relation : relations) {
+      writeReference(relation.leftEntity());
+      writeReference(relation.rightEntity());
+      writeVarInt(relation.relationMentions().size());
+      for (final RelationMention relationMention : relation.relationMentions()) {
+        writeReference(relationMention);
+      }
+      writeSymbol(relation.type());
+      writeAttribute(relation.tense());
+      writeAttribute(relation.modality());
+      writeFloat(relation.confidence());
+      writeOptionalSymbol(relation.externalID());
+    }
+  }
+
+  private void writeEvents(final Events events) throws IOException {
+    writeBoolean(!events.isAbsent());
+    if (events.isAbsent()) {
+      return;
+    }
+    writeVarInt(events.numEvents());
+    for (final Event event : events) {
+      writeVarInt(event.arguments().size());
+      for (final Event.Argument arg : event.arguments()) {
+        if (arg instanceof Event.EntityArgument) {
+          writeVarInt(SerifBinary.ENTITY_ARGUMENT);
+          writeReference(((Event.EntityArgument) arg).entity());
+        } else if (arg instanceof Event.ValueArgument) {
+          writeVarInt(SerifBinary.VALUE_ARGUMENT);
+          writeReference(((Event.ValueArgument) arg).value());
+        } else {
+          throw new SerifException("Cannot write event argument " + arg + " in binary SerifXML");
+        }
+        writeSymbol(arg.role());
+      }
+      writeVarInt(event.eventMentions().size());
+      for (final EventMention eventMention : event.eventMentions()) {
+        writeReference(eventMention);
+      }
+      writeSymbol(event.type());
+      writeAttribute(event.genericity());
+      writeAttribute(event.modality());
+      writeAttribute(event.polarity());
+      writeAttribute(event.tense());
+      writeOptionalSymbol(event.externalID());
+    }
+  }
+
+  private void register(final Object o) {
+    objectIndices.put(o, objectIndices.size());
+  }
+
+  private void writeReference(final Object o) throws IOException {
+    writeVarInt(knownIndex(o));
+  }
+
+  private int knownIndex(final Object o) {
+    final Integer ret = objectIndices.get(checkNotNull(o));
+    if (ret == null) {
+      throw new SerifException("Cannot write a reference in binary SerifXML to " + o
+          + ", which is not part of the document or is referred to before it is written");
+    }
+    return ret;
+  }
+
+  private void writeOptionalReference(final Optional<?> o) throws IOException {
+    if (o.isPresent()) {
+      writeVarInt(knownIndex(o.get()) + 1);
+    } else {
+      writeVarInt(SerifBinary.ABSENT);
+    }
+  }
+
+  private void writeAttribute(final Attribute attribute) throws IOException {
+    writeSymbol(attribute.name());
+  }
+
+  private void writeOptionalAttribute(final Optional<? extends Attribute> attribute)
+      throws IOException {
+    writeBoolean(attribute.isPresent());
+    if (attribute.isPresent()) {
+      writeAttribute(attribute.get());
+    }
+  }
+
+  private void writeSymbol(final Symbol symbol) throws IOException {
+    writeInterned(symbol.asString());
+  }
+
+  private void writeOptionalSymbol(final Optional<Symbol> symbol) throws IOException {
+    writeBoolean(symbol.isPresent());
+    if (symbol.isPresent()) {
+      writeSymbol(symbol.get());
+    }
+  }
+
+  private void writeInterned(final String s) throws IOException {
+    final Integer index = stringIndices.get(s);
+    if (index != null) {
+      writeVarInt(index + 1);
+    } else {
+      stringIndices.put(s, stringIndices.size());
+      writeVarInt(0);
+      writeString(s);
+    }
+  }
+
+  private void writeOptionalString(final Optional<String> s) throws IOException {
+    writeBoolean(s.isPresent());
+    if (s.isPresent()) {
+      writeString(s.get());
+    }
+  }
+
+  private void writeString(final String s) throws IOException {
+    final byte[] bytes = s.getBytes(Charsets.UTF_8);
+    writeVarInt(bytes.length);
+    if (bytes.length > buffer.length - bufferPos) {
+      flushBuffer();
+    }
+    if (bytes.length > buffer.length) {
+      out.write(bytes);
+    } else {
+      System.arraycopy(bytes, 0, buffer, bufferPos, bytes.length);
+      bufferPos += bytes.length;
+    }
+  }
+
+  private void writeOptionalInt(final Optional<Integer> i) throws IOException {
+    writeBoolean(i.isPresent());
+    if (i.isPresent()) {
+      writeVarInt(i.get());
+    }
+  }
+
+  private void writeOptionalDouble(final Optional<Double> d) throws IOException {
+    writeBoolean(d.isPresent());
+    if (d.isPresent()) {
+      writeDouble(d.get());
+    }
+  }
+
+  private void writeFloat(final float f) throws IOException {
+    final int bits = Float.floatToIntBits(f);
+    for (int shift = 0; shift < 32; shift += 8) {
+      writeByte(bits >>> shift);
+    }
+  }
+
+  private void writeDouble(final double d) throws IOException {
+    writeLong(Double.doubleToLongBits(d));
+  }
+
+  private void writeLong(final long l) throws IOException {
+    for (int shift = 0; shift < 64; shift += 8) {
+      writeByte((int) (l >>> shift));
+    }
+  }
+
+  private void writeBoolean(final boolean b) throws IOException {
+    writeByte(b ? 1 : 0);
+  }
+
+  // negative numbers are written as five bytes
+  private void writeVarInt(int i) throws IOException {
+    while ((i & ~0x7F) != 0) {
+      writeByte((i & 0x7F) | 0x80);
+      i >>>= 7;
+    }
+    writeByte(i);
+  }
+
+  private void writeByte(final int b) throws IOException {
+    if (bufferPos == buffer.length) {
+      flushBuffer();
+    }
+    buffer[bufferPos++] = (byte) b;
+  }
+
+  private void flushBuffer() throws IOException {
+    out.write(buffer, 0, bufferPos);
+    bufferPos = 0;
+  }
+}
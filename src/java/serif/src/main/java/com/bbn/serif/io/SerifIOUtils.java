@@ -16,6 +16,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.transform;
@@ -88,6 +89,48 @@ public final class SerifIOUtils {
     });
   }
 
+  /**
+   * Like {@link #docTheoriesFromFiles(Iterable, DocTheoryLoader)}, but loads the files in parallel
+   * on {@code executor}, which remains owned by the caller. At most {@code maxInFlight} documents
+   * are loaded or waiting to be consumed at any time; further loads are submitted only as the
+   * returned iterator is advanced. Documents are returned in the same order as {@code files}.
+   * {@code loader} must be thread-safe, as {@link SerifXMLLoader} is.
+   */
+  public static Iterable<DocTheory> docTheoriesFromFilesInParallel(final Iterable<File> files,
+      final DocTheoryLoader loader, final ExecutorService executor, final int maxInFlight) {
+    return ParallelDocTheoryIterator.over(transform(files, TO_UTF8_CHAR_SOURCE), loader,
+        executor, maxInFlight, true);
+  }
+
+  /**
+   * Like {@link #docTheoriesFromFilesInParallel(Iterable, DocTheoryLoader, ExecutorService, int)},
+   * but returns documents as soon as they finish loading rather than in input order. This keeps
+   * the consumer from waiting on a single slow document while others are ready.
+   */
+  public static Iterable<DocTheory> docTheoriesFromFilesAsLoaded(final Iterable<File> files,
+      final DocTheoryLoader loader, final ExecutorService executor, final int maxInFlight) {
+    return ParallelDocTheoryIterator.over(transform(files, TO_UTF8_CHAR_SOURCE), loader,
+        executor, maxInFlight, false);
+  }
+
+  /**
+   * Like {@link #docTheoriesFromFilesInParallel(Iterable, DocTheoryLoader, ExecutorService, int)},
+   * but for arbitrary {@link CharSource}s.
+   */
+  public static Iterable<DocTheory> docTheoriesFromCharSourcesInParallel(
+      final Iterable<CharSource> sources, final DocTheoryLoader loader,
+      final ExecutorService executor, final int maxInFlight) {
+    return ParallelDocTheoryIterator.over(sources, loader, executor, maxInFlight, true);
+  }
+
+  private static final Function<File, CharSource> TO_UTF8_CHAR_SOURCE =
+      new Function<File, CharSource>() {
+        @Override
+        public CharSource apply(final File f) {
+          return Files.asCharSource(f, Charsets.UTF_8);
+        }
+      };
+
   /**
    * Returns an {@link java.lang.Iterable} over the sentence theories in the supplied SerifXML
    * files, which will be loaded using the supplied {@link com.bbn.serif.io.SerifXMLLoader}. The
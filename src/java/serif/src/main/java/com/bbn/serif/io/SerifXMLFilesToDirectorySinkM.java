@@ -12,13 +12,31 @@ import com.google.inject.Provides;
 import java.io.File;
 import java.util.Set;
 
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
+/**
+ * Writes documents to {@link OutputDirectoryP} as SerifXML or, if the optional boolean parameter
+ * {@value #BINARY_OUTPUT_PARAM} is true, as binary SerifXML.
+ */
 public class SerifXMLFilesToDirectorySinkM extends AbstractModule {
 
+  public static final String BINARY_OUTPUT_PARAM = "com.bbn.serif.io.binaryOutput";
+
+  @Provides
+  public Set<DocTheorySink> getDocTheorySinks(DocTheorySink sink) {
+    return ImmutableSet.of(sink);
+  }
+
   @Provides
-  public Set<DocTheorySink> getDocTheorySinks(SerifXMLFilesToDirectorySink sink) {
-    return ImmutableSet.of((DocTheorySink) sink);
+  DocTheorySink getDocTheorySink(Parameters params,
+      Provider<SerifXMLFilesToDirectorySink> xmlSink,
+      Provider<SerifBinaryFilesToDirectorySink> binarySink) {
+    if (params.getOptionalBoolean(BINARY_OUTPUT_PARAM).or(false)) {
+      return binarySink.get();
+    } else {
+      return xmlSink.get();
+    }
   }
 
   @Provides
@@ -47,6 +65,5 @@ public class SerifXMLFilesToDirectorySinkM extends AbstractModule {
 
   @Override
   protected void configure() {
-    bind(DocTheorySink.class).to(SerifXMLFilesToDirectorySink.class);
   }
 }
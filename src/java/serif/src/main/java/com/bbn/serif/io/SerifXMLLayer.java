@@ -0,0 +1,102 @@
+package com.bbn.serif.io;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The layers of analysis in a SerifXML document which {@link SerifXMLLoader} can be told to load
+ * or skip (see {@link SerifXMLLoader#layersToLoad()}). The document itself, its regions and zones
+ * and the token sequences of its sentences are always loaded.
+ *
+ * Each layer lists the layers its theories may refer to. Asking for a layer always loads these as
+ * well, so every reference in what is loaded can still be resolved and checked.
+ */
+public enum SerifXMLLayer {
+  MORPHOLOGY(of("Algorithms", "MorphTokenAnalyses", "MorphTokenSequence")),
+  NAMES(of("NameTheory", "NestedNameTheory")),
+  VALUE_MENTIONS(of("ValueMentionSet")),
+  PARSES(of("Parse", "NPChunkTheory")),
+  MENTIONS(of("MentionSet"), PARSES),
+  PROPOSITIONS(of("PropositionSet", "DependencySet"), MENTIONS),
+  RELATION_MENTIONS(of("RelMentionSet"), MENTIONS, VALUE_MENTIONS),
+  EVENT_MENTIONS(of("EventMentionSet"), MENTIONS, VALUE_MENTIONS, PROPOSITIONS),
+  ENTITIES(of("EntitySet"), MENTIONS),
+  VALUES(of("ValueSet"), VALUE_MENTIONS),
+  RELATIONS(of("RelationSet"), RELATION_MENTIONS, ENTITIES),
+  EVENTS(of("EventSet"), EVENT_MENTIONS, ENTITIES, VALUES),
+  ACTORS(of("ActorMentionSet", "ActorEntitySet", "DocumentActorInfo"), MENTIONS, ENTITIES),
+  FACTS(of("FactSet"), MENTIONS, VALUE_MENTIONS),
+  ICEWS_EVENT_MENTIONS(of("ICEWSEventMentionSet"), ACTORS, PROPOSITIONS, VALUE_MENTIONS),
+  EVENT_EVENT_RELATION_MENTIONS(of("EventEventRelationMentionSet"), EVENT_MENTIONS,
+      ICEWS_EVENT_MENTIONS),
+  FLEXIBLE_EVENT_MENTIONS(of(SerifXML.FLEXIBLE_EVENT_MENTION_SET_ELEMENT), MENTIONS,
+      PROPOSITIONS, VALUE_MENTIONS),
+  ACRONYMS(of("AcronymSet"), MENTIONS),
+  DOCUMENT_EVENTS(of(SerifXML.DOC_EVENT_ARG_SET_ELEMENT, SerifXML.DOC_EVENT_SET_ELEMENT),
+      EVENT_MENTIONS, ENTITIES, VALUES, FLEXIBLE_EVENT_MENTIONS);
+
+  private final ImmutableSet<String> elementNames;
+  private final ImmutableSet<SerifXMLLayer> prerequisites;
+
+  SerifXMLLayer(final ImmutableSet<String> elementNames, final SerifXMLLayer... prerequisites) {
+    this.elementNames = elementNames;
+    // a layer's prerequisites are always declared before it, so theirs are already known
+    final Set<SerifXMLLayer> allPrerequisites = Sets.newHashSet();
+    for (final SerifXMLLayer prerequisite : prerequisites) {
+      allPrerequisites.add(prerequisite);
+      allPrerequisites.addAll(prerequisite.prerequisites);
+    }
+    this.prerequisites = ImmutableSet.copyOf(allPrerequisites);
+  }
+
+  /**
+   * The names of the SerifXML elements, at the document or sentence level, which hold this layer.
+   */
+  public ImmutableSet<String> elementNames() {
+    return elementNames;
+  }
+
+  /**
+   * All layers which this layer may refer to, directly or indirectly.
+   */
+  public ImmutableSet<SerifXMLLayer> prerequisites() {
+    return prerequisites;
+  }
+
+  public static ImmutableSet<SerifXMLLayer> all() {
+    return Sets.immutableEnumSet(EnumSet.allOf(SerifXMLLayer.class));
+  }
+
+  /**
+   * {@code layers} together with all their prerequisites.
+   */
+  public static ImmutableSet<SerifXMLLayer> withPrerequisites(
+      final Iterable<SerifXMLLayer> layers) {
+    final Set<SerifXMLLayer> ret = EnumSet.noneOf(SerifXMLLayer.class);
+    for (final SerifXMLLayer layer : layers) {
+      ret.add(layer);
+      ret.addAll(layer.prerequisites);
+    }
+    return Sets.immutableEnumSet(ret);
+  }
+
+  /**
+   * The names of the elements holding all layers not in {@code layers}.
+   */
+  static ImmutableSet<String> elementNamesNotIn(final Set<SerifXMLLayer> layers) {
+    final ImmutableSet.Builder<String> ret = ImmutableSet.builder();
+    for (final SerifXMLLayer layer : values()) {
+      if (!layers.contains(layer)) {
+        ret.addAll(layer.elementNames);
+      }
+    }
+    return ret.build();
+  }
+
+  private static ImmutableSet<String> of(final String... elementNames) {
+    return ImmutableSet.copyOf(elementNames);
+  }
+}
@@ -35,6 +35,7 @@ import com.bbn.serif.theories.EventMention;
 import com.bbn.serif.theories.EventMentions;
 import com.bbn.serif.theories.Events;
 import com.bbn.serif.theories.Gloss;
+import com.bbn.serif.theories.LazySentenceSource;
 import com.bbn.serif.theories.LexicalForm;
 import com.bbn.serif.theories.Mention;
 import com.bbn.serif.theories.Mention.MetonymyInfo;
@@ -94,6 +95,7 @@ import com.bbn.serif.theories.EventEventRelationMention;
 import com.bbn.serif.theories.EventEventRelationMentions;
 import com.bbn.serif.types.*;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
@@ -106,7 +108,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Range;
+import com.google.common.io.ByteSource;
 import com.google.common.io.CharSource;
+import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
 
@@ -124,13 +128,18 @@ import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -143,6 +152,8 @@ import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 
 import static com.bbn.bue.common.xml.XMLUtils.checkMissing;
 import static com.bbn.bue.common.xml.XMLUtils.childrenWithTag;
@@ -187,6 +198,13 @@ import static com.google.common.base.Preconditions.checkState;
  * If you need to create a {@code SerifXMLLoader} without injection (e.g. for tests), use
  * {@link #builder()}.
  *
+ * {@code SerifXMLLoader}s are immutable and thread-safe: a single instance may be shared by any
+ * number of threads loading documents concurrently. All per-document state lives in a
+ * {@code SerifXMLLoading} object created for each load, and the underlying XML parsers are
+ * pooled per thread and reused across loads. See
+ * {@link SerifIOUtils#docTheoriesFromFilesInParallel(Iterable, DocTheoryLoader,
+ * java.util.concurrent.ExecutorService, int)} for loading many documents at once.
+ *
  * Concerning 'sloppy offsets': This is off by default. If turned on, cases where a {@link
  * LocatedString} we load up does not have offsets matching those given in the SerifXML are warnings
  * rather than errors. This is sometimes necessary when processing documents from old (pre-2015)
@@ -242,6 +260,42 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     return SerifLanguage.byLongNames();
   }
 
+  /**
+   * If true, SerifXML read from a {@link CharSource} or {@link Reader} is parsed with a StAX
+   * pull parser straight from the underlying stream rather than being read into a {@link String}
+   * and parsed by a DOM parser, and each sentence is built as soon as it has been read. This
+   * produces the same {@link DocTheory} but uses much less memory on large documents, since
+   * neither the text nor the elements of the whole document are ever held at once. See {@link
+   * SerifXMLStreamParsing} for details.
+   */
+  @org.immutables.value.Value.Default
+  public boolean streamingParse() {
+    return false;
+  }
+
+  /**
+   * The layers of analysis to load. The SerifXML elements holding all other layers are skipped
+   * without building any theory objects for them (and, when parsing with StAX, without even
+   * building elements for them), so loading only tokens, names and mentions, say, costs a
+   * fraction of a full load. The prerequisites of the specified layers are always loaded as well,
+   * so all references in what is loaded are still resolved and checked. Binary SerifXML is always
+   * loaded in full. Defaults to all layers.
+   */
+  @org.immutables.value.Value.Default
+  public ImmutableSet<SerifXMLLayer> layersToLoad() {
+    return SerifXMLLayer.all();
+  }
+
+  @org.immutables.value.Value.Lazy
+  ImmutableSet<SerifXMLLayer> layersToLoadWithPrerequisites() {
+    return SerifXMLLayer.withPrerequisites(layersToLoad());
+  }
+
+  @org.immutables.value.Value.Lazy
+  ImmutableSet<String> skippedElementNames() {
+    return SerifXMLLayer.elementNamesNotIn(layersToLoadWithPrerequisites());
+  }
+
 
   private static final Logger log = LoggerFactory.getLogger(SerifXMLLoader.class);
 
@@ -260,9 +314,13 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     return loadFrom(Resources.asCharSource(Resources.getResource(resourceString), Charsets.UTF_8));
   }
 
+  /**
+   * Loads a document from either a UTF-8 SerifXML file or a binary SerifXML file (see {@link
+   * SerifXMLWriter#saveBinaryTo(DocTheory, com.google.common.io.ByteSink)}).
+   */
   public DocTheory loadFrom(final File f) throws IOException {
     try {
-      return loadFrom(Files.asCharSource(f, Charsets.UTF_8));
+      return loadFrom(Files.asByteSource(f));
     } catch (final Exception e) {
       throw new IOException(
           String.format("Error loading SerifXML document %s", f.getAbsolutePath()), e);
@@ -274,6 +332,11 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
   @Override
   public DocTheory loadFrom(final CharSource source) throws IOException {
     try {
+      if (streamingParse()) {
+        try (Reader reader = source.openStream()) {
+          return loadFrom(reader);
+        }
+      }
       return loadFrom(source.read());
     } catch (final Exception e) {
       throw new IOException(
@@ -281,6 +344,37 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     }
   }
 
+  /**
+   * Loads a document from either UTF-8 SerifXML or binary SerifXML (see {@link
+   * SerifXMLWriter#saveBinaryTo(DocTheory, com.google.common.io.ByteSink)}), depending on what
+   * {@code source} contains.
+   */
+  public DocTheory loadFrom(final ByteSource source) throws IOException {
+    // sniff the format from the same stream we load from, rather than opening the source twice
+    try (InputStream in = new BufferedInputStream(source.openStream())) {
+      if (SerifBinary.isSerifBinary(in)) {
+        return loadFromBinary(in);
+      }
+      final Reader reader = new InputStreamReader(in, Charsets.UTF_8);
+      if (streamingParse()) {
+        return loadFrom(reader);
+      }
+      return loadFromString(CharStreams.toString(reader));
+    } catch (final Exception e) {
+      throw new IOException(
+          String.format("Error loading SerifXML document %s", source), e);
+    }
+  }
+
+  /**
+   * Loads a document in the binary SerifXML format from {@code in}. All layers are loaded,
+   * whatever {@link #layersToLoad()} says, since the theory objects are read directly rather than
+   * built from elements which could be skipped. The caller is responsible for closing {@code in}.
+   */
+  public DocTheory loadFromBinary(final InputStream in) throws IOException {
+    return SerifBinaryReader.read(in, languageLookupMap());
+  }
+
   /**
    * Prefer the clearer {@link #loadFromString(String)} to avoid errors where the user means to call
    * {@link #loadFrom(java.io.File)} but passes a string instead.
@@ -313,15 +407,123 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     }
     final InputSource in = new InputSource(new StringReader(newContent));
     try {
-      final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-      final DocumentBuilder builder = factory.newDocumentBuilder();
-      return new SerifXMLLoading().loadFrom(builder.parse(in));
-    } catch (final ParserConfigurationException | SAXException e) {
+      return new SerifXMLLoading().loadFrom(documentBuilderForCurrentThread().parse(in));
+    } catch (final SAXException e) {
+      throw new SerifXMLException("Error parsing xml", e);
+    }
+  }
+
+  /**
+   * Loads a SerifXML document from {@code reader} using the StAX parser, regardless of the
+   * setting of {@link #streamingParse()}. The caller is responsible for closing {@code reader}.
+   */
+  public DocTheory loadFrom(final Reader reader) throws IOException {
+    try {
+      return SerifXMLStreamParsing.load(new CarriageReturnEscapingReader(reader),
+          STREAM_INPUT_FACTORIES.get(), documentBuilderForCurrentThread(), skippedElementNames(),
+          new SerifXMLLoading());
+    } catch (final XMLStreamException e) {
       throw new SerifXMLException("Error parsing xml", e);
     }
   }
 
+  /**
+   * Opens a SerifXML document for lazy loading. Only the document header is loaded immediately;
+   * each sentence is built from its own slice of {@code source} when it is first reached, and the
+   * document-level sets when one of them is first asked for. See {@link
+   * DocTheory#lazilyLoaded(Document, LazySentenceSource)}. Errors reading or parsing the rest of
+   * the document surface later as {@link SerifXMLException}s. The source is assumed to be UTF-8
+   * encoded and must not change while the document is in use.
+   */
+  @Beta
+  public DocTheory loadLazilyFrom(final ByteSource source) throws IOException {
+    try {
+      return LazySerifXMLSentences.open(source, this);
+    } catch (final Exception e) {
+      throw new IOException(
+          String.format("Error loading SerifXML document %s", source), e);
+    }
+  }
+
+  @Beta
+  public DocTheory loadLazilyFrom(final File f) throws IOException {
+    return loadLazilyFrom(Files.asByteSource(f));
+  }
+
+  /**
+   * Parses XML with the StAX parser for this thread. {@code reader} should already be escaping
+   * carriage returns if necessary.
+   */
+  static org.w3c.dom.Document parseWithStAX(final Reader reader) throws XMLStreamException {
+    return parseWithStAX(reader, ImmutableSet.<String>of());
+  }
+
+  /**
+   * As {@link #parseWithStAX(Reader)}, but leaves out the elements named in {@code
+   * skippedElementNames} and everything inside them.
+   */
+  static org.w3c.dom.Document parseWithStAX(final Reader reader,
+      final Set<String> skippedElementNames) throws XMLStreamException {
+    return SerifXMLStreamParsing.parse(reader, STREAM_INPUT_FACTORIES.get(),
+        documentBuilderForCurrentThread(), skippedElementNames);
+  }
+
+  /**
+   * Gets the {@code Document} element of a parsed SerifXML document, which is either the root or
+   * immediately below a {@code SerifXML} root.
+   */
+  static Element documentElement(final org.w3c.dom.Document xml) {
+    final Element root = xml.getDocumentElement();
+    final String rootTag = root.getTagName();
+
+    if (rootTag.equalsIgnoreCase("SerifXML")) {
+      final Optional<Element> documentChild = directChild(root, "Document");
+      if (documentChild.isPresent()) {
+        return documentChild.get();
+      } else {
+        throw new SerifXMLException(
+            "If a SerifXML has SerifXML tag at the top-level, it must have a Document element immediately below it");
+      }
+    } else if (rootTag.equalsIgnoreCase("Document")) {
+      return root;
+    } else {
+      throw new SerifXMLException("SerifXML should have a root of SerifXML or Document");
+    }
+  }
+
+  // Neither XML parser factories nor the parsers they create are guaranteed to be thread-safe,
+  // but looking up and configuring them is a noticeable part of the cost of loading a small
+  // document.  We therefore keep one of each per thread and reuse them for every load on that
+  // thread.
+  private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS =
+      new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+          try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder();
+          } catch (final ParserConfigurationException e) {
+            throw new SerifXMLException("XML parser configuration error", e);
+          }
+        }
+      };
+
+  private static final ThreadLocal<XMLInputFactory> STREAM_INPUT_FACTORIES =
+      new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+          return SerifXMLStreamParsing.createInputFactory();
+        }
+      };
+
+  private static DocumentBuilder documentBuilderForCurrentThread() {
+    final DocumentBuilder ret = DOCUMENT_BUILDERS.get();
+    // clear anything left over from the previous document, including after a failed parse
+    ret.reset();
+    return ret;
+  }
+
   /**
    * Throws a SerifException when failing to process a CharSource Handle the iteration yourself if
    * you must deal with... problematic documents
@@ -357,32 +559,31 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
 
   /**
    * Holds state information for a single instance of loading a SerifXML document. We do this
-   * to allow SerifXML loaders to be thread-safe.
+   * to allow SerifXML loaders to be thread-safe. A new instance is created for every document
+   * and it is never shared between threads, so it needs no synchronization.
    */
   final class SerifXMLLoading {
 
     private final Map<String, Object> idMap = new HashMap<>();
+    // ids recorded by the loading this one was created from; see childLoading()
+    @Nullable
+    private final SerifXMLLoading parent;
     private final SortedSet<String> warnings = new TreeSet<>();
     private Optional<OffsetGroup> sourceDocumentOffsetShift = Optional.absent();
+    private final Set<SerifXMLLayer> layers = layersToLoadWithPrerequisites();
+    private final Set<String> skippedElementNames = skippedElementNames();
 
-    public synchronized DocTheory loadFrom(final org.w3c.dom.Document xml) {
-      final Element root = xml.getDocumentElement();
-      final String rootTag = root.getTagName();
+    SerifXMLLoading() {
+      this.parent = null;
+    }
 
-      final DocTheory ret;
-      if (rootTag.equalsIgnoreCase("SerifXML")) {
-        final Optional<Element> documentChild = directChild(root, "Document");
-        if (documentChild.isPresent()) {
-          ret = loadFrom(documentChild.get());
-        } else {
-          throw new SerifXMLException(
-              "If a SerifXML has SerifXML tag at the top-level, it must have a Document element immediately below it");
-        }
-      } else if (rootTag.equalsIgnoreCase("Document")) {
-        ret = loadFrom(root);
-      } else {
-        throw new SerifXMLException("SerifXML should have a root of SerifXML or Document");
-      }
+    private SerifXMLLoading(final SerifXMLLoading parent) {
+      this.parent = checkNotNull(parent);
+      this.sourceDocumentOffsetShift = parent.sourceDocumentOffsetShift;
+    }
+
+    public DocTheory loadFrom(final org.w3c.dom.Document xml) {
+      final DocTheory ret = loadFrom(documentElement(xml));
       reportWarnings(ret.docid());
       return ret;
     }
@@ -403,9 +604,9 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       warnings.add(msg);
     }
 
-    public synchronized DocTheory loadFrom(final Element xml) {
+    public DocTheory loadFrom(final Element xml) {
       idMap.clear();
-      final Document document = toDocument(xml);
+      final Document document = loadDocumentHeader(xml);
       final DocTheory.Builder builder = DocTheory.builderForDocument(document);
 
       // because the EventMentionArguments in SentenceTheories may refer to ValueMentions
@@ -413,84 +614,247 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       // the sentence-level token sequences, we need to createWithMentions all the token sequences up front
       final List<TokenSequence> tokenSequences = gatherTokenSequences(xml, document.originalText());
 
+      addDocumentLevelValueMentions(xml, tokenSequences, builder);
+
+      final List<SentenceTheoryBeam> sentenceTheoryBeams = Lists.newArrayList();
+      final Optional<Element> sentencesElement = directChild(xml, "Sentences");
+      if (sentencesElement.isPresent()) {
+        int sentenceIdx = 0;
+        for (Node child = sentencesElement.get().getFirstChild(); child != null;
+             child = child.getNextSibling()) {
+          if (child instanceof Element) {
+            sentenceTheoryBeams.add(toSentenceTheoryBeam((Element) child, sentenceIdx, document));
+            ++sentenceIdx;
+          }
+        }
+      }
+      builder.sentenceTheoryBeams(sentenceTheoryBeams);
+
+      return buildWithDocumentLevelSets(xml, document, tokenSequences, builder);
+    }
+
+    /**
+     * Loads the {@link Document} for a {@code Document} element together with the document-level
+     * structures which sentence-level theories refer to (currently the morphology library).  Does
+     * not look at the {@code Sentences} at all.
+     */
+    Document loadDocumentHeader(final Element xml) {
+      final Document document = toDocument(xml);
+
       // a lot of morphology structures are shared, so we store a "library" of morphology structures
       // which are referred to by sentence-level morphology objects. We don't return anything here
       // because we are just interested in loading the objects into the ID map
       final Optional<Element> morphologyAlgorithmsEl = directChild(xml, "Algorithms");
-      if (morphologyAlgorithmsEl.isPresent()) {
+      if (morphologyAlgorithmsEl.isPresent() && !skips(morphologyAlgorithmsEl.get())) {
         loadAlgorithms(morphologyAlgorithmsEl.get());
       }
       final Optional<Element> morphEl = directChild(xml, "MorphTokenAnalyses");
-      if (morphEl.isPresent()) {
+      if (morphEl.isPresent() && !skips(morphEl.get())) {
         loadMorphologyInformation(morphEl.get());
       }
+      return document;
+    }
+
+    /**
+     * Loads the token sequences of a single {@code Sentence} element, which {@link
+     * #loadFrom(Element)} would otherwise have gathered up front.
+     */
+    ImmutableList<TokenSequence> loadSentenceTokens(final Element sentenceElement,
+        final int sentenceIdx, final Document document) {
+      final ImmutableList.Builder<TokenSequence> ret = ImmutableList.builder();
+      addTokenSequences(sentenceElement, document.originalText(), sentenceIdx, ret);
+      return ret.build();
+    }
+
+    /**
+     * Loads a single {@code Sentence} element whose tokens have already been loaded by {@link
+     * #loadSentenceTokens(Element, int, Document)}. Any document-level value mentions it refers
+     * to must already be known, from {@link #loadDocumentLevelValueMention(Element,
+     * TokenSequence)} or {@link #addKnownIds(Map)}.
+     */
+    SentenceTheoryBeam loadSentence(final Element sentenceElement, final int sentenceIdx,
+        final Document document) {
+      return toSentenceTheoryBeam(sentenceElement, sentenceIdx, document);
+    }
 
+    /**
+     * Loads one {@code ValueMention} of a document-level {@code ValueMentionSet}, whose tokens,
+     * in {@code tokenSequence}, must already be known.
+     */
+    ValueMention loadDocumentLevelValueMention(final Element valueMentionElement,
+        final TokenSequence tokenSequence) {
+      return toValueMention(valueMentionElement, tokenSequence);
+    }
+
+    /**
+     * Starts loading a document whose {@code Sentence} elements are handed over one at a time
+     * while it is being read, so they need never be held all at once. {@code documentHeader} must
+     * be the {@code Document} element with (at least) all its children which come before its
+     * {@code Sentences}.
+     */
+    StreamedDocument startStreamedDocument(final Element documentHeader) {
+      return new StreamedDocument(documentHeader);
+    }
+
+    /**
+     * A document being loaded sentence by sentence; see {@link
+     * #startStreamedDocument(Element)}.
+     *
+     * Each sentence is built as soon as it is added, in a {@link #childLoading()} so that nothing
+     * is recorded for it if that fails. A sentence may refer to something which comes later in
+     * the document: sentence-level event mention arguments, for example, may refer to the
+     * document-level {@code ValueMentionSet}, which is written after the {@code Sentences}. Such
+     * a sentence fails with an {@link UnresolvedIdException}, and only its elements are kept, to
+     * be built again once the whole document has been read, exactly as {@link
+     * #loadFrom(Element)} would build them. A reference to an id which never appears therefore
+     * fails with the same error, just later. Any other failure is thrown straight away.
+     * Token sequences are always loaded immediately, because the document-level value mentions
+     * need them.
+     */
+    final class StreamedDocument {
+
+      private final Document document;
+      private final ImmutableList.Builder<TokenSequence> tokenSequences = ImmutableList.builder();
+      // null for sentences which have been deferred
+      private final List<SentenceTheoryBeam> sentenceTheoryBeams = Lists.newArrayList();
+      private final Map<Integer, Element> deferredSentences = new LinkedHashMap<>();
+
+      private StreamedDocument(final Element documentHeader) {
+        idMap.clear();
+        this.document = loadDocumentHeader(documentHeader);
+      }
+
+      void addSentence(final Element sentenceElement) {
+        final int sentenceIdx = sentenceTheoryBeams.size();
+        addTokenSequences(sentenceElement, document.originalText(), sentenceIdx, tokenSequences);
+
+        final SerifXMLLoading sentenceLoading = childLoading();
+        SentenceTheoryBeam beam;
+        try {
+          beam = sentenceLoading.toSentenceTheoryBeam(sentenceElement, sentenceIdx, document);
+        } catch (final UnresolvedIdException e) {
+          // possibly a forward reference
+          beam = null;
+        }
+        if (beam != null) {
+          addKnownIds(sentenceLoading.idMap);
+          warnings.addAll(sentenceLoading.warnings);
+        } else {
+          deferredSentences.put(sentenceIdx, sentenceElement);
+        }
+        sentenceTheoryBeams.add(beam);
+      }
+
+      /**
+       * Finishes the document, given its {@code Document} element with all its children except
+       * the {@code Sentences}.
+       */
+      DocTheory finish(final Element documentElement) {
+        final DocTheory.Builder builder = DocTheory.builderForDocument(document);
+        final List<TokenSequence> allTokenSequences = tokenSequences.build();
+        addDocumentLevelValueMentions(documentElement, allTokenSequences, builder);
+
+        for (final Map.Entry<Integer, Element> deferred : deferredSentences.entrySet()) {
+          sentenceTheoryBeams.set(deferred.getKey(),
+              toSentenceTheoryBeam(deferred.getValue(), deferred.getKey(), document));
+        }
+        deferredSentences.clear();
+        builder.sentenceTheoryBeams(sentenceTheoryBeams);
+
+        final DocTheory ret =
+            buildWithDocumentLevelSets(documentElement, document, allTokenSequences, builder);
+        reportWarnings(ret.docid());
+        return ret;
+      }
+    }
+
+    private void addDocumentLevelValueMentions(final Element xml,
+        final List<TokenSequence> tokenSequences, final DocTheory.Builder builder) {
       final Optional<Element> valueMentionsElement = directChild(xml, "ValueMentionSet");
-      if (valueMentionsElement.isPresent()) {
+      if (valueMentionsElement.isPresent() && !skips(valueMentionsElement.get())) {
         builder.valueMentions(
             toDocumentLevelValueMentionSet(valueMentionsElement.get(), tokenSequences));
       } else {
         builder.valueMentions(ValueMentions.absent());
       }
+    }
 
-      final List<SentenceTheoryBeam> sentenceTheoryBeams = Lists.newArrayList();
-      final Optional<Element> sentencesElement = directChild(xml, "Sentences");
-      if (sentencesElement.isPresent()) {
-        int sentenceIdx = 0;
-        for (Node child = sentencesElement.get().getFirstChild(); child != null;
-             child = child.getNextSibling()) {
-          if (child instanceof Element) {
-            sentenceTheoryBeams.add(toSentenceTheoryBeam((Element) child, sentenceIdx, document));
-            ++sentenceIdx;
+    /**
+     * Whether {@code element} holds a layer we were asked not to load.
+     */
+    private boolean skips(final Element element) {
+      return skippedElementNames.contains(element.getTagName());
+    }
+
+    /**
+     * Attaches document values from a {@code ValueSet} element to those of their value mentions
+     * which were recorded by this loading. Other values are ignored.
+     */
+    void applyDocumentValues(final Element valueSetElement) {
+      for (Node child = valueSetElement.getFirstChild(); child != null;
+           child = child.getNextSibling()) {
+        if (child instanceof Element) {
+          final Element childElement = (Element) child;
+          if (childElement.getTagName().equalsIgnoreCase("Value")
+              && idMap.containsKey(childElement.getAttribute("value_mention_ref"))) {
+            toValue(childElement);
           }
         }
       }
-      builder.sentenceTheoryBeams(sentenceTheoryBeams);
+    }
 
+    /**
+     * Builds all document-level sets (entities, relations, events, etc.) on top of a {@code
+     * builder} which already has the document's sentences and document-level value mentions, then
+     * seals all value mentions.  All mentions these sets refer to must already be known to this
+     * loading.
+     */
+    DocTheory buildWithDocumentLevelSets(final Element xml, final Document document,
+        final List<TokenSequence> tokenSequences, final DocTheory.Builder builder) {
       final Optional<Element> valueSetElement = directChild(xml, "ValueSet");
-      if (valueSetElement.isPresent()) {
+      if (valueSetElement.isPresent() && !skips(valueSetElement.get())) {
         builder.values(toValueSet(valueSetElement.get()));
       } else {
         builder.values(Values.absent());
       }
 
       final Optional<Element> entitySetElement = directChild(xml, "EntitySet");
-      if (entitySetElement.isPresent()) {
+      if (entitySetElement.isPresent() && !skips(entitySetElement.get())) {
         builder.entities(toEntitySet(entitySetElement.get()));
       } else {
         builder.entities(Entities.absent());
       }
 
       final Optional<Element> relationSetElement = directChild(xml, "RelationSet");
-      if (relationSetElement.isPresent()) {
+      if (relationSetElement.isPresent() && !skips(relationSetElement.get())) {
         builder.relations(toRelations(relationSetElement.get()));
       } else {
         builder.relations(Relations.absent());
       }
 
       final Optional<Element> eventSetElement = directChild(xml, "EventSet");
-      if (eventSetElement.isPresent()) {
+      if (eventSetElement.isPresent() && !skips(eventSetElement.get())) {
         builder.events(toEvents(eventSetElement.get()));
       } else {
         builder.events(Events.absent());
       }
 
       final Optional<Element> actorEntitySetElement = directChild(xml, "ActorEntitySet");
-      if (actorEntitySetElement.isPresent()) {
+      if (actorEntitySetElement.isPresent() && !skips(actorEntitySetElement.get())) {
         builder.actorEntities(toActorEntities(actorEntitySetElement.get()));
       } else {
         builder.actorEntities(ActorEntities.absent());
       }
 
       final Optional<Element> factSetElement = directChild(xml, "FactSet");
-      if (factSetElement.isPresent()) {
+      if (factSetElement.isPresent() && !skips(factSetElement.get())) {
         builder.facts(toFacts(factSetElement.get(), tokenSequences));
       } else {
         builder.facts(Facts.absent());
       }
 
       final Optional<Element> actorMentionSetElement = directChild(xml, "ActorMentionSet");
-      if (actorMentionSetElement.isPresent()) {
+      if (actorMentionSetElement.isPresent() && !skips(actorMentionSetElement.get())) {
         builder.actorMentions(toActorMentions(actorMentionSetElement.get()));
       } else {
         builder.actorMentions(ActorMentions.absent());
@@ -498,7 +862,7 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
 
       final Optional<Element> icewsEventMentionSetElement =
           directChild(xml, "ICEWSEventMentionSet");
-      if (icewsEventMentionSetElement.isPresent()) {
+      if (icewsEventMentionSetElement.isPresent() && !skips(icewsEventMentionSetElement.get())) {
         builder.icewsEventMentions(toICEWSEventMentions(icewsEventMentionSetElement.get()));
       } else {
         builder.icewsEventMentions(ICEWSEventMentions.absent());
@@ -506,7 +870,8 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
 
       final Optional<Element> eventEventRelationMentionSetElement =
           directChild(xml, "EventEventRelationMentionSet");
-      if (eventEventRelationMentionSetElement.isPresent()) {
+      if (eventEventRelationMentionSetElement.isPresent()
+          && !skips(eventEventRelationMentionSetElement.get())) {
         builder.eventEventRelationMentions(
             toEventEventRelationMentions(eventEventRelationMentionSetElement.get()));
       } else {
@@ -514,13 +879,14 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       }
 
       final Optional<Element> documentActorInfoElement = directChild(xml, "DocumentActorInfo");
-      if (documentActorInfoElement.isPresent()) {
+      if (documentActorInfoElement.isPresent() && !skips(documentActorInfoElement.get())) {
         builder.documentActorInfo(toDocumentActorInfo(documentActorInfoElement.get()));
       }
 
       final Optional<Element> flexibleEventMentionSetElement =
           directChild(xml, SerifXML.FLEXIBLE_EVENT_MENTION_SET_ELEMENT);
-      if (flexibleEventMentionSetElement.isPresent()) {
+      if (flexibleEventMentionSetElement.isPresent()
+          && !skips(flexibleEventMentionSetElement.get())) {
         builder.flexibleEventMentions(
             toFlexibleEventMentions(flexibleEventMentionSetElement.get(), tokenSequences));
       } else {
@@ -528,13 +894,14 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       }
 
       final Optional<Element> acronymSetElement = directChild(xml, "AcronymSet");
-      if (acronymSetElement.isPresent()) {
+      if (acronymSetElement.isPresent() && !skips(acronymSetElement.get())) {
         builder.acronyms(toAcronyms(acronymSetElement.get(), tokenSequences));
       }
 
       final Optional<Element> documentEventArgumentSetElement =
           directChild(xml, DOC_EVENT_ARG_SET_ELEMENT);
-      if (documentEventArgumentSetElement.isPresent()) {
+      if (documentEventArgumentSetElement.isPresent()
+          && !skips(documentEventArgumentSetElement.get())) {
         builder
             .documentEventArguments(toDocumentEventArguments(documentEventArgumentSetElement.get(),
                 document.originalText()));
@@ -543,7 +910,7 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       }
 
       final Optional<Element> documentEventsElement = directChild(xml, DOC_EVENT_SET_ELEMENT);
-      if (documentEventsElement.isPresent()) {
+      if (documentEventsElement.isPresent() && !skips(documentEventsElement.get())) {
         builder.documentEvents(
             toDocumentEvents(documentEventsElement.get(), document.originalText()));
       } else {
@@ -1029,19 +1396,7 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
         for (Node child = sentencesElement.get().getFirstChild(); child != null;
              child = child.getNextSibling()) {
           if (child instanceof Element) {
-            final Element childElement = (Element) child;
-            if (!is(childElement, "Sentence")) {
-              throw new SerifXMLException("Only sentence elements should appear under Sentences");
-            }
-            for (Node sentenceChild = child.getFirstChild(); sentenceChild != null;
-                 sentenceChild = sentenceChild.getNextSibling()) {
-              if (sentenceChild instanceof Element) {
-                final Element sentenceChildElement = (Element) sentenceChild;
-                if (is(sentenceChildElement, "TokenSequence")) {
-                  ret.add(toTokenSequence(sentenceChildElement, originalText, sentenceIdx));
-                }
-              }
-            }
+            addTokenSequences((Element) child, originalText, sentenceIdx, ret);
             ++sentenceIdx;
           }
         }
@@ -1050,6 +1405,23 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       return ret.build();
     }
 
+    private void addTokenSequences(final Element sentenceElement,
+        final LocatedString originalText, final int sentenceIdx,
+        final ImmutableList.Builder<TokenSequence> ret) {
+      if (!is(sentenceElement, "Sentence")) {
+        throw new SerifXMLException("Only sentence elements should appear under Sentences");
+      }
+      for (Node sentenceChild = sentenceElement.getFirstChild(); sentenceChild != null;
+           sentenceChild = sentenceChild.getNextSibling()) {
+        if (sentenceChild instanceof Element) {
+          final Element sentenceChildElement = (Element) sentenceChild;
+          if (is(sentenceChildElement, "TokenSequence")) {
+            ret.add(toTokenSequence(sentenceChildElement, originalText, sentenceIdx));
+          }
+        }
+      }
+    }
+
     private SentenceTheoryBeam toSentenceTheoryBeam(final Element e, final int sentenceIdx,
         final Document document) {
       checkArgument(e.getTagName().equals("Sentence"));
@@ -1065,6 +1437,9 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       for (Node child = e.getFirstChild(); child != null; child = child.getNextSibling()) {
         if (child instanceof Element) {
           final Element childElement = (Element) child;
+          if (skips(childElement)) {
+            continue;
+          }
           if (is(childElement, "NameTheory")) {
             toNameTheory(childElement);
           } else if (is(childElement, "NestedNameTheory")) {
@@ -1150,31 +1525,32 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       SentenceTheory.Builder stBuilder =
           SentenceTheory.createForTokenSequence(sentence, tokenSequence);
 
-      if (element.hasAttribute("event_mention_set_id")) {
+      if (element.hasAttribute("event_mention_set_id")
+          && layers.contains(SerifXMLLayer.EVENT_MENTIONS)) {
         stBuilder = stBuilder.eventMentions(
             (EventMentions) (fetch("event_mention_set_id", element)));
       }
 
-      if (element.hasAttribute("morph_tok_seq_ids")) {
+      if (element.hasAttribute("morph_tok_seq_ids") && layers.contains(SerifXMLLayer.MORPHOLOGY)) {
         stBuilder.morphTokenSequences(
             this.<MorphTokenSequence>fetchListOrEmpty("morph_tok_seq_ids", element));
       }
 
-      if (element.hasAttribute("mention_set_id")) {
+      if (element.hasAttribute("mention_set_id") && layers.contains(SerifXMLLayer.MENTIONS)) {
         stBuilder = stBuilder.mentions((Mentions) fetch("mention_set_id", element));
       }
 
-      if (element.hasAttribute("name_theory_id")) {
+      if (element.hasAttribute("name_theory_id") && layers.contains(SerifXMLLayer.NAMES)) {
         stBuilder = stBuilder.withNameTheory((Names) fetch("name_theory_id", element));
       }
 
-      if (element.hasAttribute("nested_name_theory_id")) {
+      if (element.hasAttribute("nested_name_theory_id") && layers.contains(SerifXMLLayer.NAMES)) {
         stBuilder =
             stBuilder.nestedNames((NestedNames) fetch("nested_name_theory_id", element));
       }
 
       // check whether the primary_parse is full_parse or npchunk_parse
-      if (element.hasAttribute("primary_parse")) {
+      if (element.hasAttribute("primary_parse") && layers.contains(SerifXMLLayer.PARSES)) {
         final String parseType = element.getAttribute("primary_parse");
         if (parseType.compareTo("npchunk_parse") == 0) {
           if (element.hasAttribute("np_chunk_theory_id")) {
@@ -1190,25 +1566,29 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
         }
       }
 
-      if (element.hasAttribute("proposition_set_id")) {
+      if (element.hasAttribute("proposition_set_id")
+          && layers.contains(SerifXMLLayer.PROPOSITIONS)) {
         stBuilder = stBuilder.propositions((Propositions) fetch("proposition_set_id", element));
       }
 
-      if (element.hasAttribute("dependency_set_id")) {
+      if (element.hasAttribute("dependency_set_id")
+          && layers.contains(SerifXMLLayer.PROPOSITIONS)) {
         stBuilder = stBuilder.dependencies((Dependencies) fetch("dependency_set_id", element));
       }
 
-      if (element.hasAttribute("rel_mention_set_id")) {
+      if (element.hasAttribute("rel_mention_set_id")
+          && layers.contains(SerifXMLLayer.RELATION_MENTIONS)) {
         stBuilder =
             stBuilder.relationMentions((RelationMentions) fetch("rel_mention_set_id", element));
       }
 
-      if (element.hasAttribute("value_mention_set_id")) {
+      if (element.hasAttribute("value_mention_set_id")
+          && layers.contains(SerifXMLLayer.VALUE_MENTIONS)) {
         stBuilder =
             stBuilder.valueMentions((ValueMentions) fetch("value_mention_set_id", element));
       }
 
-      if (element.hasAttribute("actor_mention_set_id")) {
+      if (element.hasAttribute("actor_mention_set_id") && layers.contains(SerifXMLLayer.ACTORS)) {
         stBuilder =
             stBuilder.actorMentions((ActorMentions) fetch("actor_mention_set_id", element));
       }
@@ -2821,21 +3201,7 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
         if (child instanceof Element) {
           final Element childElement = (Element) child;
           if (childElement.getTagName().equalsIgnoreCase("Value")) {
-            final ValueMention vm = fetch("value_mention_ref", childElement);
-            final Symbol timexVal = nonEmptySymbolOrNull(childElement, "timex_val");
-            final Symbol timexAnchorVal = nonEmptySymbolOrNull(childElement, "timex_anchor_val");
-            final Symbol timexAnchorDir = nonEmptySymbolOrNull(childElement, "timex_anchor_dir");
-            final Symbol timexSet = nonEmptySymbolOrNull(childElement, "timex_set");
-            final Symbol timexMode = nonEmptySymbolOrNull(childElement, "timex_mod");
-            final Symbol timexNonSpecific =
-                nonEmptySymbolOrNull(childElement, "timex_non_specific");
-            vm.setDocValue(timexVal, timexAnchorVal, timexAnchorDir, timexSet, timexMode,
-                timexNonSpecific);
-            // we know this get() will succeed because we just setDocValue above
-            //noinspection OptionalGetWithoutIsPresent
-            final Value docValue = vm.documentValue().get();
-            record(docValue, childElement);
-            values.add(docValue);
+            values.add(toValue(childElement));
           }
         }
       }
@@ -2845,6 +3211,27 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       return vs;
     }
 
+    private Value toValue(final Element e) {
+      final ValueMention vm = fetch("value_mention_ref", e);
+      // a sentence loaded on its own may already have had its document value attached
+      // by applyDocumentValues, after which the mention was sealed
+      if (!vm.documentValue().isPresent()) {
+        final Symbol timexVal = nonEmptySymbolOrNull(e, "timex_val");
+        final Symbol timexAnchorVal = nonEmptySymbolOrNull(e, "timex_anchor_val");
+        final Symbol timexAnchorDir = nonEmptySymbolOrNull(e, "timex_anchor_dir");
+        final Symbol timexSet = nonEmptySymbolOrNull(e, "timex_set");
+        final Symbol timexMode = nonEmptySymbolOrNull(e, "timex_mod");
+        final Symbol timexNonSpecific = nonEmptySymbolOrNull(e, "timex_non_specific");
+        vm.setDocValue(timexVal, timexAnchorVal, timexAnchorDir, timexSet, timexMode,
+            timexNonSpecific);
+      }
+      // we know this get() will succeed because it was either already present or just set above
+      //noinspection OptionalGetWithoutIsPresent
+      final Value docValue = vm.documentValue().get();
+      record(docValue, e);
+      return docValue;
+    }
+
     private Name toName(final Element e, final TokenSequence ts) {
       checkArgument(e.getTagName().equals("Name"));
       final EntityType entityType = EntityType.of(requiredAttribute(e, "entity_type"));
@@ -3117,14 +3504,49 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       }
     }
 
+    @Nullable
+    private Object lookupId(final String id) {
+      final Object ret = idMap.get(id);
+      if (ret == null && parent != null) {
+        return parent.lookupId(id);
+      }
+      return ret;
+    }
+
+    /**
+     * Creates a loading which can resolve every id recorded by this one (and by its own parent,
+     * if any), but which records new ids only in its own map. This lets the pieces of a document
+     * be loaded separately on top of a shared document header. This loading must not record
+     * anything further while the child is in use.
+     */
+    SerifXMLLoading childLoading() {
+      return new SerifXMLLoading(this);
+    }
+
+    /**
+     * The objects recorded by this loading (but not its parent), by id.
+     */
+    ImmutableMap<String, Object> recordedIds() {
+      return ImmutableMap.copyOf(idMap);
+    }
+
+    /**
+     * Makes objects recorded by another loading of the same document resolvable from this one.
+     */
+    void addKnownIds(final Map<String, ?> ids) {
+      for (final Map.Entry<String, ?> entry : ids.entrySet()) {
+        record(entry.getValue(), entry.getKey());
+      }
+    }
+
     // cast unavoidable for heterogeneous container
     @SuppressWarnings("unchecked")
     private <T> T fetch(final String id) {
       checkNotNull(id);
       checkArgument(!id.isEmpty());
-      final T ret = (T) idMap.get(id);
+      final T ret = (T) lookupId(id);
       if (ret == null) {
-        throw new SerifXMLException(String.format("Lookup failed for id %s.", id));
+        throw new UnresolvedIdException(String.format("Lookup failed for id %s.", id));
       }
       return ret;
     }
@@ -3134,10 +3556,10 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     private <T> T fetch(final String attribute, final Element e) {
       final String attVal = requiredAttribute(e, attribute);
 
-      final Object o = idMap.get(requiredAttribute(e, attribute));
+      final Object o = lookupId(attVal);
 
       if (o == null) {
-        throw new SerifXMLException(
+        throw new UnresolvedIdException(
             String.format("Lookup failed for id %s. Known keys are %s", attVal, idMap.keySet()));
       }
 
@@ -3160,11 +3582,11 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       final List<String> parts = StringUtils.onCommas().splitToList(attVals);
       final List<T> ret = new ArrayList<>();
       for (final String part : parts) {
-        final T resolved = (T) idMap.get(part);
+        final T resolved = (T) lookupId(part);
         if (resolved != null) {
           ret.add(resolved);
         } else {
-          throw new SerifXMLException(String.format("Lookup failed for id %s.", part));
+          throw new UnresolvedIdException(String.format("Lookup failed for id %s.", part));
         }
       }
       return ret;
@@ -3177,10 +3599,10 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
       final String att = e.getAttribute(attribute);
 
       if (!att.isEmpty()) {
-        final T ret = (T) idMap.get(att);
+        final T ret = (T) lookupId(att);
 
         if (ret == null) {
-          throw new SerifXMLException(
+          throw new UnresolvedIdException(
               String.format("Lookup failed for id %s. Known keys are %s", att, idMap.keySet()));
         }
 
@@ -3195,7 +3617,7 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
     private <T> T fetchIfKnownFromRequiredAttribute(final String attribute, final Element e) {
       final String att = requiredAttribute(e, attribute);
 
-      return (T) idMap.get(att);
+      return (T) lookupId(att);
     }
 
     private Optional<ImmutableMap<Symbol, String>> loadMetadata(Element e) {
@@ -3214,6 +3636,19 @@ public abstract class SerifXMLLoader implements DocTheoryLoader {
   }
 
 
+  /**
+   * Thrown when an element refers to an id which has not been recorded, either because it is
+   * never defined or because it is defined later in the document than the reference.
+   */
+  static final class UnresolvedIdException extends SerifXMLException {
+
+    private static final long serialVersionUID = 1L;
+
+    UnresolvedIdException(final String msg) {
+      super(msg);
+    }
+  }
+
   public static final class Builder extends ImmutableSerifXMLLoader.Builder {
 
     /**
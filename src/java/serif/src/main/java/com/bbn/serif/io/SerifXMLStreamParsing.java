@@ -0,0 +1,322 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.Reader;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads SerifXML with a StAX {@link XMLStreamReader} in a single forward pass over a {@link
+ * Reader}, either loading it straight into a {@link com.bbn.serif.theories.DocTheory} or building
+ * its element tree.
+ *
+ * When loading, each {@code Sentence} element is built, handed to the loader and dropped as soon
+ * as it has been read, so the elements for all the sentences of a document (which make up nearly
+ * all of it) are never in memory at once. Elements outside the {@code Sentences} are still
+ * collected, because the document-level sets refer to mentions all over the document and are
+ * built once it has all been read. A few sentences cannot be built when they are read, because
+ * they refer to something written after them (for example, sentence-level event mention arguments
+ * may point to the document-level {@code ValueMentionSet}); the elements of just those sentences
+ * are kept until the end of the document and built then. See {@link
+ * SerifXMLLoader.SerifXMLLoading.StreamedDocument}. The document header ({@code OriginalText},
+ * {@code Regions}, the morphology library, etc.) must therefore come before the {@code
+ * Sentences}, as it does in SerifXML written by SERIF and by JSerif.
+ *
+ * The element trees built by either mode are much cheaper than the one produced by {@link
+ * javax.xml.parsers.DocumentBuilder#parse(org.xml.sax.InputSource)}: the source is never held in
+ * memory as a {@link String}, and the indentation whitespace between elements (which otherwise
+ * makes up roughly half the nodes of a pretty-printed SerifXML file) is never materialized.
+ * Whitespace-only text inside elements with no child elements is preserved, so {@link
+ * Node#getTextContent()} on leaf elements is unchanged. Comments and processing instructions are
+ * dropped, since the loader ignores them.
+ */
+final class SerifXMLStreamParsing {
+
+  // the children of Document which SerifXMLLoader reads before any sentence
+  private static final ImmutableSet<String> DOCUMENT_HEADER_ELEMENTS = ImmutableSet.of(
+      "OriginalText", "Regions", "Zones", "Segments", "Metadata", "DateTime", "Algorithms",
+      "MorphTokenAnalyses");
+
+  private SerifXMLStreamParsing() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Creates a {@link XMLInputFactory} configured for reading SerifXML.
+   */
+  static XMLInputFactory createInputFactory() {
+    final XMLInputFactory ret = XMLInputFactory.newInstance();
+    ret.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    ret.setProperty(XMLInputFactory.IS_COALESCING, true);
+    ret.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+    ret.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    return ret;
+  }
+
+  /**
+   * Parses the XML read from {@code reader} into a new document created by {@code
+   * documentBuilder}. The caller is responsible for closing {@code reader}.
+   */
+  static Document parse(final Reader reader, final XMLInputFactory inputFactory,
+      final DocumentBuilder documentBuilder) throws XMLStreamException {
+    return parse(reader, inputFactory, documentBuilder, ImmutableSet.<String>of());
+  }
+
+  /**
+   * As {@link #parse(Reader, XMLInputFactory, DocumentBuilder)}, but elements whose names are in
+   * {@code skippedElementNames} are read past without building anything for them or their
+   * contents.
+   */
+  static Document parse(final Reader reader, final XMLInputFactory inputFactory,
+      final DocumentBuilder documentBuilder, final Set<String> skippedElementNames)
+      throws XMLStreamException {
+    checkNotNull(reader);
+    checkNotNull(skippedElementNames);
+    final XMLStreamReader xml = inputFactory.createXMLStreamReader(reader);
+    try {
+      return buildTree(xml, documentBuilder.newDocument(), skippedElementNames);
+    } finally {
+      xml.close();
+    }
+  }
+
+  /**
+   * Loads the SerifXML read from {@code reader} using {@code loading}, building only one sentence's
+   * elements at a time (plus any deferred ones; see the class comment). Elements whose names are
+   * in {@code skippedElementNames} are read past without building anything for them. {@code
+   * documentBuilder} is only used to create elements. The caller is responsible for closing
+   * {@code reader}.
+   */
+  static DocTheory load(final Reader reader, final XMLInputFactory inputFactory,
+      final DocumentBuilder documentBuilder, final Set<String> skippedElementNames,
+      final SerifXMLLoader.SerifXMLLoading loading) throws XMLStreamException {
+    checkNotNull(reader);
+    checkNotNull(skippedElementNames);
+    checkNotNull(loading);
+    final XMLStreamReader xml = inputFactory.createXMLStreamReader(reader);
+    try {
+      final Document doc = documentBuilder.newDocument();
+      nextTag(xml);
+      final String rootTag = xml.getLocalName();
+      if (rootTag.equalsIgnoreCase(SerifXML.DOCUMENT_ELEMENT)) {
+        return loadDocument(xml, doc, skippedElementNames, loading);
+      } else if (rootTag.equalsIgnoreCase(SerifXML.SERIFXML_ELEMENT)) {
+        // as SerifXMLLoader#documentElement, use the first Document element and ignore the rest
+        DocTheory ret = null;
+        while (nextTag(xml) == XMLStreamConstants.START_ELEMENT) {
+          if (ret == null && xml.getLocalName().equals(SerifXML.DOCUMENT_ELEMENT)) {
+            ret = loadDocument(xml, doc, skippedElementNames, loading);
+          } else {
+            skipElement(xml);
+          }
+        }
+        if (ret == null) {
+          throw new SerifXMLException(
+              "If a SerifXML has SerifXML tag at the top-level, it must have a Document element immediately below it");
+        }
+        return ret;
+      } else {
+        throw new SerifXMLException("SerifXML should have a root of SerifXML or Document");
+      }
+    } finally {
+      xml.close();
+    }
+  }
+
+  /**
+   * Loads the {@code Document} element whose start {@code xml} is positioned on, reading up to
+   * and including its end.
+   */
+  private static DocTheory loadDocument(final XMLStreamReader xml, final Document doc,
+      final Set<String> skippedElementNames, final SerifXMLLoader.SerifXMLLoading loading)
+      throws XMLStreamException {
+    final Element documentElement = createElement(xml, doc);
+    SerifXMLLoader.SerifXMLLoading.StreamedDocument streamedDocument = null;
+    boolean sentencesRead = false;
+
+    // any text directly inside the Document element is just indentation
+    while (nextTag(xml) == XMLStreamConstants.START_ELEMENT) {
+      final String name = xml.getLocalName();
+      if (skippedElementNames.contains(name)) {
+        skipElement(xml);
+      } else if (name.equals(SerifXML.SENTENCES_ELEMENT) && !sentencesRead) {
+        streamedDocument = loading.startStreamedDocument(documentElement);
+        while (nextTag(xml) == XMLStreamConstants.START_ELEMENT) {
+          streamedDocument.addSentence(readElement(xml, doc, skippedElementNames));
+        }
+        sentencesRead = true;
+      } else if (name.equals(SerifXML.SENTENCES_ELEMENT)) {
+        // only the first Sentences element is loaded, as SerifXMLLoader does
+        skipElement(xml);
+      } else {
+        if (sentencesRead && isDocumentHeaderElement(name)) {
+          throw new SerifXMLException(String.format(
+              "%s element after Sentences; this document cannot be loaded with a streaming parse",
+              name));
+        }
+        documentElement.appendChild(readElement(xml, doc, skippedElementNames));
+      }
+    }
+
+    if (streamedDocument == null) {
+      streamedDocument = loading.startStreamedDocument(documentElement);
+    }
+    return streamedDocument.finish(documentElement);
+  }
+
+  private static boolean isDocumentHeaderElement(final String name) {
+    for (final String headerElement : DOCUMENT_HEADER_ELEMENTS) {
+      if (headerElement.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Document buildTree(final XMLStreamReader xml, final Document doc,
+      final Set<String> skippedElementNames) throws XMLStreamException {
+    while (xml.hasNext()) {
+      // anything outside the root element is not part of the document, and the root element is
+      // never skipped
+      if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+        doc.appendChild(readElement(xml, doc, skippedElementNames));
+      }
+    }
+    return doc;
+  }
+
+  /**
+   * Builds the element whose start {@code xml} is positioned on, reading up to and including its
+   * end. The element is not added to {@code doc}.
+   */
+  private static Element readElement(final XMLStreamReader xml, final Document doc,
+      final Set<String> skippedElementNames) throws XMLStreamException {
+    final Element ret = createElement(xml, doc);
+    Element current = ret;
+    // whitespace-only text we have seen but not yet decided whether to keep
+    String pendingWhitespace = null;
+
+    while (true) {
+      switch (xml.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          // whitespace before a child element is just indentation
+          pendingWhitespace = null;
+          if (skippedElementNames.contains(xml.getLocalName())) {
+            skipElement(xml);
+            break;
+          }
+          final Element element = createElement(xml, doc);
+          current.appendChild(element);
+          current = element;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          if (pendingWhitespace != null && !hasElementChild(current)) {
+            current.appendChild(doc.createTextNode(pendingWhitespace));
+          }
+          pendingWhitespace = null;
+          if (current == ret) {
+            return ret;
+          }
+          current = (Element) current.getParentNode();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          if (xml.isWhiteSpace()) {
+            pendingWhitespace = pendingWhitespace == null ? xml.getText()
+                                                          : pendingWhitespace + xml.getText();
+          } else {
+            if (pendingWhitespace != null) {
+              current.appendChild(doc.createTextNode(pendingWhitespace));
+              pendingWhitespace = null;
+            }
+            current.appendChild(doc.createTextNode(xml.getText()));
+          }
+          break;
+        default:
+          // comments, processing instructions, etc. are ignored by the loader
+          break;
+      }
+    }
+  }
+
+  /**
+   * Advances to the next start or end of an element, ignoring anything in between, and returns
+   * which it is.
+   */
+  private static int nextTag(final XMLStreamReader xml) throws XMLStreamException {
+    int event;
+    do {
+      event = xml.next();
+    } while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT);
+    return event;
+  }
+
+  /**
+   * Reads up to and including the end of the element whose start {@code xml} is positioned on.
+   */
+  private static void skipElement(final XMLStreamReader xml) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      final int event = xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        ++depth;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        --depth;
+      }
+    }
+  }
+
+  private static Element createElement(final XMLStreamReader xml, final Document doc) {
+    final Element element =
+        doc.createElementNS(emptyToNull(xml.getNamespaceURI()),
+            qualifiedName(xml.getPrefix(), xml.getLocalName()));
+
+    for (int i = 0; i < xml.getNamespaceCount(); ++i) {
+      final String prefix = xml.getNamespacePrefix(i);
+      element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+          prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE
+                                             : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+          xml.getNamespaceURI(i));
+    }
+
+    for (int i = 0; i < xml.getAttributeCount(); ++i) {
+      element.setAttributeNS(emptyToNull(xml.getAttributeNamespace(i)),
+          qualifiedName(xml.getAttributePrefix(i), xml.getAttributeLocalName(i)),
+          xml.getAttributeValue(i));
+    }
+    return element;
+  }
+
+  private static boolean hasElementChild(final Node node) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child instanceof Element) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String qualifiedName(final String prefix, final String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  private static String emptyToNull(final String s) {
+    return s == null || s.isEmpty() ? null : s;
+  }
+}
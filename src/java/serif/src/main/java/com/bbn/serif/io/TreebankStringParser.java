@@ -5,7 +5,6 @@ import com.bbn.serif.common.SerifException;
 import com.bbn.serif.theories.SynNode;
 import com.bbn.serif.theories.TokenSequence;
 
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,53 +39,28 @@ public final class TreebankStringParser {
   private static final int HEADMARK_GROUP = 2;
   private static final int END_GROUP = 3;
   private static final int TOKEN_GROUP = 4;
-  private static final Symbol FAKE_ROOT = Symbol.from("___PARSER_FAKE_ROOT");
 
   public SynNode parseTreebankString(String tbString, TokenSequence ts) {
     checkArgument(!ts.isEmpty(), "Cannot parse the treebank String of an empty sentence");
     try {
       int token_index = 0;
-      final Stack<SynNode.NonterminalBuilder> stack = new Stack<SynNode.NonterminalBuilder>();
-      // this is a hack because the SynNodes don't store their headedness
-      final Stack<Boolean> headednessStack = new Stack<Boolean>();
-
-      final SynNode.NonterminalBuilder pseudoRoot = SynNode.nonterminalBuilder(FAKE_ROOT);
-
-      stack.push(pseudoRoot);
-      headednessStack.push(false);
+      // nodes are added as they appear in the string, which is pre-order, so each is added once
+      // rather than being copied into each of its ancestors as they are built
+      final SynNode.PreorderBuilder tree = SynNode.preorderBuilder(ts);
 
       Matcher m = TB_TOKEN_PATTERN.matcher(tbString);
       while (m.find()) {
-        if (m.group(START_GROUP) != null
-            || m.group(TOKEN_GROUP) != null) {
-          String tag = m.group(START_GROUP);
-          if (tag == null) {
-            tag = m.group(TOKEN_GROUP);
-          }
-
-          if (m.group(START_GROUP) != null) {
-            SynNode.NonterminalBuilder synNode = SynNode.nonterminalBuilder(Symbol.from(tag));
-            stack.push(synNode);
-            headednessStack.push(m.group(HEADMARK_GROUP).length() > 0);
-          } else {
-            SynNode.TerminalBuilder synNode = SynNode.terminalBuilder(Symbol.from(tag));
-            synNode.tokenIndex(token_index);
-            token_index++;
-            // parent must be a pre-terminal, so we know this is the head
-            stack.peek().appendHead(synNode.build(ts));
-          }
+        if (m.group(START_GROUP) != null) {
+          tree.openNonterminal(Symbol.from(m.group(START_GROUP)),
+              m.group(HEADMARK_GROUP).length() > 0);
+        } else if (m.group(TOKEN_GROUP) != null) {
+          // parent must be a pre-terminal, so we know this is the head
+          tree.addTerminal(Symbol.from(m.group(TOKEN_GROUP)), token_index, true);
+          token_index++;
         } else if (m.group(END_GROUP) != null) {
-          SynNode.Builder completed = stack.pop();
-          final boolean isHead = headednessStack.pop();
-
-          if (stack.peek() == pseudoRoot) {
-            return completed.build(ts);
-          } else {
-            if (isHead) {
-              stack.peek().appendHead(completed.build(ts));
-            } else {
-              stack.peek().appendNonHead(completed.build(ts));
-            }
+          tree.close();
+          if (tree.isComplete()) {
+            return tree.build();
           }
         }
       }
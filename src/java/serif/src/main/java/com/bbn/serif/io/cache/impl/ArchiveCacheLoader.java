@@ -0,0 +1,46 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.io.DocTheoryArchive;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheLoader;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link CacheLoader} which loads documents from a {@link DocTheoryArchive}.
+ *
+ * If the supplied docid is not in the archive, an {@link IOException} is thrown.
+ */
+final class ArchiveCacheLoader extends CacheLoader<Symbol, DocTheory> {
+
+  private final DocTheoryArchive archive;
+  private final SerifXMLLoader loader;
+
+  private ArchiveCacheLoader(final DocTheoryArchive archive, final SerifXMLLoader loader) {
+    this.archive = checkNotNull(archive);
+    this.loader = checkNotNull(loader);
+  }
+
+  public static ArchiveCacheLoader from(final DocTheoryArchive archive,
+      final SerifXMLLoader loader) {
+    return new ArchiveCacheLoader(archive, loader);
+  }
+
+  @Override
+  public DocTheory load(final Symbol key) throws Exception {
+    final Optional<ByteSource> source = archive.sourceForDocID(key);
+
+    if (source.isPresent()) {
+      return loader.loadFrom(source.get());
+    } else {
+      throw new IOException(String.format("Doc ID %s is not in %s", key, archive));
+    }
+  }
+}
@@ -3,31 +3,60 @@ package com.bbn.serif.io.cache.impl;
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.nlp.io.DocIDToFileMapping;
 import com.bbn.nlp.io.DocIDToFileMappings;
+import com.bbn.serif.io.DocTheoryArchive;
 import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.io.SerifXMLWriter;
 import com.bbn.serif.io.cache.DocTheoryCache;
 import com.bbn.serif.theories.DocTheory;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Default implementation of {@link com.bbn.serif.io.cache.DocTheoryCache}, which loads lazily and
  * caches.
  *
+ * By default at most ten documents are kept. Since documents vary enormously in size, a cache
+ * holding many documents should usually be bounded by their estimated memory footprint instead,
+ * using {@link Builder#setMaxWeightInBytes(long)}.
+ *
+ * Documents evicted from the cache may optionally be kept in a compact serialized form, off-heap
+ * or in a spill file, from which they can be reloaded without going back to their source (see
+ * {@link Builder#spillEvictedOffHeap(long)} and {@link Builder#spillEvictedToFile(File)}).
+ *
  * @author rgabbard
  */
-public final class DefaultDocTheoryCache implements DocTheoryCache {
+public final class DefaultDocTheoryCache implements DocTheoryCache, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(DefaultDocTheoryCache.class);
 
-  private DefaultDocTheoryCache(final LoadingCache<Symbol, DocTheory> innerCache) {
+  private DefaultDocTheoryCache(final LoadingCache<Symbol, DocTheory> innerCache,
+      @Nullable final ExecutorService prefetchExecutor,
+      @Nullable final SpillingCacheLoader spillingLoader) {
     this.innerCache = checkNotNull(innerCache);
+    this.prefetchExecutor = prefetchExecutor;
+    this.ownsPrefetchExecutor = prefetchExecutor == null;
+    this.spillingLoader = spillingLoader;
   }
 
   /**
@@ -47,6 +76,84 @@ public final class DefaultDocTheoryCache implements DocTheoryCache {
     }
   }
 
+  /**
+   * Hit, miss, load time and eviction statistics for this cache. These are all zeros unless
+   * {@link Builder#recordStats()} was specified.
+   */
+  public CacheStats stats() {
+    return innerCache.stats();
+  }
+
+  /**
+   * Requests that each of {@code docids} which is not already cached be loaded in the background
+   * on the builder's prefetch executor, so that later calls to {@link #getDocTheory(Symbol)} for
+   * them do not have to wait. This returns immediately. A request for a document whose prefetch is
+   * still in progress waits for it rather than loading the document again. Failures are logged and
+   * otherwise ignored; they will be thrown again when the document is requested.
+   *
+   * Prefetching more documents than the cache can hold is pointless, since later documents will
+   * evict earlier ones before they are used.
+   *
+   * @throws IllegalStateException if this cache has been closed
+   */
+  public void prefetch(final Iterable<Symbol> docids) {
+    final ExecutorService executor = prefetchExecutor();
+    for (final Symbol docid : docids) {
+      if (innerCache.getIfPresent(docid) == null) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              innerCache.get(docid);
+            } catch (final ExecutionException e) {
+              log.warn("Failed to prefetch document {}", docid, e.getCause());
+            }
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Stops prefetching and releases the second tier, if any. If no prefetch executor was given to
+   * the builder, the one this cache created is shut down, abandoning any prefetches which have not
+   * started. Documents still waiting to be spilled are abandoned, off-heap memory is freed and a
+   * spill file is closed and deleted. Documents can still be requested from the cache afterwards,
+   * but those no longer on the heap are loaded from their source.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (ownsPrefetchExecutor && prefetchExecutor != null) {
+      prefetchExecutor.shutdownNow();
+    }
+    if (spillingLoader != null) {
+      spillingLoader.close();
+    }
+  }
+
+  private synchronized ExecutorService prefetchExecutor() {
+    checkState(!closed, "Cannot prefetch with a closed cache");
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("DocTheoryCache-prefetch-%d")
+          .setDaemon(true)
+          .build());
+    }
+    return prefetchExecutor;
+  }
+
+  /**
+   * Creates a cache builder for the documents in {@code archive}. Documents are loaded with the
+   * loader specified on the builder, not the archive's own.
+   */
+  public static Builder createFromArchive(final DocTheoryArchive archive) {
+    return Builder.fromArchive(archive);
+  }
+
   public static Builder createFromDocIdMap(final DocIDToFileMapping docidToSerifXML) {
     return Builder.fromDocIdMap(docidToSerifXML);
   }
@@ -66,13 +173,40 @@ public final class DefaultDocTheoryCache implements DocTheoryCache {
     private Builder() {
     }
 
-    public DocTheoryCache build() throws IOException {
-      return new DefaultDocTheoryCache(
-          CacheBuilder.newBuilder()
-              .maximumSize(maxElements >= 0 ? maxElements : 10)
-              .<Symbol, DocTheory>build(DocIDMapCacheLoader.from(
-                  docidMap,
-                  loader != null ? loader : SerifXMLLoader.builder().build())));
+    /**
+     * Builds the cache. This is typed as a {@link DefaultDocTheoryCache} so its statistics,
+     * prefetching and {@link DefaultDocTheoryCache#close()} are available.
+     */
+    public DefaultDocTheoryCache build() throws IOException {
+      final SerifXMLLoader loaderToUse = loader != null ? loader : SerifXMLLoader.builder().build();
+      final CacheLoader<Symbol, DocTheory> cacheLoader;
+      if (archive != null) {
+        cacheLoader = ArchiveCacheLoader.from(archive, loaderToUse);
+      } else {
+        cacheLoader = DocIDMapCacheLoader.from(docidMap, loaderToUse);
+      }
+      final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+      final CacheLoader<Symbol, DocTheory> hotTierLoader;
+      final SpillingCacheLoader spillingLoader;
+      if (spillStore != null) {
+        spillingLoader = SpillingCacheLoader.from(cacheLoader, spillStore, loaderToUse,
+            writer != null ? writer : SerifXMLWriter.create());
+        cacheBuilder.removalListener(spillingLoader);
+        hotTierLoader = spillingLoader;
+      } else {
+        spillingLoader = null;
+        hotTierLoader = cacheLoader;
+      }
+      if (maxWeightInBytes >= 0) {
+        cacheBuilder.maximumWeight(maxWeightInBytes).weigher(DocTheoryWeigher.create());
+      } else {
+        cacheBuilder.maximumSize(maxElements >= 0 ? maxElements : 10);
+      }
+      if (recordStats) {
+        cacheBuilder.recordStats();
+      }
+      return new DefaultDocTheoryCache(cacheBuilder.build(hotTierLoader), prefetchExecutor,
+          spillingLoader);
     }
 
     private static Builder fromDocIdMap(final DocIDToFileMapping docidToSerifXML) {
@@ -81,15 +215,91 @@ public final class DefaultDocTheoryCache implements DocTheoryCache {
       return ret;
     }
 
+    private static Builder fromArchive(final DocTheoryArchive archive) {
+      final Builder ret = new Builder();
+      ret.archive = checkNotNull(archive);
+      return ret;
+    }
+
     /**
      * Sets a maximum size for the cache. This is only a suggestion and not strictly enforced.
+     * Cannot be combined with {@link #setMaxWeightInBytes(long)}.
      */
     public Builder setMaxSize(final int maxSize) {
       checkArgument(maxSize >= 0);
+      checkState(maxWeightInBytes < 0, "Cannot bound a cache by both size and weight");
       maxElements = maxSize;
       return this;
     }
 
+    /**
+     * Bounds the cache by the estimated heap footprint of the documents it holds rather than by
+     * their number. The estimate is based on the numbers of tokens, parse nodes and mentions in
+     * each document and is only approximate. Cannot be combined with {@link #setMaxSize(int)}.
+     */
+    public Builder setMaxWeightInBytes(final long maxWeightInBytes) {
+      checkArgument(maxWeightInBytes >= 0);
+      checkState(maxElements < 0, "Cannot bound a cache by both size and weight");
+      this.maxWeightInBytes = maxWeightInBytes;
+      return this;
+    }
+
+    /**
+     * Records hit, miss, load time and eviction statistics, available from {@link
+     * DefaultDocTheoryCache#stats()}. This adds a small overhead to every lookup.
+     */
+    public Builder recordStats() {
+      this.recordStats = true;
+      return this;
+    }
+
+    /**
+     * Makes this a two-tier cache: documents evicted from the on-heap cache are kept as binary
+     * SerifXML in direct buffers outside the Java heap, up to {@code maxOffHeapBytes} in total,
+     * and are loaded from there rather than from their source when requested again. The off-heap
+     * memory is freed when documents are dropped from it and when the cache is {@linkplain
+     * DefaultDocTheoryCache#close() closed}. Cannot be combined with {@link
+     * #spillEvictedToFile(File)}.
+     */
+    public Builder spillEvictedOffHeap(final long maxOffHeapBytes) {
+      checkState(spillStore == null, "Only one second tier may be specified");
+      this.spillStore = OffHeapSpillStore.create(maxOffHeapBytes);
+      return this;
+    }
+
+    /**
+     * Makes this a two-tier cache: documents evicted from the on-heap cache are appended as binary
+     * SerifXML to {@code spillFile} and are loaded from there rather than from their source when
+     * requested again. Unlike {@link #spillEvictedOffHeap(long)}, nothing is ever dropped from
+     * the second tier, so this suits revisiting more documents than fit in memory. {@code
+     * spillFile} is overwritten, and is closed and deleted when the cache is {@linkplain
+     * DefaultDocTheoryCache#close() closed}, or failing that when the JVM exits.
+     */
+    public Builder spillEvictedToFile(final File spillFile) throws IOException {
+      checkState(spillStore == null, "Only one second tier may be specified");
+      this.spillStore = FileSpillStore.create(spillFile);
+      return this;
+    }
+
+    /**
+     * Specifies the writer used to spill documents to the second tier, if there is one.
+     */
+    public Builder setWriter(final SerifXMLWriter writer) {
+      this.writer = checkNotNull(writer);
+      return this;
+    }
+
+    /**
+     * Specifies the executor on which {@link DefaultDocTheoryCache#prefetch(Iterable)} loads
+     * documents. If not specified, a single daemon thread is created the first time anything is
+     * prefetched, which {@link DefaultDocTheoryCache#close()} shuts down. The caller remains
+     * responsible for shutting down {@code prefetchExecutor}.
+     */
+    public Builder setPrefetchExecutor(final ExecutorService prefetchExecutor) {
+      this.prefetchExecutor = checkNotNull(prefetchExecutor);
+      return this;
+    }
+
     /**
      * If you do not wish to use the default {@code SerifXMLLoader.fromStandardACETypes} loader, you
      * need to specify it with this.
@@ -102,8 +312,21 @@ public final class DefaultDocTheoryCache implements DocTheoryCache {
 
     private SerifXMLLoader loader = null;
     private DocIDToFileMapping docidMap = null;
+    private DocTheoryArchive archive = null;
     private int maxElements = -1;
+    private long maxWeightInBytes = -1;
+    private boolean recordStats = false;
+    private ExecutorService prefetchExecutor = null;
+    private DocTheorySpillStore spillStore = null;
+    private SerifXMLWriter writer = null;
   }
 
   private final LoadingCache<Symbol, DocTheory> innerCache;
+  @Nullable
+  private ExecutorService prefetchExecutor;
+  // whether prefetchExecutor is created, and so must be shut down, by this cache
+  private final boolean ownsPrefetchExecutor;
+  @Nullable
+  private final SpillingCacheLoader spillingLoader;
+  private boolean closed = false;
 }
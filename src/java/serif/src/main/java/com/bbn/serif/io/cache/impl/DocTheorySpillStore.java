@@ -0,0 +1,31 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * The second tier of a {@link DefaultDocTheoryCache}: holds documents evicted from the on-heap
+ * tier as binary SerifXML. Implementations must be thread-safe.
+ *
+ * Closing a store releases everything it holds. A closed store holds nothing: it returns {@code
+ * null} for every document, and ignores documents put into it.
+ */
+interface DocTheorySpillStore extends Closeable {
+
+  /**
+   * Returns the binary SerifXML stored for {@code docid}, or {@code null} if there is none.
+   */
+  @Nullable
+  byte[] get(Symbol docid) throws IOException;
+
+  boolean contains(Symbol docid);
+
+  /**
+   * Stores the binary SerifXML for {@code docid}, which may cause other documents to be dropped.
+   */
+  void put(Symbol docid, byte[] binarySerifXML) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.SynNode;
+
+import com.google.common.cache.Weigher;
+import com.google.common.primitives.Ints;
+
+/**
+ * Estimates how many bytes of heap a {@link DocTheory} occupies, for bounding a {@link
+ * DefaultDocTheoryCache} by memory rather than by number of documents.
+ *
+ * This is a rough estimate from counts of the objects which dominate the size of a typical
+ * document (tokens, parse nodes and mentions), not a measurement. It is only meant to make a
+ * document with a thousand sentences weigh a hundred times more than one with ten.
+ */
+final class DocTheoryWeigher implements Weigher<Symbol, DocTheory> {
+
+  // approximate retained sizes on a 64-bit JVM, including the collections holding the objects
+  private static final long BYTES_PER_DOCUMENT = 4096;
+  private static final long BYTES_PER_SENTENCE = 512;
+  private static final long BYTES_PER_TOKEN = 192;
+  private static final long BYTES_PER_PARSE_NODE = 128;
+  private static final long BYTES_PER_MENTION = 160;
+  private static final long BYTES_PER_PROPOSITION = 160;
+  private static final long BYTES_PER_OTHER_MENTION = 160;
+  private static final long BYTES_PER_ENTITY = 96;
+
+  private DocTheoryWeigher() {
+  }
+
+  static DocTheoryWeigher create() {
+    return new DocTheoryWeigher();
+  }
+
+  @Override
+  public int weigh(final Symbol docid, final DocTheory docTheory) {
+    return Ints.saturatedCast(estimatedBytes(docTheory));
+  }
+
+  static long estimatedBytes(final DocTheory docTheory) {
+    long ret = BYTES_PER_DOCUMENT + BYTES_PER_ENTITY * docTheory.entities().size();
+    for (final SentenceTheory st : docTheory.nonEmptySentenceTheories()) {
+      ret += BYTES_PER_SENTENCE
+          + BYTES_PER_TOKEN * st.tokenSequence().size()
+          + BYTES_PER_PARSE_NODE * numParseNodes(st)
+          + BYTES_PER_MENTION * st.mentions().size()
+          + BYTES_PER_PROPOSITION * st.propositions().size()
+          + BYTES_PER_OTHER_MENTION * (st.valueMentions().size() + st.eventMentions().size()
+                                           + st.relationMentions().size());
+    }
+    return ret;
+  }
+
+  private static int numParseNodes(final SentenceTheory st) {
+    if (!st.parse().root().isPresent()) {
+      return 0;
+    }
+    final NodeCounter counter = new NodeCounter();
+    st.parse().root().get().preorderTraversal(counter);
+    return counter.numNodes;
+  }
+
+  private static final class NodeCounter implements SynNode.PreorderVisitor {
+
+    private int numNodes = 0;
+
+    @Override
+    public boolean visitChildren(final SynNode node) {
+      ++numNodes;
+      return true;
+    }
+  }
+}
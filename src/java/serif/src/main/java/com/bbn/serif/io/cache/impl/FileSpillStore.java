@@ -0,0 +1,116 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link DocTheorySpillStore} which appends documents to a file. Nothing is ever dropped, so the
+ * file grows by the binary SerifXML size of each distinct document evicted; since documents never
+ * change, a document already in the file is not written again. Reads are positional, so they do
+ * not block each other or writes, and recently spilled documents are usually served from the
+ * operating system's page cache.
+ *
+ * The file is truncated when the store is created, and closed and deleted when the store is
+ * closed. In case the store is never closed, the file is also deleted when the JVM exits.
+ */
+final class FileSpillStore implements DocTheorySpillStore {
+
+  private final File spillFile;
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  // docid -> {offset, length}
+  private final ConcurrentMap<Symbol, long[]> locations = new ConcurrentHashMap<>();
+  private long end = 0;
+  private volatile boolean closed = false;
+
+  private FileSpillStore(final File spillFile) throws IOException {
+    this.spillFile = checkNotNull(spillFile);
+    this.file = new RandomAccessFile(spillFile, "rw");
+    file.setLength(0);
+    this.channel = file.getChannel();
+    spillFile.deleteOnExit();
+  }
+
+  static FileSpillStore create(final File spillFile) throws IOException {
+    return new FileSpillStore(spillFile);
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(final Symbol docid) throws IOException {
+    final long[] location = locations.get(docid);
+    if (location == null) {
+      return null;
+    }
+    final ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+    long position = location[0];
+    try {
+      while (buffer.hasRemaining()) {
+        final int numRead = channel.read(buffer, position);
+        if (numRead < 0) {
+          throw new EOFException(String.format("Spill file %s is truncated", spillFile));
+        }
+        position += numRead;
+      }
+    } catch (final ClosedChannelException e) {
+      if (closed) {
+        // closed while we were reading; the document can still be loaded from its source
+        return null;
+      }
+      throw e;
+    }
+    return buffer.array();
+  }
+
+  @Override
+  public boolean contains(final Symbol docid) {
+    return locations.containsKey(docid);
+  }
+
+  @Override
+  public synchronized void put(final Symbol docid, final byte[] binarySerifXML)
+      throws IOException {
+    if (closed || locations.containsKey(docid)) {
+      return;
+    }
+    final ByteBuffer buffer = ByteBuffer.wrap(binarySerifXML);
+    long position = end;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    // only readable once fully written
+    locations.put(docid, new long[]{end, binarySerifXML.length});
+    end = position;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    locations.clear();
+    file.close();
+    if (spillFile.exists() && !spillFile.delete()) {
+      throw new IOException("Could not delete spill file " + spillFile);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FileSpillStore(" + spillFile + ")";
+  }
+}
@@ -0,0 +1,137 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.io.DirectBuffers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link DocTheorySpillStore} which keeps documents in direct buffers outside the Java heap, so
+ * they neither count against the heap limit nor add to garbage collection time. When more than
+ * the specified number of bytes are stored, the least recently used documents are dropped.
+ *
+ * The memory of a dropped document, and of every document once the store is closed, is released
+ * immediately rather than whenever its buffer happens to be garbage collected. The JDK only offers
+ * this through internal APIs; on a JVM without either of the ones we know of, buffers are left to
+ * the garbage collector as before.
+ */
+final class OffHeapSpillStore implements DocTheorySpillStore {
+
+  private final Cache<Symbol, Slot> slots;
+  private volatile boolean closed = false;
+
+  private OffHeapSpillStore(final long maxBytes) {
+    checkArgument(maxBytes >= 0);
+    this.slots = CacheBuilder.newBuilder()
+        // documents are put by a single spilling thread, and a single segment applies the byte
+        // limit to all of them together rather than dividing it between segments
+        .concurrencyLevel(1)
+        .maximumWeight(maxBytes)
+        .weigher(new Weigher<Symbol, Slot>() {
+          @Override
+          public int weigh(final Symbol docid, final Slot slot) {
+            return slot.size;
+          }
+        })
+        .removalListener(new RemovalListener<Symbol, Slot>() {
+          @Override
+          public void onRemoval(final RemovalNotification<Symbol, Slot> notification) {
+            final Slot slot = notification.getValue();
+            if (slot != null) {
+              slot.free();
+            }
+          }
+        })
+        .build();
+  }
+
+  static OffHeapSpillStore create(final long maxBytes) {
+    return new OffHeapSpillStore(maxBytes);
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(final Symbol docid) {
+    final Slot slot = slots.getIfPresent(docid);
+    return slot != null ? slot.read() : null;
+  }
+
+  @Override
+  public boolean contains(final Symbol docid) {
+    return slots.asMap().containsKey(docid);
+  }
+
+  @Override
+  public void put(final Symbol docid, final byte[] binarySerifXML) {
+    if (closed) {
+      return;
+    }
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(binarySerifXML.length);
+    buffer.put(binarySerifXML);
+    buffer.flip();
+    slots.put(docid, new Slot(buffer));
+    if (closed) {
+      // raced with close()
+      slots.invalidate(docid);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    slots.invalidateAll();
+    slots.cleanUp();
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapSpillStore(" + slots.size() + " documents)";
+  }
+
+  /**
+   * One stored document. Reading and freeing are synchronized, so a buffer is never freed while it
+   * is being read, which would read freed memory.
+   */
+  private static final class Slot {
+
+    private final int size;
+    @Nullable
+    private ByteBuffer buffer;
+
+    Slot(final ByteBuffer buffer) {
+      this.size = buffer.capacity();
+      this.buffer = buffer;
+    }
+
+    /**
+     * Returns a copy of the document, or {@code null} if it has already been freed.
+     */
+    @Nullable
+    synchronized byte[] read() {
+      if (buffer == null) {
+        return null;
+      }
+      // duplicate so we never disturb the buffer's own position
+      final byte[] ret = new byte[size];
+      buffer.duplicate().get(ret);
+      return ret;
+    }
+
+    synchronized void free() {
+      if (buffer != null) {
+        DirectBuffers.free(buffer);
+        buffer = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.common.SerifException;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.io.SerifXMLWriter;
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Connects the two tiers of a {@link DefaultDocTheoryCache}. Documents evicted from the on-heap
+ * cache are written to a {@link DocTheorySpillStore} as binary SerifXML, and documents missing
+ * from the on-heap cache are loaded from there if possible, which builds their theory objects
+ * directly rather than reading and parsing their original SerifXML again. Only documents not
+ * found there are loaded by the wrapped {@link CacheLoader}.
+ *
+ * Evicted documents are spilled on a background thread, so the cache access which caused the
+ * eviction does not wait for them to be written. Until a document has been spilled, requests for
+ * it are answered with the evicted {@link DocTheory} itself. Documents which binary SerifXML
+ * cannot hold are never spilled, and are loaded from their source when requested again.
+ */
+final class SpillingCacheLoader extends CacheLoader<Symbol, DocTheory>
+    implements RemovalListener<Symbol, DocTheory>, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(SpillingCacheLoader.class);
+
+  private final CacheLoader<Symbol, DocTheory> sourceLoader;
+  private final DocTheorySpillStore spillStore;
+  private final SerifXMLLoader loader;
+  private final SerifXMLWriter writer;
+  // evicted documents waiting to be spilled
+  private final ConcurrentMap<Symbol, DocTheory> pending = new ConcurrentHashMap<>();
+  private final ExecutorService spillExecutor;
+
+  private SpillingCacheLoader(final CacheLoader<Symbol, DocTheory> sourceLoader,
+      final DocTheorySpillStore spillStore, final SerifXMLLoader loader,
+      final SerifXMLWriter writer) {
+    this.sourceLoader = checkNotNull(sourceLoader);
+    this.spillStore = checkNotNull(spillStore);
+    this.loader = checkNotNull(loader);
+    this.writer = checkNotNull(writer);
+    this.spillExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("DocTheoryCache-spill-%d")
+        .setDaemon(true)
+        .build());
+  }
+
+  public static SpillingCacheLoader from(final CacheLoader<Symbol, DocTheory> sourceLoader,
+      final DocTheorySpillStore spillStore, final SerifXMLLoader loader,
+      final SerifXMLWriter writer) {
+    return new SpillingCacheLoader(sourceLoader, spillStore, loader, writer);
+  }
+
+  @Override
+  public DocTheory load(final Symbol key) throws Exception {
+    final DocTheory notYetSpilled = pending.get(key);
+    if (notYetSpilled != null) {
+      return notYetSpilled;
+    }
+    final byte[] spilled = spillStore.get(key);
+    if (spilled != null) {
+      return loader.loadFromBinary(new ByteArrayInputStream(spilled));
+    } else {
+      return sourceLoader.load(key);
+    }
+  }
+
+  /**
+   * Queues documents to be spilled as they are evicted from the on-heap cache.
+   */
+  @Override
+  public void onRemoval(final RemovalNotification<Symbol, DocTheory> notification) {
+    final Symbol docid = notification.getKey();
+    final DocTheory docTheory = notification.getValue();
+    // DocTheorys never change, so there is no need to write one which is already spilled
+    if (!notification.wasEvicted() || docid == null || docTheory == null
+        || spillStore.contains(docid) || pending.putIfAbsent(docid, docTheory) != null) {
+      return;
+    }
+    try {
+      spillExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            spill(docid, docTheory);
+          } finally {
+            pending.remove(docid, docTheory);
+          }
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      // closed; the document can still be loaded from its source
+      pending.remove(docid, docTheory);
+    }
+  }
+
+  private void spill(final Symbol docid, final DocTheory docTheory) {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      writer.saveBinaryTo(docTheory, bytes);
+      spillStore.put(docid, bytes.toByteArray());
+    } catch (final IOException | SerifException e) {
+      // the document can still be loaded from its source
+      log.warn("Failed to spill document {} to {}", docid, spillStore, e);
+    }
+  }
+
+  /**
+   * Abandons any documents still waiting to be spilled and closes the spill store.
+   */
+  @Override
+  public void close() throws IOException {
+    spillExecutor.shutdownNow();
+    pending.clear();
+    spillStore.close();
+  }
+}
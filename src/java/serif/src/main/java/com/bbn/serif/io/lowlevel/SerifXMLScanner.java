@@ -0,0 +1,553 @@
+package com.bbn.serif.io.lowlevel;
+
+import com.bbn.bue.common.exceptions.NotImplementedException;
+import com.bbn.serif.io.SerifXMLException;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A low-level scanner which pulls tokens, names, mentions, event mentions and entities out of a
+ * whole SerifXML file without building a {@link com.bbn.serif.theories.DocTheory} or even an XML
+ * tree. The file is memory-mapped and scanned once, byte by byte, and only the few elements of
+ * interest are looked at more closely; everything else is skipped over. This makes corpus
+ * statistics and filtering jobs run close to the speed of reading the file.
+ *
+ * Like {@link SerifXMLSentenceTheoryScanner}, this favors speed over robustness: it assumes the
+ * file is well-formed SerifXML as written by Serif and does little validation. References to
+ * unknown tokens or parse nodes throw a {@link SerifXMLException}, and parses whose nodes are not
+ * numbered depth-first are rejected as {@code SerifXMLLoader} rejects them. If a sentence has more
+ * than one sentence theory, the names, mentions and event mentions of all of them are reported.
+ * Binary SerifXML is not supported.
+ *
+ * A scanner may be used any number of times and by several threads at once.
+ */
+public final class SerifXMLScanner {
+
+  private final ByteBuffer bytes;
+
+  private SerifXMLScanner(final ByteBuffer bytes) {
+    this.bytes = checkNotNull(bytes);
+  }
+
+  /**
+   * Creates a scanner over a memory-mapped SerifXML file.
+   */
+  public static SerifXMLScanner forFile(final File serifXMLFile) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(serifXMLFile, "r");
+         FileChannel channel = file.getChannel()) {
+      checkArgument(channel.size() <= Integer.MAX_VALUE, "%s is too large to scan", serifXMLFile);
+      // the mapping remains valid after the channel is closed
+      return new SerifXMLScanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Creates a scanner over the bytes of a UTF-8 SerifXML document between {@code
+   * buffer}'s position and limit.
+   */
+  public static SerifXMLScanner forBuffer(final ByteBuffer buffer) {
+    return new SerifXMLScanner(buffer.slice());
+  }
+
+  /**
+   * Scans the whole file, reporting what is found to {@code visitor} in the order it appears.
+   */
+  public void scan(final Visitor visitor) {
+    // duplicate so concurrent scans don't share a position
+    new Scan(bytes.duplicate(), checkNotNull(visitor)).run();
+  }
+
+  /**
+   * Receives what a {@link SerifXMLScanner} finds. All methods do nothing by default, so only
+   * those of interest need be overridden.
+   *
+   * Sentence and token indices count from zero within the document and sentence respectively.
+   * Offsets are character offsets into the document's original text, and both they and token
+   * spans are inclusive at both ends, as in SerifXML.
+   */
+  public abstract static class Visitor {
+
+    public void startDocument(final String docid) {
+    }
+
+    public void startSentence(final int sentenceIdx, final int startCharOffset,
+        final int endCharOffset) {
+    }
+
+    public void token(final int sentenceIdx, final int tokenIdx, final String text,
+        final int startCharOffset, final int endCharOffset) {
+    }
+
+    public void name(final int sentenceIdx, final String entityType, final int startTokenIdx,
+        final int endTokenIdx) {
+    }
+
+    /**
+     * A mention, spanning the tokens of the parse node it is attached to or, if it has none, the
+     * tokens it gives itself.
+     */
+    public void mention(final int sentenceIdx, final String mentionId, final String mentionType,
+        final String entityType, final int startTokenIdx, final int endTokenIdx) {
+    }
+
+    public void eventMention(final int sentenceIdx, final String eventMentionId,
+        final String eventType) {
+    }
+
+    public void endSentence(final int sentenceIdx) {
+    }
+
+    /**
+     * A document-level entity, with the ids of its mentions as reported to {@link
+     * #mention(int, String, String, String, int, int)}.
+     */
+    public void entity(final String entityId, final String entityType,
+        final List<String> mentionIds) {
+    }
+
+    public void endDocument() {
+    }
+  }
+
+  private static final byte[] DOCUMENT = ascii("Document");
+  private static final byte[] SENTENCE = ascii("Sentence");
+  private static final byte[] TOKEN = ascii("Token");
+  private static final byte[] NAME = ascii("Name");
+  private static final byte[] PARSE = ascii("Parse");
+  // matched ignoring case, as SerifXMLLoader does
+  private static final byte[] TREEBANK_STRING = ascii("TreeBankString");
+  private static final byte[] MENTION = ascii("Mention");
+  private static final byte[] EVENT_MENTION = ascii("EventMention");
+  private static final byte[] ENTITY = ascii("Entity");
+
+  private static final byte[] DOCID = ascii("docid");
+  private static final byte[] ID = ascii("id");
+  private static final byte[] CHAR_OFFSETS = ascii("char_offsets");
+  private static final byte[] START_TOKEN = ascii("start_token");
+  private static final byte[] END_TOKEN = ascii("end_token");
+  private static final byte[] ENTITY_TYPE = ascii("entity_type");
+  private static final byte[] MENTION_TYPE = ascii("mention_type");
+  private static final byte[] SYN_NODE_ID = ascii("syn_node_id");
+  private static final byte[] EVENT_TYPE = ascii("event_type");
+  private static final byte[] MENTION_IDS = ascii("mention_ids");
+  private static final byte[] NODE_ID_METHOD = ascii("node_id_method");
+
+  private static final Splitter ON_SPACES = Splitter.on(' ').omitEmptyStrings();
+
+  /**
+   * The state of a single pass over the file.
+   */
+  private static final class Scan {
+
+    private final ByteBuffer bytes;
+    private final int limit;
+    private final Visitor visitor;
+
+    private int sentenceIdx = -1;
+    private final Map<String, Integer> tokenIndicesByID = new HashMap<>();
+    // for each parse in the current sentence, the start and end token of each node, in DFS order
+    private final Map<String, int[]> nodeSpansByParseID = new HashMap<>();
+    private String currentParseID = null;
+    private final int[] offsets = new int[2];
+
+    private Scan(final ByteBuffer bytes, final Visitor visitor) {
+      this.bytes = bytes;
+      this.limit = bytes.limit();
+      this.visitor = visitor;
+    }
+
+    private void run() {
+      int pos = indexOf('<', 0);
+      while (pos >= 0) {
+        pos = element(pos);
+        pos = indexOf('<', pos);
+      }
+    }
+
+    /**
+     * Handles the markup starting at {@code start} and returns where to continue scanning.
+     */
+    private int element(final int start) {
+      final int nameStart = start + 1;
+      if (nameStart >= limit) {
+        return limit;
+      }
+      final byte first = bytes.get(nameStart);
+      if (first == '!') {
+        if (startsWith(nameStart, "!--")) {
+          return skipPast(nameStart, "-->");
+        } else if (startsWith(nameStart, "![CDATA[")) {
+          return skipPast(nameStart, "]]>");
+        }
+        return endOfTag(nameStart) + 1;
+      } else if (first == '?') {
+        return skipPast(nameStart, "?>");
+      }
+
+      if (first == '/') {
+        final int nameEnd = endOfName(nameStart + 1);
+        if (nameEquals(nameStart + 1, nameEnd, SENTENCE)) {
+          visitor.endSentence(sentenceIdx);
+        } else if (nameEquals(nameStart + 1, nameEnd, DOCUMENT)) {
+          visitor.endDocument();
+        }
+        return endOfTag(nameEnd) + 1;
+      }
+
+      final int nameEnd = endOfName(nameStart);
+      final int tagEnd = endOfTag(nameEnd);
+      if (nameEquals(nameStart, nameEnd, TOKEN)) {
+        token(nameEnd, tagEnd);
+      } else if (nameEquals(nameStart, nameEnd, NAME)) {
+        name(nameEnd, tagEnd);
+      } else if (nameEquals(nameStart, nameEnd, MENTION)) {
+        mention(nameEnd, tagEnd);
+      } else if (nameEqualsIgnoreCase(nameStart, nameEnd, TREEBANK_STRING)) {
+        treebankString(nameEnd, tagEnd);
+      } else if (nameEquals(nameStart, nameEnd, PARSE)) {
+        currentParseID = attribute(nameEnd, tagEnd, ID);
+      } else if (nameEquals(nameStart, nameEnd, EVENT_MENTION)) {
+        visitor.eventMention(sentenceIdx, attribute(nameEnd, tagEnd, ID),
+            attribute(nameEnd, tagEnd, EVENT_TYPE));
+      } else if (nameEquals(nameStart, nameEnd, SENTENCE)) {
+        ++sentenceIdx;
+        tokenIndicesByID.clear();
+        nodeSpansByParseID.clear();
+        parseOffsets(attribute(nameEnd, tagEnd, CHAR_OFFSETS));
+        visitor.startSentence(sentenceIdx, offsets[0], offsets[1]);
+      } else if (nameEquals(nameStart, nameEnd, ENTITY)) {
+        final String mentionIds = attribute(nameEnd, tagEnd, MENTION_IDS);
+        visitor.entity(attribute(nameEnd, tagEnd, ID), attribute(nameEnd, tagEnd, ENTITY_TYPE),
+            mentionIds != null ? ON_SPACES.splitToList(mentionIds)
+                               : ImmutableList.<String>of());
+      } else if (nameEquals(nameStart, nameEnd, DOCUMENT)) {
+        sentenceIdx = -1;
+        visitor.startDocument(attribute(nameEnd, tagEnd, DOCID));
+      }
+      return tagEnd + 1;
+    }
+
+    private void token(final int attributesStart, final int tagEnd) {
+      final int tokenIdx = tokenIndicesByID.size();
+      tokenIndicesByID.put(attribute(attributesStart, tagEnd, ID), tokenIdx);
+      parseOffsets(attribute(attributesStart, tagEnd, CHAR_OFFSETS));
+      visitor.token(sentenceIdx, tokenIdx, textContent(tagEnd), offsets[0], offsets[1]);
+    }
+
+    private void name(final int attributesStart, final int tagEnd) {
+      visitor.name(sentenceIdx, attribute(attributesStart, tagEnd, ENTITY_TYPE),
+          tokenIndex(attribute(attributesStart, tagEnd, START_TOKEN)),
+          tokenIndex(attribute(attributesStart, tagEnd, END_TOKEN)));
+    }
+
+    private void mention(final int attributesStart, final int tagEnd) {
+      final String synNodeID = attribute(attributesStart, tagEnd, SYN_NODE_ID);
+      int startTokenIdx = -1;
+      int endTokenIdx = -1;
+      if (synNodeID != null) {
+        // syn node ids are the parse id followed by the node's index in a DFS of the parse
+        final int dot = synNodeID.lastIndexOf('.');
+        final int[] nodeSpans = nodeSpansByParseID.get(synNodeID.substring(0, dot));
+        final int nodeIdx = Integer.parseInt(synNodeID.substring(dot + 1));
+        if (nodeSpans == null || 2 * nodeIdx + 1 >= nodeSpans.length) {
+          throw new SerifXMLException(String.format("Unknown syn node %s in sentence %s",
+              synNodeID, sentenceIdx));
+        }
+        startTokenIdx = nodeSpans[2 * nodeIdx];
+        endTokenIdx = nodeSpans[2 * nodeIdx + 1];
+      } else {
+        // mentions without a parse node give their tokens directly
+        final String startTokenID = attribute(attributesStart, tagEnd, START_TOKEN);
+        if (startTokenID != null) {
+          startTokenIdx = tokenIndex(startTokenID);
+          endTokenIdx = tokenIndex(attribute(attributesStart, tagEnd, END_TOKEN));
+        }
+      }
+      visitor.mention(sentenceIdx, attribute(attributesStart, tagEnd, ID),
+          attribute(attributesStart, tagEnd, MENTION_TYPE),
+          attribute(attributesStart, tagEnd, ENTITY_TYPE), startTokenIdx, endTokenIdx);
+    }
+
+    /**
+     * Works out the token span of every node of the current parse from its treebank string. This
+     * numbers the nodes, including terminals, the same way {@code SerifXMLLoader} does.
+     */
+    private void treebankString(final int attributesStart, final int tagEnd) {
+      final String nodeIdMethod = attribute(attributesStart, tagEnd, NODE_ID_METHOD);
+      if (nodeIdMethod == null) {
+        throw new SerifXMLException(String.format(
+            "Treebank string of parse %s in sentence %s has no node_id_method", currentParseID,
+            sentenceIdx));
+      }
+      if (!nodeIdMethod.equalsIgnoreCase("DFS")) {
+        throw new NotImplementedException(
+            "Currently Java code only knows how to do DFS node ids");
+      }
+      final String tb = textContent(tagEnd);
+      final List<Integer> spans = new ArrayList<>();
+      // indices into spans of the start of each open node
+      final List<Integer> openNodes = new ArrayList<>();
+      int tokenIdx = 0;
+      int i = 0;
+      while (i < tb.length()) {
+        final char c = tb.charAt(i);
+        if (c == '(') {
+          openNodes.add(spans.size());
+          spans.add(tokenIdx);
+          spans.add(-1);
+          // skip the node's tag
+          while (i < tb.length() && !Character.isWhitespace(tb.charAt(i))
+              && tb.charAt(i) != ')') {
+            ++i;
+          }
+        } else if (c == ')') {
+          final int node = openNodes.remove(openNodes.size() - 1);
+          spans.set(node + 1, tokenIdx - 1);
+          ++i;
+        } else if (Character.isWhitespace(c)) {
+          ++i;
+        } else {
+          // a terminal
+          spans.add(tokenIdx);
+          spans.add(tokenIdx);
+          ++tokenIdx;
+          while (i < tb.length() && !Character.isWhitespace(tb.charAt(i))
+              && tb.charAt(i) != ')' && tb.charAt(i) != '(') {
+            ++i;
+          }
+        }
+      }
+      final int[] nodeSpans = new int[spans.size()];
+      for (int j = 0; j < nodeSpans.length; ++j) {
+        nodeSpans[j] = spans.get(j);
+      }
+      if (currentParseID != null) {
+        nodeSpansByParseID.put(currentParseID, nodeSpans);
+      }
+    }
+
+    private int tokenIndex(final String tokenID) {
+      final Integer ret = tokenIndicesByID.get(tokenID);
+      if (ret == null) {
+        throw new SerifXMLException(String.format("Unknown token %s in sentence %s", tokenID,
+            sentenceIdx));
+      }
+      return ret;
+    }
+
+    private void parseOffsets(final String colonPair) {
+      if (colonPair == null) {
+        offsets[0] = -1;
+        offsets[1] = -1;
+        return;
+      }
+      final int colon = colonPair.indexOf(':');
+      offsets[0] = Integer.parseInt(colonPair.substring(0, colon));
+      offsets[1] = Integer.parseInt(colonPair.substring(colon + 1));
+    }
+
+    /**
+     * The value of the attribute {@code name} of the tag whose attributes lie between {@code
+     * start} and {@code end}, or {@code null} if it has none.
+     */
+    private String attribute(final int start, final int end, final byte[] name) {
+      int pos = start;
+      while (pos < end) {
+        // skip whitespace to the next attribute name
+        while (pos < end && isWhitespace(bytes.get(pos))) {
+          ++pos;
+        }
+        final int attrNameStart = pos;
+        while (pos < end && bytes.get(pos) != '=' && !isWhitespace(bytes.get(pos))) {
+          ++pos;
+        }
+        final int attrNameEnd = pos;
+        while (pos < end && bytes.get(pos) != '"' && bytes.get(pos) != '\'') {
+          ++pos;
+        }
+        if (pos >= end) {
+          return null;
+        }
+        final byte quote = bytes.get(pos);
+        final int valueStart = pos + 1;
+        int valueEnd = valueStart;
+        while (valueEnd < end && bytes.get(valueEnd) != quote) {
+          ++valueEnd;
+        }
+        if (nameEquals(attrNameStart, attrNameEnd, name)) {
+          return decode(valueStart, valueEnd);
+        }
+        pos = valueEnd + 1;
+      }
+      return null;
+    }
+
+    /**
+     * The text between the end of the start tag at {@code tagEnd} and the next tag.
+     */
+    private String textContent(final int tagEnd) {
+      if (bytes.get(tagEnd - 1) == '/') {
+        return "";
+      }
+      final int end = indexOf('<', tagEnd + 1);
+      return decode(tagEnd + 1, end >= 0 ? end : limit);
+    }
+
+    private String decode(final int start, final int end) {
+      final byte[] raw = new byte[end - start];
+      for (int i = 0; i < raw.length; ++i) {
+        raw[i] = bytes.get(start + i);
+      }
+      final String ret = new String(raw, Charsets.UTF_8);
+      return ret.indexOf('&') >= 0 ? unescape(ret) : ret;
+    }
+
+    private int endOfName(int pos) {
+      while (pos < limit) {
+        final byte b = bytes.get(pos);
+        if (isWhitespace(b) || b == '>' || b == '/') {
+          break;
+        }
+        ++pos;
+      }
+      return pos;
+    }
+
+    /**
+     * The position of the {@code >} ending the tag containing {@code pos}, ignoring any in
+     * attribute values.
+     */
+    private int endOfTag(int pos) {
+      byte quote = 0;
+      while (pos < limit) {
+        final byte b = bytes.get(pos);
+        if (quote != 0) {
+          if (b == quote) {
+            quote = 0;
+          }
+        } else if (b == '"' || b == '\'') {
+          quote = b;
+        } else if (b == '>') {
+          return pos;
+        }
+        ++pos;
+      }
+      return limit - 1;
+    }
+
+    private int skipPast(final int pos, final String terminator) {
+      for (int i = pos; i < limit; ++i) {
+        if (startsWith(i, terminator)) {
+          return i + terminator.length();
+        }
+      }
+      return limit;
+    }
+
+    private boolean startsWith(final int pos, final String s) {
+      if (pos + s.length() > limit) {
+        return false;
+      }
+      for (int i = 0; i < s.length(); ++i) {
+        if (bytes.get(pos + i) != s.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean nameEquals(final int start, final int end, final byte[] name) {
+      if (end - start != name.length) {
+        return false;
+      }
+      for (int i = 0; i < name.length; ++i) {
+        if (bytes.get(start + i) != name[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean nameEqualsIgnoreCase(final int start, final int end, final byte[] name) {
+      if (end - start != name.length) {
+        return false;
+      }
+      for (int i = 0; i < name.length; ++i) {
+        if (toLowerCase(bytes.get(start + i)) != toLowerCase(name[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int indexOf(final char c, final int from) {
+      for (int i = from; i < limit; ++i) {
+        if (bytes.get(i) == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static boolean isWhitespace(final byte b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+  }
+
+  private static byte toLowerCase(final byte b) {
+    return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+  }
+
+  private static String unescape(final String s) {
+    final StringBuilder ret = new StringBuilder(s.length());
+    int i = 0;
+    while (i < s.length()) {
+      final char c = s.charAt(i);
+      final int semicolon = c == '&' ? s.indexOf(';', i) : -1;
+      if (semicolon < 0) {
+        ret.append(c);
+        ++i;
+        continue;
+      }
+      final String entity = s.substring(i + 1, semicolon);
+      if (entity.equals("amp")) {
+        ret.append('&');
+      } else if (entity.equals("lt")) {
+        ret.append('<');
+      } else if (entity.equals("gt")) {
+        ret.append('>');
+      } else if (entity.equals("quot")) {
+        ret.append('"');
+      } else if (entity.equals("apos")) {
+        ret.append('\'');
+      } else if (entity.startsWith("#x")) {
+        ret.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+      } else if (entity.startsWith("#")) {
+        ret.appendCodePoint(Integer.parseInt(entity.substring(1)));
+      } else {
+        ret.append(s, i, semicolon + 1);
+      }
+      i = semicolon + 1;
+    }
+    return ret.toString();
+  }
+
+  private static byte[] ascii(final String s) {
+    return s.getBytes(Charsets.US_ASCII);
+  }
+}
@@ -9,6 +9,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * A low-level parser for pulling selected information out of a sentence theory's XML fragment
  * without having to parse everything. Mostly useful for Hadoop jobs. This code favors speed over
  * robustness, and should probably not be used for anything but BBN-internal experiments.
+ *
+ * To scan whole SerifXML files, use {@link SerifXMLScanner}.
  */
 public final class SerifXMLSentenceTheoryScanner {
 
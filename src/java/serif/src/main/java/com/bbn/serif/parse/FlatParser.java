@@ -20,6 +20,8 @@ import javax.inject.Inject;
 @Beta
 public final class FlatParser extends AbstractSentenceParser {
 
+  private static final Symbol X = Symbol.from("X");
+
   @Inject
   private FlatParser(@TolerantP final boolean tolerant) {
     super(tolerant);
@@ -31,20 +33,13 @@ public final class FlatParser extends AbstractSentenceParser {
     if (ImmutableList.copyOf(parseConstraints).size() > 0) {
       throw new RuntimeException("FlatParser does not know how to handle constraints");
     }
-    final SynNode.NonterminalBuilder fake = SynNode.nonterminalBuilder(Symbol.from("X"));
-    final SynNode headTerminal = SynNode.nonterminalBuilder(Symbol.from("X")).appendHead(
-        SynNode.terminalBuilder(Symbol.from("X")).tokenIndex(0).build(tokenSequence))
-        .build(tokenSequence);
-    fake.appendHead(headTerminal);
-    for (int i = 1; i < tokenSequence.size(); i++) {
-      final SynNode.TerminalBuilder terminalBuilder = SynNode.terminalBuilder(Symbol.from("X"));
-      final SynNode.Builder nonterminalBuilder =
-          SynNode.nonterminalBuilder(Symbol.from("X"))
-              .appendHead(terminalBuilder.tokenIndex(i).build(tokenSequence));
-
-      fake.appendNonHead(nonterminalBuilder.build(tokenSequence));
+    final SynNode.PreorderBuilder fake = SynNode.preorderBuilder(tokenSequence);
+    fake.openNonterminal(X, false);
+    for (int i = 0; i < tokenSequence.size(); i++) {
+      fake.openNonterminal(X, i == 0).addTerminal(X, i, true).close();
     }
-    return Parse.create(tokenSequence, fake.build(tokenSequence), 0.0f);
+    fake.close();
+    return Parse.create(tokenSequence, fake.build(), 0.0f);
   }
 
   @Override
@@ -9,7 +9,6 @@ import com.bbn.serif.parse.constraints.OffsetBasedParseConstraints;
 import com.bbn.serif.parse.constraints.ParseConstraint;
 import com.bbn.serif.theories.Parse;
 import com.bbn.serif.theories.SynNode;
-import com.bbn.serif.theories.Token;
 import com.bbn.serif.theories.TokenSequence;
 
 import com.google.common.annotations.Beta;
@@ -45,65 +44,79 @@ public class FlatTreeParserFromOffsets extends AbstractSentenceParser {
       final Set<ParseConstraint> parseConstraints) {
     final ImmutableList<OffsetBasedParseConstraints> constraintses =
         orderParseConstraints(parseConstraints);
-    final TreeRangeMap<CharOffset, SynNode> rangeToSynNodes =
-        terminalNodesFromSequences(tokenSequence);
-    // replace SynNodes in this map with gradually larger parent nodes.
+    final TreeRangeMap<CharOffset, Subtree> rangeToSubtrees =
+        terminalSubtreesFromSequences(tokenSequence);
+    // replace subtrees in this map with gradually larger parent subtrees. The SynNodes are only
+    // built once the shape of the whole tree is known, so the tree can be built top-down
     for (final OffsetBasedParseConstraints cons : constraintses) {
       final ImmutableList<Range<CharOffset>> intersectingRanges =
-          fetchIntersectingRanges(rangeToSynNodes, cons.subtreeSpan());
-      final ImmutableList<SynNode> synNodesForRanges =
-          synNodesForRanges(rangeToSynNodes, intersectingRanges);
+          fetchIntersectingRanges(rangeToSubtrees, cons.subtreeSpan());
+      final ImmutableList<Subtree> subtreesForRanges =
+          subtreesForRanges(rangeToSubtrees, intersectingRanges);
       // for now just pick the first to be the head
-      final SynNode.NonterminalBuilder node = SynNode.nonterminalBuilder(X);
-      node.appendHead(synNodesForRanges.get(0));
       checkState(
-          synNodesForRanges.get(0).span().startToken().charOffsetRange().asRange().lowerEndpoint()
-              .asInt() == cons.subtreeSpan().asRange().lowerEndpoint().asInt(),
+          tokenSequence.token(subtreesForRanges.get(0).startToken).charOffsetRange().asRange()
+              .lowerEndpoint().asInt() == cons.subtreeSpan().asRange().lowerEndpoint().asInt(),
           "lower endpoint of found synnodes not compatible with constraints!");
       checkState(
-          synNodesForRanges.get(synNodesForRanges.size() - 1).span().endToken().charOffsetRange()
-              .asRange().upperEndpoint().asInt() == cons.subtreeSpan().asRange().upperEndpoint()
-              .asInt(),
+          tokenSequence.token(subtreesForRanges.get(subtreesForRanges.size() - 1).endToken)
+              .charOffsetRange().asRange().upperEndpoint().asInt() == cons.subtreeSpan().asRange()
+              .upperEndpoint().asInt(),
           "upper endpoint of found synnodes not compatible with contraints!");
-      for (final SynNode n : synNodesForRanges.subList(1, synNodesForRanges.size())) {
-        node.appendNonHead(n);
-      }
       for (final Range<CharOffset> off : intersectingRanges) {
-        rangeToSynNodes.remove(off);
+        rangeToSubtrees.remove(off);
       }
-      rangeToSynNodes.put(cons.subtreeSpan().asRange(), node.build(tokenSequence));
+      rangeToSubtrees.put(cons.subtreeSpan().asRange(), Subtree.of(subtreesForRanges));
     }
 
-    // put all the remaining synnodes in a root synnode
-    final SynNode.NonterminalBuilder root = SynNode.nonterminalBuilder(Symbol.from("ROOT"));
-    final ImmutableList<SynNode> childNodes =
-        ImmutableList.copyOf(rangeToSynNodes.asMapOfRanges().values());
-    root.appendHead(childNodes.get(0));
-    for (final SynNode child : childNodes.subList(1, childNodes.size())) {
-      root.appendNonHead(child);
+    // put all the remaining subtrees in a root synnode
+    final SynNode.PreorderBuilder root = SynNode.preorderBuilder(tokenSequence);
+    root.openNonterminal(Symbol.from("ROOT"), false);
+    boolean isHead = true;
+    for (final Subtree child : rangeToSubtrees.asMapOfRanges().values()) {
+      addSubtree(root, child, isHead, tokenSequence);
+      isHead = false;
     }
-    return Parse.create(tokenSequence, root.build(tokenSequence), 1.0f);
+    root.close();
+    return Parse.create(tokenSequence, root.build(), 1.0f);
   }
 
-  // get the SynNodes that correspond to a particular range
-  private ImmutableList<SynNode> synNodesForRanges(
-      final RangeMap<CharOffset, SynNode> rangeToSynNodes,
+  private static void addSubtree(final SynNode.PreorderBuilder builder, final Subtree subtree,
+      final boolean isHead, final TokenSequence tokenSequence) {
+    builder.openNonterminal(X, isHead);
+    if (subtree.children.isEmpty()) {
+      builder.addTerminal(tokenSequence.token(subtree.startToken).symbol(), subtree.startToken,
+          true);
+    } else {
+      // the first child is the head
+      boolean isHeadChild = true;
+      for (final Subtree child : subtree.children) {
+        addSubtree(builder, child, isHeadChild, tokenSequence);
+        isHeadChild = false;
+      }
+    }
+    builder.close();
+  }
+
+  // get the subtrees that correspond to a particular range
+  private ImmutableList<Subtree> subtreesForRanges(
+      final RangeMap<CharOffset, Subtree> rangeToSubtrees,
       final Iterable<Range<CharOffset>> intersectingRanges) {
-    final ImmutableList.Builder<SynNode> ret = ImmutableList.builder();
+    final ImmutableList.Builder<Subtree> ret = ImmutableList.builder();
     final Ordering<Range<CharOffset>> byLowerEndPoint =
         Ordering.natural().onResultOf(RangeUtils.<CharOffset>lowerEndPointFunction());
     for (final Range<CharOffset> off : byLowerEndPoint.immutableSortedCopy(intersectingRanges)) {
-      ret.addAll(rangeToSynNodes.subRangeMap(off).asMapOfRanges().values());
+      ret.addAll(rangeToSubtrees.subRangeMap(off).asMapOfRanges().values());
     }
     return ret.build();
   }
 
   // get all the ranges that are a subset of this large range.
   private static ImmutableList<Range<CharOffset>> fetchIntersectingRanges(
-      final RangeMap<CharOffset, SynNode> rangeToSynNodes,
+      final RangeMap<CharOffset, Subtree> rangeToSubtrees,
       final OffsetRange<CharOffset> charOffsetOffsetRange) {
     final ImmutableList.Builder<Range<CharOffset>> ret = ImmutableList.builder();
-    for (final Range<CharOffset> r : rangeToSynNodes.asMapOfRanges().keySet()) {
+    for (final Range<CharOffset> r : rangeToSubtrees.asMapOfRanges().keySet()) {
       charOffsetOffsetRange.asRange();
       if (charOffsetOffsetRange.asRange().encloses(r)) {
         ret.add(r);
@@ -117,16 +130,12 @@ public class FlatTreeParserFromOffsets extends AbstractSentenceParser {
     return ret.build();
   }
 
-  // turns the tokens into terminal nodes, associates each of them with the token's range.
-  private TreeRangeMap<CharOffset, SynNode> terminalNodesFromSequences(
+  // turns the tokens into terminal subtrees, associates each of them with the token's range.
+  private TreeRangeMap<CharOffset, Subtree> terminalSubtreesFromSequences(
       final TokenSequence tokenSequence) {
-    final TreeRangeMap<CharOffset, SynNode> ret = TreeRangeMap.create();
+    final TreeRangeMap<CharOffset, Subtree> ret = TreeRangeMap.create();
     for (int i = 0; i < tokenSequence.size(); i++) {
-      final Token t = tokenSequence.token(i);
-      final SynNode terminal =
-          SynNode.terminalBuilder(t.symbol()).tokenIndex(i).build(tokenSequence);
-      ret.put(t.charOffsetRange().asRange(),
-          SynNode.nonterminalBuilder(X).appendHead(terminal).build(tokenSequence));
+      ret.put(tokenSequence.token(i).charOffsetRange().asRange(), Subtree.ofToken(i));
     }
     return ret;
   }
@@ -148,6 +157,32 @@ public class FlatTreeParserFromOffsets extends AbstractSentenceParser {
         .onResultOf(OffsetBasedParseConstraints.subtreeFunction()).immutableSortedCopy(ret.build());
   }
 
+  // an X node of the tree being built: either over a single token, as its preterminal, or over
+  // smaller subtrees
+  private static final class Subtree {
+
+    private final int startToken;
+    private final int endToken;
+    // empty for a token's node
+    private final ImmutableList<Subtree> children;
+
+    private Subtree(final int startToken, final int endToken,
+        final ImmutableList<Subtree> children) {
+      this.startToken = startToken;
+      this.endToken = endToken;
+      this.children = children;
+    }
+
+    static Subtree ofToken(final int tokenIndex) {
+      return new Subtree(tokenIndex, tokenIndex, ImmutableList.<Subtree>of());
+    }
+
+    static Subtree of(final ImmutableList<Subtree> children) {
+      return new Subtree(children.get(0).startToken,
+          children.get(children.size() - 1).endToken, children);
+    }
+  }
+
   @Override
   public void finish() {
     log.info("{} {} successful projections, {} failed", this.getClass(), successful, failed);
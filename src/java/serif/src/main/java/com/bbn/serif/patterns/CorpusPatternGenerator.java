@@ -0,0 +1,190 @@
+package com.bbn.serif.patterns;
+
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Generates patterns from every document of a corpus, several documents at once.
+ *
+ * {@link PatternGenerator} and {@link PatternGeneratorUD} keep per-document caches and per-call
+ * state, so neither may be shared between threads. Instead a fresh generator is built for each
+ * document on the thread which generates its patterns, so building the generators' caches is done
+ * in parallel too. Every generator is given the same maximum depth, bounding how deeply
+ * proposition patterns nest however deep the {@link DocumentGeneration} asks for.
+ *
+ * Patterns which are equal are interned, so each distinct pattern generated is held only once
+ * however many documents it is found in. At most a few documents per thread are in flight at
+ * once, and results are gathered in document order, so the {@link Result} does not depend on the
+ * number of threads.
+ */
+@Beta
+public final class CorpusPatternGenerator<G> {
+
+  /**
+   * Generates the patterns wanted from one document, using a generator built for that document.
+   * Called concurrently for different documents.
+   */
+  public interface DocumentGeneration<G> {
+
+    Iterable<? extends Pattern> generate(G generator, DocTheory docTheory);
+  }
+
+  private interface GeneratorFactory<G> {
+
+    G generatorFor(DocTheory docTheory);
+  }
+
+  private static final int DOCUMENTS_IN_FLIGHT_PER_THREAD = 2;
+
+  private final GeneratorFactory<G> generatorFactory;
+  private final int numThreads;
+
+  private CorpusPatternGenerator(final GeneratorFactory<G> generatorFactory,
+      final int numThreads) {
+    checkArgument(numThreads > 0, "Must generate patterns using at least one thread");
+    this.generatorFactory = checkNotNull(generatorFactory);
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * Generates patterns with {@link PatternGenerator}s which nest proposition patterns at most
+   * {@code maxDepth} deep.
+   */
+  public static CorpusPatternGenerator<PatternGenerator> forPatternGenerator(
+      final Set<String> mentionPremodStopWords, final int maxDepth, final int numThreads) {
+    checkArgument(maxDepth > 0, "Maximum depth must be positive");
+    final ImmutableSet<String> stopWords = ImmutableSet.copyOf(mentionPremodStopWords);
+    return new CorpusPatternGenerator<>(new GeneratorFactory<PatternGenerator>() {
+      @Override
+      public PatternGenerator generatorFor(final DocTheory docTheory) {
+        return new PatternGenerator(docTheory, stopWords, maxDepth);
+      }
+    }, numThreads);
+  }
+
+  /**
+   * Generates patterns with {@link PatternGeneratorUD}s which search and nest proposition
+   * patterns at most {@code maxDepth} deep.
+   */
+  public static CorpusPatternGenerator<PatternGeneratorUD> forPatternGeneratorUD(
+      final Set<String> mentionPremodStopWords, final boolean ud, final int maxDepth,
+      final int numThreads) {
+    checkArgument(maxDepth > 0, "Maximum depth must be positive");
+    final ImmutableSet<String> stopWords = ImmutableSet.copyOf(mentionPremodStopWords);
+    return new CorpusPatternGenerator<>(new GeneratorFactory<PatternGeneratorUD>() {
+      @Override
+      public PatternGeneratorUD generatorFor(final DocTheory docTheory) {
+        return new PatternGeneratorUD(docTheory, stopWords, ud, maxDepth);
+      }
+    }, numThreads);
+  }
+
+  /**
+   * Generates patterns from each of {@code docTheories} in parallel on {@code executor}, which
+   * should have at least as many threads as this generator was created with. The caller remains
+   * responsible for shutting the executor down.
+   */
+  public Result generate(final Iterable<DocTheory> docTheories,
+      final DocumentGeneration<? super G> generation, final ExecutorService executor) {
+    checkNotNull(generation);
+    checkNotNull(executor);
+    final ConcurrentMap<Pattern, Pattern> internedPatterns = new ConcurrentHashMap<>();
+    final Multiset<Pattern> patterns = LinkedHashMultiset.create();
+    final Queue<Future<List<Pattern>>> inFlight = new ArrayDeque<>();
+    final int maxInFlight = DOCUMENTS_IN_FLIGHT_PER_THREAD * numThreads;
+    int numDocuments = 0;
+
+    try {
+      final Iterator<DocTheory> docIt = docTheories.iterator();
+      while (docIt.hasNext() || !inFlight.isEmpty()) {
+        while (docIt.hasNext() && inFlight.size() < maxInFlight) {
+          inFlight.add(executor.submit(
+              generationTask(docIt.next(), generation, internedPatterns)));
+          ++numDocuments;
+        }
+        patterns.addAll(Uninterruptibles.getUninterruptibly(inFlight.remove()));
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (final Future<List<Pattern>> future : inFlight) {
+        future.cancel(true);
+      }
+    }
+
+    return new Result(ImmutableMultiset.copyOf(patterns), numDocuments);
+  }
+
+  private Callable<List<Pattern>> generationTask(final DocTheory docTheory,
+      final DocumentGeneration<? super G> generation,
+      final ConcurrentMap<Pattern, Pattern> internedPatterns) {
+    return new Callable<List<Pattern>>() {
+      @Override
+      public List<Pattern> call() {
+        final G generator = generatorFactory.generatorFor(docTheory);
+        final ImmutableList.Builder<Pattern> ret = ImmutableList.builder();
+        for (final Pattern pattern : generation.generate(generator, docTheory)) {
+          final Pattern previous = internedPatterns.putIfAbsent(pattern, pattern);
+          ret.add(previous != null ? previous : pattern);
+        }
+        return ret.build();
+      }
+    };
+  }
+
+  /**
+   * The patterns generated from a corpus, with how many times each was generated.
+   */
+  public static final class Result {
+
+    private final ImmutableMultiset<Pattern> patterns;
+    private final int numDocuments;
+
+    private Result(final ImmutableMultiset<Pattern> patterns, final int numDocuments) {
+      this.patterns = checkNotNull(patterns);
+      this.numDocuments = numDocuments;
+    }
+
+    /**
+     * Every distinct pattern generated, in the order first generated, with the number of times it
+     * was generated.
+     */
+    public ImmutableMultiset<Pattern> patterns() {
+      return patterns;
+    }
+
+    public int numDocuments() {
+      return numDocuments;
+    }
+
+    public int numPatternsGenerated() {
+      return patterns.size();
+    }
+
+    public int numDistinctPatterns() {
+      return patterns.elementSet().size();
+    }
+  }
+}
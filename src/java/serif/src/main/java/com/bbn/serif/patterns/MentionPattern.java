@@ -810,8 +810,7 @@ public final class MentionPattern extends LanguageVariantSwitchingPattern implem
       return cachedMatch.get();
     }
 
-    // TODO entity label
-    final boolean matches = passesEntityTypeConstraints(m)
+    final boolean matches = passesEntityTypeOrLabelConstraints(dt, m, matchState)
         && passesMentionTypeConstraints(m)
         && passesAppositiveConstraints(m)
         && passesEntityConstraints(m.entity(dt))
@@ -845,6 +844,17 @@ public final class MentionPattern extends LanguageVariantSwitchingPattern implem
     return matchState.registerUnmatched(this, a);
   }
 
+  // as in Brandy, a pattern with both entity types and entity labels accepts a mention matching
+  // either
+  private boolean passesEntityTypeOrLabelConstraints(final DocTheory dt, final Mention m,
+      final PatternMatchState matchState) {
+    if (entityLabels.isEmpty()) {
+      return passesEntityTypeConstraints(m);
+    }
+    return (!aceTypes.isEmpty() && passesEntityTypeConstraints(m))
+        || matchesInEntityLabel(dt, m, matchState);
+  }
+
   private boolean passesEntityTypeConstraints(final Mention m) {
     return (aceTypes.isEmpty() || aceTypes.contains(m.entityType()) &&
         (aceSubtypes.isEmpty() || aceSubtypes.contains(m.entitySubtype())));
@@ -931,7 +941,17 @@ public final class MentionPattern extends LanguageVariantSwitchingPattern implem
   // TODO: does this do anything to handle casing? Issue #337
   private boolean hasBlockedEntityLabel(final DocTheory dt, final Mention m,
       final PatternMatchState matchState) {
-    // TODO handle entity labels
+    if (blockingEntityLabels.isEmpty()) {
+      return false;
+    }
+    final Optional<Entity> entity = m.entity(dt);
+    if (entity.isPresent()) {
+      for (final Symbol labelForEntity : matchState.labelsForEntity(entity.get())) {
+        if (blockingEntityLabels.contains(labelForEntity)) {
+          return true;
+        }
+      }
+    }
     return false;
   }
 
@@ -57,6 +57,8 @@ public final class PatternGenerator {
 
   // These get reset whenever generatePropPatterns is called.
   private int maximumDepth;
+  // no proposition pattern is generated deeper than this, whatever depth is asked for
+  private final int maximumDepthCap;
   private Set<CONSTRAINTS> globalConstraints;
 
   // Map of Propositions to the Objects (Mentions and Propositions) that can be reached
@@ -74,8 +76,17 @@ public final class PatternGenerator {
   private final Symbol SLOT_1 = Symbol.from("slot1");
 
   public PatternGenerator(DocTheory dt, Set<String> mpsw) {
+    this(dt, mpsw, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a generator which never nests proposition patterns more than {@code maxDepth} deep,
+   * even if a larger depth constraint is passed to a {@code generate} method.
+   */
+  public PatternGenerator(DocTheory dt, Set<String> mpsw, int maxDepth) {
     docTheory = dt;
     mentionPremodStopWords = mpsw;
+    maximumDepthCap = maxDepth;
 
     objectToEventMentionCache = new HashMap<>();
     eventMentionToObjectCache = new HashMap<>();
@@ -726,7 +737,7 @@ public final class PatternGenerator {
   private List<Pattern> generatePropPatterns(
       Proposition proposition, int depthConstraint)
   {
-    maximumDepth = depthConstraint;
+    maximumDepth = Math.min(depthConstraint, maximumDepthCap);
 
     return(new ArrayList<Pattern>(getPropositionPatterns(proposition, 1)));
   }
@@ -62,6 +62,8 @@ public final class PatternGeneratorUD {
 
   // These get reset whenever generatePropPatterns is called.
   private int maximumDepth;
+  // no proposition pattern is generated deeper than this, whatever depth is asked for
+  private final int maximumDepthCap;
   private Set<CONSTRAINTS> globalConstraints;
 
   // Prop roles (aka relation types in dependency trees) we always block
@@ -89,11 +91,17 @@ public final class PatternGeneratorUD {
 
   private boolean DEBUG_PRINT = false;
 
+  /**
+   * Creates a generator which searches at most {@code maxDepth} propositions deep and never nests
+   * proposition patterns more than {@code maxDepth} deep, even if a larger depth constraint is
+   * passed to a {@code generate} method.
+   */
   public PatternGeneratorUD(DocTheory dt, Set<String> mpsw, boolean ud, int maxDepth)
   {
     docTheory = dt;
     mentionPremodStopWords = mpsw;
     use_dependencies = ud;
+    maximumDepthCap = maxDepth;
 
     objectToEventMentionCache = new HashMap<>();
     eventMentionToObjectCache = new HashMap<>();
@@ -826,7 +834,7 @@ public final class PatternGeneratorUD {
 
   private List<Pattern> generatePropPatterns(
       Proposition proposition, int depthConstraint) {
-    maximumDepth = depthConstraint;
+    maximumDepth = Math.min(depthConstraint, maximumDepthCap);
 
     return (new ArrayList<Pattern>(getPropositionPatterns(proposition, 1)));
   }
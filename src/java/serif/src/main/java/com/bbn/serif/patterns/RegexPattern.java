@@ -5,18 +5,17 @@ import com.bbn.serif.patterns.matching.MentionMatchingPattern;
 import com.bbn.serif.patterns.matching.PatternMatch;
 import com.bbn.serif.patterns.matching.PatternMatchState;
 import com.bbn.serif.patterns.matching.PatternReturns;
+import com.bbn.serif.patterns.matching.SentenceTextIndex;
 import com.bbn.serif.patterns.matching.SentenceMatchingPattern;
 import com.bbn.serif.patterns.matching.TokenSpanPatternMatch;
 import com.bbn.serif.theories.DocTheory;
 import com.bbn.serif.theories.EventMention;
 import com.bbn.serif.theories.Mention;
 import com.bbn.serif.theories.SentenceTheory;
-import com.bbn.serif.theories.Token;
 import com.bbn.serif.theories.TokenSequence;
 
 import com.google.common.base.Optional;
 
-import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
@@ -32,7 +31,8 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
   private final boolean matchWholeExtent;
   private final boolean addSpaces;
 
-  private java.util.regex.Pattern regexPattern;
+  // compiled once, when the pattern is built; null if it has subpatterns other than text
+  private final java.util.regex.Pattern regexPattern;
 
   /**
    * getter method for subpatterns
@@ -76,6 +76,7 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
     this.allowHeads = builder.allowHeads;
     this.matchWholeExtent = builder.matchWholeExtent;
     this.addSpaces = builder.addSpaces;
+    this.regexPattern = compileRegex(subpatterns);
   }
 
   @Override
@@ -205,7 +206,7 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
     int startToken = st.tokenSpan().startTokenIndexInclusive();
     int endToken = st.tokenSpan().endTokenIndexInclusive();
 
-    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken);
+    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken, matchState);
 
     if (match.isPresent())
       return matchState.registerPatternMatch(this, st, match.get());
@@ -225,7 +226,7 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
 
     int startToken = m.tokenSpan().startTokenIndexInclusive();
     int endToken = m.tokenSpan().endTokenIndexInclusive();
-    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken);
+    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken, matchState);
 
     if (match.isPresent())
       return matchState.registerPatternMatch(this, m, match.get());
@@ -248,7 +249,7 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
 
     int startToken = fullSpan.startTokenIndexInclusive();
     int endToken = fullSpan.endTokenIndexInclusive();
-    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken);
+    final Optional<PatternMatch> match = matchImpl(dt, st, startToken, endToken, matchState);
 
     if (match.isPresent())
       return matchState.registerPatternMatch(this, em, match.get());
@@ -258,47 +259,38 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
 
   // Match RegexPattern against span of sentence. Start and end token are inclusive.
   private Optional<PatternMatch> matchImpl(
-      DocTheory dt, SentenceTheory st, int startToken, int endToken)
+      DocTheory dt, SentenceTheory st, int startToken, int endToken, PatternMatchState matchState)
   {
-    createRegex();
-
-    TokenSequence ts = st.tokenSequence();
-    StringBuilder stringToMatchAgainstBuilder = new StringBuilder();
-    ImmutableList.Builder<Token> offsetToTokenMapBuilder = new ImmutableList.Builder();
-    for (int i = startToken; i <= endToken; i++) {
-      if (stringToMatchAgainstBuilder.length() != 0) {
-        stringToMatchAgainstBuilder.append(" ");
-        offsetToTokenMapBuilder.add(ts.token(i-1));
-      }
-
-      String txt = ts.token(i).tokenizedText().toString();
-      stringToMatchAgainstBuilder.append(txt);
-      for (int j = 0; j < txt.length(); j++) {
-        offsetToTokenMapBuilder.add(ts.token(i));
-      }
+    if (regexPattern == null) {
+      throw new UnsupportedOperationException(
+          "Regex patterns with non-text subpatterns are not yet supported: " + this);
     }
 
-    //System.out.println("Matching: "  + regexPattern.pattern() + " against: " + stringToMatchAgainstBuilder.toString());
-
-    String stringToMatchAgainst = stringToMatchAgainstBuilder.toString();
-    ImmutableList<Token> offsetToTokenMap = offsetToTokenMapBuilder.build();
-    Matcher m = regexPattern.matcher(stringToMatchAgainst);
+    // the span's text is a region of the sentence's text; with the default opaque bounds, word
+    // boundaries and anchors treat the region's ends as the ends of the input
+    final TokenSequence ts = st.tokenSequence();
+    final SentenceTextIndex textIndex = matchState.textIndex(ts);
+    final int regionStart = startToken <= endToken ? textIndex.startOffset(startToken) : 0;
+    final int regionEnd = startToken <= endToken ? textIndex.endOffset(endToken) : 0;
+    if (!matchState.mayMatchText(this, textIndex, regionStart, regionEnd)) {
+      return Optional.absent();
+    }
+    final Matcher m = regexPattern.matcher(textIndex.text()).region(regionStart, regionEnd);
     if (!m.find()) {
       return Optional.absent();
     }
 
-    Token matchStartToken = offsetToTokenMap.get(m.start());
-    Token matchEndToken = offsetToTokenMap.get(m.end() - 1);
-
-    final TokenSequence.Span tokenSeqSpan = ts.span(matchStartToken.index(), matchEndToken.index());
+    final TokenSequence.Span tokenSeqSpan =
+        ts.span(textIndex.tokenAt(m.start()), textIndex.tokenAt(m.end() - 1));
     final PatternMatch match = TokenSpanPatternMatch.of(this, dt, st, tokenSeqSpan);
     return Optional.of(match);
   }
 
-  private void createRegex() {
-    // Check if already initialized
-    if (regexPattern != null)
-      return;
+  // returns null if there are subpatterns other than text patterns, which we can't handle yet
+  private static java.util.regex.Pattern compileRegex(final List<Pattern> subpatterns) {
+    if (subpatterns == null) {
+      return null;
+    }
 
     StringBuilder stringBuilder = new StringBuilder();
 
@@ -308,7 +300,9 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
 
     stringBuilder.append("\\b");
     for (Pattern p : subpatterns) {
-      assert p instanceof TextPattern;
+      if (!(p instanceof TextPattern)) {
+        return null;
+      }
       TextPattern tp = (TextPattern) p;
       String text = tp.getText();
       submatchCount += StringUtils.countMatches(text, "(");
@@ -322,7 +316,7 @@ public final class RegexPattern extends LanguageVariantSwitchingPattern implemen
     // TODO: Mention subpatterns (see C++ code)
     // TODO: filter regexes (see C++ code)
 
-    regexPattern = java.util.regex.Pattern.compile(
+    return java.util.regex.Pattern.compile(
         stringBuilder.toString(), java.util.regex.Pattern.CASE_INSENSITIVE);
   }
 
@@ -0,0 +1,133 @@
+package com.bbn.serif.patterns.matching;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Entities;
+import com.bbn.serif.theories.Entity;
+import com.bbn.serif.theories.EventEventRelationMentions;
+import com.bbn.serif.theories.SentenceTheory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableSetMultimap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Matches a {@link com.bbn.serif.patterns.PatternSet} against successive versions of a document,
+ * such as those made by editing a few sentences with {@link
+ * DocTheory.Builder#replacePrimarySentenceTheory(SentenceTheory, SentenceTheory)}, redoing only
+ * the work the edits require.
+ *
+ * The matches of each sentence are kept, keyed by the identity of its {@link SentenceTheory}, and
+ * only sentences whose theory object is new are matched again. The document-level matches are
+ * redone only if the document's event-event relation mentions changed. Everything is matched
+ * again if the document's entities or entity labels changed, since any sentence's matches may
+ * depend on them, or if a different document is given. Entity label patterns, if any, are likewise
+ * rerun only over new sentences, with the labels found in the others kept, as long as the
+ * document's entities are unchanged. If some label pattern depends on entity labels, the labels
+ * of one sentence can change those of any other, so such patterns are rerun over the whole
+ * document each time.
+ *
+ * The results of {@link #findMatchesInDocument(DocTheory)} are the same as those of {@link
+ * PatternSetMatcher.DocumentPatternMatcher#findMatchesInDocument()}, except that kept matches
+ * refer, through {@link PatternMatch#docTheory()}, to the version of the document in which they
+ * were found. Sessions are not safe for concurrent use.
+ */
+@Beta
+public final class IncrementalMatchingSession {
+
+  private static final Logger log = LoggerFactory.getLogger(IncrementalMatchingSession.class);
+
+  private final PatternSetMatcher matcher;
+
+  private Map<SentenceTheory, PatternReturns> sentenceMatches = new IdentityHashMap<>();
+  // the entity labels found in each sentence, if they can be found one sentence at a time
+  private Map<SentenceTheory, ImmutableSetMultimap<Entity, Symbol>> sentenceEntityLabels =
+      new IdentityHashMap<>();
+  private PatternReturns documentLevelMatches = null;
+  // what the kept matches were computed against
+  private Symbol docid = null;
+  private Entities entities = null;
+  private ImmutableSetMultimap<Entity, Symbol> entityLabels = null;
+  private EventEventRelationMentions eventEventRelationMentions = null;
+
+  private IncrementalMatchingSession(final PatternSetMatcher matcher) {
+    this.matcher = checkNotNull(matcher);
+  }
+
+  static IncrementalMatchingSession create(final PatternSetMatcher matcher) {
+    return new IncrementalMatchingSession(matcher);
+  }
+
+  /**
+   * Finds all matches in {@code docTheory}, rematching only what changed since the previous call.
+   */
+  public PatternReturns findMatchesInDocument(final DocTheory docTheory) {
+    if (!docTheory.docid().equals(docid) || docTheory.entities() != entities) {
+      sentenceEntityLabels.clear();
+      sentenceMatches.clear();
+      documentLevelMatches = null;
+    }
+    final PatternSetMatcher.DocumentPatternMatcher documentMatcher =
+        matcher.inContextOf(docTheory, labelEntities(docTheory));
+    if (!documentMatcher.entityLabels().equals(entityLabels)) {
+      sentenceMatches.clear();
+      documentLevelMatches = null;
+    }
+    if (docTheory.eventEventRelationMentions() != eventEventRelationMentions) {
+      documentLevelMatches = null;
+    }
+
+    final Map<SentenceTheory, PatternReturns> newSentenceMatches = new IdentityHashMap<>();
+    final PatternReturns.Builder ret = new PatternReturns.Builder();
+    int numRematched = 0;
+    for (final SentenceTheory st : docTheory.sentenceTheories()) {
+      PatternReturns matches = sentenceMatches.get(st);
+      if (matches == null) {
+        matches = documentMatcher.findMatchesIn(st);
+        ++numRematched;
+      }
+      newSentenceMatches.put(st, matches);
+      ret.addAll(matches);
+    }
+    if (documentLevelMatches == null) {
+      documentLevelMatches = documentMatcher.findDocumentLevelMatches();
+    }
+    ret.addAll(documentLevelMatches);
+
+    // forget sentences which are no longer in the document
+    sentenceMatches = newSentenceMatches;
+    docid = docTheory.docid();
+    entities = docTheory.entities();
+    entityLabels = documentMatcher.entityLabels();
+    eventEventRelationMentions = docTheory.eventEventRelationMentions();
+    log.debug("Rematched {} of {} sentences of {}", numRematched,
+        docTheory.numSentences(), docid);
+    return ret.build();
+  }
+
+  private ImmutableSetMultimap<Entity, Symbol> labelEntities(final DocTheory docTheory) {
+    if (!matcher.entityLabelsAreFoundPerSentence()) {
+      return matcher.labelEntities(docTheory);
+    }
+    final Map<SentenceTheory, ImmutableSetMultimap<Entity, Symbol>> newSentenceEntityLabels =
+        new IdentityHashMap<>();
+    final ImmutableSetMultimap.Builder<Entity, Symbol> ret = ImmutableSetMultimap.builder();
+    for (final SentenceTheory st : docTheory.sentenceTheories()) {
+      ImmutableSetMultimap<Entity, Symbol> labels = sentenceEntityLabels.get(st);
+      if (labels == null) {
+        labels = matcher.entityLabelsFrom(docTheory, st);
+      }
+      newSentenceEntityLabels.put(st, labels);
+      ret.putAll(labels);
+    }
+    sentenceEntityLabels = newSentenceEntityLabels;
+    return ret.build();
+  }
+}
@@ -0,0 +1,272 @@
+package com.bbn.serif.patterns.matching;
+
+import com.bbn.serif.patterns.Pattern;
+import com.bbn.serif.patterns.RegexPattern;
+import com.bbn.serif.patterns.TextPattern;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Chars;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Rules out {@link RegexPattern}s cheaply before their regexes are run.
+ *
+ * Every text subpattern of a regex pattern which contains no regex syntax is a literal the regex
+ * can only match text containing. The literals of all the regex patterns of a pattern set are
+ * compiled into a single Aho-Corasick automaton, which finds every occurrence of every literal in
+ * a sentence's text in one pass ({@link #scan(String)}). A regex pattern then need only be run on
+ * a span of the sentence if all its literals occur within that span.
+ *
+ * Like the regexes, which are compiled case-insensitively without Unicode case folding, literals
+ * are compared ignoring ASCII case only. Patterns without any literals are never ruled out.
+ */
+final class LiteralPrefilter {
+
+  private static final String REGEX_SYNTAX = "\\^$.|?*+()[]{}";
+
+  // per pattern, the ids of the literals its regex requires
+  private final IdentityHashMap<Pattern, int[]> literalsByPattern;
+  private final int[] literalLengths;
+
+  // the automaton: for each state, its transitions (sorted by character), its failure state and
+  // the literals ending there
+  private final char[][] transitionChars;
+  private final int[][] transitionTargets;
+  private final int[] failure;
+  private final int[][] outputs;
+
+  private LiteralPrefilter(final IdentityHashMap<Pattern, int[]> literalsByPattern,
+      final List<String> literals) {
+    this.literalsByPattern = literalsByPattern;
+    this.literalLengths = new int[literals.size()];
+
+    // build the trie
+    final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    final List<List<Integer>> outputsBuilder = new ArrayList<>();
+    trie.add(new TreeMap<Character, Integer>());
+    outputsBuilder.add(new ArrayList<Integer>());
+    for (int literalId = 0; literalId < literals.size(); ++literalId) {
+      final String literal = literals.get(literalId);
+      literalLengths[literalId] = literal.length();
+      int state = 0;
+      for (int i = 0; i < literal.length(); ++i) {
+        final char c = literal.charAt(i);
+        Integer next = trie.get(state).get(c);
+        if (next == null) {
+          next = trie.size();
+          trie.add(new TreeMap<Character, Integer>());
+          outputsBuilder.add(new ArrayList<Integer>());
+          trie.get(state).put(c, next);
+        }
+        state = next;
+      }
+      outputsBuilder.get(state).add(literalId);
+    }
+
+    final int numStates = trie.size();
+    this.transitionChars = new char[numStates][];
+    this.transitionTargets = new int[numStates][];
+    for (int state = 0; state < numStates; ++state) {
+      transitionChars[state] = Chars.toArray(trie.get(state).keySet());
+      transitionTargets[state] = Ints.toArray(trie.get(state).values());
+    }
+
+    // failure links, breadth first so a state's failure state is done before the state itself
+    this.failure = new int[numStates];
+    this.outputs = new int[numStates][];
+    outputs[0] = Ints.toArray(outputsBuilder.get(0));
+    final Queue<Integer> queue = new ArrayDeque<>();
+    for (final int child : transitionTargets[0]) {
+      failure[child] = 0;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      final int state = queue.remove();
+      final List<Integer> stateOutputs = outputsBuilder.get(state);
+      stateOutputs.addAll(Ints.asList(outputs[failure[state]]));
+      outputs[state] = Ints.toArray(stateOutputs);
+      for (int i = 0; i < transitionChars[state].length; ++i) {
+        final int child = transitionTargets[state][i];
+        int fallback = failure[state];
+        while (fallback != 0 && next(fallback, transitionChars[state][i]) < 0) {
+          fallback = failure[fallback];
+        }
+        final int target = next(fallback, transitionChars[state][i]);
+        failure[child] = target >= 0 && target != child ? target : 0;
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Builds a prefilter for the given patterns. Anything other than a {@link RegexPattern}, and any
+   * regex pattern without literals, is ignored.
+   */
+  static LiteralPrefilter of(final Iterable<? extends Pattern> patterns) {
+    final Map<String, Integer> literalIds = new HashMap<>();
+    final List<String> literals = new ArrayList<>();
+    final IdentityHashMap<Pattern, int[]> literalsByPattern = new IdentityHashMap<>();
+    for (final Pattern pattern : patterns) {
+      if (!(pattern instanceof RegexPattern) || literalsByPattern.containsKey(pattern)) {
+        continue;
+      }
+      final Set<Integer> patternLiterals = new LinkedHashSet<>();
+      for (final String literal : requiredLiterals((RegexPattern) pattern)) {
+        Integer id = literalIds.get(literal);
+        if (id == null) {
+          id = literals.size();
+          literalIds.put(literal, id);
+          literals.add(literal);
+        }
+        patternLiterals.add(id);
+      }
+      if (!patternLiterals.isEmpty()) {
+        literalsByPattern.put(pattern, Ints.toArray(patternLiterals));
+      }
+    }
+    return new LiteralPrefilter(literalsByPattern, literals);
+  }
+
+  private static ImmutableList<String> requiredLiterals(final RegexPattern pattern) {
+    final ImmutableList.Builder<String> ret = ImmutableList.builder();
+    if (pattern.getSubpatterns() != null) {
+      for (final Pattern subpattern : pattern.getSubpatterns()) {
+        if (subpattern instanceof TextPattern) {
+          final String text = ((TextPattern) subpattern).getText();
+          if (text != null && !text.isEmpty() && isLiteral(text)) {
+            ret.add(foldCase(text));
+          }
+        }
+      }
+    }
+    return ret.build();
+  }
+
+  private static boolean isLiteral(final String text) {
+    for (int i = 0; i < text.length(); ++i) {
+      if (REGEX_SYNTAX.indexOf(text.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String foldCase(final String s) {
+    final char[] ret = s.toCharArray();
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = foldCase(ret[i]);
+    }
+    return new String(ret);
+  }
+
+  private static char foldCase(final char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  boolean isEmpty() {
+    return literalsByPattern.isEmpty();
+  }
+
+  private int next(final int state, final char c) {
+    final int idx = Arrays.binarySearch(transitionChars[state], c);
+    return idx >= 0 ? transitionTargets[state][idx] : -1;
+  }
+
+  /**
+   * Finds every occurrence of every literal in {@code text}.
+   */
+  Hits scan(final String text) {
+    final Hits ret = new Hits(literalLengths.length);
+    int state = 0;
+    for (int offset = 0; offset < text.length(); ++offset) {
+      final char c = foldCase(text.charAt(offset));
+      int target = next(state, c);
+      while (target < 0 && state != 0) {
+        state = failure[state];
+        target = next(state, c);
+      }
+      state = target >= 0 ? target : 0;
+      for (final int literalId : outputs[state]) {
+        ret.add(literalId, offset + 1 - literalLengths[literalId]);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Whether {@code pattern} could match within {@code [regionStart, regionEnd)} of the text {@code
+   * hits} were found in. Always true for patterns this prefilter knows nothing about.
+   */
+  boolean mayMatch(final Pattern pattern, final Hits hits, final int regionStart,
+      final int regionEnd) {
+    final int[] literals = literalsByPattern.get(pattern);
+    if (literals == null) {
+      return true;
+    }
+    for (final int literalId : literals) {
+      if (!hits.occursWithin(literalId, literalLengths[literalId], regionStart, regionEnd)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether {@code pattern} is one this prefilter may rule out.
+   */
+  boolean covers(final Pattern pattern) {
+    return literalsByPattern.containsKey(pattern);
+  }
+
+  /**
+   * The start offsets of each literal's occurrences in some text, in increasing order.
+   */
+  static final class Hits {
+
+    private final int[][] starts;
+    private final int[] counts;
+
+    private Hits(final int numLiterals) {
+      this.starts = new int[numLiterals][];
+      this.counts = new int[numLiterals];
+    }
+
+    private void add(final int literalId, final int start) {
+      int[] literalStarts = starts[literalId];
+      if (literalStarts == null) {
+        literalStarts = new int[4];
+        starts[literalId] = literalStarts;
+      } else if (counts[literalId] == literalStarts.length) {
+        literalStarts = Arrays.copyOf(literalStarts, 2 * literalStarts.length);
+        starts[literalId] = literalStarts;
+      }
+      literalStarts[counts[literalId]++] = start;
+    }
+
+    private boolean occursWithin(final int literalId, final int length, final int regionStart,
+        final int regionEnd) {
+      final int count = counts[literalId];
+      if (count == 0) {
+        return false;
+      }
+      int idx = Arrays.binarySearch(starts[literalId], 0, count, regionStart);
+      if (idx < 0) {
+        idx = -idx - 1;
+      }
+      // the first occurrence starting in the region is the first to end
+      return idx < count && starts[literalId][idx] + length <= regionEnd;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.bbn.serif.patterns.matching;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Optional;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The results of matching patterns against theory objects, for {@link PatternMatchState} and its
+ * {@link com.bbn.serif.patterns2} counterpart, which is why the patterns and results are not
+ * typed.
+ *
+ * Both the pattern and the object are compared by identity, so probing neither allocates nor
+ * computes the structural hash codes of patterns, which for a large {@link
+ * com.bbn.serif.patterns.PropPattern} is expensive. The table is open-addressed, grows up to
+ * {@code maxEntries} and is emptied rather than grown further once full; since it is only a
+ * cache, forgetting results costs time but never changes them.
+ */
+@Beta
+public final class MatchMemo<R> {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final int maxCapacity;
+  // shared by every cached failure to match, the commonest result by far
+  private final R noMatches;
+  private final Optional<R> noMatchesResult;
+  private Object[] patterns;
+  private Object[] objects;
+  private Optional<R>[] results;
+  private int size = 0;
+
+  private MatchMemo(final int maxEntries, final R noMatches) {
+    checkArgument(maxEntries > 0, "Memo table must hold at least one entry");
+    this.noMatches = checkNotNull(noMatches);
+    this.noMatchesResult = Optional.of(noMatches);
+    // the smallest power of two keeping the load factor at or below 1/2
+    this.maxCapacity =
+        Math.max(INITIAL_CAPACITY, Integer.highestOneBit(2 * maxEntries - 1) << 1);
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Creates a memo table holding up to {@code maxEntries} results. {@code noMatches} is the
+   * result recorded for a failure to match, which is stored without allocating.
+   */
+  public static <R> MatchMemo<R> create(final int maxEntries, final R noMatches) {
+    return new MatchMemo<>(maxEntries, noMatches);
+  }
+
+  /**
+   * The cached result of matching {@code pattern} against {@code object}, or absent if there is
+   * none.
+   */
+  public Optional<R> get(final Object pattern, final Object object) {
+    final int mask = patterns.length - 1;
+    for (int slot = slotFor(pattern, object, mask); patterns[slot] != null;
+         slot = (slot + 1) & mask) {
+      if (patterns[slot] == pattern && objects[slot] == object) {
+        return results[slot];
+      }
+    }
+    return Optional.absent();
+  }
+
+  public void put(final Object pattern, final Object object, final R result) {
+    if (2 * (size + 1) > patterns.length) {
+      if (patterns.length < maxCapacity) {
+        rehash(2 * patterns.length);
+      } else {
+        clear();
+      }
+    }
+    final int mask = patterns.length - 1;
+    int slot = slotFor(pattern, object, mask);
+    while (patterns[slot] != null) {
+      if (patterns[slot] == pattern && objects[slot] == object) {
+        results[slot] = wrap(result);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    patterns[slot] = pattern;
+    objects[slot] = object;
+    results[slot] = wrap(result);
+    ++size;
+  }
+
+  private Optional<R> wrap(final R result) {
+    return result == noMatches ? noMatchesResult : Optional.of(result);
+  }
+
+  /**
+   * Forgets all cached results, keeping the table's storage for reuse.
+   */
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(patterns, null);
+      Arrays.fill(objects, null);
+      Arrays.fill(results, null);
+      size = 0;
+    }
+  }
+
+  private static int slotFor(final Object pattern, final Object object, final int mask) {
+    final int h = System.identityHashCode(pattern) * 31 + System.identityHashCode(object);
+    // fold the high bits into the low ones the mask keeps
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void allocate(final int capacity) {
+    patterns = new Object[capacity];
+    objects = new Object[capacity];
+    results = (Optional<R>[]) new Optional[capacity];
+  }
+
+  private void rehash(final int newCapacity) {
+    final Object[] oldPatterns = patterns;
+    final Object[] oldObjects = objects;
+    final Optional<R>[] oldResults = results;
+    allocate(newCapacity);
+    final int mask = newCapacity - 1;
+    for (int i = 0; i < oldPatterns.length; ++i) {
+      if (oldPatterns[i] != null) {
+        int slot = slotFor(oldPatterns[i], oldObjects[i], mask);
+        while (patterns[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        patterns[slot] = oldPatterns[i];
+        objects[slot] = oldObjects[i];
+        results[slot] = oldResults[i];
+      }
+    }
+  }
+}
@@ -2,35 +2,69 @@ package com.bbn.serif.patterns.matching;
 
 import com.bbn.bue.common.symbols.Symbol;
 import com.bbn.serif.theories.Entity;
+import com.bbn.serif.theories.TokenSequence;
 import com.bbn.serif.patterns.Pattern;
 import com.bbn.serif.patterns.PatternSet;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableSetMultimap;
 
-import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Tracks all the mutable state during matching a {@link PatternSet} against
  * a {@link com.bbn.serif.theories.DocTheory}. In particular, this tracks entity-level matches
- * and caches sub-pattern matches for increased performance.
+ * and caches sub-pattern matches for increased performance. The labels of entities are computed
+ * once per document by {@link PatternSetMatcher#inContextOf(com.bbn.serif.theories.DocTheory)}
+ * and are fixed for the life of the state.
+ *
+ * Cached matches are keyed by the identity of the pattern and of the object matched, so looking
+ * them up allocates nothing. The cache holds at most {@link #DEFAULT_MAX_CACHED_MATCHES} results
+ * (or as many as given to {@link #create(int)}) and may be emptied with {@link #clearCache()}, so a
+ * single state can be reused from sentence to sentence.
  */
 @Beta
 final public class PatternMatchState {
-  private final ListMultimap<Entity, Symbol> labelsForEntity = ArrayListMultimap.create();
-  private final Set<MatchAttempt> unmatchedCache = Sets.newHashSet();
-  private final Map<MatchAttempt, PatternReturns> matchCache = Maps.newHashMap();
+  public static final int DEFAULT_MAX_CACHED_MATCHES = 1 << 16;
+
+  private final ImmutableSetMultimap<Entity, Symbol> labelsForEntity;
+  private final MatchMemo<PatternReturns> matchCache;
+  // text of the sentence most recently matched by text patterns
+  private SentenceTextIndex textIndex = null;
+  // may be null; if not, hits are for the literals in textIndex
+  private final LiteralPrefilter prefilter;
+  private LiteralPrefilter.Hits prefilterHits = null;
 
-  private PatternMatchState() {}
+  private PatternMatchState(final int maxCachedMatches, final LiteralPrefilter prefilter,
+      final ImmutableSetMultimap<Entity, Symbol> labelsForEntity) {
+    this.matchCache = MatchMemo.create(maxCachedMatches, PatternReturns.noMatches());
+    this.prefilter = prefilter;
+    this.labelsForEntity = checkNotNull(labelsForEntity);
+  }
 
   public static PatternMatchState create() {
-    return new PatternMatchState();
+    return create(DEFAULT_MAX_CACHED_MATCHES);
+  }
+
+  public static PatternMatchState create(int maxCachedMatches) {
+    return new PatternMatchState(maxCachedMatches, null,
+        ImmutableSetMultimap.<Entity, Symbol>of());
+  }
+
+  static PatternMatchState create(LiteralPrefilter prefilter,
+      ImmutableSetMultimap<Entity, Symbol> labelsForEntity) {
+    return new PatternMatchState(DEFAULT_MAX_CACHED_MATCHES, prefilter, labelsForEntity);
+  }
+
+  /**
+   * Forgets all cached matches. Entity labels are kept.
+   */
+  public void clearCache() {
+    matchCache.clear();
   }
 
   /**
@@ -38,7 +72,7 @@ final public class PatternMatchState {
    */
   public PatternReturns registerPatternMatch(Pattern pattern, Object object, Set<PatternMatch> matches) {
     final PatternReturns ret = PatternReturns.of(matches);
-    matchCache.put(MatchAttempt.of(pattern, object), ret);
+    matchCache.put(pattern, object, ret);
     return ret;
   }
 
@@ -47,7 +81,7 @@ final public class PatternMatchState {
    */
   public PatternReturns registerPatternMatch(Pattern pattern, Object object, PatternMatch match) {
     final PatternReturns ret = PatternReturns.of(match);
-    matchCache.put(MatchAttempt.of(pattern, object), ret);
+    matchCache.put(pattern, object, ret);
     return ret;
   }
 
@@ -55,7 +89,7 @@ final public class PatternMatchState {
    * Caches that {@code pattern} does not match {@code object}
    */
   public PatternReturns registerUnmatched(Pattern pattern, Object object) {
-    unmatchedCache.add(MatchAttempt.of(pattern, object));
+    matchCache.put(pattern, object, PatternReturns.noMatches());
     return PatternReturns.noMatches();
   }
 
@@ -63,20 +97,41 @@ final public class PatternMatchState {
    * Gets the cached result of applying {@code pattern} to {@code object}, if available.
    */
   public Optional<PatternReturns> cachedMatches(Pattern pattern, Object object) {
-    final MatchAttempt matchAttempt = MatchAttempt.of(pattern, object);
-    if (unmatchedCache.contains(matchAttempt)) {
-      return Optional.of(PatternReturns.noMatches());
+    return matchCache.get(pattern, object);
+  }
+
+  /**
+   * The text index of the sentence with tokens {@code tokenSequence}, built the first time it is
+   * asked for and then reused until a different sentence is asked for.
+   */
+  public SentenceTextIndex textIndex(TokenSequence tokenSequence) {
+    if (textIndex == null || textIndex.tokenSequence() != tokenSequence) {
+      textIndex = SentenceTextIndex.of(tokenSequence);
+      prefilterHits = null;
     }
+    return textIndex;
+  }
 
-    final PatternReturns cached = matchCache.get(matchAttempt);
-    if (cached != null) {
-      return Optional.of(cached);
-    } else {
-      return Optional.absent();
+  /**
+   * Whether the text pattern {@code pattern} could possibly match the text between {@code
+   * regionStart} and {@code regionEnd} of {@code textIndex}, which must be the index most recently
+   * returned by {@link #textIndex(TokenSequence)}. If this returns false, the pattern certainly
+   * does not match; if true, it must be tried. When matching a whole {@link PatternSet}, the
+   * literal text all the set's regex patterns require is found in each sentence in a single pass.
+   */
+  public boolean mayMatchText(Pattern pattern, SentenceTextIndex textIndex, int regionStart,
+      int regionEnd) {
+    if (prefilter == null || !prefilter.covers(pattern)) {
+      return true;
+    }
+    checkArgument(textIndex == this.textIndex, "Not the current sentence's text index");
+    if (prefilterHits == null) {
+      prefilterHits = prefilter.scan(textIndex.text());
     }
+    return prefilter.mayMatch(pattern, prefilterHits, regionStart, regionEnd);
   }
 
   public Set<Symbol> labelsForEntity(Entity e) {
-    return ImmutableSet.copyOf(labelsForEntity.get(e));
+    return labelsForEntity.get(e);
   }
 }
@@ -0,0 +1,13 @@
+package com.bbn.serif.patterns.matching;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Receives pattern matches as they are found, so they need not all be held in memory at once. See
+ * {@link PatternSetMatcher.DocumentPatternMatcher#visitMatchesInDocument(PatternMatchVisitor)}.
+ */
+@Beta
+public interface PatternMatchVisitor {
+
+  void visitMatch(PatternMatch match);
+}
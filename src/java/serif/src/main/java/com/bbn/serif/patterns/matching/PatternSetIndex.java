@@ -0,0 +1,250 @@
+package com.bbn.serif.patterns.matching;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.patterns.MentionPattern;
+import com.bbn.serif.patterns.Pattern;
+import com.bbn.serif.patterns.PatternSet;
+import com.bbn.serif.patterns.PropPattern;
+import com.bbn.serif.patterns.RegexPattern;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.Proposition;
+import com.bbn.serif.theories.SynNode;
+import com.bbn.serif.types.EntityType;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index over the top-level patterns of a {@link PatternSet} which, given a {@link Mention} or
+ * {@link Proposition}, finds the only top-level patterns which could possibly match it.
+ *
+ * A {@link MentionPattern} is filed under its headwords if it has any, otherwise under its entity
+ * types if it has any and no entity labels. A {@link PropPattern} is filed under its predicates if it has any, otherwise
+ * under the proposition types it accepts. When a pattern is looked up under its headwords or
+ * predicates, its entity or proposition types are checked as well. All other mention- and
+ * proposition-matching patterns are candidates for every object. Every pattern which is not a
+ * candidate for an object is one its {@code match} method would have rejected, so matching only
+ * the candidates gives the same results as matching everything.
+ *
+ * Patterns are identified by their position in {@link #topLevelPatterns()}, which fixes the order
+ * in which the matcher tries them.
+ */
+final class PatternSetIndex {
+
+  private final ImmutableList<Pattern> topLevelPatterns;
+  private final LiteralPrefilter literalPrefilter;
+
+  private final int[] unconstrainedMentionPatterns;
+  private final ImmutableListMultimap<Symbol, Integer> mentionPatternsByHeadword;
+  private final ImmutableListMultimap<EntityType, Integer> mentionPatternsByEntityType;
+  // for patterns filed by headword; null if a pattern accepts every entity type
+  private final List<Set<EntityType>> entityTypesByPattern;
+
+  private final int[] unconstrainedPropPatterns;
+  private final ImmutableListMultimap<Symbol, Integer> propPatternsByPredicate;
+  private final ImmutableListMultimap<Proposition.PredicateType, Integer> propPatternsByType;
+  // for patterns filed by predicate; null if a pattern accepts every proposition type
+  private final List<Set<Proposition.PredicateType>> predicateTypesByPattern;
+
+  private PatternSetIndex(final ImmutableList<Pattern> topLevelPatterns) {
+    this.topLevelPatterns = topLevelPatterns;
+    final List<Pattern> regexPatterns = new ArrayList<>();
+    final List<Integer> unconstrainedMentionPatterns = new ArrayList<>();
+    final ImmutableListMultimap.Builder<Symbol, Integer> mentionPatternsByHeadword =
+        ImmutableListMultimap.builder();
+    final ImmutableListMultimap.Builder<EntityType, Integer> mentionPatternsByEntityType =
+        ImmutableListMultimap.builder();
+    final List<Integer> unconstrainedPropPatterns = new ArrayList<>();
+    final ImmutableListMultimap.Builder<Symbol, Integer> propPatternsByPredicate =
+        ImmutableListMultimap.builder();
+    final ImmutableListMultimap.Builder<Proposition.PredicateType, Integer> propPatternsByType =
+        ImmutableListMultimap.builder();
+    this.entityTypesByPattern = new ArrayList<>(
+        Collections.<Set<EntityType>>nCopies(topLevelPatterns.size(), null));
+    this.predicateTypesByPattern = new ArrayList<>(
+        Collections.<Set<Proposition.PredicateType>>nCopies(topLevelPatterns.size(), null));
+
+    for (int i = 0; i < topLevelPatterns.size(); ++i) {
+      final Pattern pattern = topLevelPatterns.get(i);
+      if (pattern instanceof RegexPattern) {
+        regexPatterns.add(pattern);
+      } else if (pattern instanceof MentionPattern
+          && ((MentionPattern) pattern).getRegexPattern() != null) {
+        regexPatterns.add(((MentionPattern) pattern).getRegexPattern());
+      }
+      if (pattern instanceof MentionPattern) {
+        final MentionPattern mentionPattern = (MentionPattern) pattern;
+        // a pattern with entity labels may match mentions of any type, via their entities' labels
+        final Set<EntityType> entityTypes = mentionPattern.getEntityLabels().isEmpty()
+            ? ImmutableSet.copyOf(mentionPattern.getEntityTypes())
+            : ImmutableSet.<EntityType>of();
+        if (!mentionPattern.getHeadwords().isEmpty()) {
+          fileUnder(mentionPatternsByHeadword, mentionPattern.getHeadwords(), i);
+          entityTypesByPattern.set(i, entityTypes.isEmpty() ? null : entityTypes);
+        } else if (!entityTypes.isEmpty()) {
+          fileUnder(mentionPatternsByEntityType, entityTypes, i);
+        } else {
+          unconstrainedMentionPatterns.add(i);
+        }
+      } else if (pattern instanceof MentionMatchingPattern) {
+        unconstrainedMentionPatterns.add(i);
+      }
+
+      if (pattern instanceof PropPattern) {
+        final PropPattern propPattern = (PropPattern) pattern;
+        final Optional<Set<Proposition.PredicateType>> acceptedTypes =
+            acceptedPredicateTypes(propPattern.getPredicateType());
+        if (!propPattern.getPredicates().isEmpty()) {
+          fileUnder(propPatternsByPredicate, propPattern.getPredicates(), i);
+          predicateTypesByPattern.set(i, acceptedTypes.orNull());
+        } else if (acceptedTypes.isPresent()) {
+          fileUnder(propPatternsByType, acceptedTypes.get(), i);
+        } else {
+          unconstrainedPropPatterns.add(i);
+        }
+      } else if (pattern instanceof PropMatchingPattern) {
+        unconstrainedPropPatterns.add(i);
+      }
+    }
+
+    this.unconstrainedMentionPatterns = Ints.toArray(unconstrainedMentionPatterns);
+    this.mentionPatternsByHeadword = mentionPatternsByHeadword.build();
+    this.mentionPatternsByEntityType = mentionPatternsByEntityType.build();
+    this.unconstrainedPropPatterns = Ints.toArray(unconstrainedPropPatterns);
+    this.propPatternsByPredicate = propPatternsByPredicate.build();
+    this.propPatternsByType = propPatternsByType.build();
+    this.literalPrefilter = LiteralPrefilter.of(regexPatterns);
+  }
+
+  private static <K> void fileUnder(final ImmutableListMultimap.Builder<K, Integer> index,
+      final Iterable<? extends K> keys, final int patternIdx) {
+    for (final K key : keys) {
+      index.put(key, patternIdx);
+    }
+  }
+
+  static PatternSetIndex of(final PatternSet patternSet) {
+    return new PatternSetIndex(ImmutableList.copyOf(patternSet.getTopLevelPatterns()));
+  }
+
+  ImmutableList<Pattern> topLevelPatterns() {
+    return topLevelPatterns;
+  }
+
+  /**
+   * A prefilter for the regexes of top-level regex patterns and of the regex constraints of
+   * top-level mention patterns.
+   */
+  LiteralPrefilter literalPrefilter() {
+    return literalPrefilter;
+  }
+
+  /**
+   * Groups {@code mentions} by the top-level patterns which could match them. Each mention appears
+   * in the list for each of its candidate patterns, in the order the mentions were given.
+   */
+  Candidates<Mention> candidatesForMentions(final Iterable<Mention> mentions) {
+    final Candidates<Mention> ret = new Candidates<>(topLevelPatterns.size());
+    for (final Mention mention : mentions) {
+      ret.addForAll(unconstrainedMentionPatterns, mention);
+      final Symbol headword = mention.node().headWord();
+      for (final int patternIdx : mentionPatternsByHeadword.get(headword)) {
+        final Set<EntityType> entityTypes = entityTypesByPattern.get(patternIdx);
+        if (entityTypes == null || entityTypes.contains(mention.entityType())) {
+          ret.add(patternIdx, mention);
+        }
+      }
+      for (final int patternIdx : mentionPatternsByEntityType.get(mention.entityType())) {
+        ret.add(patternIdx, mention);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Groups {@code propositions} by the top-level patterns which could match them, in the same way
+   * as {@link #candidatesForMentions(Iterable)}.
+   */
+  Candidates<Proposition> candidatesForPropositions(final Iterable<Proposition> propositions) {
+    final Candidates<Proposition> ret = new Candidates<>(topLevelPatterns.size());
+    for (final Proposition proposition : propositions) {
+      ret.addForAll(unconstrainedPropPatterns, proposition);
+      final Optional<SynNode> predHead = proposition.predHead();
+      if (predHead.isPresent()) {
+        for (final int patternIdx : propPatternsByPredicate.get(predHead.get().headWord())) {
+          final Set<Proposition.PredicateType> predicateTypes =
+              predicateTypesByPattern.get(patternIdx);
+          if (predicateTypes == null || predicateTypes.contains(proposition.predType())) {
+            ret.add(patternIdx, proposition);
+          }
+        }
+      }
+      for (final int patternIdx : propPatternsByType.get(proposition.predType())) {
+        ret.add(patternIdx, proposition);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * The proposition types {@link PropPattern} accepts for a pattern of the given type, or absent
+   * if it accepts any.
+   */
+  private static Optional<Set<Proposition.PredicateType>> acceptedPredicateTypes(
+      final Proposition.PredicateType patternType) {
+    if (patternType == null || patternType == Proposition.PredicateType.ANY) {
+      return Optional.absent();
+    }
+    final ImmutableSet.Builder<Proposition.PredicateType> ret = ImmutableSet.builder();
+    ret.add(patternType);
+    if (patternType == Proposition.PredicateType.VERB) {
+      ret.add(Proposition.PredicateType.COPULA);
+    } else if (patternType == Proposition.PredicateType.NOUN) {
+      ret.add(Proposition.PredicateType.NAME, Proposition.PredicateType.PRONOUN);
+    } else if (patternType == Proposition.PredicateType.MODIFIER) {
+      ret.add(Proposition.PredicateType.POSS);
+    }
+    return Optional.<Set<Proposition.PredicateType>>of(ret.build());
+  }
+
+  /**
+   * Objects to try against each top-level pattern, indexed by pattern position.
+   */
+  static final class Candidates<T> {
+
+    private final List<List<T>> byPattern;
+
+    private Candidates(final int numPatterns) {
+      this.byPattern = new ArrayList<>(
+          Collections.<List<T>>nCopies(numPatterns, null));
+    }
+
+    List<T> forPattern(final int patternIdx) {
+      final List<T> ret = byPattern.get(patternIdx);
+      return ret != null ? ret : Collections.<T>emptyList();
+    }
+
+    private void add(final int patternIdx, final T item) {
+      List<T> items = byPattern.get(patternIdx);
+      if (items == null) {
+        items = new ArrayList<>();
+        byPattern.set(patternIdx, items);
+      }
+      items.add(item);
+    }
+
+    private void addForAll(final int[] patternIdxs, final T item) {
+      for (final int patternIdx : patternIdxs) {
+        add(patternIdx, item);
+      }
+    }
+  }
+}
@@ -9,20 +9,46 @@ import com.bbn.serif.theories.EventMention;
 import com.bbn.serif.theories.Mention;
 import com.bbn.serif.theories.Proposition;
 import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.patterns.MentionPattern;
 import com.bbn.serif.patterns.PatternSet;
 import com.bbn.serif.patterns.Pattern;
 
 import com.google.common.annotations.Beta;
-import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Matches a {@link PatternSet} against a {@link DocTheory}.
+ *
+ * Besides the sequential {@link DocumentPatternMatcher#findMatchesInDocument()}, which remains
+ * the reference implementation, matching may be spread over the sentences of a document ({@link
+ * DocumentPatternMatcher#findMatchesInDocument(ExecutorService)}) or over many documents ({@link
+ * #findMatchesInDocuments(Iterable, ExecutorService, int)}). Both return exactly what sequential
+ * matching would, in the same order. Each sentence is matched with its own {@link
+ * PatternMatchState}, which is never shared between threads.
  */
 @Beta
 @TextGroupImmutable
@@ -30,14 +56,243 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Value.Enclosing
 public abstract class PatternSetMatcher {
 
+  private static final Logger log = LoggerFactory.getLogger(PatternSetMatcher.class);
+
+  public static final int DEFAULT_MAX_ENTITY_LABEL_ITERATIONS = 10;
+
   public abstract PatternSet patternSet();
 
+  /**
+   * Narrows the top-level patterns tried against each mention and proposition to those which could
+   * possibly match it, so matching cost grows with the number of candidate patterns rather than
+   * the size of the pattern set.
+   */
+  @Value.Lazy
+  PatternSetIndex index() {
+    return PatternSetIndex.of(patternSet());
+  }
+
+  /**
+   * The most times the entity label patterns are run over a document. If some label pattern
+   * depends on entity labels, they are rerun, each time against the labels found by the previous
+   * run alone, until a run finds exactly the labels it was given. Since blocking labels can make
+   * a run find fewer labels than the one before, this need not happen; the labels from the last
+   * run are then used.
+   */
+  @Value.Default
+  public int maxEntityLabelIterations() {
+    return DEFAULT_MAX_ENTITY_LABEL_ITERATIONS;
+  }
+
+  @Value.Check
+  protected void check() {
+    checkArgument(maxEntityLabelIterations() > 0, "Must run entity label patterns at least once");
+    for (final Map.Entry<Symbol, Pattern> e : patternSet().getEntityLabels().entrySet()) {
+      checkArgument(e.getValue() instanceof MentionMatchingPattern,
+          "Entity label %s must be given by a mention-matching pattern but got %s",
+          e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * Prepares to match against {@code dt}. If the pattern set has entity label patterns, this
+   * labels the entities of {@code dt} first: an entity gets a label if the label's pattern matches
+   * any of its mentions. The labels are then fixed while matching every sentence of {@code dt}.
+   */
   public DocumentPatternMatcher inContextOf(DocTheory dt) {
-    if (!patternSet().getEntityLabels().isEmpty()) {
-      throw new UnsupportedOperationException("Entity label patterns not yet supported");
+    return new DocumentPatternMatcher(dt, labelEntities(dt));
+  }
+
+  // for callers which worked out the labels inContextOf would find themselves
+  DocumentPatternMatcher inContextOf(final DocTheory dt,
+      final ImmutableSetMultimap<Entity, Symbol> entityLabels) {
+    return new DocumentPatternMatcher(dt, entityLabels);
+  }
+
+  ImmutableSetMultimap<Entity, Symbol> labelEntities(final DocTheory dt) {
+    ImmutableSetMultimap<Entity, Symbol> labels = ImmutableSetMultimap.of();
+    if (patternSet().getEntityLabels().isEmpty()) {
+      return labels;
+    }
+    final boolean labelsDependOnLabels = entityLabelPatternsDependOnLabels();
+    for (int iteration = 0; iteration < maxEntityLabelIterations(); ++iteration) {
+      final ImmutableSetMultimap<Entity, Symbol> newLabels = applyEntityLabelPatterns(dt, labels);
+      // rerunning from a fixed point can only reproduce it
+      if (!labelsDependOnLabels || newLabels.equals(labels)) {
+        return newLabels;
+      }
+      labels = newLabels;
+    }
+    log.warn("Entity labels for {} did not converge after {} iterations", dt.docid(),
+        maxEntityLabelIterations());
+    return labels;
+  }
+
+  // labels from earlier runs are not carried forward: a label granted only because of labels
+  // which a blocking label has since removed must be withdrawn too
+  private ImmutableSetMultimap<Entity, Symbol> applyEntityLabelPatterns(final DocTheory dt,
+      final ImmutableSetMultimap<Entity, Symbol> labels) {
+    final ImmutableSetMultimap.Builder<Entity, Symbol> ret = ImmutableSetMultimap.builder();
+    final PatternMatchState matchState = newMatchState(labels);
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      addEntityLabels(dt, st, matchState, ret);
+    }
+    return ret.build();
+  }
+
+  private void addEntityLabels(final DocTheory dt, final SentenceTheory st,
+      final PatternMatchState matchState, final ImmutableSetMultimap.Builder<Entity, Symbol> ret) {
+    matchState.clearCache();
+    for (final Map.Entry<Symbol, Pattern> e : patternSet().getEntityLabels().entrySet()) {
+      final MentionMatchingPattern labelPattern = (MentionMatchingPattern) e.getValue();
+      for (final Mention mention : st.mentions()) {
+        if (labelPattern.match(dt, st, mention, matchState, true).matched()) {
+          final Optional<Entity> entity = mention.entity(dt);
+          if (entity.isPresent()) {
+            ret.put(entity.get(), e.getKey());
+          }
+        }
+      }
     }
+  }
+
+  /**
+   * Whether the entity labels {@link #inContextOf(DocTheory)} finds are just those the label
+   * patterns give the mentions of each sentence, found by {@link #entityLabelsFrom(DocTheory,
+   * SentenceTheory)}, put together. This is so when there are label patterns and none of them
+   * depends on entity labels, so they are run only once.
+   */
+  boolean entityLabelsAreFoundPerSentence() {
+    return !patternSet().getEntityLabels().isEmpty() && !entityLabelPatternsDependOnLabels();
+  }
+
+  ImmutableSetMultimap<Entity, Symbol> entityLabelsFrom(final DocTheory dt,
+      final SentenceTheory st) {
+    checkState(entityLabelsAreFoundPerSentence(),
+        "Entity labels cannot be found one sentence at a time");
+    final ImmutableSetMultimap.Builder<Entity, Symbol> ret = ImmutableSetMultimap.builder();
+    addEntityLabels(dt, st, newMatchState(ImmutableSetMultimap.<Entity, Symbol>of()), ret);
+    return ret.build();
+  }
+
+  // conservatively, anything but a mention pattern without label constraints might
+  private boolean entityLabelPatternsDependOnLabels() {
+    for (final Pattern labelPattern : patternSet().getEntityLabels().values()) {
+      if (!(labelPattern instanceof MentionPattern)
+          || !((MentionPattern) labelPattern).getEntityLabels().isEmpty()
+          || !((MentionPattern) labelPattern).getBlockingEntityLabels().isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    return new DocumentPatternMatcher(dt, ImmutableMultimap.<Entity, Symbol>of());
+  /**
+   * Matches the pattern set against each of {@code docTheories}, one document per task on {@code
+   * executor}, returning the matches for each document in the order the documents were given.
+   * Matching happens as the result is iterated: at most {@code maxInFlight} documents are being
+   * matched or waiting to be consumed at once, and more are only taken from {@code docTheories}
+   * as results are consumed, so neither the documents nor their matches pile up in memory. If
+   * matching a document fails, the failure is rethrown when its result would have been returned
+   * and the remaining tasks are cancelled. Iterating the result again matches the documents again.
+   */
+  public Iterable<PatternReturns> findMatchesInDocuments(final Iterable<DocTheory> docTheories,
+      final ExecutorService executor, final int maxInFlight) {
+    checkNotNull(docTheories);
+    checkNotNull(executor);
+    checkArgument(maxInFlight > 0, "Must allow at least one document to be matched at once");
+    return new Iterable<PatternReturns>() {
+      @Override
+      public Iterator<PatternReturns> iterator() {
+        return new DocumentMatchesIterator(docTheories.iterator(), executor, maxInFlight);
+      }
+    };
+  }
+
+  private final class DocumentMatchesIterator extends AbstractIterator<PatternReturns> {
+
+    private final Iterator<DocTheory> docTheories;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<PatternReturns>> inFlight = new ArrayDeque<>();
+
+    private DocumentMatchesIterator(final Iterator<DocTheory> docTheories,
+        final ExecutorService executor, final int maxInFlight) {
+      this.docTheories = docTheories;
+      this.executor = executor;
+      this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    protected PatternReturns computeNext() {
+      fillPipeline();
+      if (inFlight.isEmpty()) {
+        return endOfData();
+      }
+      final PatternReturns ret;
+      try {
+        ret = Uninterruptibles.getUninterruptibly(inFlight.removeFirst());
+      } catch (final ExecutionException e) {
+        for (final Future<PatternReturns> future : inFlight) {
+          future.cancel(true);
+        }
+        inFlight.clear();
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new RuntimeException(e.getCause());
+      }
+      // keep the executor busy while our caller works on this document's matches
+      fillPipeline();
+      return ret;
+    }
+
+    private void fillPipeline() {
+      while (inFlight.size() < maxInFlight && docTheories.hasNext()) {
+        final DocTheory docTheory = docTheories.next();
+        inFlight.addLast(executor.submit(new Callable<PatternReturns>() {
+          @Override
+          public PatternReturns call() {
+            return inContextOf(docTheory).findMatchesInDocument();
+          }
+        }));
+      }
+    }
+  }
+
+  private static ImmutableList<PatternReturns> runInOrder(
+      final List<Callable<PatternReturns>> tasks, final ExecutorService executor) {
+    final List<Future<PatternReturns>> futures = new ArrayList<>();
+    for (final Callable<PatternReturns> task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    final ImmutableList.Builder<PatternReturns> ret = ImmutableList.builder();
+    try {
+      for (final Future<PatternReturns> future : futures) {
+        ret.add(Uninterruptibles.getUninterruptibly(future));
+      }
+    } catch (final ExecutionException e) {
+      for (final Future<PatternReturns> future : futures) {
+        future.cancel(true);
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    return ret.build();
+  }
+
+  /**
+   * Starts a session for repeatedly matching versions of the same document, which rematches only
+   * what changed between versions.
+   */
+  public IncrementalMatchingSession newIncrementalSession() {
+    return IncrementalMatchingSession.create(this);
+  }
+
+  private PatternMatchState newMatchState(final ImmutableSetMultimap<Entity, Symbol> entityLabels) {
+    return PatternMatchState.create(index().literalPrefilter(), entityLabels);
   }
 
   public static PatternSetMatcher of(PatternSet patternSet) {
@@ -47,10 +302,10 @@ public abstract class PatternSetMatcher {
   public final class DocumentPatternMatcher {
 
     private final DocTheory docTheory;
-    private final ImmutableMultimap<Entity, Symbol> entityLabels;
+    private final ImmutableSetMultimap<Entity, Symbol> entityLabels;
 
     private DocumentPatternMatcher(final DocTheory docTheory,
-        final ImmutableMultimap<Entity, Symbol> entityLabels) {
+        final ImmutableSetMultimap<Entity, Symbol> entityLabels) {
       this.docTheory = checkNotNull(docTheory);
       this.entityLabels = checkNotNull(entityLabels);
     }
@@ -59,18 +314,84 @@ public abstract class PatternSetMatcher {
       return docTheory;
     }
 
-    private ImmutableMultimap<Entity, Symbol> entityLabels() {
+    ImmutableSetMultimap<Entity, Symbol> entityLabels() {
       return entityLabels;
     }
 
     // TODO: return all matches, not just the toplevel match
     public final PatternReturns findMatchesInDocument() {
       final PatternReturns.Builder ret = new PatternReturns.Builder();
+      visitMatchesInDocument(new PatternMatchVisitor() {
+        @Override
+        public void visitMatch(final PatternMatch match) {
+          ret.addMatches(match);
+        }
+      });
+      return ret.build();
+    }
+
+    /**
+     * Passes the matches {@link #findMatchesInDocument()} would return to {@code visitor}, in the
+     * same order, as each sentence is matched. Only one sentence's matches are held at a time, so
+     * consumers which write matches out as they arrive need not hold the whole document's.
+     */
+    public final void visitMatchesInDocument(final PatternMatchVisitor visitor) {
+      // one match state, with its cache emptied between sentences, serves the whole document
+      final PatternMatchState matchState = newMatchState(entityLabels());
       for (final SentenceTheory st : docTheory().sentenceTheories()) {
-        ret.addAll(findMatchesIn(st));
+        matchState.clearCache();
+        visitAll(findMatchesIn(st, matchState), visitor);
       }
-      final PatternMatchState matchState = PatternMatchState.create();
-      for (final Pattern pattern : patternSet().getTopLevelPatterns()) {
+      matchState.clearCache();
+      final PatternReturns.Builder documentLevelMatches = new PatternReturns.Builder();
+      addDocumentLevelMatches(documentLevelMatches, matchState);
+      visitAll(documentLevelMatches.build(), visitor);
+    }
+
+    // matches from different sentences are never equal, so de-duplicating within each sentence
+    // is enough to visit each distinct match once
+    private void visitAll(final PatternReturns matches, final PatternMatchVisitor visitor) {
+      for (final PatternMatch match : matches.matches()) {
+        visitor.visitMatch(match);
+      }
+    }
+
+    /**
+     * Like {@link #findMatchesInDocument()}, but matches each sentence as a separate task on
+     * {@code executor}. The result is the same, in the same order. This should not be called from
+     * a task running on {@code executor} itself, since it waits for the sentence tasks.
+     */
+    public final PatternReturns findMatchesInDocument(final ExecutorService executor) {
+      final List<Callable<PatternReturns>> tasks = new ArrayList<>();
+      for (final SentenceTheory st : docTheory().sentenceTheories()) {
+        tasks.add(new Callable<PatternReturns>() {
+          @Override
+          public PatternReturns call() {
+            return findMatchesIn(st);
+          }
+        });
+      }
+      final PatternReturns.Builder ret = new PatternReturns.Builder();
+      for (final PatternReturns sentenceMatches : runInOrder(tasks, executor)) {
+        ret.addAll(sentenceMatches);
+      }
+      addDocumentLevelMatches(ret, newMatchState(entityLabels()));
+      return ret.build();
+    }
+
+    /**
+     * The matches of the document-level patterns alone, as included in {@link
+     * #findMatchesInDocument()}.
+     */
+    PatternReturns findDocumentLevelMatches() {
+      final PatternReturns.Builder ret = new PatternReturns.Builder();
+      addDocumentLevelMatches(ret, newMatchState(entityLabels()));
+      return ret.build();
+    }
+
+    private void addDocumentLevelMatches(final PatternReturns.Builder ret,
+        final PatternMatchState matchState) {
+      for (final Pattern pattern : index().topLevelPatterns()) {
         if (pattern instanceof EventEventRelationMatchingPattern) {
           for (final EventEventRelationMention eer : docTheory().eventEventRelationMentions()) {
 //            System.out.println("Attempting to match " + eer.toString());
@@ -80,23 +401,32 @@ public abstract class PatternSetMatcher {
           // should have already handled all these cases at the sentence-level
         }
       }
-      return ret.build();
     }
 
     public final PatternReturns findMatchesIn(SentenceTheory st) {
-      final PatternMatchState matchState = PatternMatchState.create();
+      return findMatchesIn(st, newMatchState(entityLabels()));
+    }
+
+    private PatternReturns findMatchesIn(final SentenceTheory st,
+        final PatternMatchState matchState) {
       final PatternReturns.Builder ret = new PatternReturns.Builder();
 
-      for (final Pattern pattern : patternSet().getTopLevelPatterns()) {
+      final PatternSetIndex index = index();
+      final PatternSetIndex.Candidates<Mention> mentionCandidates =
+          index.candidatesForMentions(st.mentions());
+      final PatternSetIndex.Candidates<Proposition> propCandidates =
+          index.candidatesForPropositions(
+              Iterables.concat(st.propositions(), st.dependencies()));
+
+      final List<Pattern> topLevelPatterns = index.topLevelPatterns();
+      for (int patternIdx = 0; patternIdx < topLevelPatterns.size(); ++patternIdx) {
+        final Pattern pattern = topLevelPatterns.get(patternIdx);
         if (pattern instanceof MentionMatchingPattern) {
-          for (final Mention mention : st.mentions()) {
+          for (final Mention mention : mentionCandidates.forPattern(patternIdx)) {
             ret.addAll(((MentionMatchingPattern) pattern).match(docTheory(), st, mention, matchState, true));
           }
         } else if (pattern instanceof PropMatchingPattern) {
-          for (final Proposition proposition : st.propositions()) {
-            ret.addAll(((PropMatchingPattern) pattern).match(docTheory(), st, proposition, matchState, true));
-          }
-          for (final Proposition proposition : st.dependencies()) {
+          for (final Proposition proposition : propCandidates.forPattern(patternIdx)) {
             ret.addAll(((PropMatchingPattern) pattern).match(docTheory(), st, proposition, matchState, true));
           }
         } else if (pattern instanceof EventMatchingPattern) {
@@ -0,0 +1,84 @@
+package com.bbn.serif.patterns.matching;
+
+import com.bbn.serif.theories.TokenSequence;
+
+import com.google.common.annotations.Beta;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The tokenized text of a sentence, with its tokens joined by single spaces, together with the
+ * character offsets of each token. The text of any run of tokens is a region of this text, so
+ * text-matching patterns can search any span of a sentence without building a string for it.
+ *
+ * Built once per sentence by {@link PatternMatchState#textIndex(TokenSequence)} and shared by
+ * every pattern matched against that sentence.
+ */
+@Beta
+public final class SentenceTextIndex {
+
+  private final TokenSequence tokenSequence;
+  private final String text;
+  private final int[] tokenStarts;
+  private final int[] tokenEnds;
+  // the space following a token belongs to that token
+  private final int[] charToToken;
+
+  private SentenceTextIndex(final TokenSequence tokenSequence) {
+    this.tokenSequence = checkNotNull(tokenSequence);
+    final int numTokens = tokenSequence.size();
+    this.tokenStarts = new int[numTokens];
+    this.tokenEnds = new int[numTokens];
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numTokens; ++i) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      tokenStarts[i] = sb.length();
+      sb.append(tokenSequence.token(i).tokenizedText().toString());
+      tokenEnds[i] = sb.length();
+    }
+    this.text = sb.toString();
+    this.charToToken = new int[text.length()];
+    for (int i = 0; i < numTokens; ++i) {
+      final int end = i + 1 < numTokens ? tokenStarts[i + 1] : text.length();
+      for (int offset = tokenStarts[i]; offset < end; ++offset) {
+        charToToken[offset] = i;
+      }
+    }
+  }
+
+  public static SentenceTextIndex of(final TokenSequence tokenSequence) {
+    return new SentenceTextIndex(tokenSequence);
+  }
+
+  public TokenSequence tokenSequence() {
+    return tokenSequence;
+  }
+
+  public String text() {
+    return text;
+  }
+
+  /**
+   * The offset in {@link #text()} of the first character of the token at {@code tokenIdx}.
+   */
+  public int startOffset(final int tokenIdx) {
+    return tokenStarts[tokenIdx];
+  }
+
+  /**
+   * The offset in {@link #text()} just past the last character of the token at {@code tokenIdx}.
+   */
+  public int endOffset(final int tokenIdx) {
+    return tokenEnds[tokenIdx];
+  }
+
+  /**
+   * The index of the token containing the character at {@code offset} in {@link #text()}. A space
+   * between two tokens belongs to the first.
+   */
+  public int tokenAt(final int offset) {
+    return charToToken[offset];
+  }
+}
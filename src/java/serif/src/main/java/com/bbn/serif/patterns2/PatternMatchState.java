@@ -1,6 +1,7 @@
 package com.bbn.serif.patterns2;
 
 import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.patterns.matching.MatchMemo;
 import com.bbn.serif.theories.Entity;
 
 import com.google.common.annotations.Beta;
@@ -8,22 +9,25 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
-import java.util.Map;
 import java.util.Set;
 
 /**
  * Tracks all the mutable state during matching a {@link PatternSet} against
  * a {@link com.bbn.serif.theories.DocTheory}. In particular, this tracks entity-level matches
  * and caches sub-pattern matches for increased performance.
+ *
+ * Cached matches are keyed by the identity of the pattern and of the object matched, so looking
+ * them up allocates nothing. The cache is bounded and may be emptied with {@link #clearCache()},
+ * so a single state can be reused from sentence to sentence.
  */
 @Beta
 final class PatternMatchState {
+  private static final int MAX_CACHED_MATCHES = 1 << 16;
+
   private final ListMultimap<Entity, Symbol> labelsForEntity = ArrayListMultimap.create();
-  private final Set<MatchAttempt> unmatchedCache = Sets.newHashSet();
-  private final Map<MatchAttempt, PatternReturns> matchCache = Maps.newHashMap();
+  private final MatchMemo<PatternReturns> matchCache =
+      MatchMemo.create(MAX_CACHED_MATCHES, PatternReturns.noMatches());
 
   private PatternMatchState() {}
 
@@ -31,12 +35,19 @@ final class PatternMatchState {
     return new PatternMatchState();
   }
 
+  /**
+   * Forgets all cached matches. Entity labels are kept.
+   */
+  public void clearCache() {
+    matchCache.clear();
+  }
+
   /**
    * Caches that the result of matching {@code pattern} against {@code object} is {@code matches}.
    */
   public PatternReturns registerPatternMatch(Pattern pattern, Object object, Set<PatternMatch> matches) {
     final PatternReturns ret = PatternReturns.of(matches);
-    matchCache.put(MatchAttempt.of(pattern, object), ret);
+    matchCache.put(pattern, object, ret);
     return ret;
   }
 
@@ -45,7 +56,7 @@ final class PatternMatchState {
    */
   public PatternReturns registerPatternMatch(Pattern pattern, Object object, PatternMatch match) {
     final PatternReturns ret = PatternReturns.of(match);
-    matchCache.put(MatchAttempt.of(pattern, object), ret);
+    matchCache.put(pattern, object, ret);
     return ret;
   }
 
@@ -53,7 +64,7 @@ final class PatternMatchState {
    * Caches that {@code pattern} does not match {@code object}
    */
   public PatternReturns registerUnmatched(Pattern pattern, Object object) {
-    unmatchedCache.add(MatchAttempt.of(pattern, object));
+    matchCache.put(pattern, object, PatternReturns.noMatches());
     return PatternReturns.noMatches();
   }
 
@@ -61,17 +72,7 @@ final class PatternMatchState {
    * Gets the cached result of applying {@code pattern} to {@code object}, if available.
    */
   public Optional<PatternReturns> cachedMatches(Pattern pattern, Object object) {
-    final MatchAttempt matchAttempt = MatchAttempt.of(pattern, object);
-    if (unmatchedCache.contains(matchAttempt)) {
-      return Optional.of(PatternReturns.noMatches());
-    }
-
-    final PatternReturns cached = matchCache.get(matchAttempt);
-    if (cached != null) {
-      return Optional.of(cached);
-    } else {
-      return Optional.absent();
-    }
+    return matchCache.get(pattern, object);
   }
 
   public Set<Symbol> labelsForEntity(Entity e) {
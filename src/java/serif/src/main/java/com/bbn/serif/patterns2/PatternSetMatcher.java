@@ -58,14 +58,21 @@ public abstract class PatternSetMatcher {
 
     public final PatternReturns findMatchesInDocument() {
       final PatternReturns.Builder ret = new PatternReturns.Builder();
+      // one match state, with its cache emptied between sentences, serves the whole document
+      final PatternMatchState matchState = PatternMatchState.create();
       for (final SentenceTheory st : docTheory().sentenceTheories()) {
-        ret.addAll(findMatchesIn(st));
+        matchState.clearCache();
+        ret.addAll(findMatchesIn(st, matchState));
       }
       return ret.build();
     }
 
     public final PatternReturns findMatchesIn(SentenceTheory st) {
-      final PatternMatchState matchState = PatternMatchState.create();
+      return findMatchesIn(st, PatternMatchState.create());
+    }
+
+    private PatternReturns findMatchesIn(final SentenceTheory st,
+        final PatternMatchState matchState) {
       final PatternReturns.Builder ret = new PatternReturns.Builder();
 
       for (final Pattern pattern : patternSet().patterns()) {
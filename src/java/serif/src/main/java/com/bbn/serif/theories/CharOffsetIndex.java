@@ -0,0 +1,198 @@
+package com.bbn.serif.theories;
+
+import com.bbn.bue.common.strings.offsets.CharOffset;
+import com.bbn.bue.common.strings.offsets.OffsetRange;
+
+import java.util.Arrays;
+
+/**
+ * The inclusive character offset ranges of a sequence of spanning items, such as the tokens of a
+ * sentence or the sentences of a document, as parallel {@code int} arrays, so that the items
+ * starting at, ending at, containing or overlapping some offsets can be found by binary search.
+ *
+ * {@link TokenSequence} also uses these arrays as its storage for its tokens' offsets.
+ *
+ * Binary search is only possible if both the start offsets and the end offsets of the items are
+ * non-decreasing, as they are whenever the items are in document order and none nests inside
+ * another. Callers must check {@link #isSorted()} and fall back to scanning when it is false.
+ * Each query answers exactly what the corresponding scan would.
+ */
+final class CharOffsetIndex {
+
+  private final int[] starts;
+  private final int[] ends;
+  private final boolean sorted;
+
+  private CharOffsetIndex(final int[] starts, final int[] ends) {
+    this.starts = starts;
+    this.ends = ends;
+    boolean sorted = true;
+    for (int i = 1; i < starts.length && sorted; ++i) {
+      sorted = starts[i - 1] <= starts[i] && ends[i - 1] <= ends[i];
+    }
+    this.sorted = sorted;
+  }
+
+  static CharOffsetIndex of(final Iterable<? extends Spanning> items, final int numItems) {
+    final int[] starts = new int[numItems];
+    final int[] ends = new int[numItems];
+    int i = 0;
+    for (final Spanning item : items) {
+      final OffsetRange<CharOffset> range = item.span().charOffsetRange();
+      starts[i] = range.startInclusive().asInt();
+      ends[i] = range.endInclusive().asInt();
+      ++i;
+    }
+    return new CharOffsetIndex(starts, ends);
+  }
+
+  static CharOffsetIndex of(final int[] starts, final int[] ends) {
+    return new CharOffsetIndex(starts, ends);
+  }
+
+  boolean isSorted() {
+    return sorted;
+  }
+
+  int size() {
+    return starts.length;
+  }
+
+  int start(final int idx) {
+    return starts[idx];
+  }
+
+  int end(final int idx) {
+    return ends[idx];
+  }
+
+  /**
+   * The first item starting at {@code offset}, or -1 if there is none.
+   */
+  int firstStartingAt(final int offset) {
+    final int idx = firstAtLeast(starts, offset);
+    return idx < starts.length && starts[idx] == offset ? idx : -1;
+  }
+
+  /**
+   * The last item starting at {@code offset}, or -1 if there is none.
+   */
+  int lastStartingAt(final int offset) {
+    final int idx = firstAbove(starts, offset) - 1;
+    return idx >= 0 && starts[idx] == offset ? idx : -1;
+  }
+
+  /**
+   * The first item ending at {@code offset}, or -1 if there is none.
+   */
+  int firstEndingAt(final int offset) {
+    final int idx = firstAtLeast(ends, offset);
+    return idx < ends.length && ends[idx] == offset ? idx : -1;
+  }
+
+  /**
+   * The last item ending at {@code offset}, or -1 if there is none.
+   */
+  int lastEndingAt(final int offset) {
+    final int idx = firstAbove(ends, offset) - 1;
+    return idx >= 0 && ends[idx] == offset ? idx : -1;
+  }
+
+  /**
+   * The last item whose range contains {@code offset}, or -1 if there is none.
+   */
+  int lastContaining(final int offset) {
+    // items starting at or before the offset are a prefix, items ending at or after it a suffix
+    final int idx = firstAbove(starts, offset) - 1;
+    return idx >= 0 && idx >= firstAtLeast(ends, offset) ? idx : -1;
+  }
+
+  /**
+   * The first item ending after {@code offset}, or -1 if there is none.
+   */
+  int firstEndingAfter(final int offset) {
+    final int idx = firstAbove(ends, offset);
+    return idx < ends.length ? idx : -1;
+  }
+
+  /**
+   * The first item starting after {@code offset}, or -1 if there is none.
+   */
+  int firstStartingAfter(final int offset) {
+    final int idx = firstAbove(starts, offset);
+    return idx < starts.length ? idx : -1;
+  }
+
+  /**
+   * The first item whose range lies within {@code [start, end]}. The items which do are those from
+   * this one up to, but excluding, {@link #endOfContainedIn(int)}.
+   */
+  int startOfContainedIn(final int start) {
+    return firstAtLeast(starts, start);
+  }
+
+  int endOfContainedIn(final int end) {
+    return firstAbove(ends, end);
+  }
+
+  /**
+   * The first item whose range contains {@code [start, end]}. The items which do are those from
+   * this one up to, but excluding, {@link #endOfContaining(int)}.
+   */
+  int startOfContaining(final int end) {
+    return firstAtLeast(ends, end);
+  }
+
+  int endOfContaining(final int start) {
+    return firstAbove(starts, start);
+  }
+
+  /**
+   * The first item whose range overlaps {@code [start, end]}. The items which do are those from
+   * this one up to, but excluding, {@link #endOfOverlapping(int)}.
+   */
+  int startOfOverlapping(final int start) {
+    return firstAtLeast(ends, start);
+  }
+
+  int endOfOverlapping(final int end) {
+    return firstAbove(starts, end);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    final CharOffsetIndex other = (CharOffsetIndex) obj;
+    return Arrays.equals(starts, other.starts) && Arrays.equals(ends, other.ends);
+  }
+
+  // the index of the first element of the sorted array a which is >= x, or a.length if none
+  private static int firstAtLeast(final int[] a, final int x) {
+    int lo = 0;
+    int hi = a.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (a[mid] < x) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // the index of the first element of the sorted array a which is > x, or a.length if none
+  private static int firstAbove(final int[] a, final int x) {
+    return x == Integer.MAX_VALUE ? a.length : firstAtLeast(a, x + 1);
+  }
+}
@@ -19,6 +19,7 @@ import com.bbn.serif.theories.icewseventmentions.ICEWSEventMentions;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.FluentIterable;
@@ -192,7 +193,7 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
   public final int numSentences() {
     // we want to include empty sentences in this count, hence using the deprecated method is ok
     //noinspection deprecation
-    return sentenceTheories().size();
+    return numPrimarySentenceTheories();
   }
 
   /**
@@ -200,7 +201,7 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
    * Prefer using simple {@link #sentenceTheories()} when possible.
    */
   public final Iterable<SentenceTheory> nonEmptySentenceTheories() {
-    return filter(sentenceTheories(), SentenceTheory.isNonEmptyPredicate());
+    return filter(primarySentenceTheoriesInOrder(), SentenceTheory.isNonEmptyPredicate());
   }
 
   /**
@@ -216,7 +217,7 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
    * This is less useful than it used to be because we now handle empty sentences more elegantly.
    */
   public final Iterable<SentenceTheory> emptySentenceTheories() {
-    return filter(sentenceTheories(), SentenceTheory.isEmptyPredicate());
+    return filter(primarySentenceTheoriesInOrder(), SentenceTheory.isEmptyPredicate());
   }
 
   /**
@@ -235,7 +236,7 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
   }
 
   public final Sentence sentence(final int idx) {
-    return sentenceTheoryBeams().get(idx).sentence();
+    return sentenceTheoryBeam(idx).sentence();
   }
 
   /**
@@ -243,9 +244,31 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
    * itself.
    */
   public final SentenceTheory sentenceTheory(final int idx) {
+    return primarySentenceTheory(idx);
+  }
+
+  /**
+   * Lazily loaded documents (see {@link #lazilyLoaded(Document, LazySentenceSource)}) override
+   * the following so that reaching a sentence through {@link #sentenceTheory(int)}, {@link
+   * #sentence(int)}, {@link #numSentences()} or an iterator only builds the sentences reached,
+   * while {@link #sentenceTheoryBeams()} and the other lists build them all.
+   */
+  SentenceTheoryBeam sentenceTheoryBeam(final int idx) {
+    return sentenceTheoryBeams().get(idx);
+  }
+
+  SentenceTheory primarySentenceTheory(final int idx) {
     return sentenceTheories().get(idx);
   }
 
+  int numPrimarySentenceTheories() {
+    return sentenceTheories().size();
+  }
+
+  Iterable<SentenceTheory> primarySentenceTheoriesInOrder() {
+    return sentenceTheories();
+  }
+
   public final Optional<Symbol> sourceType() {
     return document().sourceType();
   }
@@ -262,6 +285,19 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
     return new Builder().document(doc);
   }
 
+  /**
+   * Returns a document whose sentences are built by {@code source} only as they are reached.
+   * Built sentences are only softly referenced, except that a sentence whose primary theory is
+   * still in use is never built again. The document-level sets are resolved by {@code source},
+   * against all the sentences, the first time any of them (or any method which needs every
+   * sentence, such as {@link #sentenceTheoryBeams()}) is asked for, after which the document holds
+   * everything strongly. Such documents are compared by identity.
+   */
+  @Beta
+  public static DocTheory lazilyLoaded(final Document document, final LazySentenceSource source) {
+    return new LazyDocTheory(document, source);
+  }
+
   /**
    * Returns a {@link DocTheory} which is like this one, except each sentence theory is replaced
    * by the reslt of a given transformation.
@@ -313,7 +349,12 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
 
   public final ImmutableList<SentenceTheory> lookupSentenceTheoriesContainedIn(
       OffsetRange<CharOffset> charOffsetOffsetRange) {
-    // you could use binary search to make this faster if it were ever a bottleneck...
+    final CharOffsetIndex index = sentenceOffsetIndex();
+    if (index.isSorted()) {
+      return sentenceTheoriesBetween(
+          index.startOfContainedIn(charOffsetOffsetRange.startInclusive().asInt()),
+          index.endOfContainedIn(charOffsetOffsetRange.endInclusive().asInt()));
+    }
     final ImmutableList.Builder<SentenceTheory> ret = ImmutableList.builder();
     for (final SentenceTheory st : nonEmptySentenceTheories()) {
       if (charOffsetOffsetRange.contains(st.span().charOffsetRange())) {
@@ -324,7 +365,12 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
   }
 
   public final ImmutableList<SentenceTheory> lookupSentenceTheoriesContaining(OffsetRange<CharOffset> charOffsetOffsetRange) {
-    // you could use binary search to make this faster if it were ever a bottleneck...
+    final CharOffsetIndex index = sentenceOffsetIndex();
+    if (index.isSorted()) {
+      return sentenceTheoriesBetween(
+          index.startOfContaining(charOffsetOffsetRange.endInclusive().asInt()),
+          index.endOfContaining(charOffsetOffsetRange.startInclusive().asInt()));
+    }
     final ImmutableList.Builder<SentenceTheory> ret = ImmutableList.builder();
     for (final SentenceTheory st : nonEmptySentenceTheories()) {
       if (st.span().charOffsetRange().contains(charOffsetOffsetRange)) {
@@ -336,7 +382,12 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
 
   public final ImmutableList<SentenceTheory> lookupSentenceTheoriesOverlapping(
       OffsetRange<CharOffset> charOffsetOffsetRange) {
-    // you could use binary search to make this faster if it were ever a bottleneck...
+    final CharOffsetIndex index = sentenceOffsetIndex();
+    if (index.isSorted()) {
+      return sentenceTheoriesBetween(
+          index.startOfOverlapping(charOffsetOffsetRange.startInclusive().asInt()),
+          index.endOfOverlapping(charOffsetOffsetRange.endInclusive().asInt()));
+    }
     final ImmutableList.Builder<SentenceTheory> ret = ImmutableList.builder();
     for (final SentenceTheory st : nonEmptySentenceTheories()) {
       if (st.span().charOffsetRange().overlaps(charOffsetOffsetRange)) {
@@ -346,6 +397,29 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
     return ret.build();
   }
 
+  /**
+   * The non-empty sentence theories, in order, for the offset lookups above.
+   */
+  @Value.Lazy
+  ImmutableList<SentenceTheory> nonEmptySentenceTheoryList() {
+    return ImmutableList.copyOf(nonEmptySentenceTheories());
+  }
+
+  /**
+   * The character offsets of the non-empty sentences, so the lookups above can binary search them
+   * rather than scan every sentence. If the sentences' offsets are not in order, they scan.
+   */
+  @Value.Lazy
+  CharOffsetIndex sentenceOffsetIndex() {
+    return CharOffsetIndex.of(nonEmptySentenceTheoryList(), nonEmptySentenceTheoryList().size());
+  }
+
+  private ImmutableList<SentenceTheory> sentenceTheoriesBetween(final int startInclusive,
+      final int endExclusive) {
+    return nonEmptySentenceTheoryList().subList(startInclusive,
+        Math.max(startInclusive, endExclusive));
+  }
+
   @org.immutables.builder.Builder.AccessibleFields
   public static class Builder extends ImmutableDocTheory.Builder {
     /**
@@ -412,8 +486,7 @@ public abstract class DocTheory implements Iterable<SentenceTheory> {
 
   private SentenceTheory containingPrimarySentenceTheory(final Spanning spanning) {
     final int containingSentenceIdx = spanning.span().sentenceIndex();
-    final Optional<SentenceTheory> ret =
-        sentenceTheoryBeams().get(containingSentenceIdx).primaryTheory();
+    final Optional<SentenceTheory> ret = sentenceTheoryBeam(containingSentenceIdx).primaryTheory();
     if (ret.isPresent()) {
       return ret.get();
     } else {
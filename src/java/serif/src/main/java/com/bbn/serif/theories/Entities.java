@@ -4,11 +4,13 @@ import com.bbn.serif.types.EntityType;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -57,19 +59,40 @@ public final class Entities implements Iterable<Entity>, PotentiallyAbsentSerifT
   }
 
   public Optional<Entity> entityByMention(Mention searchMention) {
-    for (final Entity e : entitiesByType.get(searchMention.entityType())) {
-      for (final Mention m : e) {
-        if (m == searchMention) {
-          return Optional.of(e);
+    return entityByMention(searchMention, searchMention.entityType());
+  }
+
+  public Optional<Entity> entityByMention(Mention searchMention,
+      EntityType type) {
+    final MentionIndex index = mentionIndex();
+    if (index.hasSharedMentions) {
+      return scanForEntityByMention(searchMention, type);
+    }
+    final Entity e = index.entitiesByMention.get(searchMention);
+    if (e != null && e.type().equals(type)) {
+      return Optional.of(e);
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * The confidence with which {@code mention} belongs to its entity, if it belongs to one of these
+   * entities and its entity records a confidence for it.
+   */
+  public Optional<MentionConfidence> confidenceOfMention(Mention mention) {
+    final MentionIndex index = mentionIndex();
+    if (index.hasSharedMentions) {
+      for (final Entity e : entities) {
+        if (e.confidences().containsKey(mention)) {
+          return Optional.of(e.confidence(mention));
         }
       }
+      return Optional.absent();
     }
-
-    return Optional.absent();
+    return Optional.fromNullable(index.confidencesByMention.get(mention));
   }
 
-  public Optional<Entity> entityByMention(Mention searchMention,
-      EntityType type) {
+  private Optional<Entity> scanForEntityByMention(Mention searchMention, EntityType type) {
     for (final Entity e : entitiesByType.get(type)) {
       for (final Mention m : e) {
         if (m == searchMention) {
@@ -82,6 +105,10 @@ public final class Entities implements Iterable<Entity>, PotentiallyAbsentSerifT
   }
 
   public Map<Mention, Entity> createMentionToEntityMap() {
+    final MentionIndex index = mentionIndex();
+    if (!index.hasSharedMentions) {
+      return Maps.newHashMap(index.entitiesByMention);
+    }
     final Map<Mention, Entity> map = Maps.newHashMap();
     for (final Entity entity : this) {
       for (final Mention ment : entity) {
@@ -91,8 +118,59 @@ public final class Entities implements Iterable<Entity>, PotentiallyAbsentSerifT
     return map;
   }
 
+  private MentionIndex mentionIndex() {
+    // racy single-check: the index is immutable, so at worst it is built more than once
+    MentionIndex ret = mentionIndex;
+    if (ret == null) {
+      ret = MentionIndex.of(entities);
+      mentionIndex = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Which entity each mention belongs to, built the first time a mention is looked up. Mentions
+   * do not override {@code equals}, so this is keyed by identity, as the lookups always were.
+   */
+  private static final class MentionIndex {
+
+    private final ImmutableMap<Mention, Entity> entitiesByMention;
+    private final ImmutableMap<Mention, MentionConfidence> confidencesByMention;
+    // if some mention belongs to more than one entity, lookups scan the entities in order instead
+    private final boolean hasSharedMentions;
+
+    private MentionIndex(final ImmutableMap<Mention, Entity> entitiesByMention,
+        final ImmutableMap<Mention, MentionConfidence> confidencesByMention,
+        final boolean hasSharedMentions) {
+      this.entitiesByMention = entitiesByMention;
+      this.confidencesByMention = confidencesByMention;
+      this.hasSharedMentions = hasSharedMentions;
+    }
+
+    static MentionIndex of(final List<Entity> entities) {
+      final Map<Mention, Entity> entitiesByMention = new HashMap<>();
+      final ImmutableMap.Builder<Mention, MentionConfidence> confidencesByMention =
+          ImmutableMap.builder();
+      for (final Entity e : entities) {
+        for (final Mention m : e) {
+          if (entitiesByMention.put(m, e) != null) {
+            return new MentionIndex(ImmutableMap.<Mention, Entity>of(),
+                ImmutableMap.<Mention, MentionConfidence>of(), true);
+          }
+          final MentionConfidence confidence = e.confidences().get(m);
+          if (confidence != null) {
+            confidencesByMention.put(m, confidence);
+          }
+        }
+      }
+      return new MentionIndex(ImmutableMap.copyOf(entitiesByMention),
+          confidencesByMention.build(), false);
+    }
+  }
+
   private final List<Entity> entities;
   private final Multimap<EntityType, Entity> entitiesByType;
+  private volatile MentionIndex mentionIndex = null;
 
   public static Entities create(Iterable<Entity> entities, String score) {
     return new Entities(entities, score);
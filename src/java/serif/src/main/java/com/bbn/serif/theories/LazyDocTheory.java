@@ -0,0 +1,280 @@
+package com.bbn.serif.theories;
+
+import com.bbn.serif.theories.acronyms.Acronym;
+import com.bbn.serif.theories.actors.ActorEntities;
+import com.bbn.serif.theories.actors.ActorMentions;
+import com.bbn.serif.theories.facts.Facts;
+import com.bbn.serif.theories.flexibleevents.FlexibleEventMentions;
+import com.bbn.serif.theories.icewseventmentions.ICEWSEventMentions;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link DocTheory} whose sentences are built only as they are reached. See {@link
+ * DocTheory#lazilyLoaded(Document, LazySentenceSource)}.
+ *
+ * Each built beam is softly referenced and its primary theory weakly. If a beam is reclaimed while
+ * its primary theory is still reachable, it is built again around that theory, so whoever holds a
+ * sentence theory keeps getting the same one, and the document-level sets are resolved against
+ * it. Once the document is resolved, everything is delegated to the resolved document.
+ */
+final class LazyDocTheory extends DocTheory {
+
+  private final Document document;
+  private final int numSentences;
+  // null once resolved
+  @Nullable
+  private LazySentenceSource source;
+  private final List<SoftReference<SentenceTheoryBeam>> beams;
+  private final List<WeakReference<SentenceTheory>> primaryTheories;
+  @Nullable
+  private volatile DocTheory resolved = null;
+
+  LazyDocTheory(final Document document, final LazySentenceSource source) {
+    this.document = checkNotNull(document);
+    this.source = checkNotNull(source);
+    this.numSentences = source.numSentences();
+    this.beams = new ArrayList<>(numSentences);
+    this.primaryTheories = new ArrayList<>(numSentences);
+    for (int i = 0; i < numSentences; ++i) {
+      beams.add(new SoftReference<SentenceTheoryBeam>(null));
+      primaryTheories.add(new WeakReference<SentenceTheory>(null));
+    }
+  }
+
+  @Override
+  public Document document() {
+    return document;
+  }
+
+  @Override
+  SentenceTheoryBeam sentenceTheoryBeam(final int idx) {
+    final DocTheory resolvedDoc = resolved;
+    if (resolvedDoc != null) {
+      return resolvedDoc.sentenceTheoryBeams().get(idx);
+    }
+    synchronized (this) {
+      if (resolved != null) {
+        return resolved.sentenceTheoryBeams().get(idx);
+      }
+      return loadedBeam(idx);
+    }
+  }
+
+  @Override
+  SentenceTheory primarySentenceTheory(final int idx) {
+    final Optional<SentenceTheory> ret = sentenceTheoryBeam(idx).primaryTheory();
+    if (!ret.isPresent()) {
+      throw new IndexOutOfBoundsException("Document " + docid() + " has no sentence theories");
+    }
+    return ret.get();
+  }
+
+  @Override
+  int numPrimarySentenceTheories() {
+    final DocTheory resolvedDoc = resolved;
+    if (resolvedDoc != null) {
+      return resolvedDoc.numSentences();
+    }
+    // either all sentences have theories or none do
+    return numSentences > 0 && sentenceTheoryBeam(0).primaryTheory().isPresent()
+           ? numSentences : 0;
+  }
+
+  @Override
+  Iterable<SentenceTheory> primarySentenceTheoriesInOrder() {
+    final DocTheory resolvedDoc = resolved;
+    if (resolvedDoc != null) {
+      return resolvedDoc.sentenceTheories();
+    }
+    return new Iterable<SentenceTheory>() {
+      @Override
+      public Iterator<SentenceTheory> iterator() {
+        return new AbstractIterator<SentenceTheory>() {
+          private int nextIdx = 0;
+
+          @Override
+          protected SentenceTheory computeNext() {
+            if (nextIdx < numSentences) {
+              final Optional<SentenceTheory> ret = sentenceTheoryBeam(nextIdx++).primaryTheory();
+              if (ret.isPresent()) {
+                return ret.get();
+              }
+            }
+            return endOfData();
+          }
+        };
+      }
+    };
+  }
+
+  // callers must hold this object's lock
+  private SentenceTheoryBeam loadedBeam(final int idx) {
+    checkElementIndex(idx, numSentences);
+    final SentenceTheoryBeam cached = beams.get(idx).get();
+    if (cached != null) {
+      return cached;
+    }
+    SentenceTheoryBeam ret = checkNotNull(source).sentenceTheoryBeam(idx);
+    final SentenceTheory primaryInUse = primaryTheories.get(idx).get();
+    if (primaryInUse != null) {
+      ret = ret.copyWithPrimaryTheoryReplaced(primaryInUse);
+    } else {
+      primaryTheories.set(idx, new WeakReference<>(ret.primaryTheory().orNull()));
+    }
+    beams.set(idx, new SoftReference<>(ret));
+    return ret;
+  }
+
+  private DocTheory resolved() {
+    // double-checked locking on a volatile field
+    DocTheory ret = resolved;
+    if (ret == null) {
+      synchronized (this) {
+        ret = resolved;
+        if (ret == null) {
+          final ImmutableList.Builder<SentenceTheoryBeam> allBeams = ImmutableList.builder();
+          for (int i = 0; i < numSentences; ++i) {
+            allBeams.add(loadedBeam(i));
+          }
+          ret = checkNotNull(source).resolve(allBeams.build());
+          resolved = ret;
+          // none of this is needed once the full document is available
+          source = null;
+          beams.clear();
+          primaryTheories.clear();
+        }
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public ImmutableList<SentenceTheoryBeam> sentenceTheoryBeams() {
+    return resolved().sentenceTheoryBeams();
+  }
+
+  @Override
+  public ImmutableList<Sentence> sentences() {
+    return resolved().sentences();
+  }
+
+  @Override
+  public ImmutableList<SentenceTheory> sentenceTheories() {
+    return resolved().sentenceTheories();
+  }
+
+  @Override
+  ImmutableList<SentenceTheory> nonEmptySentenceTheoryList() {
+    return resolved().nonEmptySentenceTheoryList();
+  }
+
+  @Override
+  CharOffsetIndex sentenceOffsetIndex() {
+    return resolved().sentenceOffsetIndex();
+  }
+
+  @Override
+  public ValueMentions valueMentions() {
+    return resolved().valueMentions();
+  }
+
+  @Override
+  public Entities entities() {
+    return resolved().entities();
+  }
+
+  @Override
+  public Values values() {
+    return resolved().values();
+  }
+
+  @Override
+  public Optional<ImmutableList<Acronym>> acronyms() {
+    return resolved().acronyms();
+  }
+
+  @Override
+  public Relations relations() {
+    return resolved().relations();
+  }
+
+  @Override
+  public Events events() {
+    return resolved().events();
+  }
+
+  @Override
+  public DocumentEvents documentEvents() {
+    return resolved().documentEvents();
+  }
+
+  @Override
+  public DocumentEventArguments documentEventArguments() {
+    return resolved().documentEventArguments();
+  }
+
+  @Override
+  public ActorMentions actorMentions() {
+    return resolved().actorMentions();
+  }
+
+  @Override
+  public ActorEntities actorEntities() {
+    return resolved().actorEntities();
+  }
+
+  @Override
+  public EventEventRelationMentions eventEventRelationMentions() {
+    return resolved().eventEventRelationMentions();
+  }
+
+  @Override
+  public Optional<DocumentActorInfo> documentActorInfo() {
+    return resolved().documentActorInfo();
+  }
+
+  @Override
+  public Facts facts() {
+    return resolved().facts();
+  }
+
+  @Override
+  public ICEWSEventMentions icewsEventMentions() {
+    return resolved().icewsEventMentions();
+  }
+
+  @Override
+  public FlexibleEventMentions flexibleEventMentions() {
+    return resolved().flexibleEventMentions();
+  }
+
+  @Override
+  ImmutableMap<SentenceTheory, SentenceTheory> primarySentenceTheoryReplacements() {
+    return ImmutableMap.of();
+  }
+
+  @Override
+  public Builder modifiedCopyBuilder() {
+    return resolved().modifiedCopyBuilder();
+  }
+
+  @Override
+  public String toString() {
+    return "LazyDocTheory{docid=" + docid() + "}";
+  }
+}
@@ -0,0 +1,28 @@
+package com.bbn.serif.theories;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Builds the sentences and document-level sets of a lazily loaded document. See {@link
+ * DocTheory#lazilyLoaded(Document, LazySentenceSource)}. A source is only asked for one thing at a
+ * time, so it need not be thread-safe. Failures are thrown as unchecked exceptions, since they
+ * surface through {@link DocTheory}'s accessors.
+ */
+@Beta
+public interface LazySentenceSource {
+
+  int numSentences();
+
+  /**
+   * Builds the beam for the sentence with the given index. This may be asked for again if the
+   * beam built before was reclaimed, and must then build it anew.
+   */
+  SentenceTheoryBeam sentenceTheoryBeam(int idx);
+
+  /**
+   * Builds the complete document from the beams of all its sentences, in order, resolving the
+   * document-level sets against the objects in them. This is asked for at most once.
+   */
+  DocTheory resolve(ImmutableList<SentenceTheoryBeam> sentenceTheoryBeams);
+}
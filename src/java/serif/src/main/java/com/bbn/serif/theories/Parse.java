@@ -86,6 +86,14 @@ public abstract class Parse implements PotentiallyAbsentSerifTheory {
 
   public final SynNode nodeForToken(Token tok) {
     if (root().isPresent()) {
+      final SynTree tree = root().get().tree();
+      if (tree.index().isUsable()) {
+        final int preterminal = tree.index().preterminal(tok.index());
+        if (preterminal >= 0) {
+          return tree.nodes[preterminal];
+        }
+      }
+      // finds the preterminal by descending the tree, or explains why there is none
       return nodeForToken(tok.index(), root().get());
     } else {
       throw new SerifException("You are looking for a token in a sentence with no tokens."
@@ -110,6 +118,26 @@ public abstract class Parse implements PotentiallyAbsentSerifTheory {
         idx));
   }
 
+  /**
+   * The maximal projection of the preterminal of {@code tok}, as given by {@link
+   * SynNode#maximalProjection()}. Absent if the token has no preterminal.
+   */
+  public final Optional<SynNode> maximalProjectionForToken(Token tok) {
+    if (root().isPresent()) {
+      final SynTree tree = root().get().tree();
+      if (tree.index().isUsable()) {
+        final int maximalProjection = tree.index().maximalProjection(tok.index());
+        return maximalProjection >= 0 ? Optional.of(tree.nodes[maximalProjection])
+                                      : Optional.<SynNode>absent();
+      }
+    }
+    try {
+      return Optional.of(nodeForToken(tok).maximalProjection());
+    } catch (SerifException e) {
+      return Optional.absent();
+    }
+  }
+
   public final Optional<SynNode> lookupByGornAddress(final GornAddress gornAddress) {
     if (root().isPresent()) {
       if (gornAddress.size() == 1) {
@@ -11,6 +11,7 @@ import com.bbn.serif.types.EntityType;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -33,46 +34,57 @@ import static com.google.common.base.Preconditions.checkState;
  * When all {@code Mention} links are complete, all {@code SynNode}s should be sealed using the
  * convenience method {@link #sealAllSynNodes(DocTheory)}.  After sealing, {@code SynNodes} are
  * immutable. All operations on unsealed {@code SynNode}s are undefined.
+ *
+ * The structure of a syntax tree is stored in flat arrays shared by all its nodes, and a {@code
+ * SynNode} is a view of one position in them. Each node of a tree has exactly one view, so nodes
+ * may be compared by identity. Views are created once the whole tree is built and never point
+ * elsewhere afterwards.
  */
 @SuppressWarnings("WeakerAccess")
 public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreterminal {
 
-  private SynNode parent;
-  private final Symbol tag;
-  private List<Mention> mentions;
+  // the tree this node is in and its position in it
+  private final SynTree tree;
+  private final int id;
+  // built on first use
+  private volatile ImmutableList<SynNode> childList = null;
+  private volatile TokenSequence.Span cachedSpan = null;
+  // null until a mention is set
+  private List<Mention> mentions = null;
 
-  private final List<SynNode> children;
-  private final TokenSequence.Span tokenSpan;
-  private final int headIndex;
+  private SynNode(final SynTree tree, final int id) {
+    this.tree = tree;
+    this.id = id;
+  }
 
+  // creates the views of the nodes of a newly built tree, returning the root's
+  private static SynNode createViews(final SynTree tree) {
+    for (int id = 0; id < tree.size(); ++id) {
+      tree.nodes[id] = new SynNode(tree, id);
+    }
+    return tree.nodes[0];
+  }
 
-  private SynNode(final Symbol tag, final List<SynNode> children, final Optional<Integer> headIndex,
-      final TokenSequence.Span tokenSpan) {
-    this.children =
-        (children != null) ? ImmutableList.copyOf(children) : ImmutableList.<SynNode>of();
-    this.tag = checkNotNull(tag);
-    this.tokenSpan = checkNotNull(tokenSpan);
-    this.headIndex = headIndex.isPresent() ? headIndex.get() : -1;
-    this.mentions = new ArrayList<>();
+  SynTree tree() {
+    return tree;
+  }
 
-    checkValidity();
+  boolean isRootOfTree() {
+    return id == 0;
   }
 
-  private void checkValidity() {
-    SynNode previousChild = null;
-    for (final SynNode child : this.children) {
-      checkArgument(this.tokenSpan.contains(child.tokenSpan()),
-          "A SynNode must contain its children");
-      if (previousChild != null) {
-        checkArgument(child.tokenSpan().startsAfter(previousChild.tokenSpan()), "SynNode children"
-            + "must be specified in token order");
-      }
-      previousChild = child;
-    }
+  private SynNode node(final int nodeId) {
+    return tree.nodes[nodeId];
+  }
+
+  // the parent, or null for a root
+  private SynNode parentNode() {
+    final int parentId = tree.parents[id];
+    return parentId >= 0 ? node(parentId) : null;
   }
 
-  private void setParent(final SynNode p) {
-    parent = p;
+  private List<Mention> mentionList() {
+    return mentions != null ? mentions : ImmutableList.<Mention>of();
   }
 
   public SentenceTheory sentenceTheory(final DocTheory dt) {
@@ -80,43 +92,76 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public Symbol tag() {
-    return tag;
+    return tree.tags[id];
   }
 
   public Optional<SynNode> parent() {
-    return Optional.fromNullable(parent);
+    return Optional.fromNullable(parentNode());
   }
 
 
   public boolean parentIs(SynNode probe) {
     checkNotNull(probe);
-    return parent == probe;
+    return parentNode() == probe;
   }
 
   public int nChildren() {
-    return children.size();
+    return tree.numChildren(id);
   }
 
   public List<SynNode> children() {
-    return children;
+    // racy single-check: the list is never changed once built
+    ImmutableList<SynNode> ret = childList;
+    if (ret == null) {
+      final ImmutableList.Builder<SynNode> children = ImmutableList.builder();
+      for (int child = tree.firstChildren[id]; child >= 0; child = tree.nextSiblings[child]) {
+        children.add(node(child));
+      }
+      ret = children.build();
+      childList = ret;
+    }
+    return ret;
   }
 
   public SynNode child(final int idx) {
-    return children.get(idx);
+    final int child = tree.child(id, idx);
+    if (child < 0) {
+      throw new IndexOutOfBoundsException(
+          String.format("SynNode has no child %d: it has %d children", idx, nChildren()));
+    }
+    return node(child);
   }
 
   @Override
   public Iterator<SynNode> iterator() {
-    return children.iterator();
+    return new AbstractIterator<SynNode>() {
+      private int nextChild = tree.firstChildren[id];
+
+      @Override
+      protected SynNode computeNext() {
+        if (nextChild < 0) {
+          return endOfData();
+        }
+        final SynNode ret = node(nextChild);
+        nextChild = tree.nextSiblings[nextChild];
+        return ret;
+      }
+    };
   }
 
   public int headIndex() {
-    return headIndex;
+    return tree.heads[id];
   }
 
   @Override
   public TokenSequence.Span span() {
-    return tokenSpan;
+    // racy single-check: spans are immutable
+    TokenSequence.Span ret = cachedSpan;
+    if (ret == null) {
+      ret = tree.tokenSequence.span(tree.startTokens[id], tree.endTokens[id]);
+      cachedSpan = ret;
+    }
+    return ret;
   }
 
   @Override
@@ -127,25 +172,26 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   @Deprecated
   public Optional<Mention> mention() {
     // We cannot assume each SynNode could have 0 or 1 Mention anymore. Please use mentions() above.
-    if(this.mentions.size()>0)return Optional.of(this.mentions.get(0));
+    if(hasMention())return Optional.of(this.mentions.get(0));
     return Optional.absent();
   }
 
   public ImmutableList<Mention> mentions(){
-    return ImmutableList.copyOf(this.mentions);
+    return ImmutableList.copyOf(mentionList());
   }
 
   public Optional<SynNode> closestProjectionWithMention() {
     SynNode curNode = this;
 
-    while (curNode.mentions.size() < 1) {
-      if (curNode.parent == null || curNode.parent.head() != curNode) {
+    while (!curNode.hasMention()) {
+      final SynNode parent = curNode.parentNode();
+      if (parent == null || parent.head() != curNode) {
         break;
       }
-      curNode = curNode.parent;
+      curNode = parent;
     }
 
-    if (curNode.mentions.size()> 0) {
+    if (curNode.hasMention()) {
       return Optional.of(curNode);
     } else {
       return Optional.absent();
@@ -167,14 +213,14 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public SynNode head() {
-    if (children.isEmpty()) {
+    if (isTerminal()) {
       return this;
     } else {
-      if(headIndex < 0){
+      if(headIndex() < 0){
         return null;
       }
       else{
-        return children.get(headIndex);
+        return child(headIndex());
       }
     }
   }
@@ -182,12 +228,9 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   public GornAddress gornAddress() {
     final List<Integer> address = Lists.newArrayList();
 
-    for (Optional<SynNode> curNode = Optional.of(this);
-         curNode.isPresent(); curNode = curNode.get().parent()) {
-      final SynNode realCurNode = curNode.get();
-      final Optional<SynNode> parent = realCurNode.parent();
-      if (parent.isPresent()) {
-        address.add(parent.get().children().indexOf(realCurNode));
+    for (int node = id; node >= 0; node = tree.parents[node]) {
+      if (tree.parents[node] >= 0) {
+        address.add(tree.childIndex(node));
       } else {
         address.add(0);
       }
@@ -197,6 +240,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public boolean isHeadChild() {
+    final SynNode parent = parentNode();
     if (parent != null) {
       final SynNode parHead = parent.head();
       if (parHead == this) {
@@ -207,18 +251,19 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public boolean isTerminal() {
-    return children.isEmpty();
+    return tree.isTerminal(id);
   }
 
   public boolean isPreterminal() {
-    return children.size() == 1 && children.get(0).isTerminal();
+    final int firstChild = tree.firstChildren[id];
+    return firstChild >= 0 && tree.nextSiblings[firstChild] < 0 && tree.isTerminal(firstChild);
   }
 
   public Optional<Symbol> singleWord() {
     if (isTerminal()) {
-      return Optional.of(tag);
-    } else if (children.size() == 1) {
-      return children.get(0).singleWord();
+      return Optional.of(tag());
+    } else if (nChildren() == 1) {
+      return firstChild().singleWord();
     } else {
       return Optional.absent();
     }
@@ -229,17 +274,17 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     if (isPreterminal()) {
       return this;
     } else if (isTerminal()) {
-      return parent;
+      return parentNode();
     } else {
-      return children.get(headIndex).headPreterminal();
+      return child(headIndex()).headPreterminal();
     }
   }
 
   public Symbol headWord() {
     if (isTerminal()) {
-      return tag;
+      return tag();
     } else {
-      return children.get(headIndex).headWord();
+      return child(headIndex()).headWord();
     }
   }
 
@@ -248,6 +293,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public SynNode highestHead() {
+    final SynNode parent = parentNode();
     if (parent != null) {
       if (parent.head() != this) {
         return this;
@@ -260,14 +306,14 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public int numTerminals() {
-    return tokenSpan.size();
+    return tree.endTokens[id] - tree.startTokens[id] + 1;
   }
 
   public List<Symbol> terminalSymbols() {
     final List<Symbol> ret = Lists.newArrayList();
 
     if (isTerminal()) {
-      ret.add(tag);
+      ret.add(tag());
     } else {
       for (final SynNode child : this) {
         ret.addAll(child.terminalSymbols());
@@ -280,7 +326,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     final List<Symbol> ret = Lists.newArrayList();
 
     if (isPreterminal()) {
-      ret.add(tag);
+      ret.add(tag());
     } else {
       for (final SynNode child : this) {
         ret.addAll(child.POSSymbols());
@@ -295,24 +341,39 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public Optional<SynNode> nodeByTokenSpan(final TokenSequence.Span searchSpan) {
-    if (tokenSpan.isSingleToken()) {
-      SynNode thisNode = nthTerminal(searchSpan.startIndex());
-      while (thisNode.parent != null && thisNode.parent.span().equals(searchSpan)) {
-        thisNode = thisNode.parent;
+    if (tree.startTokens[id] == tree.endTokens[id]) {
+      int thisNode = nthTerminal(searchSpan.startIndex()).id;
+      while (tree.parents[thisNode] >= 0 && hasSpan(tree.parents[thisNode], searchSpan)) {
+        thisNode = tree.parents[thisNode];
       }
-      return Optional.of(thisNode);
+      return Optional.of(node(thisNode));
     } else {
-      SynNode thisNode = coveringNodeFromTokenSpan(searchSpan);
-      if (!thisNode.span().equals(searchSpan)) {
+      int thisNode = coveringNodeFromTokenSpan(searchSpan).id;
+      if (!hasSpan(thisNode, searchSpan)) {
         return Optional.absent();
       }
-      while (thisNode.parent != null && thisNode.span().equals(searchSpan)) {
-        thisNode = thisNode.parent;
+      while (tree.parents[thisNode] >= 0 && hasSpan(thisNode, searchSpan)) {
+        thisNode = tree.parents[thisNode];
       }
-      return Optional.of(thisNode);
+      return Optional.of(node(thisNode));
     }
   }
 
+  // whether the span of the node numbered nodeId is equal to span
+  private boolean hasSpan(final int nodeId, final TokenSequence.Span span) {
+    return tree.startTokens[nodeId] == span.startIndex()
+        && tree.endTokens[nodeId] == span.endIndex()
+        && (tree.tokenSequence == span.tokenSequence()
+                || tree.tokenSequence.equals(span.tokenSequence()));
+  }
+
+  // whether the span of the node numbered nodeId contains span, as TokenSpan#contains decides
+  private boolean spanContains(final int nodeId, final TokenSequence.Span span) {
+    return tree.tokenSequence.sentenceIndex() == span.tokenSequence().sentenceIndex()
+        && tree.startTokens[nodeId] <= span.startIndex()
+        && tree.endTokens[nodeId] >= span.endIndex();
+  }
+
   /**
    * Returns the deepest node in the tree which dominates all of the tokens in {@code searchSpan}.
    * If no such node exists, this node itself is returned. This behavior may be counter-intuitive,
@@ -326,12 +387,28 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
    */
   @Deprecated
   public SynNode coveringNodeFromTokenSpan(final TokenSequence.Span searchSpan) {
-    for (final SynNode child : this) {
-      if (child.span().contains(searchSpan)) {
-        return child.coveringNodeFromTokenSpan(searchSpan);
+    if (spanContains(id, searchSpan)) {
+      final SynTreeIndex index = tree.index();
+      if (index.isUsable()) {
+        // the lowest node with exactly the searched span is the deepest one covering it
+        final int exact =
+            index.lowestNodeWithSpan(searchSpan.startIndex(), searchSpan.endIndex());
+        if (exact >= 0) {
+          return node(exact);
+        }
+      }
+    }
+    int ret = id;
+    int child = tree.firstChildren[ret];
+    while (child >= 0) {
+      if (spanContains(child, searchSpan)) {
+        ret = child;
+        child = tree.firstChildren[ret];
+      } else {
+        child = tree.nextSiblings[child];
       }
     }
-    return this;
+    return node(ret);
   }
 
   /**
@@ -348,7 +425,12 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
       return Optional.absent();
     }
 
-    if (span().contains(searchSpan)) {
+    if (spanContains(id, searchSpan)) {
+      if (tree.index().isUsable()) {
+        // the nodes covering the span form a path down from here, whose last nonterminal this finds
+        final SynNode covering = coveringNodeFromTokenSpan(searchSpan);
+        return Optional.of(covering.isTerminal() ? covering.parentNode() : covering);
+      }
       for (final SynNode child : this) {
         final Optional<SynNode> childCovering = child.coveringNonterminalFromTokenSpan(searchSpan);
         if (childCovering.isPresent()) {
@@ -366,23 +448,58 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
    * character offset span and lower in the tree (in case of unary projections).
    */
   public Optional<SynNode> smallestConstituentCovering(OffsetRange<CharOffset> offsetsInclusive) {
-    final boolean thisNodeCovers = span().charOffsetRange().contains(offsetsInclusive);
+    final int start = offsetsInclusive.startInclusive().asInt();
+    final int end = offsetsInclusive.endInclusive().asInt();
 
-    if (thisNodeCovers) {
-      for (final SynNode kid : children()) {
-        final Optional<SynNode> coveringConsituentAtOrUnderKid =
-            kid.smallestConstituentCovering(offsetsInclusive);
-        // kids are disjoint, so at most one matches
-        if (coveringConsituentAtOrUnderKid.isPresent()) {
-          return coveringConsituentAtOrUnderKid;
+    if (!coversCharOffsets(id, start, end)) {
+      return Optional.absent();
+    }
+    final CharOffsetIndex offsets = tree.tokenSequence.offsetIndex();
+    final SynTreeIndex index = tree.index();
+    if (index.isUsable() && offsets.isSorted()) {
+      // a node covers the offsets if and only if it contains the last token starting at or before
+      // start and the first token ending at or after end, so this is the lowest node with the span
+      // of those tokens, if there is one
+      final int startToken = offsets.endOfContaining(start) - 1;
+      final int endToken = offsets.startOfContaining(end);
+      if (startToken <= endToken) {
+        final int exact = index.lowestNodeWithSpan(startToken, endToken);
+        if (exact >= 0) {
+          return Optional.of(node(exact));
         }
       }
-
-      // none of our kids could cover, so we must do it ourselves
-      return Optional.of(this);
-    } else {
-      return Optional.absent();
     }
+    int ret = id;
+    int kid = tree.firstChildren[ret];
+    while (kid >= 0) {
+      // kids are disjoint, so at most one matches
+      if (coversCharOffsets(kid, start, end)) {
+        ret = kid;
+        kid = tree.firstChildren[ret];
+      } else {
+        kid = tree.nextSiblings[kid];
+      }
+    }
+    // none of the kids of ret could cover, so it must do it itself
+    return Optional.of(node(ret));
+  }
+
+  // whether the character offsets of the node numbered nodeId contain [start, end]
+  private boolean coversCharOffsets(final int nodeId, final int start, final int end) {
+    return tree.tokenSequence.startOffsetAt(tree.startTokens[nodeId]) <= start
+        && tree.tokenSequence.endOffsetAt(tree.endTokens[nodeId]) >= end;
+  }
+
+  // whether the character offsets of the node numbered nodeId lie within [start, end]
+  private boolean coveredByCharOffsets(final int nodeId, final int start, final int end) {
+    return start <= tree.tokenSequence.startOffsetAt(tree.startTokens[nodeId])
+        && end >= tree.tokenSequence.endOffsetAt(tree.endTokens[nodeId]);
+  }
+
+  // whether the character offsets of the node numbered nodeId overlap [start, end]
+  private boolean overlapsCharOffsets(final int nodeId, final int start, final int end) {
+    return start <= tree.tokenSequence.endOffsetAt(tree.endTokens[nodeId])
+        && end >= tree.tokenSequence.startOffsetAt(tree.startTokens[nodeId]);
   }
 
   /**
@@ -391,24 +508,66 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
    */
   public ImmutableSet<SynNode> maximalConstituentsCoveredBy(
       OffsetRange<CharOffset> offsetsInclusive) {
-    final boolean thisNodeCovered = offsetsInclusive.contains(span().charOffsetRange());
+    final int start = offsetsInclusive.startInclusive().asInt();
+    final int end = offsetsInclusive.endInclusive().asInt();
 
-    if (thisNodeCovered) {
+    if (coveredByCharOffsets(id, start, end)) {
       return ImmutableSet.of(this);
     } else {
       final ImmutableSet.Builder<SynNode> ret = ImmutableSet.builder();
-
-      for (final SynNode kid : children()) {
-        if (offsetsInclusive.contains(kid.span().charOffsetRange())) {
-          ret.add(kid);
-        } else if (offsetsInclusive.overlaps(kid.span().charOffsetRange())) {
-          ret.addAll(kid.maximalConstituentsCoveredBy(offsetsInclusive));
-        }
+      if (!addIndexedMaximalConstituentsCoveredBy(start, end, ret)) {
+        addMaximalConstituentsCoveredBy(id, start, end, ret);
       }
       return ret.build();
     }
   }
 
+  // adds what addMaximalConstituentsCoveredBy would for this node, which is not itself covered,
+  // from the tree's index and returns true, or returns false having added nothing if it can't
+  private boolean addIndexedMaximalConstituentsCoveredBy(final int start, final int end,
+      final ImmutableSet.Builder<SynNode> ret) {
+    final CharOffsetIndex offsets = tree.tokenSequence.offsetIndex();
+    final SynTreeIndex index = tree.index();
+    if (!index.isUsable() || !offsets.isSorted()) {
+      return false;
+    }
+    // a node is covered if and only if all its tokens are among these
+    final int firstToken = Math.max(offsets.startOfContainedIn(start), tree.startTokens[id]);
+    final int lastToken = Math.min(offsets.endOfContainedIn(end) - 1, tree.endTokens[id]);
+    final int[] found = new int[Math.max(0, lastToken - firstToken + 1)];
+    int numFound = 0;
+    // the nodes containing a token form a path, so the highest covered node starting at a token is
+    // found by climbing from its terminal until the next node up is not covered
+    int token = firstToken;
+    while (token <= lastToken) {
+      int node = index.lowestNodeWithSpan(token, token);
+      if (node < 0) {
+        return false;
+      }
+      while (tree.parents[node] != id && tree.startTokens[tree.parents[node]] >= firstToken
+          && tree.endTokens[tree.parents[node]] <= lastToken) {
+        node = tree.parents[node];
+      }
+      found[numFound++] = node;
+      token = tree.endTokens[node] + 1;
+    }
+    for (int i = 0; i < numFound; ++i) {
+      ret.add(node(found[i]));
+    }
+    return true;
+  }
+
+  private void addMaximalConstituentsCoveredBy(final int nodeId, final int start, final int end,
+      final ImmutableSet.Builder<SynNode> ret) {
+    for (int kid = tree.firstChildren[nodeId]; kid >= 0; kid = tree.nextSiblings[kid]) {
+      if (coveredByCharOffsets(kid, start, end)) {
+        ret.add(node(kid));
+      } else if (overlapsCharOffsets(kid, start, end)) {
+        addMaximalConstituentsCoveredBy(kid, start, end, ret);
+      }
+    }
+  }
+
   public Optional<Integer> ancestorDistance(final SynNode ancestor) {
     if (!ancestor.isAncestorOf(this)) {
       return Optional.absent();
@@ -416,7 +575,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     int dist = 0;
     SynNode node = this;
     while (node != ancestor) {
-      node = node.parent;
+      node = node.parentNode();
       ++dist;
       if (node == null) {
         return Optional.absent();
@@ -426,14 +585,16 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public boolean isAncestorOf(final SynNode node) {
-    return tokenSpan.contains(node.tokenSpan);
+    return tree.tokenSequence.sentenceIndex() == node.tree.tokenSequence.sentenceIndex()
+        && tree.startTokens[id] <= node.tree.startTokens[node.id]
+        && tree.endTokens[id] >= node.tree.endTokens[node.id];
   }
 
   public List<Mention> descendentMentions() {
     final List<Mention> ret = Lists.newArrayList();
 
 
-    ret.addAll(mentions);
+    ret.addAll(mentionList());
 
 
     for (final SynNode child : this) {
@@ -444,49 +605,25 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public Optional<SynNode> previousSibling() {
-    if (parent == null) {
+    if (tree.parents[id] < 0) {
       return Optional.absent();
     } else {
-      int index = 0;
-      for (final SynNode child : parent) {
-        if (child == this) {
-          break;
-        }
-        index++;
-      }
-      if (index - 1 >= 0) {
-        return Optional.of(parent.child(index - 1));
-      } else {
-        return Optional.absent();
-      }
+      final int previous = tree.previousSibling(id);
+      return previous >= 0 ? Optional.of(node(previous)) : Optional.<SynNode>absent();
     }
   }
 
   public Optional<SynNode> nextSibling() {
-    if (parent == null) {
+    if (tree.parents[id] < 0) {
       return Optional.absent();
     } else {
-      int index = 0;
-      for (final SynNode child : parent) {
-        if (child == this) {
-          break;
-        }
-        index++;
-      }
-      if (index + 1 < parent.nChildren()) {
-        return Optional.of(parent.child(index + 1));
-      } else {
-        return Optional.absent();
-      }
+      final int next = tree.nextSiblings[id];
+      return next >= 0 ? Optional.of(node(next)) : Optional.<SynNode>absent();
     }
   }
 
   public SynNode firstTerminal() {
-    SynNode ret = this;
-    while (!ret.isTerminal()) {
-      ret = ret.firstChild();
-    }
-    return ret;
+    return node(tree.firstTerminal(id));
   }
 
   /**
@@ -533,105 +670,74 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   }
 
   public SynNode lastTerminal() {
-    SynNode ret = this;
-    while (!ret.isTerminal()) {
-      ret = ret.lastChild();
-    }
-    return ret;
+    // in pre-order, the last node under this one is its last terminal
+    return node(tree.subtreeEnds[id]);
   }
 
   public Optional<SynNode> nextTerminal() {
-    SynNode node = this;
-    while (node.parent != null && node.parent.lastChild() == node) {
-      node = node.parent;
-    }
-    if (node.parent == null) {
+    final int node = lastChildAncestor(id);
+    if (tree.parents[node] < 0) {
       return Optional.absent();
     }
-    int index = 0;
-    for (final SynNode child : node.parent) {
-      if (child == node) {
-        break;
-      }
-      ++index;
-    }
-    ++index;
-    return Optional.of(node.parent.child(index).firstTerminal());
+    return Optional.of(node(tree.firstTerminal(tree.nextSiblings[node])));
   }
 
   public Optional<SynNode> previousTerminal() {
-    SynNode node = this;
-    while (node.parent != null && node.parent.firstChild() == node) {
-      node = node.parent;
-    }
-    if (node.parent == null) {
+    final int node = firstChildAncestor(id);
+    if (tree.parents[node] < 0) {
       return Optional.absent();
     }
-    int index = 0;
-    for (final SynNode child : node.parent) {
-      if (child == node) {
-        break;
-      }
-      ++index;
-    }
-    --index;
-    return Optional.of(node.parent.child(index).lastTerminal());
+    // in pre-order, the last terminal under the previous sibling comes just before this node
+    return Optional.of(node(node - 1));
   }
 
   public Optional<SynNode> nextPreterminal() {
-    SynNode node = this;
-    while (node.parent != null && node.parent.lastChild() == node) {
-      node = node.parent;
-    }
-    if (node.parent == null) {
+    final int node = lastChildAncestor(id);
+    if (tree.parents[node] < 0) {
       return Optional.absent();
     }
-    int index = 0;
-    for (final SynNode child : node.parent) {
-      if (child == node) {
-        break;
-      }
-      ++index;
-    }
-    ++index;
-    return node.parent.child(index).firstPreterminal();
+    return node(tree.nextSiblings[node]).firstPreterminal();
   }
 
   public Optional<SynNode> previousPreterminal() {
-    SynNode node = this;
-    while (node.parent != null && node.parent.firstChild() == node) {
-      node = node.parent;
-    }
-    if (node.parent == null) {
+    final int node = firstChildAncestor(id);
+    if (tree.parents[node] < 0) {
       return Optional.absent();
     }
-    int index = 0;
-    for (final SynNode child : node.parent) {
-      if (child == node) {
-        break;
-      }
-      ++index;
+    return node(tree.previousSibling(node)).lastPreterminal();
+  }
+
+  // climbs from nodeId while it is the last child of its parent
+  private int lastChildAncestor(final int nodeId) {
+    int node = nodeId;
+    while (tree.parents[node] >= 0 && tree.nextSiblings[node] < 0) {
+      node = tree.parents[node];
     }
-    --index;
-    return node.parent.child(index).lastPreterminal();
+    return node;
+  }
+
+  // climbs from nodeId while it is the first child of its parent
+  private int firstChildAncestor(final int nodeId) {
+    int node = nodeId;
+    while (tree.parents[node] >= 0 && tree.firstChildren[tree.parents[node]] == node) {
+      node = tree.parents[node];
+    }
+    return node;
   }
 
   public SynNode nthTerminal(final int n) {
-    SynNode curNode = firstTerminal();
-    for (int i = 0; i < n; ++i) {
-      final Optional<SynNode> next = curNode.nextTerminal();
-      if (next.isPresent()) {
-        curNode = next.get();
-      } else {
-        throw new SerifException(
-            String.format("Wanted %dth terminal symbol of SynNode, but there weren't enough", n));
-      }
+    // like taking the nextTerminal() of firstTerminal() n times
+    final int[] terminals = tree.terminals();
+    final int idx = tree.terminalIndex(tree.firstTerminal(id)) + Math.max(n, 0);
+    if (idx >= terminals.length) {
+      throw new SerifException(
+          String.format("Wanted %dth terminal symbol of SynNode, but there weren't enough", n));
     }
-    return curNode;
+    return node(terminals[idx]);
   }
 
   public boolean hasMention() {
-    return this.mentions.size()>0;
+    return this.mentions != null && this.mentions.size()>0;
   }
 
   public static final Predicate<SynNode> HasMention = new Predicate<SynNode>() {
@@ -682,9 +788,9 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   public String toDebugString(int indent) {
     final StringBuilder result = new StringBuilder();
 
-    result.append(String.format("%s  <<%d:%d", tag, tokenSpan.startIndex(), tokenSpan.endIndex()));
+    result.append(String.format("%s  <<%d:%d", tag(), tree.startTokens[id], tree.endTokens[id]));
 
-    for(Mention mention : this.mentions){
+    for(Mention mention : mentionList()){
       result.append(mention.toString());
     }
 
@@ -692,7 +798,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     indent += 2;
     for (final SynNode child : this) {
       if (child.isTerminal()) {
-        result.append(child.tag.toString());
+        result.append(child.tag().toString());
       } else {
         result.append('\n');
         for (int i = 0; i < indent; ++i) {
@@ -713,8 +819,8 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
 
   String toIndentedString(int indent) {
     final StringBuilder result = new StringBuilder();
-    result.append(String.format("%s  <<%d:%d", tag, tokenSpan.startIndex(), tokenSpan.endIndex()));
-    if (this.mentions.size()>0) {
+    result.append(String.format("%s  <<%d:%d", tag(), tree.startTokens[id], tree.endTokens[id]));
+    if (hasMention()) {
       result.append(String.format(" -- Mention %s", "IMPLEMENT MENTION REPRESENTATION"));
     }
     result.append(">>  ");
@@ -722,7 +828,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     for (final SynNode child : this) {
       result.append(' ');
       if (child.isTerminal()) {
-        result.append(child.tag.toString());
+        result.append(child.tag().toString());
       } else {
         result.append('\n');
         for (int i = 0; i < indent; ++i) {
@@ -739,13 +845,13 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   public String toPrettyParse(int indent) {
     final StringBuilder result = new StringBuilder();
 
-    result.append('(').append(tag);
+    result.append('(').append(tag());
     indent += 2;
 
     for (final SynNode child : this) {
       result.append(' ');
       if (child.isTerminal()) {
-        result.append(child.tag.toString());
+        result.append(child.tag().toString());
       } else {
         result.append('\n');
         if (child == head()) {
@@ -777,14 +883,14 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     final StringBuilder result = new StringBuilder();
     final SynNode head = head();
 
-    result.append('(').append(tag.toString());
+    result.append('(').append(tag().toString());
     if (isHead) {
       result.append("^");
     }
     for (final SynNode child : this) {
       result.append(' ');
       if (child.isTerminal()) {
-        result.append(child.tag.toString());
+        result.append(child.tag().toString());
       } else {
         // Currently we don't have head detection on all languages in PySerif
         if (head != null && child == head && markHead) {
@@ -804,7 +910,7 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
 
     for (final SynNode child : this) {
       if (child.isTerminal()) {
-        result.append(child.tag.toString());
+        result.append(child.tag().toString());
         result.append(' ');
       } else {
         result.append(child.toTextString());
@@ -835,8 +941,8 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
       ++idx;
     }
 
-    if (this.children.size() == 0) {
-      return this.tag.toString();
+    if (isTerminal()) {
+      return tag().toString();
     }
 
     return result.toString();
@@ -876,6 +982,9 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
 
     Mention mention = new Mention(this, mentionType, entityType,
             entitySubtype, metonymyInfo, confidence, linkConfidence, external_id);
+    if (this.mentions == null) {
+      this.mentions = new ArrayList<>(1);
+    }
     this.mentions.add(mention);
     return mention;
   }
@@ -886,11 +995,8 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
   public List<SynNode> pathToRoot() {
     final List<SynNode> ret = Lists.newArrayList();
 
-    Optional<SynNode> curNode = Optional.of(this);
-
-    while (curNode.isPresent()) {
-      ret.add(curNode.get());
-      curNode = curNode.get().parent();
+    for (int node = id; node >= 0; node = tree.parents[node]) {
+      ret.add(node(node));
     }
 
     return ret;
@@ -1047,9 +1153,9 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
       checkNotNull(ts);
       checkState(tokenIndex >= 0);
 
-      final TokenSequence.Span tokenSpan = ts.span(tokenIndex, tokenIndex);
-      final SynNode ret =
-          new SynNode(tag, ImmutableList.<SynNode>of(), Optional.<Integer>absent(), tokenSpan);
+      // checks the token index is in range
+      ts.span(tokenIndex, tokenIndex);
+      final SynNode ret = createViews(SynTree.terminal(ts, tag, tokenIndex));
 
       done = true;
 
@@ -1059,6 +1165,13 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     private int tokenIndex = -1;
   }
 
+  /**
+   * Builds a nonterminal from already built children. The trees of the children are copied into
+   * the new tree, whose nodes get new views: the children given stay the roots of their own trees,
+   * and the built node's children are found through {@link #children()}. Since a tree built this
+   * way is copied once for each of its levels, {@link PreorderBuilder} should be preferred for
+   * building whole trees.
+   */
   public static class NonterminalBuilder extends Builder {
 
     private NonterminalBuilder(final Symbol tag) {
@@ -1092,16 +1205,28 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
 
       final TokenSequence.Span tokenSpan = ts.span(startTokenIndex, endTokenIndex);
       final List<SynNode> kids = ImmutableList.copyOf(children);
-      final SynNode ret = new SynNode(tag, kids, Optional.fromNullable(headIdx), tokenSpan);
-
-      for (final SynNode kid : kids) {
-        kid.setParent(ret);
-      }
+      checkValidity(tokenSpan, kids);
+      final SynNode ret =
+          createViews(SynTree.nonterminal(ts, tag, headIdx != null ? headIdx : -1, kids));
       done = true;
 
       return ret;
     }
 
+    private static void checkValidity(final TokenSequence.Span tokenSpan,
+        final List<SynNode> kids) {
+      SynNode previousChild = null;
+      for (final SynNode child : kids) {
+        checkArgument(tokenSpan.contains(child.tokenSpan()),
+            "A SynNode must contain its children");
+        if (previousChild != null) {
+          checkArgument(child.tokenSpan().startsAfter(previousChild.tokenSpan()), "SynNode children"
+              + "must be specified in token order");
+        }
+        previousChild = child;
+      }
+    }
+
     private int getStartTokenIndex() {
       checkState(!children.isEmpty());
       return children.get(0).span().startIndex();
@@ -1124,12 +1249,84 @@ public final class SynNode implements Iterable<SynNode>, Spanning, HasHeadPreter
     return new NonterminalBuilder(tag);
   }
 
+  /**
+   * Creates a builder for a whole tree over {@code ts}, given top-down in pre-order.
+   */
+  public static PreorderBuilder preorderBuilder(final TokenSequence ts) {
+    return new PreorderBuilder(ts);
+  }
+
+  /**
+   * Builds a whole tree top-down, in pre-order, as a treebank string lists it: each nonterminal is
+   * opened, its children are added and it is closed. Unlike building each node from its already
+   * built children with {@link NonterminalBuilder}, which copies every node once for each of its
+   * ancestors, this appends each node once, so it takes time proportional to the size of the tree
+   * rather than its size times its depth.
+   */
+  public static final class PreorderBuilder {
+
+    private final SynTree.Builder tree;
+    private boolean done = false;
+
+    private PreorderBuilder(final TokenSequence ts) {
+      this.tree = new SynTree.Builder(ts);
+    }
+
+    /**
+     * Adds a nonterminal as the next child of the innermost open nonterminal, or as the root if
+     * none has been added yet, and opens it. If {@code isHead}, it is the head of its parent.
+     */
+    public PreorderBuilder openNonterminal(final Symbol tag, final boolean isHead) {
+      checkState(!done, "This builder has already been built!");
+      tree.openNonterminal(tag, isHead);
+      return this;
+    }
+
+    /**
+     * Adds a terminal covering token {@code tokenIndex} as the next child of the innermost open
+     * nonterminal. Terminals must be added in token order. If {@code isHead}, it is the head of
+     * its parent.
+     */
+    public PreorderBuilder addTerminal(final Symbol tag, final int tokenIndex,
+        final boolean isHead) {
+      checkState(!done, "This builder has already been built!");
+      tree.addTerminal(tag, tokenIndex, isHead);
+      return this;
+    }
+
+    /**
+     * Closes the innermost open nonterminal, which must have children.
+     */
+    public PreorderBuilder close() {
+      checkState(!done, "This builder has already been built!");
+      tree.close();
+      return this;
+    }
+
+    /**
+     * Whether the root has been closed, so the tree may be built.
+     */
+    public boolean isComplete() {
+      return tree.isComplete();
+    }
+
+    /**
+     * Returns the root of the tree. Every nonterminal must have been closed.
+     */
+    public SynNode build() {
+      checkState(!done, "This builder has already been built!");
+      final SynNode ret = createViews(tree.build());
+      done = true;
+      return ret;
+    }
+  }
+
   public SynNode headPreterminalOrName() {
     if (isPreterminal()) {
       return this;
     }
     boolean isBaseName = false;
-    for(Mention mention: this.mentions){
+    for(Mention mention: mentionList()){
       if(mention.isBaseName()){
         isBaseName = true;
         break;
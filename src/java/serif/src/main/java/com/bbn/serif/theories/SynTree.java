@@ -0,0 +1,378 @@
+package com.bbn.serif.theories;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The flat encoding of a syntax tree which the {@link SynNode}s of the tree are views of.
+ *
+ * Nodes are numbered in pre-order, so the root is node 0 and the descendants of any node {@code n}
+ * are the nodes numbered from {@code n + 1} to {@code subtreeEnds[n]}. For each node the tree
+ * stores its tag, its parent, first child and next sibling (-1 if none), which of its children is
+ * its head (-1 if none) and the indices of the first and last tokens it covers. Each node also has
+ * exactly one {@link SynNode} view, created once the tree is built, so nodes keep their identities.
+ *
+ * Trees may be built bottom-up by {@link SynNode.Builder}s. Building a node copies the trees of
+ * its children into a new tree with the new node as its root, which gets views of its own. Since
+ * every node is copied once for each of its ancestors, building a tree this way takes time
+ * proportional to its size times its depth. {@link SynNode.PreorderBuilder}, which appends each
+ * node to a single growing {@link Builder} as it is opened, takes time proportional to its size
+ * alone and should be preferred for whole trees.
+ */
+final class SynTree {
+
+  final TokenSequence tokenSequence;
+  final Symbol[] tags;
+  final int[] parents;
+  final int[] firstChildren;
+  final int[] nextSiblings;
+  final int[] heads;
+  final int[] startTokens;
+  final int[] endTokens;
+  final int[] subtreeEnds;
+  final SynNode[] nodes;
+
+  // the terminals, in order; built on first use
+  private volatile int[] terminals = null;
+  private volatile SynTreeIndex index = null;
+
+  private SynTree(final TokenSequence tokenSequence, final int size) {
+    this.tokenSequence = checkNotNull(tokenSequence);
+    this.tags = new Symbol[size];
+    this.parents = new int[size];
+    this.firstChildren = new int[size];
+    this.nextSiblings = new int[size];
+    this.heads = new int[size];
+    this.startTokens = new int[size];
+    this.endTokens = new int[size];
+    this.subtreeEnds = new int[size];
+    this.nodes = new SynNode[size];
+  }
+
+  private SynTree(final Builder builder) {
+    this.tokenSequence = builder.tokenSequence;
+    final int size = builder.size;
+    this.tags = Arrays.copyOf(builder.tags, size);
+    this.parents = Arrays.copyOf(builder.parents, size);
+    this.firstChildren = Arrays.copyOf(builder.firstChildren, size);
+    this.nextSiblings = Arrays.copyOf(builder.nextSiblings, size);
+    this.heads = Arrays.copyOf(builder.heads, size);
+    this.startTokens = Arrays.copyOf(builder.startTokens, size);
+    this.endTokens = Arrays.copyOf(builder.endTokens, size);
+    this.subtreeEnds = Arrays.copyOf(builder.subtreeEnds, size);
+    this.nodes = new SynNode[size];
+  }
+
+  int size() {
+    return nodes.length;
+  }
+
+  /**
+   * Makes a one-node tree of a terminal. Its view is left for the caller to create.
+   */
+  static SynTree terminal(final TokenSequence tokenSequence, final Symbol tag,
+      final int tokenIndex) {
+    final SynTree ret = new SynTree(tokenSequence, 1);
+    ret.tags[0] = checkNotNull(tag);
+    ret.parents[0] = -1;
+    ret.firstChildren[0] = -1;
+    ret.nextSiblings[0] = -1;
+    ret.heads[0] = -1;
+    ret.startTokens[0] = tokenIndex;
+    ret.endTokens[0] = tokenIndex;
+    ret.subtreeEnds[0] = 0;
+    return ret;
+  }
+
+  /**
+   * Makes a tree whose root has the given tag and children, copying the children's trees into it.
+   * Each child must be the root of its tree. The views are left for the caller to create.
+   */
+  static SynTree nonterminal(final TokenSequence tokenSequence, final Symbol tag,
+      final int headIndex, final List<SynNode> children) {
+    checkArgument(!children.isEmpty(), "A nonterminal SynNode must have children");
+    int size = 1;
+    for (final SynNode child : children) {
+      checkArgument(child.isRootOfTree(), "Only the root of a tree may be added to a parent");
+      final TokenSequence childTokens = child.tree().tokenSequence;
+      checkArgument(childTokens == tokenSequence || childTokens.equals(tokenSequence),
+          "A SynNode's children must be over the same token sequence");
+      size += child.tree().size();
+    }
+
+    final SynTree ret = new SynTree(tokenSequence, size);
+    ret.tags[0] = checkNotNull(tag);
+    ret.parents[0] = -1;
+    ret.nextSiblings[0] = -1;
+    ret.heads[0] = headIndex;
+    ret.subtreeEnds[0] = size - 1;
+
+    int offset = 1;
+    int previousChild = -1;
+    for (final SynNode child : children) {
+      final SynTree childTree = child.tree();
+      final int childSize = childTree.size();
+      System.arraycopy(childTree.tags, 0, ret.tags, offset, childSize);
+      System.arraycopy(childTree.heads, 0, ret.heads, offset, childSize);
+      System.arraycopy(childTree.startTokens, 0, ret.startTokens, offset, childSize);
+      System.arraycopy(childTree.endTokens, 0, ret.endTokens, offset, childSize);
+      copyShifted(childTree.parents, ret.parents, offset);
+      copyShifted(childTree.firstChildren, ret.firstChildren, offset);
+      copyShifted(childTree.nextSiblings, ret.nextSiblings, offset);
+      copyShifted(childTree.subtreeEnds, ret.subtreeEnds, offset);
+      ret.parents[offset] = 0;
+      if (previousChild < 0) {
+        ret.firstChildren[0] = offset;
+      } else {
+        ret.nextSiblings[previousChild] = offset;
+      }
+      previousChild = offset;
+      offset += childSize;
+    }
+    ret.startTokens[0] = ret.startTokens[ret.firstChildren[0]];
+    ret.endTokens[0] = ret.endTokens[previousChild];
+    return ret;
+  }
+
+  // copies node indices, leaving -1 (none) alone
+  private static void copyShifted(final int[] from, final int[] to, final int offset) {
+    for (int i = 0; i < from.length; ++i) {
+      to[offset + i] = from[i] >= 0 ? from[i] + offset : -1;
+    }
+  }
+
+  boolean isTerminal(final int node) {
+    return firstChildren[node] < 0;
+  }
+
+  int numChildren(final int node) {
+    int ret = 0;
+    for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+      ++ret;
+    }
+    return ret;
+  }
+
+  /**
+   * The {@code idx}th child of {@code node}, or -1 if it has fewer children.
+   */
+  int child(final int node, final int idx) {
+    int child = firstChildren[node];
+    for (int i = 0; i < idx && child >= 0; ++i) {
+      child = nextSiblings[child];
+    }
+    return idx >= 0 ? child : -1;
+  }
+
+  /**
+   * The position of {@code node} among its parent's children.
+   */
+  int childIndex(final int node) {
+    int ret = 0;
+    for (int sibling = firstChildren[parents[node]]; sibling != node;
+         sibling = nextSiblings[sibling]) {
+      ++ret;
+    }
+    return ret;
+  }
+
+  int previousSibling(final int node) {
+    int ret = -1;
+    for (int sibling = firstChildren[parents[node]]; sibling != node;
+         sibling = nextSiblings[sibling]) {
+      ret = sibling;
+    }
+    return ret;
+  }
+
+  int firstTerminal(final int node) {
+    int ret = node;
+    while (firstChildren[ret] >= 0) {
+      ret = firstChildren[ret];
+    }
+    return ret;
+  }
+
+  /**
+   * The terminals of the tree, in order.
+   */
+  int[] terminals() {
+    // racy single-check: the array is never changed once built
+    int[] ret = terminals;
+    if (ret == null) {
+      int numTerminals = 0;
+      for (int node = 0; node < size(); ++node) {
+        if (isTerminal(node)) {
+          ++numTerminals;
+        }
+      }
+      ret = new int[numTerminals];
+      int i = 0;
+      for (int node = 0; node < size(); ++node) {
+        if (isTerminal(node)) {
+          ret[i++] = node;
+        }
+      }
+      terminals = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Lookup tables over this tree's nodes, built on first use.
+   */
+  SynTreeIndex index() {
+    // racy single-check: the index is never changed once built
+    SynTreeIndex ret = index;
+    if (ret == null) {
+      ret = SynTreeIndex.of(this);
+      index = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * The position of the terminal {@code node} among all the terminals of the tree.
+   */
+  int terminalIndex(final int node) {
+    return Arrays.binarySearch(terminals(), node);
+  }
+
+  /**
+   * Builds a tree top-down, in pre-order, into arrays which grow as nodes are added. Nodes are
+   * numbered in the order they are added, so this is also their final numbering. The views of the
+   * nodes are left for the caller to create.
+   */
+  static final class Builder {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final TokenSequence tokenSequence;
+    private Symbol[] tags = new Symbol[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] heads = new int[INITIAL_CAPACITY];
+    private int[] startTokens = new int[INITIAL_CAPACITY];
+    private int[] endTokens = new int[INITIAL_CAPACITY];
+    private int[] subtreeEnds = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    // the nonterminals opened but not yet closed, innermost last, and for each the last child
+    // added to it and how many children it has so far
+    private int[] open = new int[INITIAL_CAPACITY];
+    private int[] lastChildren = new int[INITIAL_CAPACITY];
+    private int[] numChildren = new int[INITIAL_CAPACITY];
+    private int depth = 0;
+    private int lastTokenIndex = -1;
+
+    Builder(final TokenSequence tokenSequence) {
+      this.tokenSequence = checkNotNull(tokenSequence);
+    }
+
+    /**
+     * Adds a nonterminal as the next child of the innermost open nonterminal, or as the root if
+     * there is none, and opens it. If {@code isHead}, it is the head of its parent.
+     */
+    void openNonterminal(final Symbol tag, final boolean isHead) {
+      final int node = add(tag, isHead);
+      startTokens[node] = -1;
+      endTokens[node] = -1;
+      if (depth == open.length) {
+        open = Arrays.copyOf(open, 2 * depth);
+        lastChildren = Arrays.copyOf(lastChildren, 2 * depth);
+        numChildren = Arrays.copyOf(numChildren, 2 * depth);
+      }
+      open[depth] = node;
+      lastChildren[depth] = -1;
+      numChildren[depth] = 0;
+      ++depth;
+    }
+
+    /**
+     * Adds a terminal covering {@code tokenIndex} as the next child of the innermost open
+     * nonterminal. Terminals must be added in token order.
+     */
+    void addTerminal(final Symbol tag, final int tokenIndex, final boolean isHead) {
+      checkState(depth > 0, "A terminal must have a parent");
+      checkArgument(tokenIndex > lastTokenIndex, "SynNode children must be specified in token "
+          + "order");
+      // checks the token index is in range
+      tokenSequence.span(tokenIndex, tokenIndex);
+      final int node = add(tag, isHead);
+      startTokens[node] = tokenIndex;
+      endTokens[node] = tokenIndex;
+      subtreeEnds[node] = node;
+      lastTokenIndex = tokenIndex;
+    }
+
+    /**
+     * Closes the innermost open nonterminal.
+     */
+    void close() {
+      checkState(depth > 0, "No nonterminal is open");
+      final int node = open[depth - 1];
+      checkArgument(firstChildren[node] >= 0, "A nonterminal SynNode must have children");
+      startTokens[node] = startTokens[firstChildren[node]];
+      endTokens[node] = endTokens[lastChildren[depth - 1]];
+      subtreeEnds[node] = size - 1;
+      --depth;
+    }
+
+    boolean isComplete() {
+      return size > 0 && depth == 0;
+    }
+
+    SynTree build() {
+      checkState(isComplete(), "Every nonterminal of a tree must be closed");
+      return new SynTree(this);
+    }
+
+    private int add(final Symbol tag, final boolean isHead) {
+      checkState(size == 0 || depth > 0, "A tree may only have one root");
+      if (size == tags.length) {
+        grow();
+      }
+      final int node = size++;
+      tags[node] = checkNotNull(tag);
+      firstChildren[node] = -1;
+      nextSiblings[node] = -1;
+      heads[node] = -1;
+      if (depth > 0) {
+        final int parent = open[depth - 1];
+        parents[node] = parent;
+        if (lastChildren[depth - 1] < 0) {
+          firstChildren[parent] = node;
+        } else {
+          nextSiblings[lastChildren[depth - 1]] = node;
+        }
+        if (isHead) {
+          checkState(heads[parent] < 0, "Cannot set head twice for %s", tags[parent]);
+          heads[parent] = numChildren[depth - 1];
+        }
+        lastChildren[depth - 1] = node;
+        ++numChildren[depth - 1];
+      } else {
+        parents[node] = -1;
+      }
+      return node;
+    }
+
+    private void grow() {
+      final int capacity = 2 * tags.length;
+      tags = Arrays.copyOf(tags, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      firstChildren = Arrays.copyOf(firstChildren, capacity);
+      nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+      heads = Arrays.copyOf(heads, capacity);
+      startTokens = Arrays.copyOf(startTokens, capacity);
+      endTokens = Arrays.copyOf(endTokens, capacity);
+      subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.bbn.serif.theories;
+
+import java.util.Arrays;
+
+/**
+ * Lookup tables over the nodes of a {@link SynTree}: the lowest node with each token span, and
+ * for each token its preterminal and that preterminal's maximal projection. Built once per tree,
+ * on first use, and shared by every node of the tree and by its {@link Parse}.
+ *
+ * The tables answer span lookups the way descending the tree from the root does only if no two
+ * siblings cover the same token, so that the nodes covering any token form a single path. Trees
+ * for which that fails are not {@link #isUsable() usable}, and lookups on them descend as before.
+ */
+final class SynTreeIndex {
+
+  private final boolean usable;
+  // open-addressed table from (start token, end token) to the lowest node with that span
+  private final long[] spanKeys;
+  private final int[] spanNodes;
+  // per token index, or -1 if none
+  private final int[] preterminals;
+  private final int[] maximalProjections;
+
+  private SynTreeIndex(final SynTree tree) {
+    this.usable = siblingsAreDisjoint(tree);
+
+    int capacity = 4;
+    while (capacity < 2 * tree.size()) {
+      capacity <<= 1;
+    }
+    this.spanKeys = new long[capacity];
+    this.spanNodes = new int[capacity];
+    Arrays.fill(spanNodes, -1);
+    // descendants come after their ancestors in pre-order, so the lowest node with a span is the
+    // last one filed under it
+    for (int node = 0; node < tree.size(); ++node) {
+      put(spanKey(tree.startTokens[node], tree.endTokens[node]), node);
+    }
+
+    final int numTokens = tree.tokenSequence.size();
+    this.preterminals = new int[numTokens];
+    this.maximalProjections = new int[numTokens];
+    Arrays.fill(preterminals, -1);
+    Arrays.fill(maximalProjections, -1);
+    for (int node = 0; node < tree.size(); ++node) {
+      final int token = tree.startTokens[node];
+      if (tree.isTerminal(node) && token >= 0 && token < numTokens) {
+        final int parent = tree.parents[node];
+        if (parent >= 0 && tree.nextSiblings[node] < 0
+            && tree.firstChildren[parent] == node) {
+          preterminals[token] = parent;
+          maximalProjections[token] = maximalProjection(tree, parent);
+        }
+      }
+    }
+  }
+
+  static SynTreeIndex of(final SynTree tree) {
+    return new SynTreeIndex(tree);
+  }
+
+  private static boolean siblingsAreDisjoint(final SynTree tree) {
+    for (int node = 0; node < tree.size(); ++node) {
+      final int next = tree.nextSiblings[node];
+      if (next >= 0 && tree.endTokens[node] >= tree.startTokens[next]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // as SynNode#maximalProjection()
+  private static int maximalProjection(final SynTree tree, final int node) {
+    int ret = node;
+    while (tree.parents[ret] >= 0 && tree.heads[tree.parents[ret]] >= 0
+        && tree.childIndex(ret) == tree.heads[tree.parents[ret]]) {
+      ret = tree.parents[ret];
+    }
+    return ret;
+  }
+
+  boolean isUsable() {
+    return usable;
+  }
+
+  /**
+   * The lowest node spanning exactly tokens {@code start} through {@code end}, or -1 if none does.
+   */
+  int lowestNodeWithSpan(final int start, final int end) {
+    final long key = spanKey(start, end);
+    final int mask = spanKeys.length - 1;
+    for (int slot = slotFor(key, mask); spanNodes[slot] >= 0; slot = (slot + 1) & mask) {
+      if (spanKeys[slot] == key) {
+        return spanNodes[slot];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The preterminal of the token at {@code tokenIdx}, or -1 if it has none.
+   */
+  int preterminal(final int tokenIdx) {
+    return tokenIdx >= 0 && tokenIdx < preterminals.length ? preterminals[tokenIdx] : -1;
+  }
+
+  /**
+   * The maximal projection of the preterminal of the token at {@code tokenIdx}, or -1 if it has no
+   * preterminal.
+   */
+  int maximalProjection(final int tokenIdx) {
+    return tokenIdx >= 0 && tokenIdx < maximalProjections.length
+        ? maximalProjections[tokenIdx] : -1;
+  }
+
+  private void put(final long key, final int node) {
+    final int mask = spanKeys.length - 1;
+    int slot = slotFor(key, mask);
+    while (spanNodes[slot] >= 0 && spanKeys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    spanKeys[slot] = key;
+    spanNodes[slot] = node;
+  }
+
+  private static long spanKey(final int start, final int end) {
+    return ((long) start << 32) | (end & 0xffffffffL);
+  }
+
+  private static int slotFor(final long key, final int mask) {
+    final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
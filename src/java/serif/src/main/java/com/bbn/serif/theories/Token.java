@@ -25,24 +25,24 @@ import static com.google.common.base.Preconditions.checkNotNull;
  *
  * Two {@code Token}s are equal if they have the same {@link #symbol()}, the same offsets, and
  * occupy the same sentence index in their owning {@link TokenSequence}s.
+ *
+ * A {@link TokenSequence} stores its tokens' symbols and offsets in arrays, and a {@code Token} is
+ * only a view of one position in them, created by {@link TokenSequence#token(int)} when needed.
+ * Different views of the same token are equal but need not be identical.
  */
 public final class Token implements HasToken, Spanning {
-  private TokenSequence tokenSequence = null;
-  private final Symbol symbol;
+  private final TokenSequence tokenSequence;
   private final int index;
-  private final OffsetRange<CharOffset> originalTextContentRange;
 
-  // this should only be called by a TokenSequence builder which also
-  // calls setOwningTokenSequence()
-  Token(int idx, Symbol symbol, OffsetRange<CharOffset> originalTextContentRange) {
-    this.symbol = checkNotNull(symbol);
-    this.originalTextContentRange = checkNotNull(originalTextContentRange);
+  // this should only be called by TokenSequence
+  Token(TokenSequence tokenSequence, int idx) {
+    this.tokenSequence = checkNotNull(tokenSequence);
     checkArgument(idx >= 0);
     this.index = idx;
   }
 
   public Symbol symbol() {
-    return symbol;
+    return tokenSequence.symbolAt(index);
   }
 
   public int index() {
@@ -53,7 +53,7 @@ public final class Token implements HasToken, Spanning {
    * The range of offsets in the document's original text content string covered by this token.
    */
   public OffsetRange<CharOffset> originalTextContentRange() {
-    return originalTextContentRange;
+    return OffsetRange.fromInclusiveEndpoints(startCharOffset(), endCharOffset());
   }
 
   /**
@@ -173,20 +173,10 @@ public final class Token implements HasToken, Spanning {
 
   @Override
   public String toString() {
-    return symbol.asString() +"[" + originalTextContentRange() + "]";
+    return symbol().asString() +"[" + originalTextContentRange() + "]";
   }
 
 
-  // this is called only by the TokenSequence builder to set up the back-links in a
-  // safely immutable way
-  /* package-private */ void setOwningTokenSequence(final TokenSequence ts) {
-    if (tokenSequence == null) {
-      this.tokenSequence = checkNotNull(ts);
-    } else {
-      throw new RuntimeException("Cannot set the token sequence of a token more than once");
-    }
-  }
-
   @Override
   public Token token() {
     return this;
@@ -219,7 +209,7 @@ public final class Token implements HasToken, Spanning {
   public int hashCode() {
     // note the hashcode does not include tokenSequence in order to avoid an infinite loop with
     // TokenSequence's hashCode!
-    return Objects.hash(symbol, originalTextContentRange(), index);
+    return Objects.hash(symbol(), originalTextContentRange(), index);
   }
 
   @Override
@@ -233,7 +223,7 @@ public final class Token implements HasToken, Spanning {
       return false;
     }
     final Token other = (Token) obj;
-    return Objects.equals(this.symbol, other.symbol)
+    return Objects.equals(this.symbol(), other.symbol())
         && Objects.equals(this.originalTextContentRange(), other.originalTextContentRange())
         && Objects.equals(this.index, other.index);
   }
@@ -270,11 +260,11 @@ public final class Token implements HasToken, Spanning {
   }
 
   public CharOffset startCharOffset() {
-    return originalTextContentRange().startInclusive();
+    return CharOffset.asCharOffset(tokenSequence.startOffsetAt(index));
   }
 
   public CharOffset endCharOffset() {
-    return originalTextContentRange().endInclusive();
+    return CharOffset.asCharOffset(tokenSequence.endOffsetAt(index));
   }
 
   public Optional<ByteOffset> startByteOffset() {
@@ -15,17 +15,18 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.FluentIterable;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -37,12 +38,15 @@ public final class TokenSequence
   private static final TokenSequence ABSENT =
       new TokenSequence(
           LocatedString.fromReferenceString("Bogus original text for absent sentence theory!"),
-          Collections.<Token>emptyList(), 0, 0f, true);
+          new Symbol[0], new int[0], new int[0], 0, 0f, true);
 
-  private TokenSequence(LocatedString originalText, final Iterable<Token> tokens,
-      final int sentenceIndex, final float score, final boolean absent) {
+  private TokenSequence(LocatedString originalText, final Symbol[] symbols,
+      final int[] startOffsets, final int[] endOffsets, final int sentenceIndex,
+      final float score, final boolean absent) {
     this.originalText = checkNotNull(originalText);
-    this.tokens = ImmutableList.copyOf(tokens);
+    checkArgument(symbols.length == startOffsets.length && symbols.length == endOffsets.length);
+    this.symbols = symbols;
+    this.offsets = CharOffsetIndex.of(startOffsets, endOffsets);
     this.sentenceIndex = sentenceIndex;
     checkArgument(sentenceIndex >= 0, "Token sequence may not have a negative sentence index");
     this.score = score;
@@ -51,11 +55,14 @@ public final class TokenSequence
     // if we know the original text, use it to ensure token offsets are valid
     // ideally we'd like to check they are within sentence-bounds but we don't know
     // about the sentence boundaries here
-    for (final Token tok : tokens) {
-      checkArgument(
-          originalText.referenceBounds().asCharOffsetRange().contains(tok.charOffsetRange()),
-          "Token %s is outside original text character offset boundaries %s",
-          tok, originalText.referenceBounds().asCharOffsetRange());
+    final OffsetRange<CharOffset> bounds = originalText.referenceBounds().asCharOffsetRange();
+    for (int idx = 0; idx < symbols.length; ++idx) {
+      if (startOffsets[idx] < bounds.startInclusive().asInt()
+          || endOffsets[idx] > bounds.endInclusive().asInt()) {
+        throw new IllegalArgumentException(String.format(
+            "Token %s is outside original text character offset boundaries %s",
+            token(idx), bounds));
+      }
     }
   }
 
@@ -90,16 +97,44 @@ public final class TokenSequence
   }
 
   public int size() {
-    return tokens.size();
+    return symbols.length;
   }
 
   @Override
   public Iterator<Token> iterator() {
-    return tokens.iterator();
+    return new AbstractIterator<Token>() {
+      private int nextIdx = 0;
+
+      @Override
+      protected Token computeNext() {
+        return nextIdx < size() ? token(nextIdx++) : endOfData();
+      }
+    };
   }
 
+  /**
+   * Tokens are stored as columns of symbols and offsets, so this returns a new {@link Token} view
+   * of the token at {@code idx} each time it is called. Views of the same token are equal.
+   */
   public Token token(final int idx) {
-    return tokens.get(idx);
+    checkElementIndex(idx, size());
+    return new Token(this, idx);
+  }
+
+  Symbol symbolAt(final int idx) {
+    return symbols[idx];
+  }
+
+  int startOffsetAt(final int idx) {
+    return offsets.start(idx);
+  }
+
+  int endOffsetAt(final int idx) {
+    return offsets.end(idx);
+  }
+
+  CharOffsetIndex offsetIndex() {
+    return offsets;
   }
 
   public boolean isEmpty() {
@@ -133,6 +168,11 @@ public final class TokenSequence
   }
 
   public Optional<Integer> tokenIndexStartingAt(final CharOffset offset) {
+    final CharOffsetIndex index = offsets;
+    if (index.isSorted()) {
+      final int idx = index.firstStartingAt(offset.asInt());
+      return idx >= 0 ? Optional.of(idx) : Optional.<Integer>absent();
+    }
     for (int idx = 0; idx < size(); ++idx) {
       if (token(idx).startCharOffset().equals(offset)) {
         return Optional.of(idx);
@@ -142,6 +182,11 @@ public final class TokenSequence
   }
 
   public Optional<Integer> tokenIndexEndingAt(final CharOffset offset) {
+    final CharOffsetIndex index = offsets;
+    if (index.isSorted()) {
+      final int idx = index.firstEndingAt(offset.asInt());
+      return idx >= 0 ? Optional.of(idx) : Optional.<Integer>absent();
+    }
     for (int idx = 0; idx < size(); ++idx) {
       if (token(idx).endCharOffset().equals(offset)) {
         return Optional.of(idx);
@@ -193,10 +238,17 @@ public final class TokenSequence
    * charOffsetRange}. If no such token span exists, returns {@link Optional#absent}.
    */
   public Optional<Span> spanFromCharacterOffsets(OffsetRange<CharOffset> charOffsetOffsetRange) {
+    final CharOffsetIndex index = offsets;
+    if (index.isSorted()) {
+      final int startIdx = index.lastStartingAt(charOffsetOffsetRange.startInclusive().asInt());
+      final int endIdx = index.lastEndingAt(charOffsetOffsetRange.endInclusive().asInt());
+      return spanBetween(startIdx, endIdx);
+    }
+
     Token startToken = null;
     Token endToken = null;
 
-    for (final Token tok : tokens) {
+    for (final Token tok : this) {
       if (tok.startCharOffset().equals(charOffsetOffsetRange.startInclusive())) {
         startToken = tok;
       }
@@ -222,11 +274,27 @@ public final class TokenSequence
               .endInclusive().asInt(),
           "cannot have an input offset ending after the original text!");
 
+    final CharOffsetIndex index = offsets;
+    if (index.isSorted()) {
+      final int lowerOffset = offsetRange.startInclusive().asInt();
+      final int higherOffset = offsetRange.endInclusive().asInt();
+      // the last token containing an endpoint, else the nearest token inside the range
+      int startIdx = index.lastContaining(lowerOffset);
+      if (startIdx < 0) {
+        startIdx = index.firstEndingAfter(lowerOffset);
+      }
+      int endIdx = index.lastContaining(higherOffset);
+      if (endIdx < 0) {
+        endIdx = index.firstStartingAfter(higherOffset);
+      }
+      return spanBetween(startIdx, endIdx);
+    }
+
     final CharOffset lower = offsetRange.startInclusive();
     final CharOffset higher = offsetRange.endInclusive();
     Token startToken = null;
     Token endToken = null;
-    for (final Token tok : tokens) {
+    for (final Token tok : this) {
 
       if (tok.charOffsetRange().asRange().contains(lower)) {
         // contained within a token
@@ -250,6 +318,14 @@ public final class TokenSequence
     }
   }
 
+  private Optional<Span> spanBetween(final int startTokenIdx, final int endTokenIdx) {
+    if (startTokenIdx >= 0 && endTokenIdx >= 0) {
+      return Optional.of(span(startTokenIdx, endTokenIdx));
+    } else {
+      return Optional.absent();
+    }
+  }
+
   /**
    * A contiguous span of tokens within a token sequence.  It is always tied to a particular token
    * sequence.
@@ -564,11 +640,14 @@ public final class TokenSequence
 
   @Override
   public String toString() {
-    return "[" + sentenceIndex + " -> " + FluentIterable.from(tokens).transform(
+    return "[" + sentenceIndex + " -> " + FluentIterable.from(this).transform(
         Functions.toStringFunction()).join(StringUtils.spaceJoiner()) + "]";
   }
 
-  private final ImmutableList<Token> tokens;
+  // the tokens, stored column-wise: Token objects are views created on demand
+  private final Symbol[] symbols;
+  // the start and end character offsets of each token
+  private final CharOffsetIndex offsets;
   // nullable
   private final LocatedString originalText;
   private final int sentenceIndex;
@@ -586,12 +665,12 @@ public final class TokenSequence
 
   public static final class FromTokenDataBuilder {
 
-    private final ImmutableList.Builder<Token> tokensBuilder = ImmutableList.builder();
+    private final List<Symbol> symbols = new ArrayList<>();
+    private int[] startOffsets = new int[16];
+    private int[] endOffsets = new int[16];
     private final LocatedString originalText;
     private float score = 1.0f;
     private final int sentenceIndex;
-    private int tokensAdded = 0;
-    private Token lastTokenAdded = null;
 
     private FromTokenDataBuilder(final LocatedString originalText, final int sentenceIndex) {
       // nullable
@@ -600,27 +679,29 @@ public final class TokenSequence
     }
 
     public FromTokenDataBuilder addToken(Symbol tokSymbol, OffsetRange<CharOffset> originalTextContentRange) {
-      tokensBuilder
-          .add(lastTokenAdded = new Token(tokensAdded++, tokSymbol, originalTextContentRange));
+      checkNotNull(tokSymbol);
+      checkNotNull(originalTextContentRange);
+      final int idx = symbols.size();
+      if (idx == startOffsets.length) {
+        startOffsets = Arrays.copyOf(startOffsets, 2 * idx);
+        endOffsets = Arrays.copyOf(endOffsets, 2 * idx);
+      }
+      symbols.add(tokSymbol);
+      startOffsets[idx] = originalTextContentRange.startInclusive().asInt();
+      endOffsets[idx] = originalTextContentRange.endInclusive().asInt();
       return this;
     }
 
-    Optional<Token> lastTokenAdded() {
-      return Optional.fromNullable(lastTokenAdded);
-    }
-
     public FromTokenDataBuilder setScore(float score) {
       this.score = score;
       return this;
     }
 
     public TokenSequence build() {
-      final ImmutableList<Token> tokens = tokensBuilder.build();
-      final TokenSequence ret = new TokenSequence(originalText, tokens, sentenceIndex, score, false);
-      for (final Token tok : tokens) {
-        tok.setOwningTokenSequence(ret);
-      }
-      return ret;
+      final int numTokens = symbols.size();
+      return new TokenSequence(originalText, symbols.toArray(new Symbol[numTokens]),
+          Arrays.copyOf(startOffsets, numTokens), Arrays.copyOf(endOffsets, numTokens),
+          sentenceIndex, score, false);
     }
   }
 
@@ -652,7 +733,7 @@ public final class TokenSequence
   public TokenSequence copyWithTransformedTokens(StringNormalizer normalizer) {
     final FromTokenDataBuilder ret = withOriginalText(sentenceIndex, originalText);
     boolean changed = false;
-    for (final Token origTok : tokens) {
+    for (final Token origTok : this) {
       final Symbol normSymbol = Symbol.from(normalizer.normalize(origTok.symbol().asString()));
       changed = changed || !normSymbol.equalTo(origTok.symbol());
       ret.addToken(normSymbol, origTok.originalTextContentRange());
@@ -662,7 +743,8 @@ public final class TokenSequence
 
   @Override
   public int hashCode() {
-    return Objects.hash(tokens, originalText, sentenceIndex, score, absentFlag);
+    return Objects.hash(Arrays.hashCode(symbols), offsets, originalText, sentenceIndex, score,
+        absentFlag);
   }
 
   @Override
@@ -674,7 +756,8 @@ public final class TokenSequence
       return false;
     }
     final TokenSequence other = (TokenSequence) obj;
-    return Objects.equals(this.tokens, other.tokens)
+    return Arrays.equals(this.symbols, other.symbols)
+        && Objects.equals(this.offsets, other.offsets)
         && Objects.equals(this.originalText, other.originalText)
         && Objects.equals(this.sentenceIndex, other.sentenceIndex)
         && Objects.equals(this.score, other.score)
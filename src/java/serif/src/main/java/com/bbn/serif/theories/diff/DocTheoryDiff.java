@@ -21,7 +21,7 @@ import java.util.List;
 @Value.Immutable
 @Functional
 @TextGroupImmutable
-abstract class DocTheoryDiff implements Difference<DocTheory>, WithDocTheoryDiff {
+public abstract class DocTheoryDiff implements Difference<DocTheory>, WithDocTheoryDiff {
   @Value.Parameter
   @Override
   public abstract Optional<DocTheory> left();
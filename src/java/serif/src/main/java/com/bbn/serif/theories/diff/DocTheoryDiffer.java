@@ -17,7 +17,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Diffs two doc theories. Currently only compares the sentence theories, aligned by sentence number.
  */
 @Beta
-final class DocTheoryDiffer implements Differ<DocTheory, DocTheoryDiff> {
+public final class DocTheoryDiffer implements Differ<DocTheory, DocTheoryDiff> {
   private final SentenceTheoryDiffer sentenceTheoryDiffer;
 
   @Inject
@@ -25,6 +25,16 @@ final class DocTheoryDiffer implements Differ<DocTheory, DocTheoryDiff> {
     this.sentenceTheoryDiffer = checkNotNull(sentenceTheoryDiffer);
   }
 
+  /**
+   * Creates a differ for use outside of dependency injection. If {@code ignoreScores}, differences
+   * only in scores are not reported.
+   */
+  public static DocTheoryDiffer create(final boolean ignoreScores) {
+    return new DocTheoryDiffer(new SentenceTheoryDiffer(
+        new NamesDiffer(new NameDiffer(ignoreScores)),
+        new EventMentionsDiffer(new EventMentionDiffer(ignoreScores, new SynNodeDiffer()))));
+  }
+
   @Override
   public Optional<DocTheoryDiff> diff(final DocTheory left, final DocTheory right) {
     final ImmutableList.Builder<SentenceTheory> leftOnlyB = ImmutableList.builder();
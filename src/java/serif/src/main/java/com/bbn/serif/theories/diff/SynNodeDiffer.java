@@ -15,7 +15,7 @@ import javax.inject.Inject;
 final class SynNodeDiffer implements Differ<SynNode, Difference<SynNode>> {
 
   @Inject
-  private SynNodeDiffer() {
+  SynNodeDiffer() {
 
   }
 
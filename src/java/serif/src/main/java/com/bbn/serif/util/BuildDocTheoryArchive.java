@@ -0,0 +1,87 @@
+package com.bbn.serif.util;
+
+import com.bbn.bue.common.AbstractParameterizedModule;
+import com.bbn.bue.common.TextGroupEntryPoint;
+import com.bbn.bue.common.TextGroupEntryPoints;
+import com.bbn.bue.common.files.FileUtils;
+import com.bbn.bue.common.parameters.Parameters;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.SerifEnvironmentM;
+import com.bbn.serif.io.DocTheoryArchiveWriter;
+import com.bbn.serif.io.SerifXMLWriter;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+/**
+ * Packs many SerifXML or binary SerifXML files into a single {@link
+ * com.bbn.serif.io.DocTheoryArchive}.  The files are copied as they are, without being loaded.
+ *
+ * Specify {@code docIdMap}, a map from docids to files, and {@code archive}, the archive file to
+ * write. If {@code append} is true, documents are added to an existing archive instead of
+ * replacing it.
+ */
+public final class BuildDocTheoryArchive implements TextGroupEntryPoint {
+
+  private static final Logger log = LoggerFactory.getLogger(BuildDocTheoryArchive.class);
+
+  private static final String DOC_ID_MAP_PARAM = "docIdMap";
+  private static final String ARCHIVE_PARAM = "archive";
+  private static final String APPEND_PARAM = "append";
+
+  private final Parameters parameters;
+  private final SerifXMLWriter writer;
+
+  @Inject
+  BuildDocTheoryArchive(Parameters parameters, SerifXMLWriter writer) {
+    this.parameters = parameters;
+    this.writer = writer;
+  }
+
+  public static void main(String... args) throws Exception {
+    TextGroupEntryPoints.runEntryPoint(BuildDocTheoryArchive.class, args);
+  }
+
+  @Override
+  public void run() throws Exception {
+    final ImmutableMap<Symbol, File> docIdMap =
+        FileUtils.loadSymbolToFileMap(parameters.getExistingFile(DOC_ID_MAP_PARAM));
+    final File archiveFile = parameters.getCreatableFile(ARCHIVE_PARAM);
+
+    final DocTheoryArchiveWriter archiveWriter;
+    if (parameters.getOptionalBoolean(APPEND_PARAM).or(false)) {
+      archiveWriter = DocTheoryArchiveWriter.openForAppend(archiveFile, writer);
+    } else {
+      archiveWriter = DocTheoryArchiveWriter.create(archiveFile, writer);
+    }
+
+    int numAdded = 0;
+    for (final Map.Entry<Symbol, File> entry : docIdMap.entrySet()) {
+      archiveWriter.append(entry.getKey(), Files.asByteSource(entry.getValue()));
+      if (++numAdded % 10000 == 0) {
+        log.info("Added {} of {} documents", numAdded, docIdMap.size());
+      }
+    }
+    archiveWriter.finish();
+  }
+
+  static class Module extends AbstractParameterizedModule {
+
+    protected Module(final Parameters parameters) {
+      super(parameters);
+    }
+
+    @Override
+    public void configure() {
+      install(new SerifEnvironmentM(params()));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.bbn.serif.util;
+
+import com.bbn.bue.common.AbstractParameterizedModule;
+import com.bbn.bue.common.TextGroupEntryPoint;
+import com.bbn.bue.common.TextGroupEntryPoints;
+import com.bbn.bue.common.files.FileUtils;
+import com.bbn.bue.common.parameters.Parameters;
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.SerifEnvironmentM;
+import com.bbn.serif.common.SerifException;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.io.SerifXMLWriter;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.diff.DocTheoryDiff;
+import com.bbn.serif.theories.diff.DocTheoryDiffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Inject;
+
+/**
+ * Converts SerifXML documents to binary SerifXML or back.
+ *
+ * Specify {@code inputList}, a list of document files, and {@code outputDir}. Each document is
+ * written to {@code outputDir} under its docid, as binary SerifXML ({@code .sxb}) unless {@code
+ * toBinary} is false, in which case it is written as SerifXML ({@code .xml}). Either format is
+ * accepted as input. A map from docids to the converted files is written to {@code
+ * outputDir/docIdMap.txt}.
+ *
+ * If {@code verify} is true, each converted document is loaded back and compared to the original
+ * with a {@link DocTheoryDiffer}, scores included; conversion stops at the first document which
+ * differs, reporting the differences.
+ */
+public final class SerifBinaryConverter implements TextGroupEntryPoint {
+
+  private static final Logger log = LoggerFactory.getLogger(SerifBinaryConverter.class);
+
+  private static final String INPUT_LIST_PARAM = "inputList";
+  private static final String OUTPUT_DIR_PARAM = "outputDir";
+  private static final String TO_BINARY_PARAM = "toBinary";
+  private static final String VERIFY_PARAM = "verify";
+
+  private final Parameters parameters;
+  private final SerifXMLLoader loader;
+  private final SerifXMLWriter writer;
+  private final DocTheoryDiffer differ = DocTheoryDiffer.create(false);
+
+  @Inject
+  SerifBinaryConverter(Parameters parameters, SerifXMLLoader loader, SerifXMLWriter writer) {
+    this.parameters = parameters;
+    this.loader = loader;
+    this.writer = writer;
+  }
+
+  public static void main(String... args) throws Exception {
+    TextGroupEntryPoints.runEntryPoint(SerifBinaryConverter.class, args);
+  }
+
+  @Override
+  public void run() throws Exception {
+    final List<File> inputFiles =
+        FileUtils.loadFileList(parameters.getExistingFile(INPUT_LIST_PARAM));
+    final File outputDir = parameters.getCreatableDirectory(OUTPUT_DIR_PARAM);
+    final boolean toBinary = parameters.getOptionalBoolean(TO_BINARY_PARAM).or(true);
+    final boolean verify = parameters.getOptionalBoolean(VERIFY_PARAM).or(false);
+
+    final ImmutableMap.Builder<Symbol, File> outputFiles = ImmutableMap.builder();
+    for (final File inputFile : inputFiles) {
+      final DocTheory in = loader.loadFrom(inputFile);
+      final File outputFile =
+          new File(outputDir, in.docid().asString() + (toBinary ? ".sxb" : ".xml"));
+      if (toBinary) {
+        writer.saveBinaryTo(in, Files.asByteSink(outputFile));
+      } else {
+        writer.saveTo(in, outputFile);
+      }
+      if (verify) {
+        verifyConversion(in, outputFile);
+      }
+      outputFiles.put(in.docid(), outputFile);
+    }
+    FileUtils.writeSymbolToFileMap(outputFiles.build(),
+        Files.asCharSink(new File(outputDir, "docIdMap.txt"), Charsets.UTF_8));
+    log.info("Converted {} documents", inputFiles.size());
+  }
+
+  private void verifyConversion(final DocTheory original, final File converted)
+      throws IOException {
+    final Optional<DocTheoryDiff> diff = differ.diff(original, loader.loadFrom(converted));
+    if (diff.isPresent()) {
+      final StringBuilder report = new StringBuilder();
+      diff.get().writeTextReport(report, 2);
+      throw new SerifException("Conversion of " + original.docid() + " to " + converted
+          + " was not lossless:\n" + report);
+    }
+  }
+
+  static class Module extends AbstractParameterizedModule {
+
+    protected Module(final Parameters parameters) {
+      super(parameters);
+    }
+
+    @Override
+    public void configure() {
+      install(new SerifEnvironmentM(params()));
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that documents read back from a {@link DocTheoryArchive} are those written to it, and that
+ * an archive left inconsistent by an interrupted write is refused rather than misread or emptied.
+ */
+public final class DocTheoryArchiveTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  @Rule
+  public final TemporaryFolder tmp = new TemporaryFolder();
+
+  private final SerifXMLLoader loader = SerifXMLLoader.builder().build();
+
+  @Test
+  public void readsBackWrittenDocument() throws Exception {
+    final DocTheory dt = sample();
+    final File archiveFile = tmp.newFile("docs.archive");
+    final DocTheoryArchiveWriter writer =
+        DocTheoryArchiveWriter.create(archiveFile, SerifXMLWriter.create());
+    writer.consume(dt);
+    writer.finish();
+
+    try (DocTheoryArchive archive = DocTheoryArchive.open(archiveFile, loader)) {
+      assertEquals(1, archive.numDocuments());
+      assertEquals(write(dt), write(archive.getDocTheory(dt.docid())));
+    }
+  }
+
+  @Test
+  public void refusesIndexOfAnotherArchive() throws Exception {
+    final File archiveFile = tmp.newFile("docs.archive");
+    final DocTheoryArchiveWriter first =
+        DocTheoryArchiveWriter.create(archiveFile, SerifXMLWriter.create());
+    first.consume(sample());
+    first.finish();
+    final File firstArchive = tmp.newFile("first.archive");
+    Files.copy(archiveFile, firstArchive);
+
+    final DocTheoryArchiveWriter second =
+        DocTheoryArchiveWriter.create(archiveFile, SerifXMLWriter.create());
+    second.consume(sample());
+    second.finish();
+    // as if writing stopped after the new index was moved into place but before the archive was
+    Files.copy(firstArchive, archiveFile);
+
+    try {
+      DocTheoryArchive.open(archiveFile, loader);
+      fail("Opened an archive with another archive's index");
+    } catch (final IOException expected) {
+    }
+  }
+
+  @Test
+  public void refusesToAppendWithoutIndex() throws Exception {
+    final File archiveFile = tmp.newFile("docs.archive");
+    final DocTheoryArchiveWriter writer =
+        DocTheoryArchiveWriter.create(archiveFile, SerifXMLWriter.create());
+    writer.consume(sample());
+    writer.finish();
+    final long length = archiveFile.length();
+    java.nio.file.Files.delete(DocTheoryArchive.indexFileFor(archiveFile).toPath());
+
+    try {
+      DocTheoryArchiveWriter.openForAppend(archiveFile, SerifXMLWriter.create());
+      fail("Appended to an archive without an index");
+    } catch (final IOException expected) {
+    }
+    assertEquals(length, archiveFile.length());
+  }
+
+  private DocTheory sample() throws IOException {
+    return loader.loadFrom(
+        Resources.asCharSource(DocTheoryArchiveTest.class.getResource(SAMPLE), Charsets.UTF_8));
+  }
+
+  private static String write(final DocTheory dt) {
+    final StringWriter ret = new StringWriter();
+    SerifXMLWriter.create().saveTo(dt, ret);
+    return ret.toString();
+  }
+}
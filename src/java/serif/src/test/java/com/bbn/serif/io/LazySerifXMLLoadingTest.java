@@ -0,0 +1,111 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.Spanning;
+import com.bbn.serif.theories.TokenSequence;
+import com.bbn.serif.theories.ValueMention;
+import com.bbn.serif.theories.ValueMentions;
+import com.bbn.serif.types.ValueType;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that a document opened with {@link SerifXMLLoader#loadLazilyFrom(ByteSource)} gives the
+ * same sentences, one at a time, as loading it all at once, and the same document once resolved,
+ * compared by writing both out as SerifXML.
+ */
+public final class LazySerifXMLLoadingTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  private final SerifXMLLoader loader = SerifXMLLoader.builder().build();
+
+  @Test
+  public void lazyMatchesEager() throws Exception {
+    final DocTheory eager = loader.loadFrom(sample().asCharSource(Charsets.UTF_8));
+    final DocTheory lazy = loader.loadLazilyFrom(sample());
+
+    assertEquals(eager.docid(), lazy.docid());
+    assertEquals(eager.numSentences(), lazy.numSentences());
+    for (int i = 0; i < eager.numSentences(); ++i) {
+      assertEquals(describe(eager.sentenceTheory(i)), describe(lazy.sentenceTheory(i)));
+    }
+    int sentences = 0;
+    for (final SentenceTheory st : lazy.nonEmptySentenceTheories()) {
+      assertEquals(describe(eager.sentenceTheory(st.sentenceNumber())), describe(st));
+      ++sentences;
+    }
+    assertEquals(Iterables.size(eager.nonEmptySentenceTheories()), sentences);
+
+    assertEquals(write(eager), write(lazy));
+  }
+
+  @Test
+  public void heldSentenceTheoriesAreKeptThroughResolution() throws Exception {
+    final DocTheory lazy = loader.loadLazilyFrom(sample());
+    final SentenceTheory held = lazy.sentenceTheory(3);
+    assertSame(held, lazy.sentenceTheory(3));
+    // resolving the document-level sets builds the document around the sentences already in use
+    lazy.entities();
+    assertSame(held, lazy.sentenceTheory(3));
+    assertSame(held, lazy.sentenceTheories().get(3));
+  }
+
+  @Test
+  public void documentLevelValueMentionsAreLoadedById() throws Exception {
+    final DocTheory withoutValueMentions =
+        loader.loadFrom(sample().asCharSource(Charsets.UTF_8));
+    final TokenSequence tokens = withoutValueMentions.sentenceTheory(2).tokenSequence();
+    final DocTheory original = withoutValueMentions.modifiedCopyBuilder()
+        .valueMentions(ValueMentions.create(ImmutableList.of(
+            ValueMention.builder(ValueType.parseDottedPair("TIMEX2.TIME"), tokens.span(0, 0))
+                .build())))
+        .build();
+    final String xml = write(original);
+    final DocTheory eager = loader.loadFrom(CharSource.wrap(xml));
+    final DocTheory lazy =
+        loader.loadLazilyFrom(CharSource.wrap(xml).asByteSource(Charsets.UTF_8));
+
+    // reaching a sentence does not need the document-level value mentions
+    assertEquals(describe(eager.sentenceTheory(5)), describe(lazy.sentenceTheory(5)));
+    final ValueMention valueMention = Iterables.getOnlyElement(lazy.valueMentions());
+    assertEquals(2, valueMention.span().sentenceIndex());
+    assertSame(lazy.sentenceTheory(2).tokenSequence(), valueMention.span().tokenSequence());
+    assertEquals(xml, write(lazy));
+  }
+
+  // the sentence's number and tokens, and the spans of its mentions
+  private static String describe(final SentenceTheory st) {
+    final StringBuilder ret = new StringBuilder();
+    ret.append(st.sentenceNumber()).append(": ")
+        .append(st.tokenSequence().isAbsent() ? "" : st.span().tokenizedText());
+    for (final Spanning mention : st.mentions()) {
+      ret.append(" [").append(mention.span().startTokenIndexInclusive()).append(':')
+          .append(mention.span().endTokenIndexInclusive()).append(']');
+    }
+    return ret.toString();
+  }
+
+  private static String write(final DocTheory dt) {
+    final StringWriter ret = new StringWriter();
+    SerifXMLWriter.create().saveTo(dt, ret);
+    return ret.toString();
+  }
+
+  private static ByteSource sample() {
+    return Resources.asByteSource(LazySerifXMLLoadingTest.class.getResource(SAMPLE));
+  }
+}
@@ -0,0 +1,83 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.TokenSequence;
+import com.bbn.serif.theories.ValueMention;
+import com.bbn.serif.theories.ValueMentions;
+import com.bbn.serif.theories.diff.DocTheoryDiffer;
+import com.bbn.serif.types.ValueType;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Converts a SerifXML document to binary SerifXML, loads it back and checks that the loaded
+ * document has no differences from the original according to a {@link DocTheoryDiffer}, and that
+ * it writes out exactly the same SerifXML.
+ */
+public final class SerifBinaryRoundTripTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  private final SerifXMLLoader loader = SerifXMLLoader.builder().build();
+
+  @Test
+  public void binaryRoundTripIsLossless() throws Exception {
+    final DocTheory original = loader.loadFrom(sample().asCharSource(Charsets.UTF_8));
+    final byte[] binary = writeBinary(original);
+    assertTrue(Arrays.equals(SerifBinary.MAGIC, Arrays.copyOf(binary, SerifBinary.MAGIC.length)));
+
+    final DocTheory loaded = loader.loadFrom(ByteSource.wrap(binary));
+    assertFalse(DocTheoryDiffer.create(false).diff(original, loaded).isPresent());
+    assertEquals(original.docid(), loaded.docid());
+    assertEquals(original.numSentences(), loaded.numSentences());
+    assertEquals(write(original), write(loaded));
+  }
+
+  @Test
+  public void documentLevelValueMentionsShareSentenceTokens() throws Exception {
+    final DocTheory withoutValueMentions =
+        loader.loadFrom(sample().asCharSource(Charsets.UTF_8));
+    final TokenSequence tokens = withoutValueMentions.sentenceTheory(2).tokenSequence();
+    final DocTheory original = withoutValueMentions.modifiedCopyBuilder()
+        .valueMentions(ValueMentions.create(ImmutableList.of(
+            ValueMention.builder(ValueType.parseDottedPair("TIMEX2.TIME"), tokens.span(0, 0))
+                .build())))
+        .build();
+
+    final DocTheory loaded = loader.loadFrom(ByteSource.wrap(writeBinary(original)));
+    final ValueMention valueMention = Iterables.getOnlyElement(loaded.valueMentions());
+    assertSame(loaded.sentenceTheory(2).tokenSequence(), valueMention.span().tokenSequence());
+    assertEquals(write(original), write(loaded));
+  }
+
+  private static byte[] writeBinary(final DocTheory dt) throws Exception {
+    final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+    SerifXMLWriter.create().saveBinaryTo(dt, ret);
+    return ret.toByteArray();
+  }
+
+  private static String write(final DocTheory dt) {
+    final StringWriter ret = new StringWriter();
+    SerifXMLWriter.create().saveTo(dt, ret);
+    return ret.toString();
+  }
+
+  private static ByteSource sample() {
+    return Resources.asByteSource(SerifBinaryRoundTripTest.class.getResource(SAMPLE));
+  }
+}
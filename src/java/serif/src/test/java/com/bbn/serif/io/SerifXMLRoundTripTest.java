@@ -0,0 +1,133 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.Name;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.Spanning;
+import com.bbn.serif.theories.ValueMention;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharSource;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes a document, loads what was written and writes it again. The sample has names, value
+ * mentions and a mention given by its start and end tokens rather than a parse node, all of which
+ * the writer refers to by the ids of their tokens. Since {@link com.bbn.serif.theories.Token}s are
+ * views created on demand, those references must not depend on which view the writer is given.
+ */
+public final class SerifXMLRoundTripTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+  private static final ImmutableSet<String> TOKEN_REFERENCING_ELEMENTS =
+      ImmutableSet.of("Mention", "Name", "ValueMention");
+
+  private final SerifXMLLoader loader = SerifXMLLoader.builder().build();
+
+  @Test
+  public void writingIsUnchangedByLoading() throws Exception {
+    final String firstWrite = write(loader.loadFrom(sample()));
+    final String secondWrite = write(loader.loadFromString(firstWrite));
+    assertEquals(firstWrite, secondWrite);
+  }
+
+  @Test
+  public void streamingOutputIsIdenticalToDom() throws Exception {
+    final DocTheory dt = loader.loadFrom(sample());
+    final StringWriter streamed = new StringWriter();
+    SerifXMLWriter.createStreaming().saveTo(dt, streamed);
+    assertEquals(write(dt), streamed.toString());
+
+    // the byte stream is always streamed, so compare it with the UTF-8 encoding of the DOM's text
+    final ByteArrayOutputStream streamedBytes = new ByteArrayOutputStream();
+    SerifXMLWriter.create().saveTo(dt, streamedBytes);
+    assertArrayEquals(write(dt).getBytes(Charsets.UTF_8), streamedBytes.toByteArray());
+  }
+
+  @Test
+  public void tokenReferencesAreToWrittenTokens() throws Exception {
+    final Document written = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(write(loader.loadFrom(sample())))));
+
+    final Set<String> tokenIds = new HashSet<>();
+    final NodeList tokens = written.getElementsByTagName("Token");
+    for (int i = 0; i < tokens.getLength(); ++i) {
+      tokenIds.add(((Element) tokens.item(i)).getAttribute("id"));
+    }
+
+    for (final String elementName : TOKEN_REFERENCING_ELEMENTS) {
+      final NodeList elements = written.getElementsByTagName(elementName);
+      int referencing = 0;
+      for (int i = 0; i < elements.getLength(); ++i) {
+        final Element element = (Element) elements.item(i);
+        if (element.hasAttribute("start_token")) {
+          ++referencing;
+          assertTrue(tokenIds.contains(element.getAttribute("start_token")));
+          assertTrue(tokenIds.contains(element.getAttribute("end_token")));
+        }
+      }
+      assertTrue("Sample has no " + elementName + " referring to tokens", referencing > 0);
+    }
+  }
+
+  @Test
+  public void spansSurviveRoundTrip() throws Exception {
+    final DocTheory original = loader.loadFrom(sample());
+    final DocTheory reloaded = loader.loadFromString(write(original));
+    assertEquals(spans(original), spans(reloaded));
+  }
+
+  private static ImmutableList<String> spans(final DocTheory dt) {
+    final ImmutableList.Builder<String> ret = ImmutableList.builder();
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      for (final Mention mention : st.mentions()) {
+        ret.add("mention " + mention.synNodeIsTerminalFromToken() + " "
+            + mention.startToken().index() + ":" + mention.endToken().index());
+      }
+      for (final Name name : st.names()) {
+        ret.add("name " + span(name));
+      }
+      for (final ValueMention valueMention : st.valueMentions()) {
+        ret.add("value " + span(valueMention));
+      }
+    }
+    return ret.build();
+  }
+
+  private static String span(final Spanning spanning) {
+    return spanning.span().startTokenIndexInclusive() + ":"
+        + spanning.span().endTokenIndexInclusive();
+  }
+
+  private static String write(final DocTheory dt) {
+    final StringWriter ret = new StringWriter();
+    SerifXMLWriter.create().saveTo(dt, ret);
+    return ret.toString();
+  }
+
+  private static CharSource sample() {
+    return Resources.asCharSource(SerifXMLRoundTripTest.class.getResource(SAMPLE),
+        Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,61 @@
+package com.bbn.serif.io;
+
+import com.bbn.serif.theories.DocTheory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharSource;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that loading with {@link SerifXMLLoader#streamingParse()} gives the same {@link
+ * DocTheory} as loading through a DOM, compared by writing both out as SerifXML.
+ */
+public final class SerifXMLStreamParsingTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  private final SerifXMLLoader domLoader = SerifXMLLoader.builder().build();
+  private final SerifXMLLoader streamingLoader =
+      SerifXMLLoader.builder().streamingParse(true).build();
+
+  @Test
+  public void streamingMatchesDom() throws Exception {
+    assertEquals(write(domLoader.loadFrom(sample())), write(streamingLoader.loadFrom(sample())));
+  }
+
+  @Test
+  public void unresolvableReferenceFailsWhenStreaming() throws Exception {
+    // deferred as a possible forward reference, then found never to be defined
+    final String xml = sample().read().replaceFirst("syn_node_id=\"", "syn_node_id=\"undefined");
+    for (final SerifXMLLoader loader : ImmutableList.of(domLoader, streamingLoader)) {
+      try {
+        loader.loadFrom(CharSource.wrap(xml));
+        fail("Resolved an undefined id with " + loader);
+      } catch (final IOException e) {
+        assertTrue(Throwables.getRootCause(e) instanceof SerifXMLException);
+      }
+    }
+  }
+
+  private static String write(final DocTheory dt) {
+    final StringWriter ret = new StringWriter();
+    SerifXMLWriter.create().saveTo(dt, ret);
+    return ret.toString();
+  }
+
+  private static CharSource sample() {
+    return Resources.asCharSource(SerifXMLStreamParsingTest.class.getResource(SAMPLE),
+        Charsets.UTF_8);
+  }
+}
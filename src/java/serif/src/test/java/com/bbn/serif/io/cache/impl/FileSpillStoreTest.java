@@ -0,0 +1,93 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link FileSpillStore} returns what was put into it, never rewrites a document,
+ * and holds nothing once closed.
+ */
+public final class FileSpillStoreTest {
+
+  private static final Symbol FIRST = Symbol.from("first");
+  private static final Symbol SECOND = Symbol.from("second");
+  private static final Symbol EMPTY = Symbol.from("empty");
+
+  @Rule
+  public final TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void returnsWhatWasPut() throws Exception {
+    try (FileSpillStore store = FileSpillStore.create(tmp.newFile("spill"))) {
+      assertFalse(store.contains(FIRST));
+      assertNull(store.get(FIRST));
+
+      store.put(FIRST, bytes("first document"));
+      store.put(SECOND, bytes("second"));
+      assertTrue(store.contains(FIRST));
+      assertTrue(store.contains(SECOND));
+      assertArrayEquals(bytes("first document"), store.get(FIRST));
+      assertArrayEquals(bytes("second"), store.get(SECOND));
+      store.put(EMPTY, new byte[0]);
+      assertArrayEquals(new byte[0], store.get(EMPTY));
+    }
+  }
+
+  @Test
+  public void documentsAreNotWrittenAgain() throws Exception {
+    final File spillFile = tmp.newFile("spill");
+    try (FileSpillStore store = FileSpillStore.create(spillFile)) {
+      store.put(FIRST, bytes("first document"));
+      final long length = spillFile.length();
+      store.put(FIRST, bytes("something else"));
+      assertEquals(length, spillFile.length());
+      assertArrayEquals(bytes("first document"), store.get(FIRST));
+    }
+  }
+
+  @Test
+  public void existingFileIsOverwritten() throws Exception {
+    final File spillFile = tmp.newFile("spill");
+    Files.write("left over from before", spillFile, Charsets.UTF_8);
+    try (FileSpillStore store = FileSpillStore.create(spillFile)) {
+      assertEquals(0, spillFile.length());
+      store.put(FIRST, bytes("first document"));
+      assertArrayEquals(bytes("first document"), store.get(FIRST));
+    }
+  }
+
+  @Test
+  public void closedStoreHoldsNothing() throws Exception {
+    final File spillFile = tmp.newFile("spill");
+    final FileSpillStore store = FileSpillStore.create(spillFile);
+    store.put(FIRST, bytes("first document"));
+    store.close();
+
+    assertFalse(spillFile.exists());
+    assertFalse(store.contains(FIRST));
+    assertNull(store.get(FIRST));
+    store.put(SECOND, bytes("second"));
+    assertFalse(store.contains(SECOND));
+    assertNull(store.get(SECOND));
+    // closing again does nothing
+    store.close();
+  }
+
+  private static byte[] bytes(final String s) {
+    return s.getBytes(Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,79 @@
+package com.bbn.serif.io.cache.impl;
+
+import com.bbn.bue.common.symbols.Symbol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an {@link OffHeapSpillStore} returns what was put into it, drops the least recently
+ * used documents once it holds more than its limit, and holds nothing once closed.
+ */
+public final class OffHeapSpillStoreTest {
+
+  private static final Symbol FIRST = Symbol.from("first");
+  private static final Symbol SECOND = Symbol.from("second");
+  private static final Symbol THIRD = Symbol.from("third");
+  private static final Symbol FOURTH = Symbol.from("fourth");
+
+  @Test
+  public void returnsWhatWasPut() throws Exception {
+    final OffHeapSpillStore store = OffHeapSpillStore.create(1000);
+    assertFalse(store.contains(FIRST));
+    assertNull(store.get(FIRST));
+
+    store.put(FIRST, document(1, 100));
+    store.put(SECOND, document(2, 10));
+    assertTrue(store.contains(FIRST));
+    assertArrayEquals(document(1, 100), store.get(FIRST));
+    assertArrayEquals(document(2, 10), store.get(SECOND));
+    // what is returned is a copy
+    store.get(FIRST)[0] = 0;
+    assertArrayEquals(document(1, 100), store.get(FIRST));
+    store.close();
+  }
+
+  @Test
+  public void dropsLeastRecentlyUsedBeyondLimit() throws Exception {
+    final OffHeapSpillStore store = OffHeapSpillStore.create(250);
+    store.put(FIRST, document(1, 100));
+    store.put(SECOND, document(2, 100));
+    store.put(THIRD, document(3, 100));
+    assertFalse(store.contains(FIRST));
+    assertTrue(store.contains(SECOND));
+    assertTrue(store.contains(THIRD));
+
+    // reading the second document makes the third the least recently used
+    assertArrayEquals(document(2, 100), store.get(SECOND));
+    store.put(FOURTH, document(4, 100));
+    assertNull(store.get(THIRD));
+    assertArrayEquals(document(2, 100), store.get(SECOND));
+    assertArrayEquals(document(4, 100), store.get(FOURTH));
+    store.close();
+  }
+
+  @Test
+  public void closedStoreHoldsNothing() throws Exception {
+    final OffHeapSpillStore store = OffHeapSpillStore.create(1000);
+    store.put(FIRST, document(1, 100));
+    store.close();
+
+    assertFalse(store.contains(FIRST));
+    assertNull(store.get(FIRST));
+    store.put(SECOND, document(2, 100));
+    assertFalse(store.contains(SECOND));
+    assertNull(store.get(SECOND));
+  }
+
+  private static byte[] document(final int fill, final int size) {
+    final byte[] ret = new byte[size];
+    Arrays.fill(ret, (byte) fill);
+    return ret;
+  }
+}
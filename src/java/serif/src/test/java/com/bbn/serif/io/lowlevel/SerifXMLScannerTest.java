@@ -0,0 +1,121 @@
+package com.bbn.serif.io.lowlevel;
+
+import com.bbn.bue.common.exceptions.NotImplementedException;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.Name;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.Token;
+import com.bbn.serif.theories.TokenSequence;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that what a {@link SerifXMLScanner} reports for the sample document is what {@link
+ * SerifXMLLoader} loads from it.
+ */
+public final class SerifXMLScannerTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  @Test
+  public void scanMatchesLoadedDocument() throws Exception {
+    final String xml = sample();
+    assertEquals(fromDocTheory(SerifXMLLoader.builder().build().loadFromString(xml)), scan(xml));
+  }
+
+  @Test
+  public void treebankStringTagIgnoresCase() throws Exception {
+    final String xml = sample();
+    assertEquals(scan(xml), scan(xml.replace("TreebankString", "TREEBANKSTRING")));
+  }
+
+  @Test(expected = NotImplementedException.class)
+  public void rejectsNonDFSNodeIds() throws Exception {
+    scan(sample().replace("node_id_method=\"DFS\"", "node_id_method=\"BFS\""));
+  }
+
+  private static List<String> scan(final String xml) {
+    final List<String> ret = new ArrayList<>();
+    SerifXMLScanner.forBuffer(ByteBuffer.wrap(xml.getBytes(Charsets.UTF_8)))
+        .scan(new SerifXMLScanner.Visitor() {
+          @Override
+          public void startDocument(final String docid) {
+            ret.add("document " + docid);
+          }
+
+          @Override
+          public void startSentence(final int sentenceIdx, final int startCharOffset,
+              final int endCharOffset) {
+            ret.add("sentence " + sentenceIdx + " " + startCharOffset + ":" + endCharOffset);
+          }
+
+          @Override
+          public void token(final int sentenceIdx, final int tokenIdx, final String text,
+              final int startCharOffset, final int endCharOffset) {
+            ret.add("token " + sentenceIdx + " " + tokenIdx + " " + text + " " + startCharOffset
+                + ":" + endCharOffset);
+          }
+
+          @Override
+          public void name(final int sentenceIdx, final String entityType,
+              final int startTokenIdx, final int endTokenIdx) {
+            ret.add("name " + sentenceIdx + " " + entityType + " " + startTokenIdx + ":"
+                + endTokenIdx);
+          }
+
+          @Override
+          public void mention(final int sentenceIdx, final String mentionId,
+              final String mentionType, final String entityType, final int startTokenIdx,
+              final int endTokenIdx) {
+            ret.add("mention " + sentenceIdx + " " + mentionType + " " + entityType + " "
+                + startTokenIdx + ":" + endTokenIdx);
+          }
+        });
+    return ret;
+  }
+
+  // the same callbacks, in the order the scanner makes them for the sample
+  private static List<String> fromDocTheory(final DocTheory dt) {
+    final ImmutableList.Builder<String> ret = ImmutableList.builder();
+    ret.add("document " + dt.docid());
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      final int sentenceIdx = st.sentenceNumber();
+      ret.add("sentence " + sentenceIdx + " "
+          + st.sentence().locatedString().referenceBounds().startInclusive().charOffset().asInt()
+          + ":"
+          + st.sentence().locatedString().referenceBounds().endInclusive().charOffset().asInt());
+      final TokenSequence ts = st.tokenSequence();
+      for (int i = 0; i < ts.size(); ++i) {
+        final Token token = ts.token(i);
+        ret.add("token " + sentenceIdx + " " + i + " " + token.tokenizedText() + " "
+            + token.startCharOffset().asInt() + ":" + token.endCharOffset().asInt());
+      }
+      for (final Name name : st.names()) {
+        ret.add("name " + sentenceIdx + " " + name.type().name() + " "
+            + name.span().startTokenIndexInclusive() + ":" + name.span().endTokenIndexInclusive());
+      }
+      for (final Mention mention : st.mentions()) {
+        ret.add("mention " + sentenceIdx + " " + mention.mentionType().name().toLowerCase() + " "
+            + mention.entityType().name() + " " + mention.startToken().index() + ":"
+            + mention.endToken().index());
+      }
+    }
+    return ret.build();
+  }
+
+  private static String sample() throws Exception {
+    return Resources.toString(SerifXMLScannerTest.class.getResource(SAMPLE), Charsets.UTF_8);
+  }
+}
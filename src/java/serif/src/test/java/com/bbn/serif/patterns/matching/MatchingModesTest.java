@@ -0,0 +1,132 @@
+package com.bbn.serif.patterns.matching;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.patterns.MentionPattern;
+import com.bbn.serif.patterns.Pattern;
+import com.bbn.serif.patterns.PatternSet;
+import com.bbn.serif.patterns.RegexPattern;
+import com.bbn.serif.patterns.TextPattern;
+import com.bbn.serif.theories.DocTheory;
+import com.bbn.serif.theories.Mention;
+import com.bbn.serif.theories.SentenceTheory;
+import com.bbn.serif.theories.Spanning;
+import com.bbn.serif.types.EntityType;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that matching a pattern set against the sample document sequentially, one sentence per
+ * task, one document per task, incrementally and through a {@link PatternMatchVisitor} all find
+ * the same matches.
+ */
+public final class MatchingModesTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  private static final PatternSet PATTERNS = new PatternSet.Builder(Symbol.from("test"))
+      .withTopLevelPatternAdd(new MentionPattern.Builder()
+          .withMentionTypes(ImmutableSet.of(Mention.Type.NAME))
+          .withId(Symbol.from("names")).build())
+      .withTopLevelPatternAdd(new MentionPattern.Builder()
+          .withAceTypes(ImmutableList.of(EntityType.PER, EntityType.ORG))
+          .withMentionTypes(ImmutableSet.of(Mention.Type.DESC))
+          .withId(Symbol.from("person_or_org_descs")).build())
+      .withTopLevelPatternAdd(new RegexPattern.Builder()
+          .withSubpatterns(ImmutableList.<Pattern>of(new TextPattern.Builder().withText("the")
+              .build()))
+          .withId(Symbol.from("the")).build())
+      .build();
+
+  @Test
+  public void allModesFindTheSameMatches() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    final PatternSetMatcher matcher = PatternSetMatcher.of(PATTERNS);
+    final PatternReturns sequential = matcher.inContextOf(dt).findMatchesInDocument();
+    // otherwise the modes below would only agree on finding nothing
+    for (final String patternId : ImmutableList.of("names", "person_or_org_descs", "the")) {
+      assertTrue("Nothing matched " + patternId, matchedBy(sequential, patternId));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      assertEquals(sequential, matcher.inContextOf(dt).findMatchesInDocument(executor));
+      assertEquals(sequential, Iterables.getOnlyElement(
+          matcher.findMatchesInDocuments(ImmutableList.of(dt), executor, 2)));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    final IncrementalMatchingSession session = matcher.newIncrementalSession();
+    assertEquals(sequential, session.findMatchesInDocument(dt));
+    // everything is kept the second time
+    assertEquals(sequential, session.findMatchesInDocument(dt));
+
+    final PatternReturns.Builder visited = new PatternReturns.Builder();
+    matcher.inContextOf(dt).visitMatchesInDocument(new PatternMatchVisitor() {
+      @Override
+      public void visitMatch(final PatternMatch match) {
+        visited.addMatches(match);
+      }
+    });
+    assertEquals(sequential, visited.build());
+  }
+
+  @Test
+  public void incrementalMatchingAfterEditMatchesFullRematch() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    final PatternSetMatcher matcher = PatternSetMatcher.of(PATTERNS);
+    final IncrementalMatchingSession session = matcher.newIncrementalSession();
+    session.findMatchesInDocument(dt);
+
+    final SentenceTheory edited = dt.sentenceTheory(1);
+    final DocTheory editedDt = dt.modifiedCopyBuilder()
+        .replacePrimarySentenceTheory(edited, edited.modifiedCopyBuilder().build()).build();
+    // kept matches refer to the earlier version of the document, so compare what was matched
+    assertEquals(describe(matcher.inContextOf(editedDt).findMatchesInDocument()),
+        describe(session.findMatchesInDocument(editedDt)));
+  }
+
+  private static boolean matchedBy(final PatternReturns returns, final String patternId) {
+    for (final PatternMatch match : returns.matches()) {
+      if (match.pattern().isPresent()
+          && match.pattern().get().getId().equals(Symbol.from(patternId))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the pattern, sentence and span of each match
+  private static ImmutableSet<String> describe(final PatternReturns returns) {
+    final ImmutableSet.Builder<String> ret = ImmutableSet.builder();
+    for (final PatternMatch match : returns.matches()) {
+      final StringBuilder sb = new StringBuilder();
+      sb.append(match.pattern().isPresent() ? match.pattern().get().getId() : "none");
+      if (match.sentenceTheory().isPresent()) {
+        sb.append(' ').append(match.sentenceTheory().get().sentenceNumber());
+      }
+      if (match.spanning().isPresent()) {
+        final Spanning spanning = match.spanning().get();
+        sb.append(' ').append(spanning.span().startTokenIndexInclusive()).append(':')
+            .append(spanning.span().endTokenIndexInclusive());
+      }
+      ret.add(sb.toString());
+    }
+    return ret.build();
+  }
+}
@@ -0,0 +1,99 @@
+package com.bbn.serif.theories;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every {@link CharOffsetIndex} query against the scan it replaces, over random items whose
+ * start and end offsets are non-decreasing, including items which share offsets.
+ */
+public final class CharOffsetIndexTest {
+
+  private static final int TRIALS = 500;
+
+  @Test
+  public void binarySearchMatchesScan() {
+    final Random rng = new Random(0);
+    for (int trial = 0; trial < TRIALS; ++trial) {
+      final int size = rng.nextInt(20);
+      final int[] starts = new int[size];
+      final int[] ends = new int[size];
+      for (int i = 0; i < size; ++i) {
+        starts[i] = (i > 0 ? starts[i - 1] : 0) + rng.nextInt(4);
+        ends[i] = Math.max(i > 0 ? ends[i - 1] : 0, starts[i]) + rng.nextInt(4);
+      }
+      final CharOffsetIndex index = CharOffsetIndex.of(starts, ends);
+      assertTrue(index.isSorted());
+
+      final int maxOffset = size > 0 ? ends[size - 1] + 2 : 2;
+      for (int offset = -1; offset <= maxOffset; ++offset) {
+        assertEquals(firstWith(starts, offset), index.firstStartingAt(offset));
+        assertEquals(lastWith(starts, offset), index.lastStartingAt(offset));
+        assertEquals(firstWith(ends, offset), index.firstEndingAt(offset));
+        assertEquals(lastWith(ends, offset), index.lastEndingAt(offset));
+        assertEquals(firstAbove(starts, offset), index.firstStartingAfter(offset));
+        assertEquals(firstAbove(ends, offset), index.firstEndingAfter(offset));
+        int lastContaining = -1;
+        for (int i = 0; i < size; ++i) {
+          if (starts[i] <= offset && offset <= ends[i]) {
+            lastContaining = i;
+          }
+        }
+        assertEquals(lastContaining, index.lastContaining(offset));
+
+        for (int end = offset; end <= maxOffset; ++end) {
+          for (int i = 0; i < size; ++i) {
+            assertEquals(starts[i] >= offset && ends[i] <= end,
+                inRange(i, index.startOfContainedIn(offset), index.endOfContainedIn(end)));
+            assertEquals(starts[i] <= offset && ends[i] >= end,
+                inRange(i, index.startOfContaining(end), index.endOfContaining(offset)));
+            assertEquals(starts[i] <= end && ends[i] >= offset,
+                inRange(i, index.startOfOverlapping(offset), index.endOfOverlapping(end)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void detectsUnsortedItems() {
+    assertFalse(CharOffsetIndex.of(new int[]{0, 5}, new int[]{10, 6}).isSorted());
+    assertFalse(CharOffsetIndex.of(new int[]{5, 0}, new int[]{6, 10}).isSorted());
+  }
+
+  private static boolean inRange(final int i, final int startInclusive, final int endExclusive) {
+    return startInclusive <= i && i < endExclusive;
+  }
+
+  private static int firstWith(final int[] a, final int x) {
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] == x) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int lastWith(final int[] a, final int x) {
+    for (int i = a.length - 1; i >= 0; --i) {
+      if (a[i] == x) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int firstAbove(final int[] a, final int x) {
+    for (int i = 0; i < a.length; ++i) {
+      if (a[i] > x) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,97 @@
+package com.bbn.serif.theories;
+
+import com.bbn.bue.common.symbols.Symbol;
+import com.bbn.serif.io.SerifXMLLoader;
+import com.bbn.serif.io.TreebankStringParser;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that trees built top-down by {@link SynNode.PreorderBuilder}, as {@link
+ * TreebankStringParser} does, are the same as those built bottom-up from their children.
+ */
+public final class SynNodeBuildersTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  @Test
+  public void preorderAndBottomUpBuildersAgree() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    int parses = 0;
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      if (st.parse().root().isPresent()) {
+        final SynNode root = st.parse().root().get();
+        final TokenSequence ts = st.tokenSequence();
+        assertEquals(describe(root), describe(rebuildBottomUp(root, ts)));
+        assertEquals(describe(root), describe(
+            TreebankStringParser.create().parseTreebankString(root.toHeadMarkedFlatString(), ts)));
+        ++parses;
+      }
+    }
+    assertTrue(parses > 0);
+  }
+
+  @Test
+  public void parsesDeepTree() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    final TokenSequence ts = dt.sentenceTheory(0).tokenSequence();
+    final int depth = 5000;
+    final String tbString =
+        Strings.repeat("(X^ ", depth) + "(NN w)" + Strings.repeat(")", depth);
+
+    SynNode node = TreebankStringParser.create().parseTreebankString(tbString, ts);
+    for (int level = 0; level < depth; ++level) {
+      assertEquals(Symbol.from("X"), node.tag());
+      assertEquals(0, node.headIndex());
+      assertEquals(0, node.span().startIndex());
+      assertEquals(0, node.span().endIndex());
+      node = node.child(0);
+    }
+    assertTrue(node.isPreterminal());
+    assertEquals(Symbol.from("w"), node.child(0).tag());
+  }
+
+  private static SynNode rebuildBottomUp(final SynNode node, final TokenSequence ts) {
+    if (node.isTerminal()) {
+      return SynNode.terminalBuilder(node.tag()).tokenIndex(node.span().startIndex()).build(ts);
+    }
+    final SynNode.NonterminalBuilder ret = SynNode.nonterminalBuilder(node.tag());
+    final List<SynNode> children = node.children();
+    for (int i = 0; i < children.size(); ++i) {
+      final SynNode child = rebuildBottomUp(children.get(i), ts);
+      if (i == node.headIndex()) {
+        ret.appendHead(child);
+      } else {
+        ret.appendNonHead(child);
+      }
+    }
+    return ret.build(ts);
+  }
+
+  // the tag, head, span and children of node and its descendants, checking parent links and that
+  // views are not recreated on the way
+  private static String describe(final SynNode node) {
+    assertSame(node.children(), node.children());
+    assertSame(node.span(), node.span());
+    final StringBuilder ret = new StringBuilder();
+    ret.append('(').append(node.tag()).append(' ').append(node.headIndex()).append(' ')
+        .append(node.span().startIndex()).append(':').append(node.span().endIndex());
+    for (final SynNode child : node.children()) {
+      assertSame(node, child.parent().get());
+      ret.append(' ').append(describe(child));
+    }
+    return ret.append(')').toString();
+  }
+}
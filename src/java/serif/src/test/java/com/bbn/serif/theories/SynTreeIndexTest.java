@@ -0,0 +1,198 @@
+package com.bbn.serif.theories;
+
+import com.bbn.bue.common.strings.offsets.CharOffset;
+import com.bbn.bue.common.strings.offsets.OffsetRange;
+import com.bbn.serif.io.SerifXMLLoader;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the lookups answered from a {@link SynTreeIndex} give what descending the tree
+ * does, for every parse in the sample document, every node to start from and every token span, and
+ * for character offsets at, between and just beyond the ends of tokens.
+ */
+public final class SynTreeIndexTest {
+
+  private static final String SAMPLE = "/com/bbn/serif/io/sample_doc.xml";
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void indexedLookupsMatchDescent() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    int parses = 0;
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      if (!st.parse().root().isPresent()) {
+        continue;
+      }
+      final SynNode root = st.parse().root().get();
+      // otherwise the lookups below would only be compared with themselves
+      assertTrue(root.tree().index().isUsable());
+      final TokenSequence ts = st.tokenSequence();
+      final List<SynNode> nodes = new ArrayList<>();
+      addAll(root, nodes);
+
+      for (final SynNode node : nodes) {
+        for (int start = 0; start < ts.size(); ++start) {
+          for (int end = start; end < ts.size(); ++end) {
+            final TokenSequence.Span span = ts.span(start, end);
+            assertSame(coveringNodeByDescent(node, span), node.coveringNodeFromTokenSpan(span));
+            assertEquals(coveringNonterminalByDescent(node, span),
+                node.coveringNonterminalFromTokenSpan(span));
+          }
+        }
+        if (node.isTerminal()) {
+          final Token token = ts.token(node.span().startIndex());
+          assertSame(node.parent().get(), st.parse().nodeForToken(token));
+          assertSame(node.parent().get().maximalProjection(),
+              st.parse().maximalProjectionForToken(token).get());
+        }
+      }
+      ++parses;
+    }
+    assertTrue(parses > 0);
+  }
+
+  @Test
+  public void charOffsetLookupsMatchDescent() throws Exception {
+    final DocTheory dt = SerifXMLLoader.builder().build()
+        .loadFrom(Resources.asCharSource(getClass().getResource(SAMPLE), Charsets.UTF_8));
+    int parses = 0;
+    for (final SentenceTheory st : dt.sentenceTheories()) {
+      if (!st.parse().root().isPresent()) {
+        continue;
+      }
+      final SynNode root = st.parse().root().get();
+      assertTrue(root.tree().index().isUsable());
+      assertTrue(st.tokenSequence().offsetIndex().isSorted());
+      final List<SynNode> nodes = new ArrayList<>();
+      addAll(root, nodes);
+      final List<Integer> offsets = ImmutableList.copyOf(candidateOffsets(st.tokenSequence()));
+
+      for (final SynNode node : nodes) {
+        for (int i = 0; i < offsets.size(); ++i) {
+          for (int j = i; j < offsets.size(); ++j) {
+            final int start = offsets.get(i);
+            final int end = offsets.get(j);
+            final OffsetRange<CharOffset> range = OffsetRange.charOffsetRange(start, end);
+            assertEquals(smallestCoveringByDescent(node, start, end),
+                node.smallestConstituentCovering(range));
+            final ImmutableSet.Builder<SynNode> maximal = ImmutableSet.builder();
+            addMaximalCoveredByDescent(node, start, end, maximal);
+            assertEquals(ImmutableList.copyOf(maximal.build()),
+                ImmutableList.copyOf(node.maximalConstituentsCoveredBy(range)));
+          }
+        }
+      }
+      ++parses;
+    }
+    assertTrue(parses > 0);
+  }
+
+  // the start and end offsets of each token, and those just outside them
+  private static Set<Integer> candidateOffsets(final TokenSequence ts) {
+    final Set<Integer> ret = new TreeSet<>();
+    for (int i = 0; i < ts.size(); ++i) {
+      final int start = ts.token(i).startCharOffset().asInt();
+      final int end = ts.token(i).endCharOffset().asInt();
+      ret.add(start - 1);
+      ret.add(start);
+      ret.add(end);
+      ret.add(end + 1);
+    }
+    return ret;
+  }
+
+  private static void addAll(final SynNode node, final List<SynNode> nodes) {
+    nodes.add(node);
+    for (final SynNode child : node.children()) {
+      addAll(child, nodes);
+    }
+  }
+
+  // as SynNode#coveringNodeFromTokenSpan did before it used the index
+  private static SynNode coveringNodeByDescent(final SynNode node,
+      final TokenSequence.Span span) {
+    for (final SynNode child : node.children()) {
+      if (contains(child, span)) {
+        return coveringNodeByDescent(child, span);
+      }
+    }
+    return node;
+  }
+
+  // as SynNode#coveringNonterminalFromTokenSpan did before it used the index
+  private static Optional<SynNode> coveringNonterminalByDescent(final SynNode node,
+      final TokenSequence.Span span) {
+    if (node.isTerminal() || !contains(node, span)) {
+      return Optional.absent();
+    }
+    for (final SynNode child : node.children()) {
+      final Optional<SynNode> childCovering = coveringNonterminalByDescent(child, span);
+      if (childCovering.isPresent()) {
+        return childCovering;
+      }
+    }
+    return Optional.of(node);
+  }
+
+  // as SynNode#smallestConstituentCovering did before it used the index
+  private static Optional<SynNode> smallestCoveringByDescent(final SynNode node, final int start,
+      final int end) {
+    if (!coversOffsets(node, start, end)) {
+      return Optional.absent();
+    }
+    for (final SynNode child : node.children()) {
+      if (coversOffsets(child, start, end)) {
+        return smallestCoveringByDescent(child, start, end);
+      }
+    }
+    return Optional.of(node);
+  }
+
+  // as SynNode#maximalConstituentsCoveredBy did before it used the index
+  private static void addMaximalCoveredByDescent(final SynNode node, final int start,
+      final int end, final ImmutableSet.Builder<SynNode> ret) {
+    if (startOffset(node) >= start && endOffset(node) <= end) {
+      ret.add(node);
+      return;
+    }
+    for (final SynNode child : node.children()) {
+      if (startOffset(child) <= end && endOffset(child) >= start) {
+        addMaximalCoveredByDescent(child, start, end, ret);
+      }
+    }
+  }
+
+  private static boolean coversOffsets(final SynNode node, final int start, final int end) {
+    return startOffset(node) <= start && endOffset(node) >= end;
+  }
+
+  private static int startOffset(final SynNode node) {
+    return node.span().startToken().startCharOffset().asInt();
+  }
+
+  private static int endOffset(final SynNode node) {
+    return node.span().endToken().endCharOffset().asInt();
+  }
+
+  private static boolean contains(final SynNode node, final TokenSequence.Span span) {
+    return node.span().startIndex() <= span.startIndex()
+        && node.span().endIndex() >= span.endIndex();
+  }
+}